@@ -1,6 +1,7 @@
 package io.vertigo.analytics.server;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Optional;
 
 import javax.net.ssl.KeyManagerFactory;
@@ -12,9 +13,16 @@ import org.apache.logging.log4j.core.net.ssl.StoreConfigurationException;
 import org.apache.logging.log4j.core.net.ssl.TrustStoreConfiguration;
 import org.apache.logging.log4j.server.AnalyticsTcpSocketServer;
 import org.apache.logging.log4j.server.TcpSocketServer;
+import org.apache.logging.log4j.server.UnixDomainSocketServer;
 
 import io.kinetix.analytics.server.AnalyticsTcpServer;
-import io.vertigo.analytics.server.feeders.influxdb.http.HttpProcessInflux;
+import io.vertigo.analytics.server.binary.BinaryProtocolServer;
+import io.vertigo.analytics.server.http.HttpIngestServer;
+import io.vertigo.analytics.server.lineprotocol.LineProtocolHttpServer;
+import io.vertigo.analytics.server.lineprotocol.LineProtocolTcpServer;
+import io.vertigo.analytics.server.otlp.OtlpHttpServer;
+import io.vertigo.analytics.server.recentwindow.RecentWindowStore;
+import io.vertigo.analytics.server.recentwindow.RecentWindowTimeSeriesPlugin;
 import io.vertigo.commons.CommonsFeatures;
 import io.vertigo.connectors.influxdb.InfluxDbFeatures;
 import io.vertigo.connectors.javalin.JavalinFeatures;
@@ -37,6 +45,7 @@ public class AnalyticsServerStarter {
 
 	/**
 	 * Args are by group of 3 ( type of server; port ; configUrl )
+	 * For unix socket servers (*-unix), the port is the socket file path.
 	 *@param args
 	 * @throws IOException
 	 * @throws NumberFormatException
@@ -48,6 +57,12 @@ public class AnalyticsServerStarter {
 		}
 		boolean isLog4jEnabled = false;
 		// all good
+		for (int i = 0; i < (int) Math.floor(args.length / 3); i++) {
+			if ("localUi".equals(args[i * 3]) && Boolean.parseBoolean(Optional.ofNullable(System.getenv("RECENT_WINDOW_ENABLED")).orElse("false"))) {
+				//before the listeners : their InfluxDB appenders fill the recent window of the localUi dashboards
+				RecentWindowStore.getInstance().open();
+			}
+		}
 		for (int i = 0; i < (int) Math.floor(args.length / 3); i++) {
 			final String port = args[i * 3 + 1];
 			final String configFile = args[i * 3 + 2];
@@ -76,6 +91,20 @@ public class AnalyticsServerStarter {
 					jsonCompressedTcpSocketServer.startNewThread();
 					isLog4jEnabled = true;
 					break;
+				case "log4j2-unix":
+				case "log4j2-gz-unix":
+				case "log4j2json-unix":
+				case "log4j2json-gz-unix":
+					//the port param is the socket file path
+					Configurator.initialize("definedLog4jContext", AnalyticsServerStarter.class.getClassLoader(), configFile);
+					final String serverType = args[i * 3];
+					final boolean compressed = serverType.contains("-gz");
+					final UnixDomainSocketServer<?> unixSocketServer = serverType.startsWith("log4j2json")
+							? AnalyticsTcpSocketServer.createJsonUnixSocketServer(Path.of(port), compressed)
+							: AnalyticsTcpSocketServer.createSerializedUnixSocketServer(Path.of(port), compressed);
+					unixSocketServer.startNewThread();
+					isLog4jEnabled = true;
+					break;
 				case "log4j2jsonSsl":
 					Configurator.initialize("definedLog4jContext", AnalyticsServerStarter.class.getClassLoader(), configFile);
 					final var keyStoreUrl = Optional.ofNullable(System.getenv("KEYSTORE_URL")).orElse("/opt/analytics/ssl/keystore.p12");
@@ -92,6 +121,30 @@ public class AnalyticsServerStarter {
 					jsonSSlTcpSocketServer.startNewThread();
 					isLog4jEnabled = true;
 					break;
+				case "binary":
+					Configurator.initialize("definedLog4jContext", AnalyticsServerStarter.class.getClassLoader(), configFile);
+					final BinaryProtocolServer binaryProtocolServer = new BinaryProtocolServer(Integer.parseInt(port));
+					binaryProtocolServer.startNewThread();
+					isLog4jEnabled = true;
+					break;
+				case "lineProtocol":
+					Configurator.initialize("definedLog4jContext", AnalyticsServerStarter.class.getClassLoader(), configFile);
+					final LineProtocolTcpServer lineProtocolTcpServer = new LineProtocolTcpServer(Integer.parseInt(port));
+					lineProtocolTcpServer.startNewThread();
+					isLog4jEnabled = true;
+					break;
+				case "lineProtocolHttp":
+					Configurator.initialize("definedLog4jContext", AnalyticsServerStarter.class.getClassLoader(), configFile);
+					final LineProtocolHttpServer lineProtocolHttpServer = new LineProtocolHttpServer(Integer.parseInt(port));
+					lineProtocolHttpServer.start();
+					isLog4jEnabled = true;
+					break;
+				case "otlp":
+					Configurator.initialize("definedLog4jContext", AnalyticsServerStarter.class.getClassLoader(), configFile);
+					final OtlpHttpServer otlpHttpServer = new OtlpHttpServer(Integer.parseInt(port));
+					otlpHttpServer.start();
+					isLog4jEnabled = true;
+					break;
 				case "log4net":
 					Configurator.initialize("definedLog4netContext", AnalyticsServerStarter.class.getClassLoader(), configFile);
 					final AnalyticsTcpServer ats = new AnalyticsTcpServer();
@@ -112,7 +165,8 @@ public class AnalyticsServerStarter {
 		}
 		// at least one is started
 		if (isLog4jEnabled) {
-			HttpProcessInflux.start();
+			new HttpIngestServer(Integer.parseInt(Optional.ofNullable(System.getenv("HTTP_INGEST_PORT")).orElse("7000"))).start();
+			ServerMetrics.startReporting(60);
 		}
 
 	}
@@ -142,7 +196,8 @@ public class AnalyticsServerStarter {
 						.build())
 				.addModule(new DatabaseFeatures()
 						.withTimeSeriesDataBase()
-						.withInfluxDb()
+						//recent time series from memory, others from InfluxDB
+						.addPlugin(RecentWindowTimeSeriesPlugin.class)
 						.build())
 				.addModule(new DataModelFeatures()
 						.build())
@@ -0,0 +1,33 @@
+package io.vertigo.analytics.server;
+
+import java.util.Locale;
+
+/**
+ * Durations of the settings (environment variables, appender attributes, query dims).
+ */
+public final class DurationUtil {
+
+	private DurationUtil() {
+		//private constructor
+	}
+
+	/**
+	 * Parse a duration like "500ms", "10s", "1m" or "1h" (millis if no unit).
+	 * @param duration the duration
+	 * @return the duration in millis
+	 * @throws NumberFormatException if the duration is invalid
+	 */
+	public static long parseMillis(final String duration) {
+		final String value = duration.trim().toLowerCase(Locale.ROOT);
+		if (value.endsWith("ms")) {
+			return Long.parseLong(value.substring(0, value.length() - 2));
+		} else if (value.endsWith("s")) {
+			return Long.parseLong(value.substring(0, value.length() - 1)) * 1000;
+		} else if (value.endsWith("m")) {
+			return Long.parseLong(value.substring(0, value.length() - 1)) * 60 * 1000;
+		} else if (value.endsWith("h")) {
+			return Long.parseLong(value.substring(0, value.length() - 1)) * 60 * 60 * 1000;
+		}
+		return Long.parseLong(value);
+	}
+}
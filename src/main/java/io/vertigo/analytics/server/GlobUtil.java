@@ -0,0 +1,26 @@
+package io.vertigo.analytics.server;
+
+import java.util.regex.Pattern;
+
+/**
+ * Glob patterns of the rules (metric policies, ingest filters, projections) : '*' matches any characters, other characters match as is.
+ */
+public final class GlobUtil {
+
+	private GlobUtil() {
+		//private constructor
+	}
+
+	/**
+	 * @param glob the glob, ex: cache.*
+	 * @return the pattern (to use with matches())
+	 */
+	public static Pattern toPattern(final String glob) {
+		final String[] parts = glob.split("\\*", -1);
+		final StringBuilder regex = new StringBuilder(Pattern.quote(parts[0]));
+		for (int i = 1; i < parts.length; i++) {
+			regex.append(".*").append(Pattern.quote(parts[i]));
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
@@ -0,0 +1,129 @@
+package io.vertigo.analytics.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stable 64 bits hashes (same value on every server and every restart), used for routing, sketches and primitive keyed states.
+ * FNV-1a 64 bits over the UTF-8 bytes with a murmur3 finalizer for a good spread of close keys.
+ * For hashes of primitive fields on hot paths, xxHash64 style steps are combined without allocation : combine(...) then avalanche(hash).
+ */
+public final class HashUtil {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final long XXH_PRIME64_1 = 0x9E3779B185EBCA87L;
+	private static final long XXH_PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long XXH_PRIME64_3 = 0x165667B19E3779F9L;
+	private static final long XXH_PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	private static final long XXH_PRIME64_5 = 0x27D4EB2F165667C5L;
+
+	private HashUtil() {
+		//private constructor
+	}
+
+	/**
+	 * @param key the key
+	 * @return the 64 bits hash
+	 */
+	public static long hash(final String key) {
+		return mix(fnv(FNV_OFFSET_BASIS, key));
+	}
+
+	/**
+	 * Hash of a composite key, parts are separated so ("ab", "c") and ("a", "bc") don't collide.
+	 * @param parts parts of the key (null is hashed as an empty part)
+	 * @return the 64 bits hash
+	 */
+	public static long hash(final String... parts) {
+		long hash = FNV_OFFSET_BASIS;
+		for (final String part : parts) {
+			if (part != null) {
+				hash = fnv(hash, part);
+			}
+			hash ^= 0xff; //separator, not a valid UTF-8 byte
+			hash *= FNV_PRIME;
+		}
+		return mix(hash);
+	}
+
+	private static long fnv(final long seed, final String value) {
+		long hash = seed;
+		for (final byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * murmur3 64 bits finalizer.
+	 * @param value the value
+	 * @return the mixed value
+	 */
+	public static long mix(final long value) {
+		long hash = value;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * @param seed the seed
+	 * @return initial state of an xxHash64 style combination
+	 */
+	public static long seed(final long seed) {
+		return seed + XXH_PRIME64_5;
+	}
+
+	/**
+	 * xxHash64 step for 8 bytes.
+	 * @param hash the current state
+	 * @param value the value
+	 * @return the new state
+	 */
+	public static long combine(final long hash, final long value) {
+		final long k1 = Long.rotateLeft(value * XXH_PRIME64_2, 31) * XXH_PRIME64_1;
+		return Long.rotateLeft(hash ^ k1, 27) * XXH_PRIME64_1 + XXH_PRIME64_4;
+	}
+
+	/**
+	 * xxHash64 steps over the chars of a string (4 chars per step, then the length : ("ab", "c") and ("a", "bc") don't collide).
+	 * @param hash the current state
+	 * @param value the value (null is combined as an empty string)
+	 * @return the new state
+	 */
+	public static long combine(final long hash, final String value) {
+		if (value == null) {
+			return combine(hash, 0L);
+		}
+		long result = hash;
+		final int length = value.length();
+		int i = 0;
+		for (; i + 4 <= length; i += 4) {
+			result = combine(result, (long) value.charAt(i) << 48 | (long) value.charAt(i + 1) << 32 | (long) value.charAt(i + 2) << 16 | value.charAt(i + 3));
+		}
+		long tail = 0;
+		for (; i < length; i++) {
+			tail = tail << 16 | value.charAt(i);
+		}
+		return combine(combine(result, tail), length);
+	}
+
+	/**
+	 * xxHash64 final avalanche.
+	 * @param hash the state
+	 * @return the hash
+	 */
+	public static long avalanche(final long hash) {
+		long result = hash;
+		result ^= result >>> 33;
+		result *= XXH_PRIME64_2;
+		result ^= result >>> 29;
+		result *= XXH_PRIME64_3;
+		result ^= result >>> 32;
+		return result;
+	}
+}
@@ -6,6 +6,7 @@ public class LogMessage<O> {
 
 	private String appName;
 	private String host;
+	private String batchId; //optional, set by clients resending batches : before the events, so the server reads it without decoding them
 	private O event;
 	private List<O> events;
 
@@ -25,6 +26,14 @@ public class LogMessage<O> {
 		this.host = host;
 	}
 
+	public String getBatchId() {
+		return batchId;
+	}
+
+	public void setBatchId(final String batchId) {
+		this.batchId = batchId;
+	}
+
 	public O getEvent() {
 		return event;
 	}
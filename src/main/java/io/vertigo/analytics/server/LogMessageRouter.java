@@ -0,0 +1,182 @@
+package io.vertigo.analytics.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.filter.Filterable;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import io.vertigo.analytics.server.admission.AdmissionController;
+import io.vertigo.analytics.server.dedup.BatchDeduplicator;
+import io.vertigo.analytics.server.filter.IngestFilter;
+import io.vertigo.core.lang.json.CoreJsonAdapters;
+
+/**
+ * Route typed LogMessages to the appenders of their logger, as configured in the log4j2 configuration.
+ * Messages go through the same ingest filter, admission and batch dedup as the log4j2 events, they are written by the calling thread.
+ * {@link LogMessageSink} appenders get the typed message, other appenders (ex: the RollingFile archive) get a log event with the LogMessage json.
+ * Filters of the logger and of the appenders are evaluated on an INFO log event of the logger (with the LogMessage json, rendered only if needed).
+ */
+public final class LogMessageRouter {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	/**
+	 * Kind of messages, with the logger of their appenders.
+	 */
+	public enum Kind {
+		PROCESS("vertigo-analytics-process"),
+		METRIC("vertigo-analytics-metric"),
+		HEALTH("vertigo-analytics-health");
+
+		private final String loggerName;
+
+		Kind(final String loggerName) {
+			this.loggerName = loggerName;
+		}
+
+		/**
+		 * @return the logger name of this kind of messages
+		 */
+		public String getLoggerName() {
+			return loggerName;
+		}
+	}
+
+	private static final Gson GSON = CoreJsonAdapters.addCoreGsonConfig(new GsonBuilder(), false).create();
+
+	private final IngestFilter ingestFilter = IngestFilter.getInstance();
+	private final AdmissionController admissionController = AdmissionController.getInstance();
+	private final BatchDeduplicator batchDeduplicator = BatchDeduplicator.getInstance();
+	private volatile Routes routes = new Routes(null, List.of());
+
+	private record Routes(Configuration configuration, List<Route> byKind) {
+		//only data
+	}
+
+	private record Route(LoggerConfig loggerConfig, List<Target> targets, List<LogMessageSink<Object>> sinks) {
+		//only data
+	}
+
+	/**
+	 * @param appender the appender
+	 * @param sink the appender as a sink, null if it only appends log events
+	 * @param filtered if the appender has a filter
+	 */
+	private record Target(Appender appender, LogMessageSink<Object> sink, boolean filtered) {
+		//only data
+	}
+
+	/**
+	 * @param kind the kind of message
+	 * @param clientAddress the client address
+	 * @param logMessage the message
+	 * @return if the message was dispatched to the sinks (else it was filtered, not admitted or a duplicate)
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean route(final Kind kind, final String clientAddress, final LogMessage<?> logMessage) {
+		if (ingestFilter.isEnabled()
+				&& !ingestFilter.accept(kind.getLoggerName(), logMessage.getAppName(), logMessage.getEvent() instanceof TraceSpan ? ((TraceSpan) logMessage.getEvent()).getCategory() : null)) {
+			return false;
+		}
+		if (admissionController.isEnabled() && !admissionController.admit(clientAddress, logMessage.getAppName())) {
+			return false;
+		}
+		if (batchDeduplicator != null && logMessage.getBatchId() != null && batchDeduplicator.isDuplicate(logMessage.getAppName(), logMessage.getBatchId())) {
+			return false;
+		}
+		final Route route = getRoute(kind);
+		LogEvent logEvent = null; //rendered only for filters and plain appenders
+		if (route.loggerConfig().hasFilter()) {
+			logEvent = toLogEvent(kind, logMessage);
+			if (route.loggerConfig().isFiltered(logEvent)) {
+				return false;
+			}
+		}
+		for (final Target target : route.targets()) {
+			try {
+				if (target.filtered()) {
+					logEvent = logEvent != null ? logEvent : toLogEvent(kind, logMessage);
+					if (((Filterable) target.appender()).isFiltered(logEvent)) {
+						continue;
+					}
+				}
+				if (target.sink() != null) {
+					target.sink().write((LogMessage<Object>) logMessage);
+				} else {
+					logEvent = logEvent != null ? logEvent : toLogEvent(kind, logMessage);
+					target.appender().append(logEvent);
+				}
+			} catch (final Exception e) {
+				LOGGER.error("Error while writing {} message", kind, e);
+			}
+		}
+		return true;
+	}
+
+	private static LogEvent toLogEvent(final Kind kind, final LogMessage<?> logMessage) {
+		return Log4jLogEvent.newBuilder()
+				.setTimeMillis(System.currentTimeMillis())
+				.setLevel(Level.INFO)
+				.setMessage(new SimpleMessage(GSON.toJson(logMessage)))
+				.setThreadName(Thread.currentThread().getName())
+				.setLoggerName(kind.getLoggerName())
+				.build();
+	}
+
+	/**
+	 * @param kind the kind of message
+	 * @param logMessage the message
+	 * @return if all sinks of this kind can queue this message now
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean hasCapacity(final Kind kind, final LogMessage<?> logMessage) {
+		for (final LogMessageSink<Object> sink : getRoute(kind).sinks()) {
+			if (!sink.hasCapacity((LogMessage<Object>) logMessage)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Routes are resolved again when the log4j2 configuration is reloaded.
+	 */
+	@SuppressWarnings("unchecked")
+	private Route getRoute(final Kind kind) {
+		final Configuration configuration = ((LoggerContext) LogManager.getContext(false)).getConfiguration();
+		Routes currentRoutes = routes;
+		if (currentRoutes.configuration() != configuration) {
+			final List<Route> byKind = new ArrayList<>();
+			for (final Kind eachKind : Kind.values()) {
+				final LoggerConfig loggerConfig = configuration.getLoggerConfig(eachKind.getLoggerName());
+				final List<Target> targets = new ArrayList<>();
+				final List<LogMessageSink<Object>> sinks = new ArrayList<>();
+				for (final Appender appender : loggerConfig.getAppenders().values()) {
+					final LogMessageSink<Object> sink = appender instanceof LogMessageSink ? (LogMessageSink<Object>) appender : null;
+					if (sink != null) {
+						sinks.add(sink);
+					}
+					targets.add(new Target(appender, sink, appender instanceof Filterable && ((Filterable) appender).hasFilter()));
+				}
+				byKind.add(new Route(loggerConfig, targets, sinks));
+			}
+			currentRoutes = new Routes(configuration, byKind);
+			routes = currentRoutes;
+		}
+		return currentRoutes.byKind().get(kind.ordinal());
+	}
+}
@@ -0,0 +1,22 @@
+package io.vertigo.analytics.server;
+
+/**
+ * Typed consumer of decoded LogMessages : implemented by the appenders, so listeners decoding typed messages feed them without log4j2 events.
+ * @param <O> the type of events (TraceSpan, Metric or HealthCheck)
+ */
+public interface LogMessageSink<O> {
+
+	/**
+	 * Write the events of this message.
+	 * @param logMessage the message
+	 */
+	void write(LogMessage<O> logMessage);
+
+	/**
+	 * @param logMessage the message
+	 * @return if the events of this message can be queued now (listeners answer "retry later" otherwise)
+	 */
+	default boolean hasCapacity(final LogMessage<O> logMessage) {
+		return true;
+	}
+}
@@ -0,0 +1,87 @@
+package io.vertigo.analytics.server;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Self-monitoring metrics of the analytics server.
+ * Counters and gauges are registered by name (dot separated) and periodically dumped on the "vertigo-analytics-server-metrics" logger.
+ */
+public final class ServerMetrics {
+
+	private static final Logger LOGGER = LogManager.getLogger("vertigo-analytics-server-metrics");
+
+	private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+	private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+	private static ScheduledExecutorService reporter;
+
+	private ServerMetrics() {
+		//private constructor
+	}
+
+	/**
+	 * @param name the counter name
+	 * @return the counter (created at first use)
+	 */
+	public static LongAdder counter(final String name) {
+		return COUNTERS.computeIfAbsent(name, k -> new LongAdder());
+	}
+
+	/**
+	 * Register a gauge, evaluated at each snapshot.
+	 * @param name the gauge name
+	 * @param supplier the gauge value supplier
+	 */
+	public static void gauge(final String name, final LongSupplier supplier) {
+		GAUGES.put(name, supplier);
+	}
+
+	/**
+	 * Remove all counters and gauges with this prefix.
+	 * @param prefix the name prefix
+	 */
+	public static void unregister(final String prefix) {
+		COUNTERS.keySet().removeIf(name -> name.startsWith(prefix));
+		GAUGES.keySet().removeIf(name -> name.startsWith(prefix));
+	}
+
+	/**
+	 * @return current values of all counters and gauges, sorted by name
+	 */
+	public static SortedMap<String, Long> snapshot() {
+		final SortedMap<String, Long> snapshot = new TreeMap<>();
+		COUNTERS.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+		GAUGES.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+		return snapshot;
+	}
+
+	/**
+	 * Start the periodic dump of metrics on the metrics logger.
+	 * @param periodSeconds dump period in seconds
+	 */
+	public static synchronized void startReporting(final long periodSeconds) {
+		if (reporter != null) {
+			return;
+		}
+		reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "vertigo-analytics-server-metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(() -> {
+			if (LOGGER.isInfoEnabled()) {
+				LOGGER.info("{}", snapshot());
+			}
+		}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,169 @@
+package io.vertigo.analytics.server.admission;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.filter.EnvelopeScanner;
+
+/**
+ * Token bucket admission of ingested events, per appName and per client address.
+ * Checked by the socket readers right after the envelope decode, before any dispatch to the appenders.
+ * Admitted and rejected events are counted per app ("admission.app.[appName].admitted|rejected|throttled").
+ * Apps over ADMISSION_MAX_APPS share the admission "admission.app._others" ; the least recently seen client buckets are forgotten over ADMISSION_MAX_CLIENTS.
+ * Metrics : admission.evictedClients.
+ */
+public final class AdmissionController {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final String UNKNOWN_APP = "unknown";
+	private static final String OTHER_APPS = "_others";
+	private static volatile AdmissionController instance;
+
+	private final AdmissionSettings settings;
+	private final Map<String, AppAdmission> appAdmissions = new ConcurrentHashMap<>();
+	//access order : least recently seen clients first (their bucket is most likely full again), guarded by itself
+	private final Map<String, TokenBucket> clientBuckets;
+	private final LongAdder evictedClients = ServerMetrics.counter("admission.evictedClients");
+
+	/**
+	 * @param settings the admission settings
+	 */
+	AdmissionController(final AdmissionSettings settings) {
+		if (settings.sampleOneIn() <= 0 || settings.maxApps() <= 0 || settings.maxClients() <= 0) {
+			throw new IllegalArgumentException("ADMISSION_SAMPLE_ONE_IN, ADMISSION_MAX_APPS and ADMISSION_MAX_CLIENTS must be positive : " + settings);
+		}
+		this.settings = settings;
+		clientBuckets = new LinkedHashMap<>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, TokenBucket> eldest) {
+				if (size() > settings.maxClients()) {
+					evictedClients.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+		if (settings.isEnabled()) {
+			LOGGER.info("Ingest admission control enabled : {}", settings);
+		}
+	}
+
+	/**
+	 * @return the server admission controller (configured from the environment at first use)
+	 */
+	public static AdmissionController getInstance() {
+		if (instance == null) {
+			synchronized (AdmissionController.class) {
+				if (instance == null) {
+					instance = new AdmissionController(AdmissionSettings.fromEnv());
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return if some limit is set
+	 */
+	public boolean isEnabled() {
+		return settings.isEnabled();
+	}
+
+	/**
+	 * Check the admission of one event.
+	 * In backpressure mode, the calling reader thread is paused until the event is admitted.
+	 * @param clientAddress the client address
+	 * @param appName the app of this event (nullable)
+	 * @return if the event is admitted
+	 */
+	public boolean admit(final String clientAddress, final String appName) {
+		final AppAdmission appAdmission = getAppAdmission(appName != null ? appName : UNKNOWN_APP);
+		final TokenBucket clientBucket = settings.clientRate() > 0 ? getClientBucket(clientAddress) : null;
+		if (settings.overLimit() == AdmissionSettings.OverLimit.BACKPRESSURE) {
+			final long waitNanos = Math.max(
+					clientBucket != null ? clientBucket.reserve() : 0,
+					appAdmission.bucket() != null ? appAdmission.bucket().reserve() : 0);
+			if (waitNanos > 0) {
+				appAdmission.throttled().increment();
+				pause(waitNanos);
+			}
+			appAdmission.admitted().increment();
+			return true;
+		}
+		if ((clientBucket == null || clientBucket.tryAcquire()) && (appAdmission.bucket() == null || appAdmission.bucket().tryAcquire())) {
+			appAdmission.admitted().increment();
+			return true;
+		}
+		if (settings.overLimit() == AdmissionSettings.OverLimit.SAMPLE && appAdmission.overLimitSeq().incrementAndGet() % settings.sampleOneIn() == 0) {
+			appAdmission.admitted().increment();
+			return true;
+		}
+		appAdmission.rejected().increment();
+		return false;
+	}
+
+	private AppAdmission getAppAdmission(final String appName) {
+		final AppAdmission appAdmission = appAdmissions.get(appName);
+		if (appAdmission != null) {
+			return appAdmission;
+		}
+		//each app registers its counters : the apps over the limit share one admission
+		return appAdmissions.computeIfAbsent(appAdmissions.size() < settings.maxApps() ? appName : OTHER_APPS, this::createAppAdmission);
+	}
+
+	private TokenBucket getClientBucket(final String clientAddress) {
+		synchronized (clientBuckets) {
+			return clientBuckets.computeIfAbsent(clientAddress, address -> new TokenBucket(settings.clientRate(), settings.clientBurst()));
+		}
+	}
+
+	/**
+	 * @return number of client buckets
+	 */
+	int getClientCount() {
+		synchronized (clientBuckets) {
+			return clientBuckets.size();
+		}
+	}
+
+	private AppAdmission createAppAdmission(final String appName) {
+		final String metricPrefix = "admission.app." + appName;
+		return new AppAdmission(
+				settings.appRate() > 0 ? new TokenBucket(settings.appRate(), settings.appBurst()) : null,
+				ServerMetrics.counter(metricPrefix + ".admitted"),
+				ServerMetrics.counter(metricPrefix + ".rejected"),
+				ServerMetrics.counter(metricPrefix + ".throttled"),
+				new AtomicLong());
+	}
+
+	private static void pause(final long waitNanos) {
+		try {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Read the appName of a LogMessage envelope without parsing it : first "appName" string value.
+	 * @param message the json message
+	 * @return the appName, or null if not found
+	 */
+	public static String scanAppName(final String message) {
+		return EnvelopeScanner.findString(message, "appName");
+	}
+
+	private record AppAdmission(TokenBucket bucket, LongAdder admitted, LongAdder rejected, LongAdder throttled, AtomicLong overLimitSeq) {
+		//only data
+	}
+}
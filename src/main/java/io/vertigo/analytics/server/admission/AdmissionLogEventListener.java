@@ -0,0 +1,32 @@
+package io.vertigo.analytics.server.admission;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LogEventListener;
+
+/**
+ * LogEventListener of one client connection : events are dispatched to the server only if admitted.
+ */
+public final class AdmissionLogEventListener extends LogEventListener {
+
+	private final AdmissionController admissionController;
+	private final String clientAddress;
+	private final LogEventListener delegate;
+
+	/**
+	 * @param admissionController the admission controller
+	 * @param clientAddress the client address
+	 * @param delegate the server listener
+	 */
+	public AdmissionLogEventListener(final AdmissionController admissionController, final String clientAddress, final LogEventListener delegate) {
+		this.admissionController = admissionController;
+		this.clientAddress = clientAddress;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void log(final LogEvent event) {
+		if (event != null && admissionController.admit(clientAddress, AdmissionController.scanAppName(event.getMessage().getFormattedMessage()))) {
+			delegate.log(event);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package io.vertigo.analytics.server.admission;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Settings of the ingest admission control.
+ * Read from environment variables : ADMISSION_APP_RATE, ADMISSION_APP_BURST, ADMISSION_CLIENT_RATE, ADMISSION_CLIENT_BURST,
+ * ADMISSION_OVER_LIMIT (drop|sample|backpressure), ADMISSION_SAMPLE_ONE_IN, ADMISSION_MAX_APPS and ADMISSION_MAX_CLIENTS.
+ *
+ * @param appRate events per second admitted per appName (0 for no limit)
+ * @param appBurst burst size per appName
+ * @param clientRate events per second admitted per client address (0 for no limit)
+ * @param clientBurst burst size per client address
+ * @param overLimit what to do with events over the limit
+ * @param sampleOneIn in sample mode, one over-limit event in N is admitted
+ * @param maxApps max appNames with their own admission (the others share one)
+ * @param maxClients max client addresses with their own bucket (the least recently seen are forgotten)
+ */
+public record AdmissionSettings(
+		double appRate,
+		double appBurst,
+		double clientRate,
+		double clientBurst,
+		OverLimit overLimit,
+		int sampleOneIn,
+		int maxApps,
+		int maxClients) {
+
+	public enum OverLimit {
+		/** over-limit events are dropped */
+		DROP,
+		/** one over-limit event in N is admitted */
+		SAMPLE,
+		/** socket reads are paused until tokens are available : TCP backpressure on the client */
+		BACKPRESSURE
+	}
+
+	/**
+	 * @return if some limit is set
+	 */
+	public boolean isEnabled() {
+		return appRate > 0 || clientRate > 0;
+	}
+
+	/**
+	 * @return the settings from the environment
+	 */
+	public static AdmissionSettings fromEnv() {
+		final double appRate = readDouble("ADMISSION_APP_RATE", 0);
+		final double clientRate = readDouble("ADMISSION_CLIENT_RATE", 0);
+		return new AdmissionSettings(
+				appRate,
+				readDouble("ADMISSION_APP_BURST", appRate * 2),
+				clientRate,
+				readDouble("ADMISSION_CLIENT_BURST", clientRate * 2),
+				OverLimit.valueOf(Optional.ofNullable(System.getenv("ADMISSION_OVER_LIMIT")).orElse("drop").toUpperCase(Locale.ROOT)),
+				(int) readDouble("ADMISSION_SAMPLE_ONE_IN", 100),
+				(int) readDouble("ADMISSION_MAX_APPS", 1_000),
+				(int) readDouble("ADMISSION_MAX_CLIENTS", 10_000));
+	}
+
+	private static double readDouble(final String envName, final double defaultValue) {
+		return Optional.ofNullable(System.getenv(envName)).map(Double::parseDouble).orElse(defaultValue);
+	}
+}
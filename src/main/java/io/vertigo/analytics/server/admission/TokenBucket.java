@@ -0,0 +1,51 @@
+package io.vertigo.analytics.server.admission;
+
+/**
+ * Token bucket : refilled at a constant rate up to the burst size.
+ */
+final class TokenBucket {
+
+	private final double tokensPerNano;
+	private final double burst;
+	private double tokens;
+	private long lastRefillNanos;
+
+	/**
+	 * @param ratePerSecond refill rate
+	 * @param burst max tokens (bucket is full at creation)
+	 */
+	TokenBucket(final double ratePerSecond, final double burst) {
+		tokensPerNano = ratePerSecond / 1_000_000_000d;
+		this.burst = burst;
+		tokens = burst;
+		lastRefillNanos = System.nanoTime();
+	}
+
+	/**
+	 * @return if a token was taken
+	 */
+	synchronized boolean tryAcquire() {
+		refill();
+		if (tokens >= 1) {
+			tokens--;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Take a token, even if the bucket is empty (the debt is paid by the next refills).
+	 * @return nanos to wait before this token is really available
+	 */
+	synchronized long reserve() {
+		refill();
+		tokens--;
+		return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+	}
+
+	private void refill() {
+		final long now = System.nanoTime();
+		tokens = Math.min(burst, tokens + (now - lastRefillNanos) * tokensPerNano);
+		lastRefillNanos = now;
+	}
+}
@@ -0,0 +1,47 @@
+package io.vertigo.analytics.server.binary;
+
+/**
+ * Native binary analytics protocol, version 1.
+ * <pre>
+ * connection : header, then frames
+ * header     : 'V' 'A' 'B' version(byte)
+ * frame      : length(varint) kind(byte) appName(str) host(str) batchId(str) count(varint) event*count
+ * kind       : 1 process, 2 metric, 3 health (frames of unknown kinds are skipped)
+ * process    : span tree in pre-order, root start is absolute, child start is a zigzag delta from the parent start
+ * span       : category(str) name(str) start(varlong|zigzag) duration(varlong)
+ *              measureCount(varint) (key(str) value(double))* metadataCount(varint) (key(str) value(str))*
+ *              tagCount(varint) (key(str) value(str))* childCount(varint) span*
+ * metric     : measureInstant(varlong) name(str) module(str) feature(str) location(str) hasValue(byte) [value(double)]
+ * health     : name(str) checker(str) module(str) feature(str) checkInstant(varlong) status(byte : 0 red, 1 yellow, 2 green)
+ *              message(str) attributeCount(varint) (key(str) value(str))*
+ * str        : ref(varint) : 0 null, 1 literal added to the string table, 2 literal not added, n table entry n-3
+ * literal    : byteLength(varint) utf-8 bytes
+ * varint     : unsigned LEB128, double : 8 bytes big endian IEEE 754
+ * </pre>
+ * The string table belongs to the connection, and holds at most {@link #MAX_STRING_TABLE_SIZE} strings (later literals are not added).
+ * Kinds added by later versions must only intern their header strings, so older servers skip their frames and keep their table in sync.
+ * Counts larger than the bytes left in the frame, and span trees deeper than {@link #MAX_SPAN_DEPTH}, are decode errors.
+ * A decode error closes the connection.
+ * Instants are epoch millis.
+ */
+public final class BinaryProtocol {
+
+	public static final byte[] MAGIC = { 'V', 'A', 'B' };
+	public static final byte VERSION = 1;
+	public static final int MAX_STRING_TABLE_SIZE = 65_536;
+	public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+	public static final int MAX_SPAN_DEPTH = 256;
+
+	static final byte KIND_PROCESS = 1;
+	static final byte KIND_METRIC = 2;
+	static final byte KIND_HEALTH = 3;
+
+	static final int STRING_NULL = 0;
+	static final int STRING_INTERNED_LITERAL = 1;
+	static final int STRING_LITERAL = 2;
+	static final int STRING_TABLE_OFFSET = 3;
+
+	private BinaryProtocol() {
+		//private constructor
+	}
+}
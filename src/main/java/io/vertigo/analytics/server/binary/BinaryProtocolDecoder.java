@@ -0,0 +1,279 @@
+package io.vertigo.analytics.server.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.LogMessageRouter.Kind;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.core.analytics.health.HealthCheck;
+import io.vertigo.core.analytics.health.HealthMeasure;
+import io.vertigo.core.analytics.health.HealthStatus;
+import io.vertigo.core.analytics.metric.Metric;
+
+/**
+ * Decoder of the {@link BinaryProtocol}, one per connection (it holds the string table).
+ * Each frame is read at once in a reused buffer, then decoded from memory.
+ * Not thread safe.
+ */
+public final class BinaryProtocolDecoder {
+
+	/**
+	 * A decoded frame.
+	 * @param kind the kind of events
+	 * @param logMessage the message (single event in event, else in events)
+	 */
+	public record Frame(Kind kind, LogMessage<?> logMessage) {
+		//only data
+	}
+
+	private final InputStream in;
+	private final List<String> stringTable = new ArrayList<>();
+	private byte[] buffer = new byte[8192];
+	private int position;
+	private int limit;
+
+	/**
+	 * @param in the connection stream (should be buffered)
+	 */
+	public BinaryProtocolDecoder(final InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Read and check the protocol header.
+	 * @throws IOException if the header is not a supported protocol version
+	 */
+	public void readHeader() throws IOException {
+		for (final byte magicByte : BinaryProtocol.MAGIC) {
+			if (readStreamByte() != magicByte) {
+				throw new IOException("Not a binary analytics protocol stream");
+			}
+		}
+		final int version = readStreamByte();
+		if (version != BinaryProtocol.VERSION) {
+			throw new IOException("Unsupported binary analytics protocol version " + version);
+		}
+	}
+
+	/**
+	 * @return the next frame, or null if the frame kind is unknown (skipped)
+	 * @throws EOFException at the end of the stream
+	 * @throws IOException if the frame is invalid
+	 */
+	public Frame readFrame() throws IOException {
+		final int frameLength = readFrameLength();
+		if (frameLength > buffer.length) {
+			buffer = new byte[Math.max(frameLength, buffer.length * 2)];
+		}
+		if (in.readNBytes(buffer, 0, frameLength) != frameLength) {
+			throw new EOFException("Truncated frame");
+		}
+		position = 0;
+		limit = frameLength;
+		try {
+			return decodeFrame();
+		} catch (final ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Invalid frame", e);
+		}
+	}
+
+	private Frame decodeFrame() throws IOException {
+		final byte kind = readByte();
+		final LogMessage<Object> logMessage = new LogMessage<>();
+		logMessage.setAppName(readString());
+		logMessage.setHost(readString());
+		logMessage.setBatchId(readString());
+		final int count = readCount();
+		final Kind frameKind = switch (kind) {
+			case BinaryProtocol.KIND_PROCESS -> Kind.PROCESS;
+			case BinaryProtocol.KIND_METRIC -> Kind.METRIC;
+			case BinaryProtocol.KIND_HEALTH -> Kind.HEALTH;
+			default -> null;
+		};
+		if (frameKind == null) {
+			return null; //newer kinds only intern their header strings : the string table is still in sync
+		}
+		final List<Object> events = new ArrayList<>(); //never presized from a count read on the wire
+		for (int i = 0; i < count; i++) {
+			events.add(switch (frameKind) {
+				case PROCESS -> readSpan(true, 0, 0);
+				case METRIC -> readMetric();
+				case HEALTH -> readHealthCheck();
+			});
+		}
+		if (position != limit) {
+			throw new IOException("Invalid frame : " + (limit - position) + " bytes left");
+		}
+		if (events.size() == 1) {
+			logMessage.setEvent(events.get(0));
+		} else {
+			logMessage.setEvents(events);
+		}
+		return new Frame(frameKind, logMessage);
+	}
+
+	private TraceSpan readSpan(final boolean root, final long parentStart, final int depth) {
+		if (depth >= BinaryProtocol.MAX_SPAN_DEPTH) {
+			throw new ArrayIndexOutOfBoundsException("Span tree deeper than " + BinaryProtocol.MAX_SPAN_DEPTH);
+		}
+		final String category = readString();
+		final String name = readString();
+		final long start = root ? readVarLong() : parentStart + unzigzag(readVarLong());
+		final long end = start + readVarLong();
+		final int measureCount = readCount();
+		final Map<String, Double> measures = measureCount == 0 ? Collections.emptyMap() : new HashMap<>();
+		for (int i = 0; i < measureCount; i++) {
+			measures.put(readString(), readDouble());
+		}
+		final Map<String, String> metadatas = readStringMap();
+		final Map<String, String> tags = readStringMap();
+		final int childCount = readCount();
+		final List<TraceSpan> childSpans = childCount == 0 ? Collections.emptyList() : new ArrayList<>();
+		for (int i = 0; i < childCount; i++) {
+			childSpans.add(readSpan(false, start, depth + 1));
+		}
+		return new TraceSpan(category, name, Instant.ofEpochMilli(start), Instant.ofEpochMilli(end), measures, metadatas, tags, childSpans);
+	}
+
+	private Metric readMetric() {
+		final Instant measureInstant = Instant.ofEpochMilli(readVarLong());
+		final String name = readString();
+		final String module = readString();
+		final String feature = readString();
+		final String location = readString();
+		final Double value = readByte() != 0 ? readDouble() : null;
+		return new Metric(measureInstant, name, module, feature, location, value);
+	}
+
+	private HealthCheck readHealthCheck() {
+		final String name = readString();
+		final String checker = readString();
+		final String module = readString();
+		final String feature = readString();
+		final Instant checkInstant = Instant.ofEpochMilli(readVarLong());
+		final HealthStatus status = switch (readByte()) {
+			case 0 -> HealthStatus.RED;
+			case 1 -> HealthStatus.YELLOW;
+			default -> HealthStatus.GREEN;
+		};
+		final String message = readString();
+		final Map<String, String> attributes = readStringMap();
+		return new HealthCheck(name, checker, module, feature, checkInstant, new HealthMeasure(status, message, attributes));
+	}
+
+	private Map<String, String> readStringMap() {
+		final int size = readCount();
+		if (size == 0) {
+			return Collections.emptyMap();
+		}
+		final Map<String, String> map = new HashMap<>();
+		for (int i = 0; i < size; i++) {
+			map.put(readString(), readString());
+		}
+		return map;
+	}
+
+	private String readString() {
+		final int ref = readVarInt();
+		if (ref == BinaryProtocol.STRING_NULL) {
+			return null;
+		} else if (ref >= BinaryProtocol.STRING_TABLE_OFFSET) {
+			if (ref - BinaryProtocol.STRING_TABLE_OFFSET >= stringTable.size()) {
+				throw new ArrayIndexOutOfBoundsException("Unknown string table entry " + ref);
+			}
+			return stringTable.get(ref - BinaryProtocol.STRING_TABLE_OFFSET);
+		}
+		final int length = readVarInt();
+		if (length > limit - position) {
+			throw new ArrayIndexOutOfBoundsException("String out of frame");
+		}
+		final String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+		position += length;
+		if (ref == BinaryProtocol.STRING_INTERNED_LITERAL && stringTable.size() < BinaryProtocol.MAX_STRING_TABLE_SIZE) {
+			stringTable.add(value);
+		}
+		return value;
+	}
+
+	private static long unzigzag(final long value) {
+		return value >>> 1 ^ -(value & 1);
+	}
+
+	/**
+	 * Each counted element takes at least one byte : a larger count can't be honest.
+	 */
+	private int readCount() {
+		final int count = readVarInt();
+		if (count > limit - position) {
+			throw new ArrayIndexOutOfBoundsException("Count " + count + " larger than the " + (limit - position) + " bytes left in frame");
+		}
+		return count;
+	}
+
+	private int readVarInt() {
+		final long value = readVarLong();
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new ArrayIndexOutOfBoundsException("Invalid count " + value);
+		}
+		return (int) value;
+	}
+
+	private long readVarLong() {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final byte b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new ArrayIndexOutOfBoundsException("Invalid varint");
+	}
+
+	private double readDouble() {
+		long bits = 0;
+		for (int i = 0; i < 8; i++) {
+			bits = bits << 8 | readByte() & 0xFF;
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	private byte readByte() {
+		if (position >= limit) {
+			throw new ArrayIndexOutOfBoundsException("Read after the end of frame");
+		}
+		return buffer[position++];
+	}
+
+	private int readFrameLength() throws IOException {
+		long length = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			final int b = readStreamByte();
+			length |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (length > BinaryProtocol.MAX_FRAME_LENGTH) {
+					throw new IOException("Frame too long : " + length + " bytes");
+				}
+				return (int) length;
+			}
+		}
+		throw new IOException("Invalid frame length");
+	}
+
+	private int readStreamByte() throws IOException {
+		final int b = in.read();
+		if (b < 0) {
+			throw new EOFException("Socket closed");
+		}
+		return b;
+	}
+}
@@ -0,0 +1,225 @@
+package io.vertigo.analytics.server.binary;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.core.analytics.health.HealthCheck;
+import io.vertigo.core.analytics.metric.Metric;
+
+/**
+ * Reference client encoder of the {@link BinaryProtocol} : one encoder per connection (it holds the string table).
+ * Names, categories and keys are interned in the string table, long values (sql, payloads...) are sent as plain literals.
+ * Not thread safe.
+ */
+public final class BinaryProtocolEncoder implements Flushable, Closeable {
+
+	private static final int MAX_INTERNED_LENGTH = 64;
+
+	private final OutputStream out;
+	private final Map<String, Integer> stringTable = new HashMap<>();
+	private byte[] frame = new byte[8192];
+	private int frameLength;
+
+	/**
+	 * Write the protocol header.
+	 * @param out the connection stream (should be buffered)
+	 * @throws IOException if the header can't be written
+	 */
+	public BinaryProtocolEncoder(final OutputStream out) throws IOException {
+		this.out = out;
+		out.write(BinaryProtocol.MAGIC);
+		out.write(BinaryProtocol.VERSION);
+	}
+
+	/**
+	 * @param appName the app
+	 * @param host the host
+	 * @param batchId the batch id, for the server dedup of resent batches (nullable)
+	 * @param processes the root spans
+	 * @throws IOException if the frame can't be written
+	 */
+	public void writeProcesses(final String appName, final String host, final String batchId, final List<TraceSpan> processes) throws IOException {
+		beginFrame(BinaryProtocol.KIND_PROCESS, appName, host, batchId, processes.size());
+		for (final TraceSpan process : processes) {
+			writeSpan(process, true, 0);
+		}
+		endFrame();
+	}
+
+	/**
+	 * @param appName the app
+	 * @param host the host
+	 * @param batchId the batch id, for the server dedup of resent batches (nullable)
+	 * @param metrics the metrics
+	 * @throws IOException if the frame can't be written
+	 */
+	public void writeMetrics(final String appName, final String host, final String batchId, final List<Metric> metrics) throws IOException {
+		beginFrame(BinaryProtocol.KIND_METRIC, appName, host, batchId, metrics.size());
+		for (final Metric metric : metrics) {
+			writeVarLong(metric.measureInstant().toEpochMilli());
+			writeString(metric.name());
+			writeString(metric.module());
+			writeString(metric.feature());
+			writeString(metric.location());
+			if (metric.value() != null) {
+				writeByte(1);
+				writeDouble(metric.value());
+			} else {
+				writeByte(0);
+			}
+		}
+		endFrame();
+	}
+
+	/**
+	 * @param appName the app
+	 * @param host the host
+	 * @param batchId the batch id, for the server dedup of resent batches (nullable)
+	 * @param healthChecks the health checks
+	 * @throws IOException if the frame can't be written
+	 */
+	public void writeHealthChecks(final String appName, final String host, final String batchId, final List<HealthCheck> healthChecks) throws IOException {
+		beginFrame(BinaryProtocol.KIND_HEALTH, appName, host, batchId, healthChecks.size());
+		for (final HealthCheck healthCheck : healthChecks) {
+			writeString(healthCheck.name());
+			writeString(healthCheck.checker());
+			writeString(healthCheck.module());
+			writeString(healthCheck.feature());
+			writeVarLong(healthCheck.checkInstant().toEpochMilli());
+			writeByte(switch (healthCheck.healthMeasure().status()) {
+				case RED -> 0;
+				case YELLOW -> 1;
+				case GREEN -> 2;
+			});
+			writeString(healthCheck.healthMeasure().message());
+			final Map<String, ?> attributes = healthCheck.healthMeasure().attributes();
+			writeVarLong(attributes != null ? attributes.size() : 0);
+			if (attributes != null) {
+				for (final Map.Entry<String, ?> attribute : attributes.entrySet()) {
+					writeString(attribute.getKey());
+					writeString(String.valueOf(attribute.getValue()));
+				}
+			}
+		}
+		endFrame();
+	}
+
+	private void writeSpan(final TraceSpan span, final boolean root, final long parentStart) {
+		writeString(span.getCategory());
+		writeString(span.getName());
+		writeVarLong(root ? span.getStart() : zigzag(span.getStart() - parentStart));
+		writeVarLong(span.getEnd() - span.getStart());
+		writeVarLong(span.getMeasures().size());
+		for (final Map.Entry<String, Double> measure : span.getMeasures().entrySet()) {
+			writeString(measure.getKey());
+			writeDouble(measure.getValue());
+		}
+		writeStringMap(span.getMetadatas());
+		writeStringMap(span.getTags());
+		writeVarLong(span.getChildSpans().size());
+		for (final TraceSpan childSpan : span.getChildSpans()) {
+			writeSpan(childSpan, false, span.getStart());
+		}
+	}
+
+	private void writeStringMap(final Map<String, String> map) {
+		writeVarLong(map.size());
+		for (final Map.Entry<String, String> entry : map.entrySet()) {
+			writeString(entry.getKey());
+			writeString(entry.getValue());
+		}
+	}
+
+	private void beginFrame(final byte kind, final String appName, final String host, final String batchId, final int count) {
+		frameLength = 0;
+		writeByte(kind);
+		writeString(appName);
+		writeString(host);
+		writeString(batchId);
+		writeVarLong(count);
+	}
+
+	private void endFrame() throws IOException {
+		long length = frameLength;
+		while ((length & ~0x7FL) != 0) {
+			out.write((int) (length & 0x7F | 0x80));
+			length >>>= 7;
+		}
+		out.write((int) length);
+		out.write(frame, 0, frameLength);
+	}
+
+	private void writeString(final String value) {
+		if (value == null) {
+			writeVarLong(BinaryProtocol.STRING_NULL);
+			return;
+		}
+		final Integer index = stringTable.get(value);
+		if (index != null) {
+			writeVarLong(BinaryProtocol.STRING_TABLE_OFFSET + index);
+			return;
+		}
+		if (value.length() <= MAX_INTERNED_LENGTH && stringTable.size() < BinaryProtocol.MAX_STRING_TABLE_SIZE) {
+			stringTable.put(value, stringTable.size());
+			writeVarLong(BinaryProtocol.STRING_INTERNED_LITERAL);
+		} else {
+			writeVarLong(BinaryProtocol.STRING_LITERAL);
+		}
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(bytes.length);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, frame, frameLength, bytes.length);
+		frameLength += bytes.length;
+	}
+
+	private static long zigzag(final long value) {
+		return value << 1 ^ value >> 63;
+	}
+
+	private void writeVarLong(final long value) {
+		ensureCapacity(10);
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0) {
+			frame[frameLength++] = (byte) (remaining & 0x7F | 0x80);
+			remaining >>>= 7;
+		}
+		frame[frameLength++] = (byte) remaining;
+	}
+
+	private void writeDouble(final double value) {
+		ensureCapacity(8);
+		final long bits = Double.doubleToRawLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			frame[frameLength++] = (byte) (bits >>> shift);
+		}
+	}
+
+	private void writeByte(final int value) {
+		ensureCapacity(1);
+		frame[frameLength++] = (byte) value;
+	}
+
+	private void ensureCapacity(final int more) {
+		if (frameLength + more > frame.length) {
+			frame = Arrays.copyOf(frame, Math.max(frame.length * 2, frameLength + more));
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,101 @@
+package io.vertigo.analytics.server.binary;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.LogMessageRouter;
+import io.vertigo.analytics.server.ServerMetrics;
+
+/**
+ * TCP listener of the {@link BinaryProtocol} : decoded messages are routed to the typed sinks, without log4j2 events.
+ * One reader thread per connection.
+ * Metrics : binary.frames, binary.skippedFrames.
+ */
+public final class BinaryProtocolServer implements Runnable {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final int CLIENT_SOCKET_READ_TIMEOUT = 5 * 60 * 1000; //same as the other listeners : clients may flush rarely
+
+	private final ServerSocket serverSocket;
+	private final LogMessageRouter router = new LogMessageRouter();
+	private final LongAdder frames = ServerMetrics.counter("binary.frames");
+	private final LongAdder skippedFrames = ServerMetrics.counter("binary.skippedFrames");
+	private volatile boolean active = true;
+
+	/**
+	 * @param port the port
+	 * @throws IOException if the port can't be bound
+	 */
+	public BinaryProtocolServer(final int port) throws IOException {
+		serverSocket = new ServerSocket(port);
+	}
+
+	/**
+	 * @return the server thread
+	 */
+	public Thread startNewThread() {
+		final Thread thread = new Thread(this, "vertigo-analytics-binary-" + serverSocket.getLocalPort());
+		thread.start();
+		return thread;
+	}
+
+	@Override
+	public void run() {
+		LOGGER.info("Listening for binary protocol connections on {}", serverSocket);
+		while (active) {
+			try {
+				final Socket socket = serverSocket.accept();
+				socket.setSoTimeout(CLIENT_SOCKET_READ_TIMEOUT);
+				final Thread handler = new Thread(() -> handle(socket), "vertigo-analytics-binary-" + socket.getRemoteSocketAddress());
+				handler.setDaemon(true);
+				handler.start();
+			} catch (final IOException e) {
+				if (serverSocket.isClosed()) {
+					return;
+				}
+				LOGGER.error("Exception encountered on accept. Ignoring.", e);
+			}
+		}
+	}
+
+	private void handle(final Socket socket) {
+		final String clientAddress = socket.getInetAddress().getHostAddress();
+		try (socket) {
+			final BinaryProtocolDecoder decoder = new BinaryProtocolDecoder(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+			decoder.readHeader();
+			while (active) {
+				final BinaryProtocolDecoder.Frame frame = decoder.readFrame();
+				if (frame == null) {
+					skippedFrames.increment();
+				} else {
+					frames.increment();
+					router.route(frame.kind(), clientAddress, frame.logMessage());
+				}
+			}
+		} catch (final EOFException | SocketTimeoutException e) {
+			//client closed or idle : close silently
+		} catch (final IOException | RuntimeException e) {
+			LOGGER.error("Closing binary protocol connection of {} : {}", clientAddress, e.getMessage());
+		}
+	}
+
+	/**
+	 * Stop accepting connections, current connections end after their next frame.
+	 */
+	public void shutdown() {
+		active = false;
+		try {
+			serverSocket.close();
+		} catch (final IOException e) {
+			LOGGER.error("Error while closing the binary protocol server socket", e);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package io.vertigo.analytics.server.dedup;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LogEventListener;
+
+import io.vertigo.analytics.server.filter.EnvelopeScanner;
+
+/**
+ * LogEventListener dropping the resent batches, before their dispatch to the appenders.
+ * The batchId and appName are read by a scan of the envelope (its own keys only, not the ones of the events),
+ * messages without batchId are always dispatched.
+ */
+public final class BatchDedupLogEventListener extends LogEventListener {
+
+	private final BatchDeduplicator batchDeduplicator;
+	private final LogEventListener delegate;
+
+	/**
+	 * @param batchDeduplicator the deduplicator
+	 * @param delegate the next listener
+	 */
+	public BatchDedupLogEventListener(final BatchDeduplicator batchDeduplicator, final LogEventListener delegate) {
+		this.batchDeduplicator = batchDeduplicator;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void log(final LogEvent event) {
+		if (event == null) {
+			return;
+		}
+		final String message = event.getMessage().getFormattedMessage();
+		final String batchId = EnvelopeScanner.findTopLevelString(message, "batchId");
+		if (batchId == null || !batchDeduplicator.isDuplicate(EnvelopeScanner.findTopLevelString(message, "appName"), batchId)) {
+			delegate.log(event);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package io.vertigo.analytics.server.dedup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.HashUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+
+/**
+ * Detection of batches resent by clients after a reconnection, by their batchId (per appName), in constant memory.
+ * A small exact cache holds the last batch ids, and two generations of Bloom filters remember the ids of the last one or two windows.
+ * A batch is a duplicate if its id is in the exact cache or in a Bloom filter (with the configured false positive probability).
+ * Read from environment variables : BATCH_DEDUP_WINDOW (ex: 10m, 0 by default : disabled), BATCH_DEDUP_EXPECTED_BATCHES (per window), BATCH_DEDUP_FPP
+ * and BATCH_DEDUP_EXACT_CACHE.
+ * Metrics : dedup.batches, dedup.duplicates (and dedup.duplicates.exact found by the exact cache), dedup.duplicatesPerMillion.
+ */
+public final class BatchDeduplicator {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static volatile BatchDeduplicator instance;
+
+	private final long windowMillis;
+	private final long expectedBatches;
+	private final double falsePositiveProbability;
+	private final Map<String, Boolean> exactCache;
+	private BloomFilter currentFilter;
+	private BloomFilter previousFilter;
+	private long windowIndex;
+
+	private final LongAdder batches;
+	private final LongAdder duplicates;
+	private final LongAdder exactDuplicates;
+
+	BatchDeduplicator(final long windowMillis, final long expectedBatches, final double falsePositiveProbability, final int exactCacheSize) {
+		this.windowMillis = windowMillis;
+		this.expectedBatches = expectedBatches;
+		this.falsePositiveProbability = falsePositiveProbability;
+		exactCache = new LinkedHashMap<>(exactCacheSize * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+				return size() > exactCacheSize;
+			}
+		};
+		currentFilter = new BloomFilter(expectedBatches, falsePositiveProbability);
+		previousFilter = new BloomFilter(expectedBatches, falsePositiveProbability);
+		windowIndex = System.currentTimeMillis() / windowMillis;
+		batches = ServerMetrics.counter("dedup.batches");
+		duplicates = ServerMetrics.counter("dedup.duplicates");
+		exactDuplicates = ServerMetrics.counter("dedup.duplicates.exact");
+		ServerMetrics.gauge("dedup.duplicatesPerMillion", () -> batches.sum() > 0 ? duplicates.sum() * 1_000_000 / batches.sum() : 0);
+		LOGGER.info("Batch deduplication enabled : window {}ms, {} expected batches, fpp {}, exact cache {} ids, {} bytes of Bloom filters",
+				windowMillis, expectedBatches, falsePositiveProbability, exactCacheSize, currentFilter.getSizeInBytes() * 2);
+	}
+
+	/**
+	 * @return the server deduplicator, or null if disabled (configured from the environment at first use)
+	 */
+	public static BatchDeduplicator getInstance() {
+		if (instance == null) {
+			synchronized (BatchDeduplicator.class) {
+				if (instance == null) {
+					final long windowMillis = DurationUtil.parseMillis(Optional.ofNullable(System.getenv("BATCH_DEDUP_WINDOW")).orElse("0"));
+					final long expectedBatches = Long.parseLong(Optional.ofNullable(System.getenv("BATCH_DEDUP_EXPECTED_BATCHES")).orElse("100000"));
+					final double falsePositiveProbability = Double.parseDouble(Optional.ofNullable(System.getenv("BATCH_DEDUP_FPP")).orElse("0.000001"));
+					final int exactCacheSize = Integer.parseInt(Optional.ofNullable(System.getenv("BATCH_DEDUP_EXACT_CACHE")).orElse("4096"));
+					instance = windowMillis > 0 ? new BatchDeduplicator(windowMillis, expectedBatches, falsePositiveProbability, exactCacheSize) : null;
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Check a batch and remember its id.
+	 * @param appName the app of the batch (nullable)
+	 * @param batchId the batch id
+	 * @return if this batch was already received
+	 */
+	public synchronized boolean isDuplicate(final String appName, final String batchId) {
+		rotate();
+		batches.increment();
+		final String key = appName + '/' + batchId;
+		if (exactCache.put(key, Boolean.TRUE) != null) {
+			exactDuplicates.increment();
+			duplicates.increment();
+			return true;
+		}
+		final long hash = HashUtil.hash(appName, batchId);
+		if (currentFilter.mightContain(hash) || previousFilter.mightContain(hash)) {
+			duplicates.increment();
+			return true;
+		}
+		currentFilter.add(hash);
+		return false;
+	}
+
+	private void rotate() {
+		final long nowIndex = System.currentTimeMillis() / windowMillis;
+		if (nowIndex != windowIndex) {
+			//a skipped window clears both generations
+			previousFilter = nowIndex == windowIndex + 1 ? currentFilter : new BloomFilter(expectedBatches, falsePositiveProbability);
+			currentFilter = new BloomFilter(expectedBatches, falsePositiveProbability);
+			windowIndex = nowIndex;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package io.vertigo.analytics.server.dedup;
+
+import io.vertigo.analytics.server.HashUtil;
+
+/**
+ * Bloom filter in fixed memory, sized for an expected number of keys and a false positive probability.
+ * Indices are derived from one 64 bits hash (double hashing).
+ * Not thread safe.
+ */
+final class BloomFilter {
+
+	private final long[] bits;
+	private final long bitCount;
+	private final int hashCount;
+
+	/**
+	 * @param expectedKeys expected number of keys
+	 * @param falsePositiveProbability false positive probability at the expected number of keys
+	 */
+	BloomFilter(final long expectedKeys, final double falsePositiveProbability) {
+		final double ln2 = Math.log(2);
+		final long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveProbability) / (ln2 * ln2));
+		bits = new long[(int) Math.max(1, (optimalBits + 63) / 64)];
+		bitCount = bits.length * 64L;
+		hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * ln2));
+	}
+
+	/**
+	 * @param hash 64 bits hash of the key
+	 * @return if the key may have been added (false : the key was never added)
+	 */
+	boolean mightContain(final long hash) {
+		final long hash2 = HashUtil.mix(hash);
+		for (int i = 0; i < hashCount; i++) {
+			final long index = Math.floorMod(hash + i * hash2, bitCount);
+			if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param hash 64 bits hash of the key
+	 */
+	void add(final long hash) {
+		final long hash2 = HashUtil.mix(hash);
+		for (int i = 0; i < hashCount; i++) {
+			final long index = Math.floorMod(hash + i * hash2, bitCount);
+			bits[(int) (index >>> 6)] |= 1L << index;
+		}
+	}
+
+	/**
+	 * @return memory used by the bits
+	 */
+	long getSizeInBytes() {
+		return bits.length * 8L;
+	}
+}
@@ -0,0 +1,197 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.resilience.CircuitBreaker;
+import io.vertigo.analytics.server.feeders.resilience.RetryPolicy;
+
+/**
+ * Isolated write lane of one bucket : bounded queue of line protocol records, in-flight limit, retry state and circuit breaker.
+ * A slow or failing bucket only fills its own lane, other buckets keep being written.
+ * While the breaker is opened, the queue is the fallback buffer : records are kept until it's full.
+ */
+final class BucketWriteLane {
+
+	private final String bucket;
+	private final WriteLaneSettings settings;
+	private final RetryPolicy retryPolicy;
+	private final CircuitBreaker circuitBreaker;
+	private final String metricPrefix;
+
+	private final Deque<PendingRecords> pending = new ArrayDeque<>();
+	private int pendingCount;
+	private int inFlight;
+	private int scheduled; //number of times this lane is waiting in the writer ready queue
+	private boolean bucketReady;
+
+	//retry state
+	private int consecutiveFailures;
+	private long pausedUntil;
+
+	private final LongAdder written;
+	private final LongAdder dropped;
+	private final LongAdder failed;
+	private final LongAdder rejected;
+
+	BucketWriteLane(final String writerName, final String bucket, final WriteLaneSettings settings, final RetryPolicy retryPolicy) {
+		this.bucket = bucket;
+		this.settings = settings;
+		this.retryPolicy = retryPolicy;
+		metricPrefix = "influxdb." + writerName + ".lane." + bucket + '.';
+		circuitBreaker = new CircuitBreaker(metricPrefix + "sink", settings.resilience());
+		written = ServerMetrics.counter(metricPrefix + "written");
+		dropped = ServerMetrics.counter(metricPrefix + "dropped");
+		failed = ServerMetrics.counter(metricPrefix + "failed");
+		rejected = ServerMetrics.counter(metricPrefix + "rejected");
+		ServerMetrics.gauge(metricPrefix + "queued", this::getPendingCount);
+		ServerMetrics.gauge(metricPrefix + "lagMillis", this::getLagMillis);
+	}
+
+	String getBucket() {
+		return bucket;
+	}
+
+	/**
+	 * @param records line protocol records
+	 * @return if records were queued, false if dropped (lane full)
+	 */
+	synchronized boolean offer(final List<String> records) {
+		if (pendingCount + records.size() > settings.queueCapacity()) {
+			dropped.add(records.size());
+			return false;
+		}
+		pending.addLast(new PendingRecords(System.currentTimeMillis(), 0, records));
+		pendingCount += records.size();
+		return true;
+	}
+
+	/**
+	 * @param count number of records
+	 * @return if these records would be queued now
+	 */
+	synchronized boolean hasCapacity(final int count) {
+		return pendingCount + count <= settings.queueCapacity();
+	}
+
+	/**
+	 * Reserve a slot in the writer ready queue.
+	 * @return if the lane must be added in the ready queue
+	 */
+	synchronized boolean reserveSlot() {
+		if (pendingCount > 0
+				&& inFlight + scheduled < settings.maxInFlight()
+				&& System.currentTimeMillis() >= pausedUntil) {
+			scheduled++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Take the next batch, called by a writer thread for a reserved slot.
+	 * @return the batch to write, or null if nothing to do now
+	 */
+	synchronized WriteBatch pollBatch() {
+		scheduled--;
+		if (pending.isEmpty() || System.currentTimeMillis() < pausedUntil) {
+			return null;
+		}
+		if (!circuitBreaker.tryAcquire()) {
+			//breaker opened, or a probe is already in flight
+			pausedUntil = System.currentTimeMillis() + circuitBreaker.remainingOpenMillis();
+			return null;
+		}
+		final PendingRecords first = pending.peekFirst();
+		final List<String> records = new ArrayList<>(Math.min(pendingCount, settings.batchSize()));
+		while (!pending.isEmpty()
+				&& (records.isEmpty() || records.size() + pending.peekFirst().records().size() <= settings.batchSize())
+				&& pending.peekFirst().attempts() == first.attempts()) { //don't merge retried records with fresh ones
+			records.addAll(pending.pollFirst().records());
+		}
+		pendingCount -= records.size();
+		inFlight++;
+		return new WriteBatch(first.enqueuedAt(), first.attempts() + 1, records);
+	}
+
+	synchronized boolean isBucketReady() {
+		return bucketReady;
+	}
+
+	synchronized void markBucketReady() {
+		bucketReady = true;
+	}
+
+	synchronized void onSuccess(final WriteBatch batch) {
+		inFlight--;
+		consecutiveFailures = 0;
+		circuitBreaker.onSuccess();
+		written.add(batch.records().size());
+	}
+
+	/**
+	 * A batch failed.
+	 * Permanent errors drop the batch. Retryable errors put it back in front of the lane (if there is still room and attempts left),
+	 * and pause the lane with a jittered exponential backoff, or until the breaker allows a probe.
+	 * @param batch the failed batch
+	 * @param error the write error
+	 * @return the delay before the lane could be written again
+	 */
+	synchronized long onFailure(final WriteBatch batch, final Throwable error) {
+		inFlight--;
+		if (!retryPolicy.isRetryable(error)) {
+			//the server did answer : bad data, no retry
+			circuitBreaker.onSuccess();
+			rejected.add(batch.records().size());
+			return 0;
+		}
+		consecutiveFailures++;
+		circuitBreaker.onFailure();
+		failed.add(batch.records().size());
+		if (retryPolicy.canRetry(batch.attempts()) && pendingCount + batch.records().size() <= settings.queueCapacity()) {
+			pending.addFirst(new PendingRecords(batch.enqueuedAt(), batch.attempts(), batch.records()));
+			pendingCount += batch.records().size();
+		} else {
+			dropped.add(batch.records().size());
+		}
+		final long delay = Math.max(retryPolicy.backoffMillis(consecutiveFailures), circuitBreaker.remainingOpenMillis());
+		pausedUntil = System.currentTimeMillis() + delay;
+		return delay;
+	}
+
+	/**
+	 * @return millis before this paused lane could be written again (0 if not paused or nothing to write)
+	 */
+	synchronized long pauseRemainingMillis() {
+		return pendingCount > 0 ? Math.max(0, pausedUntil - System.currentTimeMillis()) : 0;
+	}
+
+	synchronized boolean isIdle() {
+		return pendingCount == 0 && inFlight == 0;
+	}
+
+	synchronized long getPendingCount() {
+		return pendingCount;
+	}
+
+	synchronized long getLagMillis() {
+		final PendingRecords oldest = pending.peekFirst();
+		return oldest != null ? System.currentTimeMillis() - oldest.enqueuedAt() : 0;
+	}
+
+	void unregisterMetrics() {
+		ServerMetrics.unregister(metricPrefix);
+	}
+
+	private record PendingRecords(long enqueuedAt, int attempts, List<String> records) {
+		//only data
+	}
+
+	record WriteBatch(long enqueuedAt, int attempts, List<String> records) {
+		//only data
+	}
+}
@@ -0,0 +1,46 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import io.vertigo.analytics.server.HashUtil;
+
+/**
+ * Consistent hash ring with virtual nodes.
+ * Virtual node positions only depend on the node key, so adding a node only moves the keys now owned by this new node.
+ *
+ * @param <N> node type
+ */
+final class ConsistentHashRing<N> {
+
+	private final NavigableMap<Long, N> ring = new TreeMap<>();
+
+	/**
+	 * @param nodes the nodes
+	 * @param nodeKey stable key of a node (its url)
+	 * @param virtualNodes number of virtual nodes per node
+	 */
+	ConsistentHashRing(final Collection<N> nodes, final Function<N, String> nodeKey, final int virtualNodes) {
+		if (nodes.isEmpty() || virtualNodes <= 0) {
+			throw new IllegalArgumentException("At least one node and one virtual node are required");
+		}
+		for (final N node : nodes) {
+			final String key = nodeKey.apply(node);
+			for (int i = 0; i < virtualNodes; i++) {
+				ring.put(HashUtil.hash(key + '#' + i), node);
+			}
+		}
+	}
+
+	/**
+	 * @param key the key (bucket)
+	 * @return the node owning this key
+	 */
+	N nodeFor(final String key) {
+		final Map.Entry<Long, N> entry = ring.ceilingEntry(HashUtil.hash(key));
+		return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+	}
+}
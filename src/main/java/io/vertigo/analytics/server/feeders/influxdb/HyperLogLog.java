@@ -0,0 +1,61 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+/**
+ * HyperLogLog distinct count sketch in fixed memory (2^precision registers of one byte).
+ * The harmonic sum is maintained incrementally, so the estimate is read in constant time.
+ * Not thread safe.
+ */
+final class HyperLogLog {
+
+	private final int precision;
+	private final byte[] registers;
+	private final double alphaMM;
+	private double inverseSum; //sum of 2^-register
+	private int zeroRegisters;
+
+	/**
+	 * @param precision number of index bits (4 to 16), standard error is 1.04 / sqrt(2^precision)
+	 */
+	HyperLogLog(final int precision) {
+		if (precision < 4 || precision > 16) {
+			throw new IllegalArgumentException("precision must be between 4 and 16");
+		}
+		this.precision = precision;
+		final int m = 1 << precision;
+		registers = new byte[m];
+		alphaMM = 0.7213 / (1 + 1.079 / m) * m * m;
+		inverseSum = m;
+		zeroRegisters = m;
+	}
+
+	/**
+	 * @param hash 64 bits hash of the value
+	 * @return if the sketch changed (the estimate may have increased)
+	 */
+	boolean offer(final long hash) {
+		final int index = (int) (hash >>> (64 - precision));
+		final int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+		final int current = registers[index];
+		if (rank <= current) {
+			return false;
+		}
+		registers[index] = (byte) rank;
+		inverseSum += Math.scalb(1d, -rank) - Math.scalb(1d, -current);
+		if (current == 0) {
+			zeroRegisters--;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the estimated number of distinct values
+	 */
+	long estimate() {
+		final int m = registers.length;
+		final double estimate = alphaMM / inverseSum;
+		if (estimate <= 2.5 * m && zeroRegisters > 0) {
+			return Math.round(m * Math.log((double) m / zeroRegisters)); //linear counting for small cardinalities
+		}
+		return Math.round(estimate);
+	}
+}
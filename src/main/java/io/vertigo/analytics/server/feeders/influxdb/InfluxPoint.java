@@ -0,0 +1,103 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
+
+/**
+ * A point to write to InfluxDB (nanoseconds precision), with the builder api of the InfluxDB client {@link Point}.
+ * Its measurement, tags and fields stay readable : the writers convert it to a client point, the recent window store reads it as is.
+ */
+public final class InfluxPoint {
+
+	private final String measurement;
+	private Instant time;
+	private final Map<String, String> tags = new TreeMap<>();
+	private final Map<String, Object> fields = new TreeMap<>();
+
+	private InfluxPoint(final String measurement) {
+		this.measurement = measurement;
+	}
+
+	/**
+	 * @param measurement the measurement
+	 * @return a new point
+	 */
+	public static InfluxPoint measurement(final String measurement) {
+		return new InfluxPoint(measurement);
+	}
+
+	public InfluxPoint time(final Instant pointTime) {
+		time = pointTime;
+		return this;
+	}
+
+	public InfluxPoint addTag(final String key, final String value) {
+		tags.put(key, value);
+		return this;
+	}
+
+	public InfluxPoint addTags(final Map<String, String> pointTags) {
+		tags.putAll(pointTags);
+		return this;
+	}
+
+	public InfluxPoint addField(final String key, final Number value) {
+		fields.put(key, value);
+		return this;
+	}
+
+	public InfluxPoint addField(final String key, final String value) {
+		fields.put(key, value);
+		return this;
+	}
+
+	public InfluxPoint addField(final String key, final boolean value) {
+		fields.put(key, value);
+		return this;
+	}
+
+	public InfluxPoint addFields(final Map<String, Object> pointFields) {
+		fields.putAll(pointFields);
+		return this;
+	}
+
+	public String getMeasurement() {
+		return measurement;
+	}
+
+	/**
+	 * @return the time in millis, null if the point has none (InfluxDB time of reception)
+	 */
+	public Long getTimeMillis() {
+		return time != null ? time.toEpochMilli() : null;
+	}
+
+	/**
+	 * @return the tags (null values are not written)
+	 */
+	public Map<String, String> getTags() {
+		return Collections.unmodifiableMap(tags);
+	}
+
+	/**
+	 * @return the fields : numbers, strings and booleans (null values are not written)
+	 */
+	public Map<String, Object> getFields() {
+		return Collections.unmodifiableMap(fields);
+	}
+
+	/**
+	 * @return the point of the InfluxDB client
+	 */
+	public Point toPoint() {
+		final Point point = Point.measurement(measurement)
+				.addTags(tags)
+				.addFields(fields);
+		return time != null ? point.time(time, WritePrecision.NS) : point;
+	}
+}
@@ -10,11 +10,9 @@ import java.util.Map.Entry;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import com.influxdb.client.domain.WritePrecision;
-import com.influxdb.client.write.Point;
-
 import io.vertigo.analytics.server.TraceSpan;
 import io.vertigo.core.analytics.health.HealthCheck;
 import io.vertigo.core.analytics.health.HealthStatus;
@@ -34,13 +32,13 @@ public class InfluxdbUtil {
 		// Util
 	}
 
-	public static List<Point> healthCheckToPoints(final HealthCheck healthCheck, final String host) {
+	public static List<InfluxPoint> healthCheckToPoints(final HealthCheck healthCheck, final String host) {
 
 		final String message = healthCheck.healthMeasure().message();
 		final String messageToStore = message != null ? message : "";
 
-		return Collections.singletonList(Point.measurement("healthcheck")
-				.time(epochMilliToUniqueInstant(healthCheck.checkInstant()), WritePrecision.NS)
+		return Collections.singletonList(InfluxPoint.measurement("healthcheck")
+				.time(epochMilliToUniqueInstant(healthCheck.checkInstant()))
 				.addField("location", host)
 				.addField("name", healthCheck.name())
 				.addField("checker", healthCheck.checker())
@@ -57,32 +55,58 @@ public class InfluxdbUtil {
 				.addTag("status", String.valueOf(getNumericValue(healthCheck.healthMeasure().status()))));
 	}
 
-	public static List<Point> metricToPoints(final Metric metric, final String host) {
+	public static List<InfluxPoint> metricToPoints(final Metric metric, final String host) {
+		return Collections.singletonList(metricToPoint("metric", metric, host, metric.value()));
+	}
+
+	/**
+	 * @param metric the counter metric
+	 * @param host the location
+	 * @param ratePerSecond the counter increase per second since its previous value
+	 * @return the rate point, in the "metric_rate" measurement
+	 */
+	public static List<InfluxPoint> metricRateToPoints(final Metric metric, final String host, final double ratePerSecond) {
+		return Collections.singletonList(metricToPoint("metric_rate", metric, host, ratePerSecond));
+	}
+
+	private static InfluxPoint metricToPoint(final String measurement, final Metric metric, final String host, final Double value) {
 
 		final String module = metric.module();// for now module is null
 		final String moduleToStore = module != null ? module : "";
 
-		return Collections.singletonList(Point.measurement("metric")
-				.time(epochMilliToUniqueInstant(metric.measureInstant()), WritePrecision.NS)
+		return InfluxPoint.measurement(measurement)
+				.time(epochMilliToUniqueInstant(metric.measureInstant()))
 				.addField("location", host)
 				.addField("name", metric.name())
 				.addField("module", moduleToStore)
 				.addField("feature", metric.feature())
-				.addField("value", metric.value())
+				.addField("value", value)
 				.addTag("location", host)
 				.addTag("name", metric.name())
 				.addTag(TAG_DATA_SLOT, nextMetricsSlotRoundRobin())
 				.addTag("module", moduleToStore)
-				.addTag("feature", metric.feature()));
+				.addTag("feature", metric.feature());
 	}
 
-	public static List<Point> processToPoints(final TraceSpan process, final String host) {
-		final List<Point> points = new ArrayList<>();
-		flatProcess(process, new Stack<>(), points, host, nextTraceSlotRoundRobin());
+	public static List<InfluxPoint> processToPoints(final TraceSpan process, final String host) {
+		return processToPoints(process, null, host, category -> true, null);
+	}
+
+	/**
+	 * @param process the root span
+	 * @param bucket the bucket (appName)
+	 * @param host the location
+	 * @param keepRawCategory filter of categories written as raw points (all spans are still used for parent's counts and durations)
+	 * @param tagGuard cardinality guard of the span tags (nullable)
+	 * @return points of this spans tree
+	 */
+	public static List<InfluxPoint> processToPoints(final TraceSpan process, final String bucket, final String host, final Predicate<String> keepRawCategory, final TagCardinalityGuard tagGuard) {
+		final List<InfluxPoint> points = new ArrayList<>();
+		flatProcess(process, new Stack<>(), points, bucket, host, nextTraceSlotRoundRobin(), keepRawCategory, tagGuard);
 		return points;
 	}
 
-	private static int getNumericValue(final HealthStatus status) {
+	public static int getNumericValue(final HealthStatus status) {
 		switch (status) {
 			case RED:
 				return 0;
@@ -95,7 +119,7 @@ public class InfluxdbUtil {
 		}
 	}
 
-	private static Point processToPoint(final TraceSpan process, final VisitState visitState, final String host, final String traceSlot) {
+	private static InfluxPoint processToPoint(final TraceSpan process, final VisitState visitState, final String bucket, final String host, final String traceSlot, final TagCardinalityGuard tagGuard) {
 		final Map<String, Object> countFields = visitState.getCountsByCategory().entrySet().stream()
 				.collect(Collectors.toMap(entry -> entry.getKey() + "_count", (Function<? super Entry<String, Integer>, ? extends Object>) Entry::getValue));
 		final Map<String, Object> durationFields = visitState.getDurationsByCategory().entrySet().stream()
@@ -113,6 +137,11 @@ public class InfluxdbUtil {
 						entry -> properString(entry.getKey()),
 						entry -> properString(entry.getValue())));
 
+		final Map<String, Object> demotedTags = new HashMap<>();
+		if (tagGuard != null) {
+			tagGuard.guard(bucket, process.getCategory(), properedTags, demotedTags);
+		}
+
 		final Map<String, String> properedMetadatas = process.getMetadatas().entrySet()
 				.stream()
 				.filter(e -> e.getKey() != null && e.getValue() != null)
@@ -120,8 +149,8 @@ public class InfluxdbUtil {
 						entry -> properString(entry.getKey()),
 						entry -> properString(entry.getValue())));
 
-		return Point.measurement(process.getCategory())
-				.time(epochMilliToUniqueInstant(Instant.ofEpochMilli(process.getStart())), WritePrecision.NS)
+		return InfluxPoint.measurement(process.getCategory())
+				.time(epochMilliToUniqueInstant(Instant.ofEpochMilli(process.getStart())))
 				.addTag(TAG_NAME, properString(process.getName()))
 				.addTag(TAG_LOCATION, host)
 				.addTag(TAG_DATA_SLOT, String.valueOf(traceSlot))
@@ -133,21 +162,24 @@ public class InfluxdbUtil {
 				.addFields(countFields)
 				.addFields(durationFields)
 				.addFields((Map) process.getMeasures())
-				.addFields((Map) properedMetadatas);
+				.addFields((Map) properedMetadatas)
+				.addFields(demotedTags);
 	}
 
-	private static VisitState flatProcess(final TraceSpan process, final Stack<String> upperCategory, final List<Point> points, final String host, final String traceSlot) {
+	private static VisitState flatProcess(final TraceSpan process, final Stack<String> upperCategory, final List<InfluxPoint> points, final String bucket, final String host, final String traceSlot, final Predicate<String> keepRawCategory, final TagCardinalityGuard tagGuard) {
 		final VisitState visitState = new InfluxdbUtil.VisitState(upperCategory);
 		process.getChildSpans().stream()
 				.forEach(subProcess -> {
 					visitState.push(subProcess);
 					//on descend => stack.push
-					final VisitState childVisiteState = flatProcess(subProcess, upperCategory, points, host, traceSlot);
+					final VisitState childVisiteState = flatProcess(subProcess, upperCategory, points, bucket, host, traceSlot, keepRawCategory, tagGuard);
 					visitState.merge(childVisiteState);
 					//on remonte => stack.poll
 					visitState.pop();
 				});
-		points.add(processToPoint(process, visitState, host, traceSlot));
+		if (keepRawCategory.test(process.getCategory())) {
+			points.add(processToPoint(process, visitState, bucket, host, traceSlot, tagGuard));
+		}
 		return visitState;
 
 	}
@@ -216,7 +248,7 @@ public class InfluxdbUtil {
 		return string.replace('\n', ' ');
 	}
 
-	private static Instant epochMilliToUniqueInstant(final Instant measureTime) {
+	public static Instant epochMilliToUniqueInstant(final Instant measureTime) {
 		final var nano = nanoSeq.updateAndGet(i -> ++i % 99999) + 1;
 		return measureTime.plusNanos(nano);
 	}
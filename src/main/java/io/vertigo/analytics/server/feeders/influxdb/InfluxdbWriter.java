@@ -0,0 +1,266 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import com.influxdb.client.BucketsApi;
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.InfluxDBClientFactory;
+import com.influxdb.client.WriteApiBlocking;
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.exceptions.InfluxException;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.influxdb.BucketWriteLane.WriteBatch;
+import io.vertigo.analytics.server.feeders.resilience.RetryPolicy;
+
+/**
+ * Writes points to one InfluxDB server.
+ * Each bucket gets its own write lane, lanes are drained by a pool of writer threads sharing the same http client in a round robin way.
+ * Write requests are gzip compressed, unless the INFLUXDB_GZIP environment variable is false.
+ * Buckets are chosen by the clients : the number of lanes is bounded by the INFLUXDB_MAX_BUCKETS environment variable (default 1000),
+ * records of other buckets are dropped (influxdb.[name].bucketLimitDropped).
+ */
+public final class InfluxdbWriter implements AutoCloseable {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+	private static final String DEFAULT_MAX_BUCKETS = "1000";
+
+	private final String name;
+	private final InfluxDBClient influxDBClient;
+	private final WriteApiBlocking writeApiBlocking;
+	private final BucketsApi bucketApi;
+	private final String org;
+	private final String orgId;
+	private final WriteLaneSettings settings;
+	private final RetryPolicy retryPolicy;
+	private final int maxBuckets;
+
+	private final Map<String, BucketWriteLane> lanes = new ConcurrentHashMap<>();
+	private final LongAdder bucketLimitDropped;
+	private final BlockingQueue<BucketWriteLane> readyLanes = new LinkedBlockingQueue<>();
+	private final ScheduledExecutorService retryScheduler;
+	private final List<Thread> writerThreads = new ArrayList<>();
+	private volatile boolean closed;
+
+	/**
+	 * Constructor.
+	 * @param name name of this writer (used in metrics and thread names)
+	 * @param serverUrl InfluxDB url
+	 * @param token InfluxDB token
+	 * @param org InfluxDB organization
+	 * @param settings lanes settings
+	 */
+	public InfluxdbWriter(final String name, final String serverUrl, final String token, final String org, final WriteLaneSettings settings) {
+		this.name = name;
+		this.org = org;
+		this.settings = settings;
+		retryPolicy = new RetryPolicy(settings.resilience(), InfluxdbWriter::isRetryable);
+		maxBuckets = Integer.parseInt(Optional.ofNullable(System.getenv("INFLUXDB_MAX_BUCKETS")).orElse(DEFAULT_MAX_BUCKETS));
+		if (maxBuckets <= 0) {
+			throw new IllegalArgumentException("INFLUXDB_MAX_BUCKETS must be positive : " + maxBuckets);
+		}
+		bucketLimitDropped = ServerMetrics.counter("influxdb." + name + ".bucketLimitDropped");
+		ServerMetrics.gauge("influxdb." + name + ".buckets", lanes::size);
+		influxDBClient = InfluxDBClientFactory.create(serverUrl, token.toCharArray(), org);
+		if (Boolean.parseBoolean(Optional.ofNullable(System.getenv("INFLUXDB_GZIP")).orElse("true"))) {
+			influxDBClient.enableGzip(); //batches of line protocol compress well
+		}
+		writeApiBlocking = influxDBClient.getWriteApiBlocking(); //use as singleton
+		bucketApi = influxDBClient.getBucketsApi(); //use as singleton
+		orgId = influxDBClient.getOrganizationsApi().findOrganizations().stream().filter(organization -> organization.getName().equals(org)).findFirst().get().getId();
+		retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> newDaemonThread(runnable, name + "-retry"));
+		for (int i = 0; i < settings.writerThreads(); i++) {
+			final Thread writerThread = newDaemonThread(this::drainLanes, name + "-writer-" + i);
+			writerThreads.add(writerThread);
+			writerThread.start();
+		}
+	}
+
+	/**
+	 * Queue points in the lane of this bucket.
+	 * @param bucket the bucket
+	 * @param points the points
+	 * @return if points were accepted, false if the lane dropped them
+	 */
+	public boolean write(final String bucket, final List<InfluxPoint> points) {
+		final List<String> records = new ArrayList<>(points.size());
+		for (final InfluxPoint point : points) {
+			final String record = point.toPoint().toLineProtocol();
+			if (!record.isEmpty()) {
+				records.add(record);
+			}
+		}
+		return writeRecords(bucket, records);
+	}
+
+	/**
+	 * Queue line protocol records (nanoseconds precision) in the lane of this bucket.
+	 * @param bucket the bucket
+	 * @param records the records
+	 * @return if records were accepted, false if the lane dropped them (or the max number of buckets is reached)
+	 */
+	public boolean writeRecords(final String bucket, final List<String> records) {
+		if (records.isEmpty()) {
+			return true;
+		}
+		final BucketWriteLane lane = getOrCreateLane(bucket);
+		if (lane == null) {
+			bucketLimitDropped.add(records.size());
+			return false;
+		}
+		final boolean accepted = lane.offer(records);
+		schedule(lane);
+		return accepted;
+	}
+
+	/**
+	 * @param bucket the bucket
+	 * @param count number of records
+	 * @return if the lane of this bucket has room for these records now (to wait instead of having them dropped)
+	 */
+	public boolean hasCapacity(final String bucket, final int count) {
+		final BucketWriteLane lane = lanes.get(bucket);
+		return lane == null || lane.hasCapacity(count);
+	}
+
+	/**
+	 * @param bucket the bucket
+	 * @return the lane of this bucket, null if it's a new bucket and the max number of buckets is reached
+	 */
+	private BucketWriteLane getOrCreateLane(final String bucket) {
+		final BucketWriteLane lane = lanes.get(bucket);
+		if (lane != null) {
+			return lane;
+		}
+		synchronized (lanes) {
+			if (!lanes.containsKey(bucket) && lanes.size() >= maxBuckets) {
+				return null;
+			}
+			return lanes.computeIfAbsent(bucket, b -> new BucketWriteLane(name, b, settings, retryPolicy));
+		}
+	}
+
+	private void schedule(final BucketWriteLane lane) {
+		if (!closed || !lane.isIdle()) {
+			while (lane.reserveSlot()) {
+				readyLanes.offer(lane);
+			}
+		}
+	}
+
+	private void drainLanes() {
+		while (!closed || !readyLanes.isEmpty()) {
+			try {
+				final BucketWriteLane lane = readyLanes.poll(1, TimeUnit.SECONDS);
+				if (lane != null) {
+					final WriteBatch batch = lane.pollBatch();
+					if (batch != null) {
+						schedule(lane); //another writer may take the remaining records of this lane
+						writeBatch(lane, batch);
+						schedule(lane);
+					} else {
+						final long pauseMillis = lane.pauseRemainingMillis();
+						if (pauseMillis > 0 && !closed) {
+							retryScheduler.schedule(() -> schedule(lane), pauseMillis, TimeUnit.MILLISECONDS);
+						}
+					}
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void writeBatch(final BucketWriteLane lane, final WriteBatch batch) {
+		try {
+			if (!lane.isBucketReady()) {
+				ensureBucket(lane.getBucket());
+				lane.markBucketReady();
+			}
+			writeApiBlocking.writeRecords(lane.getBucket(), org, WritePrecision.NS, batch.records());
+			lane.onSuccess(batch);
+		} catch (final Exception e) {
+			final long retryDelay = lane.onFailure(batch, e);
+			if (retryDelay == 0) {
+				LOGGER.error("influxdb rejected {} records of bucket {}, they are dropped", batch.records().size(), lane.getBucket(), e);
+			} else {
+				LOGGER.error("error writing {} records to influxdb bucket {} (attempt {}), lane paused for {}ms", batch.records().size(), lane.getBucket(), batch.attempts(), retryDelay, e);
+				if (!closed) {
+					retryScheduler.schedule(() -> schedule(lane), retryDelay, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Classify InfluxDB errors : network errors, 429 (too many requests) and 5xx are retryable, other http errors are permanent.
+	 */
+	private static boolean isRetryable(final Throwable error) {
+		if (error instanceof InfluxException) {
+			final int status = ((InfluxException) error).status();
+			return status == 0 || status == 408 || status == 429 || status >= 500;
+		}
+		return true; //io errors, timeouts...
+	}
+
+	private void ensureBucket(final String bucket) {
+		if (bucketApi.findBucketByName(bucket) == null) {
+			bucketApi.createBucket(bucket, orgId);
+		}
+	}
+
+	/**
+	 * Wait for queued records to be written.
+	 * @param timeoutMillis max wait
+	 */
+	public void flush(final long timeoutMillis) {
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (System.currentTimeMillis() < deadline && !lanes.values().stream().allMatch(BucketWriteLane::isIdle)) {
+			try {
+				Thread.sleep(50);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		flush(CLOSE_TIMEOUT_MILLIS);
+		closed = true;
+		retryScheduler.shutdownNow();
+		for (final Thread writerThread : writerThreads) {
+			try {
+				writerThread.join(CLOSE_TIMEOUT_MILLIS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		lanes.values().forEach(BucketWriteLane::unregisterMetrics);
+		ServerMetrics.unregister("influxdb." + name + ".bucketLimitDropped");
+		ServerMetrics.unregister("influxdb." + name + ".buckets");
+		influxDBClient.close();
+	}
+
+	private static Thread newDaemonThread(final Runnable runnable, final String threadName) {
+		final Thread thread = new Thread(runnable, threadName);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,24 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import java.util.List;
+
+/**
+ * Consumer of raw line protocol records : implemented by the InfluxDB appenders, so relays share their writer, lanes and backpressure.
+ */
+public interface LineProtocolSink {
+
+	/**
+	 * Queue line protocol records (nanoseconds precision) in the lane of this bucket.
+	 * @param bucket the bucket
+	 * @param records the records
+	 * @return if records were accepted, false if the lane dropped them
+	 */
+	boolean writeRecords(String bucket, List<String> records);
+
+	/**
+	 * @param bucket the bucket
+	 * @param count number of records
+	 * @return if the lane of this bucket has room for these records now
+	 */
+	boolean hasCapacity(String bucket, int count);
+}
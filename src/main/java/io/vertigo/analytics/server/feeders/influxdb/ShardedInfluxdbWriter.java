@@ -0,0 +1,108 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes points to a set of InfluxDB servers.
+ * Each bucket (appName) is assigned to one server by consistent hashing, each server has its own client and write lanes.
+ * Server writers (and their metrics) are named after the url host (and port if several servers share a host), not after the url order.
+ */
+public final class ShardedInfluxdbWriter implements AutoCloseable {
+
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+	private final List<InfluxdbWriter> writers = new ArrayList<>();
+	private final ConsistentHashRing<Shard> ring;
+	private final Map<String, InfluxdbWriter> writerByBucket = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor.
+	 * @param name name of this writer (used in metrics and thread names)
+	 * @param serverUrls InfluxDB urls, comma separated
+	 * @param token InfluxDB token (same for all servers)
+	 * @param org InfluxDB organization (same for all servers)
+	 * @param settings lanes settings of each server
+	 * @param virtualNodes virtual nodes per server on the hash ring
+	 */
+	public ShardedInfluxdbWriter(final String name, final String serverUrls, final String token, final String org, final WriteLaneSettings settings, final int virtualNodes) {
+		final String[] urls = serverUrls.split(",");
+		final List<Shard> shards = new ArrayList<>(urls.length);
+		final Set<String> shardNames = new HashSet<>();
+		for (final String rawUrl : urls) {
+			final String url = rawUrl.trim();
+			final String shardName = shardName(url, urls);
+			if (!shardNames.add(shardName)) {
+				throw new IllegalArgumentException("Duplicate InfluxDB server " + url);
+			}
+			final InfluxdbWriter writer = new InfluxdbWriter(urls.length == 1 ? name : name + '-' + shardName, url, token, org, settings);
+			writers.add(writer);
+			shards.add(new Shard(url, writer));
+		}
+		ring = new ConsistentHashRing<>(shards, Shard::url, virtualNodes);
+	}
+
+	/**
+	 * @param url the server url
+	 * @param urls all the server urls
+	 * @return name of the server : its host, and its port if another server has the same host
+	 */
+	static String shardName(final String url, final String[] urls) {
+		final URI uri = URI.create(url.trim());
+		final String host = uri.getHost() != null ? uri.getHost() : url.trim();
+		int sameHostCount = 0;
+		for (final String other : urls) {
+			if (host.equals(URI.create(other.trim()).getHost())) {
+				sameHostCount++;
+			}
+		}
+		return sameHostCount > 1 ? host + '_' + uri.getPort() : host;
+	}
+
+	/**
+	 * Queue points in the lane of this bucket, on the server owning this bucket.
+	 * @param bucket the bucket
+	 * @param points the points
+	 * @return if points were accepted, false if the lane dropped them
+	 */
+	public boolean write(final String bucket, final List<InfluxPoint> points) {
+		return writerFor(bucket).write(bucket, points);
+	}
+
+	/**
+	 * Queue line protocol records (nanoseconds precision) in the lane of this bucket, on the server owning this bucket.
+	 * @param bucket the bucket
+	 * @param records the records
+	 * @return if records were accepted, false if the lane dropped them
+	 */
+	public boolean writeRecords(final String bucket, final List<String> records) {
+		return writerFor(bucket).writeRecords(bucket, records);
+	}
+
+	/**
+	 * @param bucket the bucket
+	 * @param count number of records
+	 * @return if the lane of this bucket has room for these records now
+	 */
+	public boolean hasCapacity(final String bucket, final int count) {
+		return writerFor(bucket).hasCapacity(bucket, count);
+	}
+
+	private InfluxdbWriter writerFor(final String bucket) {
+		return writerByBucket.computeIfAbsent(bucket, b -> ring.nodeFor(b).writer());
+	}
+
+	@Override
+	public void close() {
+		writers.forEach(InfluxdbWriter::close);
+	}
+
+	private record Shard(String url, InfluxdbWriter writer) {
+		//only data
+	}
+}
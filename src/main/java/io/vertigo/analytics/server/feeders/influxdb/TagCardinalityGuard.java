@@ -0,0 +1,136 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.HashUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+
+/**
+ * Protects InfluxDB from series cardinality explosion caused by free tags (user id, url with query string...).
+ * Distinct values are counted per (bucket, measurement, tag key) with a HyperLogLog sketch of 1KB, for at most maxTrackedTags keys :
+ * tag keys seen once the limit is reached are demoted (random tag keys are an explosion too).
+ * Once the threshold is crossed, the tag is demoted for this process lifetime : its value is written as a field, or hashed into a fixed number of tag values.
+ * Metrics : cardinality.[name].demotedTags, demotedValues, untrackedTags and trackedTags.
+ */
+public final class TagCardinalityGuard {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final int HLL_PRECISION = 10; //1KB per tag key, ~3% error
+	public static final int DEFAULT_MAX_TRACKED_TAGS = 10_000;
+	public static final String DEMOTED_FIELD_PREFIX = "tag_";
+
+	public enum Mode {
+		/** value is written as a field named after the tag with the "tag_" prefix (no clash with measures and metadatas) */
+		FIELD,
+		/** value is replaced by its hash modulo the number of hash buckets */
+		HASH;
+
+		public static Mode parse(final String mode) {
+			return mode == null ? FIELD : valueOf(mode.trim().toUpperCase(Locale.ROOT));
+		}
+	}
+
+	private final String name;
+	private final long threshold;
+	private final Mode mode;
+	private final int hashBuckets;
+	private final int maxTrackedTags;
+	private final ConcurrentMap<TagKey, TagState> tagStates = new ConcurrentHashMap<>();
+
+	private final LongAdder demotedTags;
+	private final LongAdder demotedValues;
+	private final LongAdder untrackedTags;
+
+	/**
+	 * @param name name of the feeder (metrics)
+	 * @param threshold max distinct values of a tag key
+	 * @param mode what to do with tags over the threshold
+	 * @param hashBuckets number of tag values in HASH mode
+	 * @param maxTrackedTags max number of counted (bucket, measurement, tag key)
+	 */
+	public TagCardinalityGuard(final String name, final long threshold, final Mode mode, final int hashBuckets, final int maxTrackedTags) {
+		if (threshold <= 0 || hashBuckets <= 0 || maxTrackedTags <= 0) {
+			throw new IllegalArgumentException("threshold, hashBuckets and maxTrackedTags must be positive");
+		}
+		this.name = name;
+		this.threshold = threshold;
+		this.mode = mode;
+		this.hashBuckets = hashBuckets;
+		this.maxTrackedTags = maxTrackedTags;
+		demotedTags = ServerMetrics.counter("cardinality." + name + ".demotedTags");
+		demotedValues = ServerMetrics.counter("cardinality." + name + ".demotedValues");
+		untrackedTags = ServerMetrics.counter("cardinality." + name + ".untrackedTags");
+		ServerMetrics.gauge("cardinality." + name + ".trackedTags", tagStates::size);
+	}
+
+	/**
+	 * Count tag values of a point and demote tags over the threshold.
+	 * @param bucket the bucket
+	 * @param measurement the measurement
+	 * @param tags tags of the point, modified in place
+	 * @param fields fields of the point, demoted tags are added
+	 */
+	public void guard(final String bucket, final String measurement, final Map<String, String> tags, final Map<String, Object> fields) {
+		final Iterator<Map.Entry<String, String>> it = tags.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<String, String> tag = it.next();
+			final TagState tagState = getTagState(new TagKey(bucket, measurement, tag.getKey()));
+			final long valueHash = HashUtil.hash(tag.getValue());
+			if (tagState == null) {
+				untrackedTags.increment(); //too many tag keys : demoted
+			} else if (!tagState.exceeded && tagState.offer(valueHash, threshold)) {
+				demotedTags.increment();
+				LOGGER.warn("Tag '{}' of {}/{} exceeded {} distinct values, it is now written as {} (cardinality guard {})",
+						tag.getKey(), bucket, measurement, threshold, mode == Mode.FIELD ? "a field" : hashBuckets + " hashed values", name);
+			}
+			if (tagState == null || tagState.exceeded) {
+				demotedValues.increment();
+				if (mode == Mode.FIELD) {
+					fields.put(DEMOTED_FIELD_PREFIX + tag.getKey(), tag.getValue());
+					it.remove();
+				} else {
+					tag.setValue("h" + Math.floorMod(valueHash, hashBuckets));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the state of this tag key, null if too many tag keys are tracked
+	 */
+	private TagState getTagState(final TagKey tagKey) {
+		final TagState tagState = tagStates.get(tagKey);
+		if (tagState != null || tagStates.size() >= maxTrackedTags) {
+			return tagState;
+		}
+		return tagStates.computeIfAbsent(tagKey, k -> new TagState());
+	}
+
+	private record TagKey(String bucket, String measurement, String tagKey) {
+		//only data
+	}
+
+	private static final class TagState {
+		private final HyperLogLog sketch = new HyperLogLog(HLL_PRECISION);
+		private volatile boolean exceeded;
+
+		/**
+		 * @return if the threshold was just crossed
+		 */
+		synchronized boolean offer(final long valueHash, final long threshold) {
+			if (!exceeded && sketch.offer(valueHash) && sketch.estimate() > threshold) {
+				exceeded = true;
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import io.vertigo.analytics.server.feeders.resilience.ResilienceSettings;
+
+/**
+ * Settings of the per bucket write lanes of an {@link InfluxdbWriter}.
+ *
+ * @param queueCapacity max records waiting in each bucket lane (extra records are dropped)
+ * @param maxInFlight max concurrent batches written for one bucket
+ * @param batchSize max records sent in one write request
+ * @param writerThreads number of threads sharing the http client between lanes
+ * @param resilience retry and circuit breaker settings of each lane
+ */
+public record WriteLaneSettings(
+		int queueCapacity,
+		int maxInFlight,
+		int batchSize,
+		int writerThreads,
+		ResilienceSettings resilience) {
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 50_000;
+	public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+	public static final int DEFAULT_BATCH_SIZE = 5_000;
+	public static final int DEFAULT_WRITER_THREADS = 2;
+
+	public WriteLaneSettings {
+		if (queueCapacity <= 0 || maxInFlight <= 0 || batchSize <= 0 || writerThreads <= 0) {
+			throw new IllegalArgumentException("queueCapacity, maxInFlight, batchSize and writerThreads must be positive");
+		}
+	}
+
+	/**
+	 * @return default lane settings
+	 */
+	public static WriteLaneSettings defaults() {
+		return of(DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_IN_FLIGHT, DEFAULT_BATCH_SIZE, DEFAULT_WRITER_THREADS);
+	}
+
+	/**
+	 * @param queueCapacity max records waiting in each bucket lane
+	 * @param maxInFlight max concurrent batches written for one bucket
+	 * @param batchSize max records sent in one write request
+	 * @param writerThreads number of threads sharing the http client between lanes
+	 * @return lane settings with default resilience settings
+	 */
+	public static WriteLaneSettings of(final int queueCapacity, final int maxInFlight, final int batchSize, final int writerThreads) {
+		return new WriteLaneSettings(queueCapacity, maxInFlight, batchSize, writerThreads, ResilienceSettings.defaults());
+	}
+
+}
@@ -0,0 +1,77 @@
+package io.vertigo.analytics.server.feeders.influxdb.delta;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertigo.analytics.server.HashUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.core.analytics.health.HealthCheck;
+
+/**
+ * Delta mode of the health feeder.
+ * A 64 bits hash of the last written status and message is kept per (app, location, name) : a health check is written only if this hash changed,
+ * or if the last write of this check is older than the heartbeat interval (check instants are used, so replayed checks give the same result).
+ * Two different messages with the same hash are seen as unchanged until the next heartbeat.
+ * States are kept in a bounded primitive keyed map : states of checks not received for the idle timeout are evicted first (health.[name].evicted).
+ */
+public final class HealthChangeFilter {
+
+	public static final int DEFAULT_MAX_STATES = 100_000;
+	public static final String DEFAULT_STATE_IDLE_TIMEOUT = "1h";
+
+	private final long heartbeatMillis;
+	private final MetricStateMap states;
+
+	private final LongAdder written;
+	private final LongAdder suppressed;
+
+	/**
+	 * @param name name of the feeder (metrics)
+	 * @param heartbeatMillis max interval between two writes of an unchanged health check
+	 * @param maxStates max number of kept states
+	 * @param stateIdleMillis states of checks not received for this duration are evicted first
+	 */
+	public HealthChangeFilter(final String name, final long heartbeatMillis, final int maxStates, final long stateIdleMillis) {
+		this.heartbeatMillis = heartbeatMillis;
+		states = new MetricStateMap(maxStates, stateIdleMillis);
+		written = ServerMetrics.counter("health." + name + ".written");
+		suppressed = ServerMetrics.counter("health." + name + ".suppressed");
+		ServerMetrics.gauge("health." + name + ".tracked", this::getTrackedCount);
+		ServerMetrics.gauge("health." + name + ".evicted", this::getEvictedCount);
+	}
+
+	/**
+	 * @param appName the app
+	 * @param host the location
+	 * @param healthCheck the received health check
+	 * @return if this health check must be written
+	 */
+	public boolean shouldWrite(final String appName, final String host, final HealthCheck healthCheck) {
+		final long key = HashUtil.hash(appName, host, healthCheck.name());
+		final long healthHash = HashUtil.hash(healthCheck.healthMeasure().status().name(), healthCheck.healthMeasure().message());
+		final boolean write = shouldWrite(key, healthHash, healthCheck.checkInstant().toEpochMilli());
+		(write ? written : suppressed).increment();
+		return write;
+	}
+
+	private synchronized boolean shouldWrite(final long key, final long healthHash, final long checkMillis) {
+		final int slot = states.find(key);
+		if (slot >= 0
+				&& states.lastLong(slot) == healthHash
+				&& checkMillis >= states.writtenMillis(slot) //clock went back : don't keep a stale state
+				&& checkMillis - states.writtenMillis(slot) < heartbeatMillis) {
+			//still received : not idle
+			states.putLong(key, healthHash, Math.max(checkMillis, states.lastMillis(slot)), states.writtenMillis(slot));
+			return false;
+		}
+		states.putLong(key, healthHash, checkMillis, checkMillis);
+		return true;
+	}
+
+	private synchronized long getTrackedCount() {
+		return states.size();
+	}
+
+	private synchronized long getEvictedCount() {
+		return states.evictedCount();
+	}
+}
@@ -0,0 +1,170 @@
+package io.vertigo.analytics.server.feeders.influxdb.delta;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from a 64 bits key hash to its last state, in parallel primitive arrays (no boxing, no entry objects).
+ * The last value is a double (metrics) or a long (ex: hash of a health status and message), kept as 64 bits.
+ * Key 0 marks a free slot, a real 0 hash is remapped. Not thread safe.
+ * The map is bounded : when a new key is inserted in a full map, states idle for the idle timeout are removed,
+ * and if none is idle, the older half of the states (their next value is handled as a first value).
+ */
+final class MetricStateMap {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final int maxSize;
+	private final long idleMillis;
+	private long[] keys;
+	private long[] lastValues; //double values are kept as their raw bits
+	private long[] lastMillis;
+	private long[] writtenMillis;
+	private int size;
+	private long evictedCount;
+
+	/**
+	 * @param maxSize max number of states
+	 * @param idleMillis states not updated for this duration (in measure time) are evicted first
+	 */
+	MetricStateMap(final int maxSize, final long idleMillis) {
+		if (maxSize <= 0 || idleMillis <= 0) {
+			throw new IllegalArgumentException("maxSize and idleMillis must be positive");
+		}
+		this.maxSize = maxSize;
+		this.idleMillis = idleMillis;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(final int capacity) {
+		keys = new long[capacity];
+		lastValues = new long[capacity];
+		lastMillis = new long[capacity];
+		writtenMillis = new long[capacity];
+	}
+
+	/**
+	 * @param key the key hash
+	 * @return the slot of this key, or a negative value (-slot - 1) of the free slot where it would be inserted
+	 */
+	int find(final long key) {
+		final long safeKey = safeKey(key);
+		final int mask = keys.length - 1;
+		int slot = (int) safeKey & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == safeKey) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -slot - 1;
+	}
+
+	/**
+	 * Insert or update the state of a key.
+	 * @return the slot of this key
+	 */
+	int put(final long key, final double lastValue, final long lastMilli, final long writtenMilli) {
+		return putLong(key, Double.doubleToRawLongBits(lastValue), lastMilli, writtenMilli);
+	}
+
+	/**
+	 * Insert or update the state of a key, with a long value.
+	 * @return the slot of this key
+	 */
+	int putLong(final long key, final long lastValue, final long lastMilli, final long writtenMilli) {
+		int slot = find(key);
+		if (slot < 0) {
+			if (size >= maxSize) {
+				evict(lastMilli);
+				slot = find(key);
+			}
+			if ((size + 1) * 2 > keys.length) {
+				rehash(keys.length * 2, Long.MIN_VALUE);
+				slot = find(key);
+			}
+			slot = -slot - 1;
+			keys[slot] = safeKey(key);
+			size++;
+		}
+		lastValues[slot] = lastValue;
+		lastMillis[slot] = lastMilli;
+		writtenMillis[slot] = writtenMilli;
+		return slot;
+	}
+
+	double lastValue(final int slot) {
+		return Double.longBitsToDouble(lastValues[slot]);
+	}
+
+	long lastLong(final int slot) {
+		return lastValues[slot];
+	}
+
+	long lastMillis(final int slot) {
+		return lastMillis[slot];
+	}
+
+	long writtenMillis(final int slot) {
+		return writtenMillis[slot];
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of states evicted since the creation of the map
+	 */
+	long evictedCount() {
+		return evictedCount;
+	}
+
+	/**
+	 * Remove the idle states, or the older half if none is idle.
+	 * @param nowMillis time of the inserted state
+	 */
+	private void evict(final long nowMillis) {
+		final int sizeBefore = size;
+		rehash(keys.length, nowMillis - idleMillis);
+		if (size >= maxSize) {
+			final long[] times = new long[size];
+			int i = 0;
+			for (int slot = 0; slot < keys.length; slot++) {
+				if (keys[slot] != 0) {
+					times[i++] = lastMillis[slot];
+				}
+			}
+			Arrays.sort(times);
+			//keep the states strictly newer than the median : at least half is removed
+			rehash(keys.length, times[size / 2] + 1);
+		}
+		evictedCount += sizeBefore - size;
+	}
+
+	/**
+	 * @param capacity the new capacity (power of 2)
+	 * @param minLastMillis states updated before this time are removed
+	 */
+	private void rehash(final int capacity, final long minLastMillis) {
+		final long[] oldKeys = keys;
+		final long[] oldLastValues = lastValues;
+		final long[] oldLastMillis = lastMillis;
+		final long[] oldWrittenMillis = writtenMillis;
+		allocate(capacity);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0 && oldLastMillis[i] >= minLastMillis) {
+				final int slot = -find(oldKeys[i]) - 1;
+				keys[slot] = oldKeys[i];
+				lastValues[slot] = oldLastValues[i];
+				lastMillis[slot] = oldLastMillis[i];
+				writtenMillis[slot] = oldWrittenMillis[i];
+				size++;
+			}
+		}
+	}
+
+	private static long safeKey(final long key) {
+		return key == 0 ? 1 : key;
+	}
+}
@@ -0,0 +1,162 @@
+package io.vertigo.analytics.server.feeders.influxdb.delta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.GlobUtil;
+import io.vertigo.analytics.server.HashUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxdbUtil;
+import io.vertigo.core.analytics.metric.Metric;
+
+/**
+ * Write policy of metrics, by metric name pattern.
+ * Defined as "pattern=mode" rules separated by ';', the first matching rule is used ('*' matches any characters, metrics without rule are written as is).
+ * - raw : every metric is written
+ * - dedup:10m : an unchanged value is written again only after this max staleness
+ * - rate : monotonic counter written as a per second rate in the "metric_rate" measurement (a decreasing value is a counter reset)
+ * ex : "cache.*=dedup:15m;http.requests=rate;*=raw"
+ * Last states are kept per (app, location, name) in a primitive keyed map, bounded : idle states are evicted first (metric.[name].evicted).
+ */
+public final class MetricWritePolicy {
+
+	public static final int DEFAULT_MAX_STATES = 100_000;
+	public static final String DEFAULT_STATE_IDLE_TIMEOUT = "1h";
+
+	private enum Mode {
+		RAW, DEDUP, RATE
+	}
+
+	private record Rule(Pattern pattern, Mode mode, long maxStalenessMillis) {
+		//only data
+	}
+
+	private static final Rule RAW_RULE = new Rule(null, Mode.RAW, 0);
+
+	private final List<Rule> rules;
+	private final Map<String, Rule> ruleByName = new ConcurrentHashMap<>();
+	private final MetricStateMap states;
+
+	private final LongAdder written;
+	private final LongAdder suppressed;
+	private final LongAdder rates;
+
+	private MetricWritePolicy(final String name, final List<Rule> rules, final int maxStates, final long stateIdleMillis) {
+		this.rules = rules;
+		states = new MetricStateMap(maxStates, stateIdleMillis);
+		written = ServerMetrics.counter("metric." + name + ".written");
+		suppressed = ServerMetrics.counter("metric." + name + ".suppressed");
+		rates = ServerMetrics.counter("metric." + name + ".rates");
+		ServerMetrics.gauge("metric." + name + ".tracked", this::getTrackedCount);
+		ServerMetrics.gauge("metric." + name + ".evicted", this::getEvictedCount);
+	}
+
+	/**
+	 * @param name name of the feeder (metrics)
+	 * @param policy the policy definition
+	 * @param maxStates max number of kept states
+	 * @param stateIdleTimeout states not updated for this duration are evicted first (ex: 1h)
+	 * @return the policy
+	 */
+	public static MetricWritePolicy parse(final String name, final String policy, final int maxStates, final String stateIdleTimeout) {
+		final List<Rule> rules = new ArrayList<>();
+		if (policy != null && !policy.isBlank()) {
+			for (final String rule : policy.split(";")) {
+				final String[] patternMode = rule.split("=");
+				if (patternMode.length != 2) {
+					throw new IllegalArgumentException("Invalid metric rule '" + rule + "', expected pattern=raw|dedup:<staleness>|rate");
+				}
+				final String[] modeParam = patternMode[1].trim().split(":");
+				final Mode mode = Mode.valueOf(modeParam[0].trim().toUpperCase(Locale.ROOT));
+				final long maxStalenessMillis = mode == Mode.DEDUP ? DurationUtil.parseMillis(modeParam.length > 1 ? modeParam[1] : "1h") : 0;
+				rules.add(new Rule(GlobUtil.toPattern(patternMode[0].trim()), mode, maxStalenessMillis));
+			}
+		}
+		return new MetricWritePolicy(name, rules, maxStates, DurationUtil.parseMillis(stateIdleTimeout));
+	}
+
+	/**
+	 * @param appName the app
+	 * @param host the location
+	 * @param metric the received metric
+	 * @return the points to write (may be empty)
+	 */
+	public List<InfluxPoint> toPoints(final String appName, final String host, final Metric metric) {
+		final Rule rule = ruleByName.computeIfAbsent(metric.name(), this::findRule);
+		if (rule.mode() == Mode.RAW || metric.value() == null) {
+			written.increment();
+			return InfluxdbUtil.metricToPoints(metric, host);
+		}
+		final long key = HashUtil.hash(appName, host, metric.name());
+		final double value = metric.value();
+		final long measureMillis = metric.measureInstant().toEpochMilli();
+		if (rule.mode() == Mode.DEDUP) {
+			if (shouldWrite(key, value, measureMillis, rule.maxStalenessMillis())) {
+				written.increment();
+				return InfluxdbUtil.metricToPoints(metric, host);
+			}
+			suppressed.increment();
+			return Collections.emptyList();
+		}
+		//RATE
+		final double rate = toRate(key, value, measureMillis);
+		if (Double.isNaN(rate)) {
+			suppressed.increment();
+			return Collections.emptyList();
+		}
+		rates.increment();
+		return InfluxdbUtil.metricRateToPoints(metric, host, rate);
+	}
+
+	private Rule findRule(final String metricName) {
+		for (final Rule rule : rules) {
+			if (rule.pattern().matcher(metricName).matches()) {
+				return rule;
+			}
+		}
+		return RAW_RULE;
+	}
+
+	private synchronized boolean shouldWrite(final long key, final double value, final long measureMillis, final long maxStalenessMillis) {
+		final int slot = states.find(key);
+		if (slot >= 0
+				&& Double.compare(states.lastValue(slot), value) == 0
+				&& measureMillis >= states.writtenMillis(slot)
+				&& measureMillis - states.writtenMillis(slot) < maxStalenessMillis) {
+			return false;
+		}
+		states.put(key, value, measureMillis, measureMillis);
+		return true;
+	}
+
+	/**
+	 * @return the per second rate since the previous value, NaN if there is none (first value, counter reset or out of order)
+	 */
+	private synchronized double toRate(final long key, final double value, final long measureMillis) {
+		final int slot = states.find(key);
+		if (slot >= 0 && measureMillis <= states.lastMillis(slot)) {
+			return Double.NaN; //out of order or duplicated : keep the newest state
+		}
+		final double rate = slot >= 0 && value >= states.lastValue(slot)
+				? (value - states.lastValue(slot)) * 1000 / (measureMillis - states.lastMillis(slot))
+				: Double.NaN;
+		states.put(key, value, measureMillis, measureMillis);
+		return rate;
+	}
+
+	private synchronized long getTrackedCount() {
+		return states.size();
+	}
+
+	private synchronized long getEvictedCount() {
+		return states.evictedCount();
+	}
+}
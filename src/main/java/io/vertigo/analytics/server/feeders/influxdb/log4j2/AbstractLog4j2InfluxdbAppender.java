@@ -2,6 +2,7 @@ package io.vertigo.analytics.server.feeders.influxdb.log4j2;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.logging.log4j.core.Filter;
@@ -12,40 +13,42 @@ import org.apache.logging.log4j.core.config.Configuration;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
-import com.influxdb.client.BucketsApi;
-import com.influxdb.client.InfluxDBClient;
-import com.influxdb.client.InfluxDBClientFactory;
-import com.influxdb.client.WriteApi;
-import com.influxdb.client.WriteApiBlocking;
-import com.influxdb.client.WriteOptions;
-import com.influxdb.client.write.Point;
 
 import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.LogMessageSink;
 import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
+import io.vertigo.analytics.server.feeders.influxdb.LineProtocolSink;
+import io.vertigo.analytics.server.feeders.influxdb.ShardedInfluxdbWriter;
+import io.vertigo.analytics.server.feeders.influxdb.WriteLaneSettings;
 import io.vertigo.analytics.server.json.AProcessJsonDeserializer;
+import io.vertigo.analytics.server.recentwindow.RecentWindowStore;
 import io.vertigo.core.lang.json.CoreJsonAdapters;
 
-abstract class AbstractLog4j2InfluxdbAppender<O> extends AbstractAppender {
+abstract class AbstractLog4j2InfluxdbAppender<O> extends AbstractAppender implements LogMessageSink<O>, LineProtocolSink {
 
 	private static final Gson GSON = CoreJsonAdapters.addCoreGsonConfig(new GsonBuilder(), false)
 			.registerTypeAdapter(TraceSpan.class, new AProcessJsonDeserializer())
 			.create();
 
-	private final InfluxDBClient influxDBClient;
-	private final WriteApi writeApiBulk;
-	private final WriteApiBlocking writeApiBlocking;
-	private final BucketsApi bucketApi;
-	private final String org;
-	private final String orgId;
+	private final ShardedInfluxdbWriter influxdbWriter;
+	private volatile RecentWindowStore recentWindowStore; //null if the localUi doesn't use it
+
+	@Override
+	public void start() {
+		super.start();
+		recentWindowStore = RecentWindowStore.acquire();
+	}
 
 	@Override
 	public void stop() {
-		if (writeApiBulk != null) {
-			writeApiBulk.flush();
-			writeApiBulk.close();
+		final RecentWindowStore store = recentWindowStore;
+		if (store != null) {
+			recentWindowStore = null;
+			store.release();
 		}
-		if (influxDBClient != null) {
-			influxDBClient.close();
+		if (influxdbWriter != null) {
+			influxdbWriter.close();
 		}
 	}
 
@@ -55,37 +58,20 @@ abstract class AbstractLog4j2InfluxdbAppender<O> extends AbstractAppender {
 			final Configuration config,
 			final String serverUrl,
 			final String token,
-			final String org) {
+			final String org,
+			final WriteLaneSettings writeLaneSettings,
+			final int virtualNodes) {
 		super(name, filter, null, true);
 		//---
-		influxDBClient = InfluxDBClientFactory.create(serverUrl, token.toCharArray(), org);
-		writeApiBulk = influxDBClient.makeWriteApi(WriteOptions.builder()
-				.bufferLimit(50_000)
-				.build()); //use as singleton
-		writeApiBlocking = influxDBClient.getWriteApiBlocking(); //use as singleton
-		bucketApi = influxDBClient.getBucketsApi(); //use as singleton
-		this.org = org;
-		orgId = influxDBClient.getOrganizationsApi().findOrganizations().stream().filter(organization -> organization.getName().equals(org)).findFirst().get().getId();
+		influxdbWriter = new ShardedInfluxdbWriter(name, serverUrl, token, org, writeLaneSettings, virtualNodes);
 	}
 
 	@Override
 	public void append(final LogEvent event) {
 
 		try {
-			final LogMessage<O> logMessage = GSON.fromJson(event.getMessage().getFormattedMessage(), getLogMessageType());
-			if (!bucketApi.findBuckets().stream().anyMatch(bucket -> bucket.getName().equals(logMessage.getAppName()))) {
-				bucketApi.createBucket(logMessage.getAppName(), orgId);
-			}
-			if (logMessage.getEvent() != null) {
-				writeApiBlocking.writePoints(logMessage.getAppName(), org, eventToPoints(logMessage.getEvent(), logMessage.getHost()));
-			}
-			if (logMessage.getEvents() != null) { //for batch send
-				for (final O batchEvent : logMessage.getEvents()) {
-					writeApiBulk.writePoints(logMessage.getAppName(), org, eventToPoints(batchEvent, logMessage.getHost()));
-				}
-
-			}
-			//db.write(logMessage.getAppName(), "autogen", eventToPoints(logMessage.getEvent(), logMessage.getHost()));
+			writeEvents(parseLogMessage(event.getMessage().getFormattedMessage()));
+			//db.write(logMessage.getAppName(), "autogen", eventToPoints(logMessage.getEvent(), logMessage.getAppName(), logMessage.getHost()));
 		} catch (final JsonSyntaxException e) {
 			// it wasn't a message for us so we do nothing
 		} catch (final Exception e) {
@@ -94,7 +80,75 @@ abstract class AbstractLog4j2InfluxdbAppender<O> extends AbstractAppender {
 
 	}
 
-	protected abstract List<Point> eventToPoints(final O healthCheck, final String host);
+	@Override
+	public void write(final LogMessage<O> logMessage) {
+		writeEvents(projectLogMessage(logMessage));
+	}
+
+	private void writeEvents(final LogMessage<O> logMessage) {
+		if (logMessage.getEvent() != null) {
+			writePoints(logMessage.getAppName(), eventToPoints(logMessage.getEvent(), logMessage.getAppName(), logMessage.getHost()));
+		}
+		if (logMessage.getEvents() != null) { //for batch send
+			final List<InfluxPoint> points = new ArrayList<>();
+			for (final O batchEvent : logMessage.getEvents()) {
+				points.addAll(eventToPoints(batchEvent, logMessage.getAppName(), logMessage.getHost()));
+			}
+			writePoints(logMessage.getAppName(), points);
+		}
+	}
+
+	/**
+	 * Queue points for InfluxDB, and append them to the recent window store if it is used.
+	 * @param bucket the bucket
+	 * @param points the points
+	 */
+	protected final void writePoints(final String bucket, final List<InfluxPoint> points) {
+		final RecentWindowStore store = recentWindowStore;
+		if (influxdbWriter.write(bucket, points) && store != null) {
+			store.append(bucket, points);
+		}
+	}
+
+	@Override
+	public boolean hasCapacity(final LogMessage<O> logMessage) {
+		//at least one point per event
+		return influxdbWriter.hasCapacity(logMessage.getAppName(), logMessage.getEvents() != null ? logMessage.getEvents().size() : 1);
+	}
+
+	@Override
+	public boolean writeRecords(final String bucket, final List<String> records) {
+		final RecentWindowStore store = recentWindowStore;
+		if (store != null) {
+			store.markRelayed(bucket); //records are not decoded
+		}
+		return influxdbWriter.writeRecords(bucket, records);
+	}
+
+	@Override
+	public boolean hasCapacity(final String bucket, final int count) {
+		return influxdbWriter.hasCapacity(bucket, count);
+	}
+
+	/**
+	 * @param json the message of the log event
+	 * @return the decoded message
+	 * @throws JsonSyntaxException if this is not a LogMessage json
+	 */
+	protected LogMessage<O> parseLogMessage(final String json) {
+		return GSON.fromJson(json, getLogMessageType());
+	}
+
+	/**
+	 * Apply to an already decoded message (typed listeners) what parseLogMessage applies while decoding.
+	 * @param logMessage the message (shared by the sinks : not modified)
+	 * @return the message to write
+	 */
+	protected LogMessage<O> projectLogMessage(final LogMessage<O> logMessage) {
+		return logMessage;
+	}
+
+	protected abstract List<InfluxPoint> eventToPoints(final O event, final String appName, final String host);
 
 	protected abstract Type getEventType();
 
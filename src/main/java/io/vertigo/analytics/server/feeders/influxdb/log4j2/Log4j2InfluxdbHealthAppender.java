@@ -1,6 +1,7 @@
 package io.vertigo.analytics.server.feeders.influxdb.log4j2;
 
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.logging.log4j.core.Appender;
@@ -13,26 +14,40 @@ import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 
-import com.influxdb.client.write.Point;
-
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
 import io.vertigo.analytics.server.feeders.influxdb.InfluxdbUtil;
+import io.vertigo.analytics.server.feeders.influxdb.ShardedInfluxdbWriter;
+import io.vertigo.analytics.server.feeders.influxdb.WriteLaneSettings;
+import io.vertigo.analytics.server.feeders.influxdb.delta.HealthChangeFilter;
 import io.vertigo.core.analytics.health.HealthCheck;
 
 @Plugin(name = "InfluxdbHealth", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE)
 public class Log4j2InfluxdbHealthAppender extends AbstractLog4j2InfluxdbAppender<HealthCheck> {
 
+	private static final String DEFAULT_HEARTBEAT_INTERVAL = "10m";
+
+	private final HealthChangeFilter healthChangeFilter; //null if every health check is written
+
 	private Log4j2InfluxdbHealthAppender(
 			final String name,
 			final Filter filter,
 			final Configuration config,
 			final String serverUrl,
 			final String token,
-			final String org) {
-		super(name, filter, config, serverUrl, token, org);
+			final String org,
+			final WriteLaneSettings writeLaneSettings,
+			final int virtualNodes,
+			final HealthChangeFilter healthChangeFilter) {
+		super(name, filter, config, serverUrl, token, org, writeLaneSettings, virtualNodes);
+		this.healthChangeFilter = healthChangeFilter;
 	}
 
 	@Override
-	protected List<Point> eventToPoints(final HealthCheck healthCheck, final String host) {
+	protected List<InfluxPoint> eventToPoints(final HealthCheck healthCheck, final String appName, final String host) {
+		if (healthChangeFilter != null && !healthChangeFilter.shouldWrite(appName, host, healthCheck)) {
+			return Collections.emptyList();
+		}
 		return InfluxdbUtil.healthCheckToPoints(healthCheck, host);
 	}
 
@@ -48,11 +63,22 @@ public class Log4j2InfluxdbHealthAppender extends AbstractLog4j2InfluxdbAppender
 			@PluginElement("Filter") final Filter filter,
 			@PluginAttribute("serverUrl") final String serverUrl,
 			@PluginAttribute("token") final String token,
-			@PluginAttribute("org") final String org) {
+			@PluginAttribute("org") final String org,
+			@PluginAttribute(value = "laneQueueCapacity", defaultInt = WriteLaneSettings.DEFAULT_QUEUE_CAPACITY) final int laneQueueCapacity,
+			@PluginAttribute(value = "laneMaxInFlight", defaultInt = WriteLaneSettings.DEFAULT_MAX_IN_FLIGHT) final int laneMaxInFlight,
+			@PluginAttribute(value = "batchSize", defaultInt = WriteLaneSettings.DEFAULT_BATCH_SIZE) final int batchSize,
+			@PluginAttribute(value = "writerThreads", defaultInt = WriteLaneSettings.DEFAULT_WRITER_THREADS) final int writerThreads,
+			@PluginAttribute(value = "virtualNodes", defaultInt = ShardedInfluxdbWriter.DEFAULT_VIRTUAL_NODES) final int virtualNodes,
+			@PluginAttribute(value = "deltaMode", defaultBoolean = false) final boolean deltaMode,
+			@PluginAttribute(value = "heartbeatInterval", defaultString = DEFAULT_HEARTBEAT_INTERVAL) final String heartbeatInterval,
+			@PluginAttribute(value = "stateMaxEntries", defaultInt = HealthChangeFilter.DEFAULT_MAX_STATES) final int stateMaxEntries,
+			@PluginAttribute(value = "stateIdleTimeout", defaultString = HealthChangeFilter.DEFAULT_STATE_IDLE_TIMEOUT) final String stateIdleTimeout) {
 		if (name == null) {
 			LOGGER.error("A name for the Appender must be specified");
 			return null;
 		}
-		return new Log4j2InfluxdbHealthAppender(name, filter, config, serverUrl, token, org);
+		return new Log4j2InfluxdbHealthAppender(name, filter, config, serverUrl, token, org,
+				WriteLaneSettings.of(laneQueueCapacity, laneMaxInFlight, batchSize, writerThreads), virtualNodes,
+				deltaMode ? new HealthChangeFilter(name, DurationUtil.parseMillis(heartbeatInterval), stateMaxEntries, DurationUtil.parseMillis(stateIdleTimeout)) : null);
 	}
 }
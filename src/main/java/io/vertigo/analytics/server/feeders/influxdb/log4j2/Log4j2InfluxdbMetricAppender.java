@@ -13,26 +13,37 @@ import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 
-import com.influxdb.client.write.Point;
-
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
 import io.vertigo.analytics.server.feeders.influxdb.InfluxdbUtil;
+import io.vertigo.analytics.server.feeders.influxdb.ShardedInfluxdbWriter;
+import io.vertigo.analytics.server.feeders.influxdb.WriteLaneSettings;
+import io.vertigo.analytics.server.feeders.influxdb.delta.MetricWritePolicy;
 import io.vertigo.core.analytics.metric.Metric;
 
 @Plugin(name = "InfluxdbMetric", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE)
 public class Log4j2InfluxdbMetricAppender extends AbstractLog4j2InfluxdbAppender<Metric> {
 
+	private final MetricWritePolicy writePolicy; //null if every metric is written
+
 	private Log4j2InfluxdbMetricAppender(
 			final String name,
 			final Filter filter,
 			final Configuration config,
 			final String serverUrl,
 			final String token,
-			final String org) {
-		super(name, filter, config, serverUrl, token, org);
+			final String org,
+			final WriteLaneSettings writeLaneSettings,
+			final int virtualNodes,
+			final MetricWritePolicy writePolicy) {
+		super(name, filter, config, serverUrl, token, org, writeLaneSettings, virtualNodes);
+		this.writePolicy = writePolicy;
 	}
 
 	@Override
-	protected List<Point> eventToPoints(final Metric metric, final String host) {
+	protected List<InfluxPoint> eventToPoints(final Metric metric, final String appName, final String host) {
+		if (writePolicy != null) {
+			return writePolicy.toPoints(appName, host, metric);
+		}
 		return InfluxdbUtil.metricToPoints(metric, host);
 	}
 
@@ -48,11 +59,21 @@ public class Log4j2InfluxdbMetricAppender extends AbstractLog4j2InfluxdbAppender
 			@PluginElement("Filter") final Filter filter,
 			@PluginAttribute("serverUrl") final String serverUrl,
 			@PluginAttribute("token") final String token,
-			@PluginAttribute("org") final String org) {
+			@PluginAttribute("org") final String org,
+			@PluginAttribute(value = "laneQueueCapacity", defaultInt = WriteLaneSettings.DEFAULT_QUEUE_CAPACITY) final int laneQueueCapacity,
+			@PluginAttribute(value = "laneMaxInFlight", defaultInt = WriteLaneSettings.DEFAULT_MAX_IN_FLIGHT) final int laneMaxInFlight,
+			@PluginAttribute(value = "batchSize", defaultInt = WriteLaneSettings.DEFAULT_BATCH_SIZE) final int batchSize,
+			@PluginAttribute(value = "writerThreads", defaultInt = WriteLaneSettings.DEFAULT_WRITER_THREADS) final int writerThreads,
+			@PluginAttribute(value = "virtualNodes", defaultInt = ShardedInfluxdbWriter.DEFAULT_VIRTUAL_NODES) final int virtualNodes,
+			@PluginAttribute("writePolicy") final String writePolicy,
+			@PluginAttribute(value = "stateMaxEntries", defaultInt = MetricWritePolicy.DEFAULT_MAX_STATES) final int stateMaxEntries,
+			@PluginAttribute(value = "stateIdleTimeout", defaultString = MetricWritePolicy.DEFAULT_STATE_IDLE_TIMEOUT) final String stateIdleTimeout) {
 		if (name == null) {
 			LOGGER.error("A name for the Appender must be specified");
 			return null;
 		}
-		return new Log4j2InfluxdbMetricAppender(name, filter, config, serverUrl, token, org);
+		return new Log4j2InfluxdbMetricAppender(name, filter, config, serverUrl, token, org,
+				WriteLaneSettings.of(laneQueueCapacity, laneMaxInFlight, batchSize, writerThreads), virtualNodes,
+				writePolicy != null ? MetricWritePolicy.parse(name, writePolicy, stateMaxEntries, stateIdleTimeout) : null);
 	}
 }
@@ -1,6 +1,8 @@
 package io.vertigo.analytics.server.feeders.influxdb.log4j2;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.logging.log4j.core.Appender;
@@ -13,27 +15,115 @@ import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 
-import com.influxdb.client.write.Point;
-
+import io.vertigo.analytics.server.LogMessage;
 import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
 import io.vertigo.analytics.server.feeders.influxdb.InfluxdbUtil;
+import io.vertigo.analytics.server.feeders.influxdb.ShardedInfluxdbWriter;
+import io.vertigo.analytics.server.feeders.influxdb.TagCardinalityGuard;
+import io.vertigo.analytics.server.feeders.influxdb.WriteLaneSettings;
+import io.vertigo.analytics.server.feeders.influxdb.rollup.ProcessLatencyAggregator;
+import io.vertigo.analytics.server.feeders.influxdb.rollup.ProcessRollupAggregator;
+import io.vertigo.analytics.server.feeders.influxdb.rollup.RollupPolicy;
+import io.vertigo.analytics.server.feeders.sampling.TraceSampler;
+import io.vertigo.analytics.server.filter.FieldProjection;
+import io.vertigo.analytics.server.json.TraceSpanJsonDecoder;
 
 @Plugin(name = "InfluxdbProcess", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE)
 public class Log4j2InfluxdbProcessAppender extends AbstractLog4j2InfluxdbAppender<TraceSpan> {
 
+	public static final int DEFAULT_TAG_CARDINALITY_THRESHOLD = 0; //disabled, 10000 is a good start
+	public static final int DEFAULT_TAG_HASH_BUCKETS = 64;
+
+	private final ProcessRollupAggregator rollupAggregator; //null if no rollup
+	private final ProcessLatencyAggregator latencyAggregator; //null if no latency histograms
+	private final TagCardinalityGuard tagGuard; //null if disabled
+	private final TraceSampler traceSampler; //null if every trace is written
+	private final FieldProjection fieldProjection; //null if every metadata and measure is kept
+
 	private Log4j2InfluxdbProcessAppender(
 			final String name,
 			final Filter filter,
 			final Configuration config,
 			final String serverUrl,
 			final String token,
-			final String org) {
-		super(name, filter, config, serverUrl, token, org);
+			final String org,
+			final WriteLaneSettings writeLaneSettings,
+			final int virtualNodes,
+			final String rollupWindow,
+			final RollupPolicy rollupPolicy,
+			final String latencyWindow,
+			final String latencyCategories,
+			final ProcessLatencyAggregator.Output latencyOutput,
+			final int latencyMaxKeys,
+			final TagCardinalityGuard tagGuard,
+			final TraceSampler traceSampler,
+			final FieldProjection fieldProjection) {
+		super(name, filter, config, serverUrl, token, org, writeLaneSettings, virtualNodes);
+		rollupAggregator = rollupWindow != null ? new ProcessRollupAggregator(name, rollupWindow, rollupPolicy, this::writePoints) : null;
+		latencyAggregator = latencyWindow != null ? new ProcessLatencyAggregator(name, latencyWindow, latencyCategories, latencyOutput, latencyMaxKeys, this::writePoints) : null;
+		this.tagGuard = tagGuard;
+		this.traceSampler = traceSampler;
+		this.fieldProjection = fieldProjection;
+	}
+
+	@Override
+	protected LogMessage<TraceSpan> parseLogMessage(final String json) {
+		if (fieldProjection != null) {
+			return TraceSpanJsonDecoder.decode(json, fieldProjection);
+		}
+		return super.parseLogMessage(json);
+	}
+
+	@Override
+	protected LogMessage<TraceSpan> projectLogMessage(final LogMessage<TraceSpan> logMessage) {
+		if (fieldProjection == null) {
+			return logMessage;
+		}
+		final LogMessage<TraceSpan> projectedMessage = new LogMessage<>();
+		projectedMessage.setAppName(logMessage.getAppName());
+		projectedMessage.setHost(logMessage.getHost());
+		projectedMessage.setBatchId(logMessage.getBatchId());
+		if (logMessage.getEvent() != null) {
+			projectedMessage.setEvent(fieldProjection.project(logMessage.getAppName(), logMessage.getEvent()));
+		}
+		if (logMessage.getEvents() != null) {
+			final List<TraceSpan> projectedEvents = new ArrayList<>(logMessage.getEvents().size());
+			for (final TraceSpan process : logMessage.getEvents()) {
+				projectedEvents.add(fieldProjection.project(logMessage.getAppName(), process));
+			}
+			projectedMessage.setEvents(projectedEvents);
+		}
+		return projectedMessage;
 	}
 
 	@Override
-	protected List<Point> eventToPoints(final TraceSpan process, final String host) {
-		return InfluxdbUtil.processToPoints(process, host);
+	protected List<InfluxPoint> eventToPoints(final TraceSpan process, final String appName, final String host) {
+		//aggregates are fed with every trace, sampled or not
+		if (latencyAggregator != null) {
+			latencyAggregator.add(appName, process);
+		}
+		if (rollupAggregator != null) {
+			rollupAggregator.add(appName, host, process);
+		}
+		if (traceSampler != null && !traceSampler.keep(appName, host, process)) {
+			return Collections.emptyList();
+		}
+		if (rollupAggregator == null) {
+			return InfluxdbUtil.processToPoints(process, appName, host, category -> true, tagGuard);
+		}
+		return InfluxdbUtil.processToPoints(process, appName, host, rollupAggregator::keepRaw, tagGuard);
+	}
+
+	@Override
+	public void stop() {
+		if (rollupAggregator != null) {
+			rollupAggregator.close(); //last windows are written before the writer is closed
+		}
+		if (latencyAggregator != null) {
+			latencyAggregator.close();
+		}
+		super.stop();
 	}
 
 	@Override
@@ -48,11 +138,38 @@ public class Log4j2InfluxdbProcessAppender extends AbstractLog4j2InfluxdbAppende
 			@PluginElement("Filter") final Filter filter,
 			@PluginAttribute("serverUrl") final String serverUrl,
 			@PluginAttribute("token") final String token,
-			@PluginAttribute("org") final String org) {
+			@PluginAttribute("org") final String org,
+			@PluginAttribute(value = "laneQueueCapacity", defaultInt = WriteLaneSettings.DEFAULT_QUEUE_CAPACITY) final int laneQueueCapacity,
+			@PluginAttribute(value = "laneMaxInFlight", defaultInt = WriteLaneSettings.DEFAULT_MAX_IN_FLIGHT) final int laneMaxInFlight,
+			@PluginAttribute(value = "batchSize", defaultInt = WriteLaneSettings.DEFAULT_BATCH_SIZE) final int batchSize,
+			@PluginAttribute(value = "writerThreads", defaultInt = WriteLaneSettings.DEFAULT_WRITER_THREADS) final int writerThreads,
+			@PluginAttribute(value = "virtualNodes", defaultInt = ShardedInfluxdbWriter.DEFAULT_VIRTUAL_NODES) final int virtualNodes,
+			@PluginAttribute("rollupWindow") final String rollupWindow,
+			@PluginAttribute("rollupPolicy") final String rollupPolicy,
+			@PluginAttribute("latencyWindow") final String latencyWindow,
+			@PluginAttribute("latencyCategories") final String latencyCategories,
+			@PluginAttribute("latencyOutput") final String latencyOutput,
+			@PluginAttribute(value = "latencyMaxKeys", defaultInt = ProcessLatencyAggregator.DEFAULT_MAX_KEYS_PER_WINDOW) final int latencyMaxKeys,
+			@PluginAttribute(value = "tagCardinalityThreshold", defaultInt = DEFAULT_TAG_CARDINALITY_THRESHOLD) final int tagCardinalityThreshold,
+			@PluginAttribute("tagCardinalityMode") final String tagCardinalityMode,
+			@PluginAttribute(value = "tagHashBuckets", defaultInt = DEFAULT_TAG_HASH_BUCKETS) final int tagHashBuckets,
+			@PluginAttribute(value = "tagMaxTracked", defaultInt = TagCardinalityGuard.DEFAULT_MAX_TRACKED_TAGS) final int tagMaxTracked,
+			@PluginAttribute("sampler") final String sampler,
+			@PluginAttribute(value = "sampleOneIn", defaultInt = 1) final int sampleOneIn,
+			@PluginAttribute(value = "keepPercentile", defaultDouble = TraceSampler.DEFAULT_KEEP_PERCENTILE) final double keepPercentile,
+			@PluginAttribute("keepCategories") final String keepCategories,
+			@PluginAttribute(value = "errorTags", defaultString = TraceSampler.DEFAULT_ERROR_TAGS) final String errorTags,
+			@PluginAttribute("projection") final String projection) {
 		if (name == null) {
 			LOGGER.error("A name for the Appender must be specified");
 			return null;
 		}
-		return new Log4j2InfluxdbProcessAppender(name, filter, config, serverUrl, token, org);
+		return new Log4j2InfluxdbProcessAppender(name, filter, config, serverUrl, token, org,
+				WriteLaneSettings.of(laneQueueCapacity, laneMaxInFlight, batchSize, writerThreads), virtualNodes,
+				rollupWindow, RollupPolicy.parse(rollupPolicy),
+				latencyWindow, latencyCategories, ProcessLatencyAggregator.Output.parse(latencyOutput), latencyMaxKeys,
+				tagCardinalityThreshold > 0 ? new TagCardinalityGuard(name, tagCardinalityThreshold, TagCardinalityGuard.Mode.parse(tagCardinalityMode), tagHashBuckets, tagMaxTracked) : null,
+				sampler != null ? TraceSampler.getOrCreate(sampler, sampleOneIn, keepPercentile, keepCategories, errorTags) : null,
+				FieldProjection.parse(name, projection));
 	}
 }
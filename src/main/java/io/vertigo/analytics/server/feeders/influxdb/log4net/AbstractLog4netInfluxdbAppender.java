@@ -2,6 +2,7 @@ package io.vertigo.analytics.server.feeders.influxdb.log4net;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.logging.log4j.core.Filter;
@@ -13,24 +14,35 @@ import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
-import com.influxdb.client.InfluxDBClient;
-import com.influxdb.client.InfluxDBClientFactory;
-import com.influxdb.client.write.Point;
 
 import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
+import io.vertigo.analytics.server.feeders.influxdb.ShardedInfluxdbWriter;
+import io.vertigo.analytics.server.feeders.influxdb.WriteLaneSettings;
+import io.vertigo.analytics.server.recentwindow.RecentWindowStore;
 
 abstract class AbstractLog4netInfluxdbAppender<O> extends AbstractAppender {
 
 	private static final Gson GSON = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE).create();
 
-	private final InfluxDBClient influxDBClient;
-	private final String org;
-	private final String orgId;
+	private final ShardedInfluxdbWriter influxdbWriter;
+	private volatile RecentWindowStore recentWindowStore; //null if the localUi doesn't use it
+
+	@Override
+	public void start() {
+		super.start();
+		recentWindowStore = RecentWindowStore.acquire();
+	}
 
 	@Override
 	public void stop() {
-		if (influxDBClient != null) {
-			influxDBClient.close();
+		final RecentWindowStore store = recentWindowStore;
+		if (store != null) {
+			recentWindowStore = null;
+			store.release();
+		}
+		if (influxdbWriter != null) {
+			influxdbWriter.close();
 		}
 
 	}
@@ -44,9 +56,7 @@ abstract class AbstractLog4netInfluxdbAppender<O> extends AbstractAppender {
 			final String org) {
 		super(name, filter, null, false);
 		//---
-		influxDBClient = InfluxDBClientFactory.create(serverUrl, token.toCharArray(), org);
-		this.org = org;
-		orgId = influxDBClient.getOrganizationsApi().findOrganizations().stream().filter(organization -> organization.getName().equals(org)).findFirst().get().getId();
+		influxdbWriter = new ShardedInfluxdbWriter(name, serverUrl, token, org, WriteLaneSettings.defaults(), ShardedInfluxdbWriter.DEFAULT_VIRTUAL_NODES);
 	}
 
 	@Override
@@ -54,16 +64,15 @@ abstract class AbstractLog4netInfluxdbAppender<O> extends AbstractAppender {
 
 		try {
 			final LogMessage<O> logMessage = GSON.fromJson(event.getMessage().getFormattedMessage(), getLogMessageType());
-			if (!influxDBClient.getBucketsApi().findBuckets().stream().anyMatch(bucket -> bucket.getName().equals(logMessage.getAppName()))) {
-				influxDBClient.getBucketsApi().createBucket(logMessage.getAppName(), orgId);
-			}
 			if (logMessage.getEvent() != null) {
-				influxDBClient.getWriteApiBlocking().writePoints(logMessage.getAppName(), org, eventToPoints(logMessage.getEvent(), logMessage.getHost()));
+				writePoints(logMessage.getAppName(), eventToPoints(logMessage.getEvent(), logMessage.getHost()));
 			}
 			if (logMessage.getEvents() != null) { //for batch send
+				final List<InfluxPoint> points = new ArrayList<>();
 				for (final O batchEvent : logMessage.getEvents()) {
-					influxDBClient.getWriteApiBlocking().writePoints(logMessage.getAppName(), org, eventToPoints(batchEvent, logMessage.getHost()));
+					points.addAll(eventToPoints(batchEvent, logMessage.getHost()));
 				}
+				writePoints(logMessage.getAppName(), points);
 			}
 			//db.write(logMessage.getAppName(), "autogen", eventToPoints(logMessage.getEvent(), logMessage.getHost()));
 		} catch (final JsonSyntaxException e) {
@@ -74,7 +83,14 @@ abstract class AbstractLog4netInfluxdbAppender<O> extends AbstractAppender {
 
 	}
 
-	protected abstract List<Point> eventToPoints(final O healthCheck, final String host);
+	private void writePoints(final String bucket, final List<InfluxPoint> points) {
+		final RecentWindowStore store = recentWindowStore;
+		if (influxdbWriter.write(bucket, points) && store != null) {
+			store.append(bucket, points);
+		}
+	}
+
+	protected abstract List<InfluxPoint> eventToPoints(final O healthCheck, final String host);
 
 	protected abstract Type getEventType();
 
@@ -13,9 +13,8 @@ import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 
-import com.influxdb.client.write.Point;
-
 import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
 import io.vertigo.analytics.server.feeders.influxdb.InfluxdbUtil;
 
 @Plugin(name = "InfluxdbProcess4net", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE)
@@ -32,7 +31,7 @@ public class Log4netInfluxdbProcessAppender extends AbstractLog4netInfluxdbAppen
 	}
 
 	@Override
-	protected List<Point> eventToPoints(final TraceSpan process, final String host) {
+	protected List<InfluxPoint> eventToPoints(final TraceSpan process, final String host) {
 		return InfluxdbUtil.processToPoints(process, host);
 	}
 
@@ -0,0 +1,124 @@
+package io.vertigo.analytics.server.feeders.influxdb.rollup;
+
+/**
+ * Log-linear latency histogram (HDR-style) in fixed memory.
+ * Values under 32 are exact, above each power of two is split in 32 linear sub-buckets : relative error stays under 3%.
+ * Histograms with the same layout are mergeable, so windows or locations can be summed without loss.
+ * Not thread safe.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 36; //2^37 ms : more than 4 years
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+	private final long[] counts = new long[BUCKET_COUNT];
+	private long totalCount;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+
+	/**
+	 * @param value the value to record (negative values are recorded as 0)
+	 */
+	public void record(final long value) {
+		final long safeValue = Math.max(0, value);
+		counts[indexOf(safeValue)]++;
+		totalCount++;
+		sum += safeValue;
+		min = Math.min(min, safeValue);
+		max = Math.max(max, safeValue);
+	}
+
+	/**
+	 * Add all values of another histogram.
+	 * @param other the other histogram
+	 */
+	public void merge(final LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the highest value equivalent to the value at this percentile (0 if empty)
+	 */
+	public long valueAtPercentile(final double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += counts[i];
+			if (cumulative >= rank) {
+				return i == BUCKET_COUNT - 1 ? max : Math.min(upperBound(i), max); //last bucket has no upper bound
+			}
+		}
+		return max;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	public long getMin() {
+		return totalCount == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return totalCount == 0 ? 0 : max;
+	}
+
+	public double getMean() {
+		return totalCount == 0 ? 0 : (double) sum / totalCount;
+	}
+
+	/**
+	 * Visit non empty buckets, in increasing order.
+	 * @param visitor called with the bucket upper bound (inclusive) and its count
+	 */
+	public void forEachBucket(final BucketVisitor visitor) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			if (counts[i] > 0) {
+				visitor.visit(upperBound(i), counts[i]);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	public interface BucketVisitor {
+		void visit(long upperBound, long count);
+	}
+
+	private static int indexOf(final long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+		final int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)); //in [32, 64)
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + mantissa - SUB_BUCKET_COUNT;
+	}
+
+	private static long upperBound(final int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKET_COUNT - 1;
+		final long mantissa = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		return ((mantissa + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,239 @@
+package io.vertigo.analytics.server.feeders.influxdb.rollup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxdbUtil;
+
+/**
+ * In-server latency histograms of process spans.
+ * Durations are recorded in a {@link LatencyHistogram} per (app, category, name) and tumbling window.
+ * At window close (one window of grace for late spans) percentiles are written in the measurement "category_latency",
+ * and/or the bucket counts in "category_latency_buckets" (one point per non empty bucket, tagged by its upper bound "le") to be merged at query time.
+ * Each window has at most maxKeysPerWindow keys : spans of the other names go in the overflow name "_overflow" of their app and category.
+ * Spans of an already flushed window are dropped : a second point of the same window would overwrite the first one.
+ * Metrics : latency.[name].spans, points, overflowSpans, lateSpans and openWindows.
+ */
+public final class ProcessLatencyAggregator implements AutoCloseable {
+
+	public static final int DEFAULT_MAX_KEYS_PER_WINDOW = 10_000;
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final String ALL_CATEGORIES = "*";
+	private static final String OVERFLOW_NAME = "_overflow";
+
+	public enum Output {
+		PERCENTILES, BUCKETS, BOTH;
+
+		public static Output parse(final String output) {
+			return output == null ? PERCENTILES : valueOf(output.trim().toUpperCase(Locale.ROOT));
+		}
+	}
+
+	private final String windowTag;
+	private final long windowMillis;
+	private final Set<String> categories; //empty for all
+	private final Output output;
+	private final BiConsumer<String, List<InfluxPoint>> sink;
+	private final ConcurrentMap<LatencyKey, LatencyWindow> windows = new ConcurrentHashMap<>();
+	private final int maxKeysPerWindow;
+	private final ConcurrentMap<Long, AtomicInteger> keyCountByWindow = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService flusher;
+	private volatile long flushedBefore = Long.MIN_VALUE; //windows ending before are flushed
+
+	private final LongAdder recordedSpans;
+	private final LongAdder latencyPoints;
+	private final LongAdder overflowSpans;
+	private final LongAdder lateSpans;
+
+	/**
+	 * @param name name of the feeder (metrics and thread name)
+	 * @param window window duration, ex: 10s, 1m
+	 * @param categories categories with histograms, separated by ',' ("*" for all)
+	 * @param output what is written at window close
+	 * @param maxKeysPerWindow max (app, category, name) keys of a window
+	 * @param sink points consumer (bucket, points)
+	 */
+	public ProcessLatencyAggregator(final String name, final String window, final String categories, final Output output, final int maxKeysPerWindow, final BiConsumer<String, List<InfluxPoint>> sink) {
+		if (maxKeysPerWindow <= 0) {
+			throw new IllegalArgumentException("Latency maxKeysPerWindow must be positive : " + maxKeysPerWindow);
+		}
+		windowTag = window.trim();
+		windowMillis = DurationUtil.parseMillis(window);
+		if (windowMillis <= 0) {
+			throw new IllegalArgumentException("Latency window must be positive : " + window);
+		}
+		this.categories = parseCategories(categories);
+		this.output = output;
+		this.maxKeysPerWindow = maxKeysPerWindow;
+		this.sink = sink;
+		recordedSpans = ServerMetrics.counter("latency." + name + ".spans");
+		latencyPoints = ServerMetrics.counter("latency." + name + ".points");
+		overflowSpans = ServerMetrics.counter("latency." + name + ".overflowSpans");
+		lateSpans = ServerMetrics.counter("latency." + name + ".lateSpans");
+		ServerMetrics.gauge("latency." + name + ".openWindows", windows::size);
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, name + "-latency");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleAtFixedRate(() -> flush(false), windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private static Set<String> parseCategories(final String categories) {
+		if (categories == null || categories.isBlank() || ALL_CATEGORIES.equals(categories.trim())) {
+			return Set.of();
+		}
+		final Set<String> result = new HashSet<>();
+		Arrays.stream(categories.split(",")).map(String::trim).filter(category -> !category.isEmpty()).forEach(result::add);
+		return result;
+	}
+
+	/**
+	 * Record durations of all spans of this tree.
+	 * @param appName the app
+	 * @param process the root span
+	 */
+	public void add(final String appName, final TraceSpan process) {
+		if (categories.isEmpty() || categories.contains(process.getCategory())) {
+			final long windowStart = process.getStart() - Math.floorMod(process.getStart(), windowMillis);
+			if (windowStart + windowMillis <= flushedBefore) {
+				lateSpans.increment(); //its window was already written
+			} else {
+				record(appName, process, windowStart);
+			}
+		}
+		for (final TraceSpan childSpan : process.getChildSpans()) {
+			add(appName, childSpan);
+		}
+	}
+
+	private void record(final String appName, final TraceSpan span, final long windowStart) {
+		LatencyKey key = new LatencyKey(appName, span.getCategory(), span.getName(), windowStart);
+		if (!windows.containsKey(key) && !reserveKey(windowStart)) {
+			key = new LatencyKey(appName, span.getCategory(), OVERFLOW_NAME, windowStart);
+			overflowSpans.increment();
+		}
+		while (!windows.computeIfAbsent(key, k -> new LatencyWindow()).record(span.getDurationMillis())) {
+			//window was closed by a concurrent flush : a new one will be created, and dropped by the next flush
+		}
+		recordedSpans.increment();
+	}
+
+	/**
+	 * @param windowStart the window of a new key
+	 * @return if this window can have one more key
+	 */
+	private boolean reserveKey(final long windowStart) {
+		//a key created concurrently may be counted twice : a window may get a bit less keys than the max
+		return keyCountByWindow.computeIfAbsent(windowStart, w -> new AtomicInteger()).incrementAndGet() <= maxKeysPerWindow;
+	}
+
+	private void flush(final boolean all) {
+		try {
+			final long previousFlushedBefore = flushedBefore;
+			final long closeBefore = all ? Long.MAX_VALUE : Math.max(previousFlushedBefore, System.currentTimeMillis() - windowMillis); //one window of grace
+			flushedBefore = closeBefore;
+			final Map<String, List<InfluxPoint>> pointsByApp = new HashMap<>();
+			final Iterator<Map.Entry<LatencyKey, LatencyWindow>> it = windows.entrySet().iterator();
+			while (it.hasNext()) {
+				final Map.Entry<LatencyKey, LatencyWindow> entry = it.next();
+				final LatencyKey key = entry.getKey();
+				if (all || key.windowStart() + windowMillis <= closeBefore) {
+					it.remove();
+					final LatencyHistogram histogram = entry.getValue().close();
+					if (key.windowStart() + windowMillis <= previousFlushedBefore) {
+						//created by spans racing the previous flush of this window
+						lateSpans.add(histogram.getTotalCount());
+					} else {
+						toPoints(key, histogram, pointsByApp.computeIfAbsent(key.appName(), app -> new ArrayList<>()));
+					}
+				}
+			}
+			keyCountByWindow.keySet().removeIf(windowStart -> all || windowStart + windowMillis <= closeBefore);
+			pointsByApp.forEach((appName, points) -> {
+				latencyPoints.add(points.size());
+				sink.accept(appName, points);
+			});
+		} catch (final Exception e) {
+			LOGGER.error("Error while flushing latency windows", e);
+		}
+	}
+
+	private void toPoints(final LatencyKey key, final LatencyHistogram histogram, final List<InfluxPoint> points) {
+		final Instant time = InfluxdbUtil.epochMilliToUniqueInstant(Instant.ofEpochMilli(key.windowStart()));
+		final String name = key.name().replace('\n', ' ');
+		if (output != Output.BUCKETS) {
+			points.add(InfluxPoint.measurement(key.category() + "_latency")
+					.time(time)
+					.addTag("name", name)
+					.addTag("window", windowTag)
+					.addField("count", histogram.getTotalCount())
+					.addField("min", histogram.getMin())
+					.addField("max", histogram.getMax())
+					.addField("mean", histogram.getMean())
+					.addField("p50", histogram.valueAtPercentile(50))
+					.addField("p95", histogram.valueAtPercentile(95))
+					.addField("p99", histogram.valueAtPercentile(99)));
+		}
+		if (output != Output.PERCENTILES) {
+			histogram.forEachBucket((upperBound, count) -> points.add(InfluxPoint.measurement(key.category() + "_latency_buckets")
+					.time(time)
+					.addTag("name", name)
+					.addTag("window", windowTag)
+					.addTag("le", String.valueOf(upperBound))
+					.addField("count", count)));
+		}
+	}
+
+	@Override
+	public void close() {
+		flusher.shutdownNow();
+		flush(true);
+	}
+
+	private record LatencyKey(String appName, String category, String name, long windowStart) {
+		//only data
+	}
+
+	private static final class LatencyWindow {
+		private boolean closed;
+		private final LatencyHistogram histogram = new LatencyHistogram();
+
+		synchronized boolean record(final long durationMillis) {
+			if (closed) {
+				return false;
+			}
+			histogram.record(durationMillis);
+			return true;
+		}
+
+		synchronized LatencyHistogram close() {
+			closed = true;
+			return histogram;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package io.vertigo.analytics.server.feeders.influxdb.rollup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxdbUtil;
+
+/**
+ * In-server pre-aggregation of process spans.
+ * Spans are accumulated in tumbling windows keyed by (app, category, name, location) : count, sum, min and max of duration and measures.
+ * At window close (one window of grace for late spans) a compact rollup point is emitted in the measurement "category_rollup".
+ * Spans of an already flushed window are dropped (rollup.[name].lateSpans) : a second point of the same window would overwrite the first one.
+ */
+public final class ProcessRollupAggregator implements AutoCloseable {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final String windowTag;
+	private final long windowMillis;
+	private final RollupPolicy policy;
+	private final BiConsumer<String, List<InfluxPoint>> sink;
+	private final ConcurrentMap<RollupKey, RollupWindow> windows = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService flusher;
+	private volatile long flushedBefore = Long.MIN_VALUE; //windows ending before are flushed
+
+	private final LongAdder aggregatedSpans;
+	private final LongAdder rollupPoints;
+	private final LongAdder lateSpans;
+
+	/**
+	 * @param name name of the feeder (metrics and thread name)
+	 * @param window window duration, ex: 10s, 1m
+	 * @param policy per category policy
+	 * @param sink rollup points consumer (bucket, points)
+	 */
+	public ProcessRollupAggregator(final String name, final String window, final RollupPolicy policy, final BiConsumer<String, List<InfluxPoint>> sink) {
+		windowTag = window.trim();
+		windowMillis = DurationUtil.parseMillis(window);
+		if (windowMillis <= 0) {
+			throw new IllegalArgumentException("Rollup window must be positive : " + window);
+		}
+		this.policy = policy;
+		this.sink = sink;
+		aggregatedSpans = ServerMetrics.counter("rollup." + name + ".spans");
+		rollupPoints = ServerMetrics.counter("rollup." + name + ".points");
+		lateSpans = ServerMetrics.counter("rollup." + name + ".lateSpans");
+		ServerMetrics.gauge("rollup." + name + ".openWindows", windows::size);
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, name + "-rollup");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleAtFixedRate(() -> flush(false), windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param category span category
+	 * @return if raw points are still written for this category
+	 */
+	public boolean keepRaw(final String category) {
+		return policy.keepRaw(category);
+	}
+
+	/**
+	 * Aggregate all spans of this tree with a rollup policy.
+	 * @param appName the app
+	 * @param host the location
+	 * @param process the root span
+	 */
+	public void add(final String appName, final String host, final TraceSpan process) {
+		if (policy.rollup(process.getCategory())) {
+			final long windowStart = process.getStart() - Math.floorMod(process.getStart(), windowMillis);
+			if (windowStart + windowMillis <= flushedBefore) {
+				lateSpans.increment(); //its window was already written
+			} else {
+				final RollupKey key = new RollupKey(appName, process.getCategory(), process.getName(), host, windowStart);
+				while (!windows.computeIfAbsent(key, k -> new RollupWindow()).add(process)) {
+					//window was closed by a concurrent flush : a new one will be created, and dropped by the next flush
+				}
+				aggregatedSpans.increment();
+			}
+		}
+		for (final TraceSpan childSpan : process.getChildSpans()) {
+			add(appName, host, childSpan);
+		}
+	}
+
+	private void flush(final boolean all) {
+		try {
+			final long previousFlushedBefore = flushedBefore;
+			final long closeBefore = all ? Long.MAX_VALUE : Math.max(previousFlushedBefore, System.currentTimeMillis() - windowMillis); //one window of grace
+			flushedBefore = closeBefore;
+			final Map<String, List<InfluxPoint>> pointsByApp = new HashMap<>();
+			final Iterator<Map.Entry<RollupKey, RollupWindow>> it = windows.entrySet().iterator();
+			while (it.hasNext()) {
+				final Map.Entry<RollupKey, RollupWindow> entry = it.next();
+				final RollupKey key = entry.getKey();
+				if (all || key.windowStart() + windowMillis <= closeBefore) {
+					it.remove();
+					if (key.windowStart() + windowMillis <= previousFlushedBefore) {
+						//created by spans racing the previous flush of this window
+						lateSpans.add(entry.getValue().discard());
+					} else {
+						final InfluxPoint point = entry.getValue().close(key, windowTag);
+						pointsByApp.computeIfAbsent(key.appName(), app -> new ArrayList<>()).add(point);
+					}
+				}
+			}
+			pointsByApp.forEach((appName, points) -> {
+				rollupPoints.add(points.size());
+				sink.accept(appName, points);
+			});
+		} catch (final Exception e) {
+			LOGGER.error("Error while flushing rollup windows", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		flusher.shutdownNow();
+		flush(true);
+	}
+
+	private record RollupKey(String appName, String category, String name, String location, long windowStart) {
+		//only data
+	}
+
+	private static final class RollupWindow {
+		private boolean closed;
+		private long count;
+		private long durationSum;
+		private long durationMin = Long.MAX_VALUE;
+		private long durationMax = Long.MIN_VALUE;
+		private final Map<String, double[]> measures = new HashMap<>(); // sum, min, max
+
+		synchronized boolean add(final TraceSpan span) {
+			if (closed) {
+				return false;
+			}
+			final long duration = span.getDurationMillis();
+			count++;
+			durationSum += duration;
+			durationMin = Math.min(durationMin, duration);
+			durationMax = Math.max(durationMax, duration);
+			for (final Map.Entry<String, Double> measure : span.getMeasures().entrySet()) {
+				if (measure.getValue() == null) {
+					continue; //no value for this span
+				}
+				final double value = measure.getValue();
+				final double[] stats = measures.get(measure.getKey());
+				if (stats == null) {
+					measures.put(measure.getKey(), new double[] { value, value, value });
+				} else {
+					stats[0] += value;
+					stats[1] = Math.min(stats[1], value);
+					stats[2] = Math.max(stats[2], value);
+				}
+			}
+			return true;
+		}
+
+		synchronized long discard() {
+			closed = true;
+			return count;
+		}
+
+		synchronized InfluxPoint close(final RollupKey key, final String windowTag) {
+			closed = true;
+			final InfluxPoint point = InfluxPoint.measurement(key.category() + "_rollup")
+					.time(InfluxdbUtil.epochMilliToUniqueInstant(Instant.ofEpochMilli(key.windowStart())))
+					.addTag("name", key.name().replace('\n', ' '))
+					.addTag("location", key.location())
+					.addTag("window", windowTag)
+					.addField("count", count)
+					.addField("duration_sum", durationSum)
+					.addField("duration_min", durationMin)
+					.addField("duration_max", durationMax)
+					.addField("duration_mean", (double) durationSum / count);
+			measures.forEach((measure, stats) -> point
+					.addField(measure + "_sum", stats[0])
+					.addField(measure + "_min", stats[1])
+					.addField(measure + "_max", stats[2]));
+			return point;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package io.vertigo.analytics.server.feeders.influxdb.rollup;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per category policy of process points : raw points, rollup points or both.
+ * Defined as "category:mode" pairs separated by ';', '*' is the default category (raw if not set).
+ * ex : "sql:rollup;cache:rollup;page:both;*:raw"
+ */
+public final class RollupPolicy {
+
+	public enum Mode {
+		RAW, ROLLUP, BOTH;
+
+		boolean keepRaw() {
+			return this != ROLLUP;
+		}
+
+		boolean rollup() {
+			return this != RAW;
+		}
+	}
+
+	private static final String DEFAULT_CATEGORY = "*";
+
+	private final Map<String, Mode> modeByCategory;
+	private final Mode defaultMode;
+
+	private RollupPolicy(final Map<String, Mode> modeByCategory) {
+		this.modeByCategory = modeByCategory;
+		defaultMode = modeByCategory.getOrDefault(DEFAULT_CATEGORY, Mode.RAW);
+	}
+
+	/**
+	 * @param policy the policy definition
+	 * @return the policy
+	 */
+	public static RollupPolicy parse(final String policy) {
+		final Map<String, Mode> modeByCategory = new HashMap<>();
+		if (policy != null && !policy.isBlank()) {
+			for (final String rule : policy.split(";")) {
+				final String[] categoryMode = rule.split(":");
+				if (categoryMode.length != 2) {
+					throw new IllegalArgumentException("Invalid rollup rule '" + rule + "', expected category:raw|rollup|both");
+				}
+				modeByCategory.put(categoryMode[0].trim(), Mode.valueOf(categoryMode[1].trim().toUpperCase(Locale.ROOT)));
+			}
+		}
+		return new RollupPolicy(modeByCategory);
+	}
+
+	/**
+	 * @param category the span category
+	 * @return if raw points are written for this category
+	 */
+	public boolean keepRaw(final String category) {
+		return modeByCategory.getOrDefault(category, defaultMode).keepRaw();
+	}
+
+	/**
+	 * @param category the span category
+	 * @return if rollup points are written for this category
+	 */
+	public boolean rollup(final String category) {
+		return modeByCategory.getOrDefault(category, defaultMode).rollup();
+	}
+}
@@ -0,0 +1,126 @@
+package io.vertigo.analytics.server.feeders.resilience;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.ServerMetrics;
+
+/**
+ * Circuit breaker of a sink.
+ * Opened after some consecutive failures : writes are short-circuited until a delay, then one probe write is allowed (half opened).
+ * State transitions are counted in ServerMetrics (prefix.breaker.opened, .halfOpened, .closed) and the current state is a gauge (0 closed, 1 half opened, 2 opened).
+ */
+public final class CircuitBreaker {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	public enum State {
+		CLOSED, HALF_OPEN, OPEN
+	}
+
+	private final String name;
+	private final int failureThreshold;
+	private final long openMillis;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean probeInFlight;
+
+	private final LongAdder openedCount;
+	private final LongAdder halfOpenedCount;
+	private final LongAdder closedCount;
+
+	/**
+	 * @param name the breaker name, used as metric prefix
+	 * @param settings the resilience settings
+	 */
+	public CircuitBreaker(final String name, final ResilienceSettings settings) {
+		this.name = name;
+		failureThreshold = settings.breakerThreshold();
+		openMillis = settings.breakerOpenMillis();
+		openedCount = ServerMetrics.counter(name + ".breaker.opened");
+		halfOpenedCount = ServerMetrics.counter(name + ".breaker.halfOpened");
+		closedCount = ServerMetrics.counter(name + ".breaker.closed");
+		ServerMetrics.gauge(name + ".breaker.state", () -> getState().ordinal());
+	}
+
+	/**
+	 * Ask for a write permit.
+	 * @return if the write may be done
+	 */
+	public synchronized boolean tryAcquire() {
+		switch (state) {
+			case CLOSED:
+				return true;
+			case OPEN:
+				if (System.currentTimeMillis() - openedAt < openMillis) {
+					return false;
+				}
+				transition(State.HALF_OPEN);
+				probeInFlight = true;
+				return true;
+			case HALF_OPEN:
+				if (probeInFlight) {
+					return false;
+				}
+				probeInFlight = true;
+				return true;
+			default:
+				throw new IllegalStateException("Unknown state " + state);
+		}
+	}
+
+	/**
+	 * The sink answered.
+	 */
+	public synchronized void onSuccess() {
+		consecutiveFailures = 0;
+		probeInFlight = false;
+		if (state != State.CLOSED) {
+			transition(State.CLOSED);
+		}
+	}
+
+	/**
+	 * The sink failed with a retryable error.
+	 */
+	public synchronized void onFailure() {
+		consecutiveFailures++;
+		probeInFlight = false;
+		if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+			openedAt = System.currentTimeMillis();
+			transition(State.OPEN);
+		}
+	}
+
+	/**
+	 * @return millis before a probe write is allowed (0 if not opened)
+	 */
+	public synchronized long remainingOpenMillis() {
+		return state == State.OPEN ? Math.max(0, openedAt + openMillis - System.currentTimeMillis()) : 0;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	private void transition(final State newState) {
+		LOGGER.warn("Circuit breaker {} : {} -> {}", name, state, newState);
+		state = newState;
+		switch (newState) {
+			case OPEN:
+				openedCount.increment();
+				break;
+			case HALF_OPEN:
+				halfOpenedCount.increment();
+				break;
+			case CLOSED:
+			default:
+				closedCount.increment();
+				break;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package io.vertigo.analytics.server.feeders.resilience;
+
+/**
+ * Settings of the sink resilience layer : retry backoff and circuit breaker.
+ *
+ * @param baseDelayMillis first retry delay (before jitter)
+ * @param maxDelayMillis max retry delay
+ * @param maxAttempts max write attempts of a batch, then it's dropped
+ * @param breakerThreshold consecutive retryable failures before the breaker opens
+ * @param breakerOpenMillis time the breaker stays opened before a probe write
+ */
+public record ResilienceSettings(
+		long baseDelayMillis,
+		long maxDelayMillis,
+		int maxAttempts,
+		int breakerThreshold,
+		long breakerOpenMillis) {
+
+	public ResilienceSettings {
+		if (baseDelayMillis <= 0 || maxDelayMillis < baseDelayMillis || maxAttempts <= 0 || breakerThreshold <= 0 || breakerOpenMillis <= 0) {
+			throw new IllegalArgumentException("invalid resilience settings");
+		}
+	}
+
+	/**
+	 * @return default settings : 500ms to 1min backoff, 10 attempts, breaker opened 30s after 5 failures
+	 */
+	public static ResilienceSettings defaults() {
+		return new ResilienceSettings(500, 60_000, 10, 5, 30_000);
+	}
+}
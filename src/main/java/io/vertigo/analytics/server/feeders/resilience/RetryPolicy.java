@@ -0,0 +1,51 @@
+package io.vertigo.analytics.server.feeders.resilience;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Retry policy of sink writes.
+ * Errors are classified as retryable or permanent, retries are delayed with a jittered exponential backoff.
+ */
+public final class RetryPolicy {
+
+	private final ResilienceSettings settings;
+	private final Predicate<Throwable> retryablePredicate;
+
+	/**
+	 * @param settings the resilience settings
+	 * @param retryablePredicate sink specific classification, true if the error is worth a retry
+	 */
+	public RetryPolicy(final ResilienceSettings settings, final Predicate<Throwable> retryablePredicate) {
+		this.settings = settings;
+		this.retryablePredicate = retryablePredicate;
+	}
+
+	/**
+	 * @param error the write error
+	 * @return if this error is worth a retry
+	 */
+	public boolean isRetryable(final Throwable error) {
+		return error == null || retryablePredicate.test(error);
+	}
+
+	/**
+	 * @param attempts number of attempts already done
+	 * @return if another attempt is allowed
+	 */
+	public boolean canRetry(final int attempts) {
+		return attempts < settings.maxAttempts();
+	}
+
+	/**
+	 * Exponential backoff with "full jitter" : random delay between base delay and min(max, base * 2^failures).
+	 * @param failures number of consecutive failures (1 for the first retry)
+	 * @return delay before next attempt in millis
+	 */
+	public long backoffMillis(final int failures) {
+		final int exponent = Math.min(Math.max(failures - 1, 0), 30);
+		final long ceil = Math.min(settings.maxDelayMillis(), settings.baseDelayMillis() << exponent);
+		return settings.baseDelayMillis() + ThreadLocalRandom.current().nextLong(Math.max(ceil - settings.baseDelayMillis(), 0) + 1);
+	}
+
+}
@@ -0,0 +1,246 @@
+package io.vertigo.analytics.server.feeders.sampling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import io.vertigo.analytics.server.HashUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.feeders.influxdb.rollup.LatencyHistogram;
+
+/**
+ * Tail based sampling of traces, evaluated on the complete decoded tree.
+ * A trace is kept if its root is slower than the configured percentile of its operation (app, category, name) on the previous window,
+ * if a span has an error tag, if a span has one of the kept categories, or else one time in N.
+ * The 1/N decision is a hash of the trace identity : feeders sharing a sampler (by name) keep the same traces.
+ * Samplers are shared by name : a definition with other settings (log4j2 reconfiguration) replaces the shared sampler.
+ * The decision is made once per trace : it is kept in a small cache by trace identity,
+ * so feeders sharing a sampler get the same decision, and the duration of the trace is recorded (and counted in metrics) once.
+ * Percentiles are kept for the most recently used operations only (MAX_OPERATIONS) : an evicted operation starts again without threshold.
+ * Metrics : sampling.[name].keptSlow, keptError, keptCategory, keptSampled, dropped, operations and evictedOperations.
+ */
+public final class TraceSampler {
+
+	public static final double DEFAULT_KEEP_PERCENTILE = 99;
+	public static final String DEFAULT_ERROR_TAGS = "exception,error";
+
+	private static final ConcurrentMap<String, TraceSampler> SAMPLERS = new ConcurrentHashMap<>();
+	private static final long WINDOW_MILLIS = 60_000;
+	private static final long MIN_COUNT_FOR_PERCENTILE = 100;
+	private static final int DECISION_CACHE_SIZE = 1 << 15; //recent traces, power of 2
+	private static final int DECISION_LOCKS = 64; //power of 2
+	private static final int MAX_OPERATIONS = 2_000; //a histogram is ~8KB
+
+	private final Settings settings;
+	private final int sampleOneIn;
+	private final double keepPercentile;
+	private final Set<String> keepCategories;
+	private final List<TagRule> errorTags;
+	//access order : least recently used first
+	private final LinkedHashMap<OperationKey, OperationLatency> latencies = new LinkedHashMap<>(256, 0.75f, true); //guarded by itself
+	private final long[] decisions = new long[DECISION_CACHE_SIZE]; //trace key, with the decision in the low bit (guarded by the slot lock)
+	private final Object[] decisionLocks = new Object[DECISION_LOCKS];
+
+	private final LongAdder keptSlow;
+	private final LongAdder keptError;
+	private final LongAdder keptCategory;
+	private final LongAdder keptSampled;
+	private final LongAdder dropped;
+	private final LongAdder evictedOperations;
+
+	private TraceSampler(final String name, final Settings settings) {
+		if (settings.sampleOneIn() <= 0) {
+			throw new IllegalArgumentException("sampleOneIn must be positive");
+		}
+		this.settings = settings;
+		sampleOneIn = settings.sampleOneIn();
+		keepPercentile = settings.keepPercentile();
+		keepCategories = settings.keepCategories();
+		errorTags = settings.errorTags();
+		for (int i = 0; i < DECISION_LOCKS; i++) {
+			decisionLocks[i] = new Object();
+		}
+		final String metricPrefix = "sampling." + name;
+		keptSlow = ServerMetrics.counter(metricPrefix + ".keptSlow");
+		keptError = ServerMetrics.counter(metricPrefix + ".keptError");
+		keptCategory = ServerMetrics.counter(metricPrefix + ".keptCategory");
+		keptSampled = ServerMetrics.counter(metricPrefix + ".keptSampled");
+		dropped = ServerMetrics.counter(metricPrefix + ".dropped");
+		evictedOperations = ServerMetrics.counter(metricPrefix + ".evictedOperations");
+		ServerMetrics.gauge(metricPrefix + ".operations", this::getOperationCount);
+	}
+
+	/**
+	 * @param name name of the sampler, feeders with the same sampler name share it
+	 * @param sampleOneIn N of the 1/N sampling of ordinary traces (1 keeps everything)
+	 * @param keepPercentile traces slower than this percentile of their operation are kept (0 to disable)
+	 * @param keepCategories categories always kept, separated by ','
+	 * @param errorTags tags marking an error, separated by ',' : "key" if present, or "key=value"
+	 * @return the sampler of this name, replaced if its settings changed
+	 */
+	public static TraceSampler getOrCreate(final String name, final int sampleOneIn, final double keepPercentile, final String keepCategories, final String errorTags) {
+		final Settings settings = new Settings(sampleOneIn, keepPercentile, splitToSet(keepCategories), parseTagRules(errorTags));
+		return SAMPLERS.compute(name, (n, sampler) -> sampler != null && sampler.settings.equals(settings) ? sampler : new TraceSampler(n, settings));
+	}
+
+	private static Set<String> splitToSet(final String values) {
+		if (values == null || values.isBlank()) {
+			return Set.of();
+		}
+		return Arrays.stream(values.split(",")).map(String::trim).filter(value -> !value.isEmpty()).collect(Collectors.toSet());
+	}
+
+	private static List<TagRule> parseTagRules(final String errorTags) {
+		final List<TagRule> rules = new ArrayList<>();
+		for (final String errorTag : splitToSet(errorTags)) {
+			final int equalsIndex = errorTag.indexOf('=');
+			rules.add(equalsIndex < 0
+					? new TagRule(errorTag, null)
+					: new TagRule(errorTag.substring(0, equalsIndex).trim(), errorTag.substring(equalsIndex + 1).trim()));
+		}
+		return rules;
+	}
+
+	/**
+	 * @param appName the app
+	 * @param host the location
+	 * @param process the root span
+	 * @return if this trace must be written to the sinks (same answer for each call with the same trace)
+	 */
+	public boolean keep(final String appName, final String host, final TraceSpan process) {
+		final long traceKey = traceKey(appName, host, process);
+		final int slot = (int) (traceKey >>> 1) & (DECISION_CACHE_SIZE - 1);
+		synchronized (decisionLocks[slot & (DECISION_LOCKS - 1)]) {
+			final long decision = decisions[slot];
+			if ((decision & ~1L) == traceKey) {
+				return (decision & 1L) == 1L;
+			}
+			final boolean keep = decide(appName, host, process);
+			decisions[slot] = traceKey | (keep ? 1L : 0L);
+			return keep;
+		}
+	}
+
+	/**
+	 * @return identity of the trace, with a free low bit, never 0
+	 */
+	private static long traceKey(final String appName, final String host, final TraceSpan process) {
+		final long traceKey = HashUtil.hash(appName, host, process.getCategory(), process.getName(), Long.toString(process.getStart()), Long.toString(process.getEnd())) & ~1L;
+		return traceKey != 0 ? traceKey : 2;
+	}
+
+	/**
+	 * Evaluate the keep rules. Also records the root duration for the percentile rule.
+	 */
+	private boolean decide(final String appName, final String host, final TraceSpan process) {
+		if (keepPercentile > 0) {
+			final long threshold = getOperationLatency(new OperationKey(appName, process.getCategory(), process.getName()))
+					.recordAndGetThreshold(process.getDurationMillis(), keepPercentile);
+			if (process.getDurationMillis() > threshold) {
+				keptSlow.increment();
+				return true;
+			}
+		}
+		if (hasErrorOrKeptCategory(process)) {
+			return true;
+		}
+		if (Math.floorMod(HashUtil.hash(appName, host, process.getName(), Long.toString(process.getStart())), sampleOneIn) == 0) {
+			keptSampled.increment();
+			return true;
+		}
+		dropped.increment();
+		return false;
+	}
+
+	private OperationLatency getOperationLatency(final OperationKey operationKey) {
+		synchronized (latencies) {
+			OperationLatency operationLatency = latencies.get(operationKey);
+			if (operationLatency == null) {
+				if (latencies.size() >= MAX_OPERATIONS) {
+					final Iterator<OperationLatency> leastRecentlyUsed = latencies.values().iterator();
+					leastRecentlyUsed.next();
+					leastRecentlyUsed.remove();
+					evictedOperations.increment();
+				}
+				operationLatency = new OperationLatency();
+				latencies.put(operationKey, operationLatency);
+			}
+			return operationLatency;
+		}
+	}
+
+	private long getOperationCount() {
+		synchronized (latencies) {
+			return latencies.size();
+		}
+	}
+
+	private boolean hasErrorOrKeptCategory(final TraceSpan span) {
+		if (keepCategories.contains(span.getCategory())) {
+			keptCategory.increment();
+			return true;
+		}
+		if (hasErrorTag(span.getTags())) {
+			keptError.increment();
+			return true;
+		}
+		for (final TraceSpan childSpan : span.getChildSpans()) {
+			if (hasErrorOrKeptCategory(childSpan)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean hasErrorTag(final Map<String, String> tags) {
+		for (final TagRule errorTag : errorTags) {
+			final String value = tags.get(errorTag.key());
+			if (value != null && (errorTag.value() == null || errorTag.value().equals(value))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private record TagRule(String key, String value) {
+		//only data
+	}
+
+	private record Settings(int sampleOneIn, double keepPercentile, Set<String> keepCategories, List<TagRule> errorTags) {
+		//only data
+	}
+
+	private record OperationKey(String appName, String category, String name) {
+		//only data
+	}
+
+	/**
+	 * Latencies since the last threshold update, and the percentile threshold computed from the previous window(s).
+	 * A window with too few traces is merged with the next one.
+	 */
+	private static final class OperationLatency {
+		private long windowIndex = System.currentTimeMillis() / WINDOW_MILLIS;
+		private LatencyHistogram current = new LatencyHistogram();
+		private long threshold = Long.MAX_VALUE; //nothing is slow until enough traces are known
+
+		synchronized long recordAndGetThreshold(final long durationMillis, final double percentile) {
+			final long nowIndex = System.currentTimeMillis() / WINDOW_MILLIS;
+			if (nowIndex != windowIndex && current.getTotalCount() >= MIN_COUNT_FOR_PERCENTILE) {
+				threshold = current.valueAtPercentile(percentile);
+				current = new LatencyHistogram();
+				windowIndex = nowIndex;
+			}
+			current.record(durationMillis);
+			return threshold;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package io.vertigo.analytics.server.feeders.tempo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.resilience.CircuitBreaker;
+import io.vertigo.analytics.server.feeders.resilience.ResilienceSettings;
+import io.vertigo.analytics.server.feeders.resilience.RetryPolicy;
+
+/**
+ * SpanExporter decorator adding the sink resilience layer to the Tempo feeder.
+ * Failed exports are retried with a jittered exponential backoff, while the circuit breaker is opened spans are kept in a bounded buffer.
+ * Exporters report failures as a result code, an exception thrown by the exporter is handled as a failed result : every failure is considered retryable.
+ * On shutdown, the buffered spans are exported once more, and counted as dropped if this last attempt fails.
+ */
+public final class ResilientSpanExporter implements SpanExporter {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final long SHUTDOWN_EXPORT_TIMEOUT_SECONDS = 10;
+
+	private final SpanExporter delegate;
+	private final RetryPolicy retryPolicy;
+	private final CircuitBreaker circuitBreaker;
+	private final int maxBufferedSpans;
+
+	private final Deque<PendingSpans> buffer = new ArrayDeque<>();
+	private int bufferedSpans;
+	private int consecutiveFailures;
+	private boolean retryScheduled;
+	private boolean shutdown;
+	private final ScheduledExecutorService retryScheduler;
+
+	private final LongAdder exported;
+	private final LongAdder failed;
+	private final LongAdder dropped;
+
+	/**
+	 * @param name name of the feeder, used as metric prefix
+	 * @param delegate the real exporter
+	 * @param settings the resilience settings
+	 * @param maxBufferedSpans max spans kept for retry
+	 */
+	public ResilientSpanExporter(final String name, final SpanExporter delegate, final ResilienceSettings settings, final int maxBufferedSpans) {
+		this.delegate = delegate;
+		this.maxBufferedSpans = maxBufferedSpans;
+		retryPolicy = new RetryPolicy(settings, error -> true);
+		final String metricPrefix = "tempo." + name;
+		circuitBreaker = new CircuitBreaker(metricPrefix + ".sink", settings);
+		exported = ServerMetrics.counter(metricPrefix + ".exported");
+		failed = ServerMetrics.counter(metricPrefix + ".failed");
+		dropped = ServerMetrics.counter(metricPrefix + ".dropped");
+		ServerMetrics.gauge(metricPrefix + ".buffered", this::getBufferedSpans);
+		retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, name + "-retry");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public CompletableResultCode export(final Collection<SpanData> spans) {
+		if (!circuitBreaker.tryAcquire()) {
+			bufferForRetry(spans, 0);
+			return CompletableResultCode.ofSuccess(); //kept for later
+		}
+		return doExport(spans, 1);
+	}
+
+	private CompletableResultCode doExport(final Collection<SpanData> spans, final int attempts) {
+		final CompletableResultCode result = exportOnce(spans);
+		result.whenComplete(() -> {
+			if (result.isSuccess()) {
+				circuitBreaker.onSuccess();
+				exported.add(spans.size());
+				onExportSuccess();
+			} else {
+				circuitBreaker.onFailure();
+				failed.add(spans.size());
+				onExportFailure(spans, attempts);
+			}
+		});
+		return result;
+	}
+
+	private CompletableResultCode exportOnce(final Collection<SpanData> spans) {
+		try {
+			return delegate.export(spans);
+		} catch (final RuntimeException e) {
+			LOGGER.error("Error while exporting {} spans", spans.size(), e);
+			return CompletableResultCode.ofFailure();
+		}
+	}
+
+	private synchronized void onExportSuccess() {
+		consecutiveFailures = 0;
+		if (!buffer.isEmpty()) {
+			scheduleRetry(0);
+		}
+	}
+
+	private synchronized void onExportFailure(final Collection<SpanData> spans, final int attempts) {
+		consecutiveFailures++;
+		if (retryPolicy.canRetry(attempts)) {
+			bufferForRetry(spans, attempts);
+		} else {
+			LOGGER.error("Export of {} spans failed {} times, they are dropped", spans.size(), attempts);
+			dropped.add(spans.size());
+		}
+	}
+
+	private synchronized void bufferForRetry(final Collection<SpanData> spans, final int attempts) {
+		if (shutdown || bufferedSpans + spans.size() > maxBufferedSpans) {
+			dropped.add(spans.size());
+			return;
+		}
+		buffer.addLast(new PendingSpans(attempts, spans));
+		bufferedSpans += spans.size();
+		scheduleRetry(Math.max(retryPolicy.backoffMillis(consecutiveFailures), circuitBreaker.remainingOpenMillis()));
+	}
+
+	private synchronized void scheduleRetry(final long delayMillis) {
+		if (!retryScheduled && !retryScheduler.isShutdown()) {
+			retryScheduled = true;
+			retryScheduler.schedule(this::retryBuffered, delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void retryBuffered() {
+		final PendingSpans pendingSpans;
+		synchronized (this) {
+			retryScheduled = false;
+			if (buffer.isEmpty()) {
+				return;
+			}
+			if (!circuitBreaker.tryAcquire()) {
+				scheduleRetry(Math.max(circuitBreaker.remainingOpenMillis(), retryPolicy.backoffMillis(consecutiveFailures)));
+				return;
+			}
+			pendingSpans = buffer.pollFirst();
+			bufferedSpans -= pendingSpans.spans().size();
+		}
+		doExport(pendingSpans.spans(), pendingSpans.attempts() + 1);
+	}
+
+	private synchronized long getBufferedSpans() {
+		return bufferedSpans;
+	}
+
+	@Override
+	public CompletableResultCode flush() {
+		return delegate.flush();
+	}
+
+	@Override
+	public CompletableResultCode shutdown() {
+		retryScheduler.shutdownNow();
+		final List<SpanData> lastSpans = new ArrayList<>();
+		synchronized (this) {
+			shutdown = true;
+			buffer.forEach(pendingSpans -> lastSpans.addAll(pendingSpans.spans()));
+			buffer.clear();
+			bufferedSpans = 0;
+		}
+		if (!lastSpans.isEmpty()) {
+			//last attempt, without retry
+			final CompletableResultCode result = exportOnce(lastSpans).join(SHUTDOWN_EXPORT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			if (result.isSuccess()) {
+				exported.add(lastSpans.size());
+			} else {
+				LOGGER.error("Export of {} buffered spans failed on shutdown, they are dropped", lastSpans.size());
+				dropped.add(lastSpans.size());
+			}
+		}
+		return delegate.shutdown();
+	}
+
+	private record PendingSpans(int attempts, Collection<SpanData> spans) {
+		//only data
+	}
+}
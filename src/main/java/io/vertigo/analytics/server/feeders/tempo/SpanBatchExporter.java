@@ -0,0 +1,130 @@
+package io.vertigo.analytics.server.feeders.tempo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.vertigo.analytics.server.ServerMetrics;
+
+/**
+ * Queues ended spans and hands them to the exporter in batches, from one exporter thread, with at most N export requests in flight.
+ * A batch is exported when it is full, or after the schedule delay. Spans are dropped when the queue is full.
+ * The exporter must complete its requests within the export timeout (its own timeout is set from the same settings).
+ * Metrics : tempo.[name].dropped (shared with the resilient exporter), queueDropped, queued and exportsInFlight.
+ */
+public final class SpanBatchExporter {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final SpanExporter spanExporter;
+	private final SpanExportSettings settings;
+	private final BlockingQueue<SpanData> queue;
+	private final Semaphore exportPermits;
+	private final LongAdder dropped;
+	private final LongAdder queueDropped;
+	private final Thread exportThread;
+	private volatile boolean active = true;
+
+	/**
+	 * @param name name of the feeder, used as metric prefix
+	 * @param spanExporter the exporter
+	 * @param settings the export settings
+	 */
+	public SpanBatchExporter(final String name, final SpanExporter spanExporter, final SpanExportSettings settings) {
+		this.spanExporter = spanExporter;
+		this.settings = settings;
+		queue = new ArrayBlockingQueue<>(settings.maxQueueSize());
+		exportPermits = new Semaphore(settings.maxConcurrentExports());
+		final String metricPrefix = "tempo." + name;
+		dropped = ServerMetrics.counter(metricPrefix + ".dropped");
+		queueDropped = ServerMetrics.counter(metricPrefix + ".queueDropped");
+		ServerMetrics.gauge(metricPrefix + ".queued", queue::size);
+		ServerMetrics.gauge(metricPrefix + ".exportsInFlight", () -> settings.maxConcurrentExports() - exportPermits.availablePermits());
+		exportThread = new Thread(this::exportLoop, name + "-export");
+		exportThread.setDaemon(true);
+		exportThread.start();
+	}
+
+	/**
+	 * @param spans ended spans to export
+	 */
+	public void add(final Collection<SpanData> spans) {
+		for (final SpanData span : spans) {
+			if (!queue.offer(span)) {
+				queueDropped.increment();
+				dropped.increment();
+			}
+		}
+	}
+
+	private void exportLoop() {
+		List<SpanData> batch = new ArrayList<>(settings.batchSize());
+		while (active) {
+			try {
+				final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.scheduleDelayMillis());
+				while (batch.size() < settings.batchSize()) {
+					final SpanData span = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+					if (span == null) {
+						break; //delay elapsed
+					}
+					batch.add(span);
+					queue.drainTo(batch, settings.batchSize() - batch.size());
+				}
+				if (!batch.isEmpty()) {
+					exportPermits.acquire();
+					export(batch);
+					batch = new ArrayList<>(settings.batchSize());
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				active = false;
+			}
+		}
+		//shutdown : last spans, waiting for the exports in flight
+		queue.drainTo(batch);
+		if (!batch.isEmpty()) {
+			exportPermits.acquireUninterruptibly();
+			export(batch);
+		}
+		exportPermits.acquireUninterruptibly(settings.maxConcurrentExports());
+	}
+
+	/**
+	 * @param batch spans to export, the caller has an export permit
+	 */
+	private void export(final List<SpanData> batch) {
+		try {
+			final CompletableResultCode result = spanExporter.export(batch);
+			result.whenComplete(exportPermits::release);
+		} catch (final RuntimeException e) {
+			exportPermits.release();
+			LOGGER.error("Error while exporting {} spans", batch.size(), e);
+		}
+	}
+
+	/**
+	 * Export the queued spans, then shutdown the exporter.
+	 * @return the result of the exporter shutdown
+	 */
+	public CompletableResultCode shutdown() {
+		active = false;
+		exportThread.interrupt();
+		try {
+			exportThread.join(settings.exportTimeoutMillis());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return spanExporter.shutdown();
+	}
+}
@@ -0,0 +1,37 @@
+package io.vertigo.analytics.server.feeders.tempo;
+
+/**
+ * Settings of the batched span export of a Tempo feeder.
+ *
+ * @param maxQueueSize max spans waiting for export (extra spans are dropped)
+ * @param batchSize max spans sent in one export request
+ * @param scheduleDelayMillis max wait for a batch to be full
+ * @param exportTimeoutMillis timeout of one export request
+ * @param maxConcurrentExports max export requests in flight
+ */
+public record SpanExportSettings(
+		int maxQueueSize,
+		int batchSize,
+		long scheduleDelayMillis,
+		long exportTimeoutMillis,
+		int maxConcurrentExports) {
+
+	public static final int DEFAULT_MAX_QUEUE_SIZE = 100_000;
+	public static final int DEFAULT_BATCH_SIZE = 512;
+	public static final long DEFAULT_SCHEDULE_DELAY_MILLIS = 1_000;
+	public static final long DEFAULT_EXPORT_TIMEOUT_MILLIS = 30_000;
+	public static final int DEFAULT_MAX_CONCURRENT_EXPORTS = 1;
+
+	public SpanExportSettings {
+		if (maxQueueSize <= 0 || batchSize <= 0 || scheduleDelayMillis <= 0 || exportTimeoutMillis <= 0 || maxConcurrentExports <= 0) {
+			throw new IllegalArgumentException("maxQueueSize, batchSize, scheduleDelayMillis, exportTimeoutMillis and maxConcurrentExports must be positive");
+		}
+	}
+
+	/**
+	 * @return default export settings
+	 */
+	public static SpanExportSettings defaults() {
+		return new SpanExportSettings(DEFAULT_MAX_QUEUE_SIZE, DEFAULT_BATCH_SIZE, DEFAULT_SCHEDULE_DELAY_MILLIS, DEFAULT_EXPORT_TIMEOUT_MILLIS, DEFAULT_MAX_CONCURRENT_EXPORTS);
+	}
+}
@@ -0,0 +1,222 @@
+package io.vertigo.analytics.server.feeders.tempo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanId;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceId;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.vertigo.analytics.server.HashUtil;
+import io.vertigo.analytics.server.TraceSpan;
+
+/**
+ * Converts a TraceSpan tree into ended spans, with deterministic ids : the trace id is a hash of the root identity (app, host, name, start),
+ * the span id a hash of its parent id and its position among its siblings (xxHash64 style steps over the fields, no string building).
+ * A resent or replayed TraceSpan gets the same ids, and subtrees are converted independently : with a pool, large trees are converted in parallel.
+ * Each span has the counts and durations by category of its sub spans ([category]_count and [category]_duration), as written by the InfluxDB feeder :
+ * durations of spans nested in a span of the same category (the root excepted, anywhere above them in the trace) are not added twice.
+ */
+public final class TraceSpanConverter {
+
+	private static final AttributeKey<String> CATEGORY = AttributeKey.stringKey("category");
+	private static final AttributeKey<String> SERVICE_NAMESPACE = AttributeKey.stringKey("service.namespace");
+	private static final AttributeKey<String> SERVICE_NAME = AttributeKey.stringKey("service.name");
+	private static final AttributeKey<String> APP_NAME = AttributeKey.stringKey("vertigo.app.name");
+	private static final AttributeKey<String> HOST = AttributeKey.stringKey("vertigo.host");
+
+	private static final int PARALLEL_MIN_CHILDS = 8; //smaller subtrees are converted by the current thread
+
+	private final Resource resource;
+	private final InstrumentationScopeInfo instrumentationScopeInfo;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param resource resource of the spans
+	 * @param instrumentationScopeInfo instrumentation scope of the spans
+	 * @param pool pool of the parallel conversions (null to convert in the calling thread)
+	 */
+	public TraceSpanConverter(final Resource resource, final InstrumentationScopeInfo instrumentationScopeInfo, final ForkJoinPool pool) {
+		this.resource = resource;
+		this.instrumentationScopeInfo = instrumentationScopeInfo;
+		this.pool = pool;
+	}
+
+	/**
+	 * @param process the root TraceSpan
+	 * @param appName the app
+	 * @param host the host
+	 * @return the spans of this tree, childs first
+	 */
+	public List<SpanData> convert(final TraceSpan process, final String appName, final String host) {
+		long state = HashUtil.seed(0);
+		state = HashUtil.combine(state, appName);
+		state = HashUtil.combine(state, host);
+		state = HashUtil.combine(state, process.getName());
+		state = HashUtil.combine(state, process.getStart());
+		final long traceIdHigh = HashUtil.avalanche(state);
+		final long traceIdLow = HashUtil.avalanche(HashUtil.combine(state, process.getEnd()));
+		final String traceId = TraceId.fromLongs(traceIdHigh, traceIdLow);
+		final long rootSpanId = nonZero(traceIdLow);
+		final List<SpanData> spans = new ArrayList<>();
+		final CategoryStats rootStats = pool != null && process.getChildSpans().size() >= PARALLEL_MIN_CHILDS
+				? pool.invoke(new ConvertChildsTask(process, traceId, rootSpanId, null, spans))
+				: convertChilds(process, traceId, rootSpanId, null, spans);
+		final AttributesBuilder rootAttributes = spanAttributes(process, rootStats);
+		rootAttributes.put(APP_NAME, appName);
+		rootAttributes.put(HOST, host);
+		spans.add(toSpanData(process, traceId, rootSpanId, SpanContext.getInvalid(), rootAttributes.build()));
+		return spans;
+	}
+
+	/**
+	 * @param upperCategories categories of this span and its parents, the root excepted (null for the root)
+	 * @return stats of the sub spans of this span
+	 */
+	private CategoryStats convertChilds(final TraceSpan process, final String traceId, final long spanId, final CategoryPath upperCategories, final List<SpanData> spans) {
+		final CategoryStats stats = new CategoryStats();
+		final List<TraceSpan> childSpans = process.getChildSpans();
+		if (childSpans.isEmpty()) {
+			return stats;
+		}
+		final SpanContext parentSpanContext = SpanContext.create(traceId, SpanId.fromLong(spanId), TraceFlags.getSampled(), TraceState.getDefault());
+		for (int i = 0; i < childSpans.size(); i++) {
+			final TraceSpan child = childSpans.get(i);
+			final long childSpanId = childSpanId(spanId, i);
+			final CategoryStats childStats = convertChilds(child, traceId, childSpanId, new CategoryPath(child.getCategory(), upperCategories), spans);
+			spans.add(toSpanData(child, traceId, childSpanId, parentSpanContext, spanAttributes(child, childStats).build()));
+			stats.addChild(child, !CategoryPath.contains(upperCategories, child.getCategory()), childStats);
+		}
+		return stats;
+	}
+
+	private static long childSpanId(final long parentSpanId, final int position) {
+		return nonZero(HashUtil.avalanche(HashUtil.combine(HashUtil.seed(parentSpanId), position)));
+	}
+
+	/**
+	 * Parallel conversion of the childs of a span : each child subtree is a task, spans are added in the sequential order.
+	 */
+	private final class ConvertChildsTask extends RecursiveTask<CategoryStats> {
+		private static final long serialVersionUID = 1L;
+		private final TraceSpan process;
+		private final String traceId;
+		private final long spanId;
+		private final CategoryPath upperCategories;
+		private final List<SpanData> spans;
+
+		ConvertChildsTask(final TraceSpan process, final String traceId, final long spanId, final CategoryPath upperCategories, final List<SpanData> spans) {
+			this.process = process;
+			this.traceId = traceId;
+			this.spanId = spanId;
+			this.upperCategories = upperCategories;
+			this.spans = spans;
+		}
+
+		@Override
+		protected CategoryStats compute() {
+			final List<TraceSpan> childSpans = process.getChildSpans();
+			if (childSpans.size() < PARALLEL_MIN_CHILDS) {
+				return convertChilds(process, traceId, spanId, upperCategories, spans);
+			}
+			final List<ConvertChildsTask> tasks = new ArrayList<>(childSpans.size());
+			for (int i = 0; i < childSpans.size(); i++) {
+				final TraceSpan child = childSpans.get(i);
+				tasks.add(new ConvertChildsTask(child, traceId, childSpanId(spanId, i), new CategoryPath(child.getCategory(), upperCategories), new ArrayList<>()));
+			}
+			invokeAll(tasks);
+			final SpanContext parentSpanContext = SpanContext.create(traceId, SpanId.fromLong(spanId), TraceFlags.getSampled(), TraceState.getDefault());
+			final CategoryStats stats = new CategoryStats();
+			for (final ConvertChildsTask task : tasks) {
+				final CategoryStats childStats = task.join();
+				spans.addAll(task.spans);
+				spans.add(toSpanData(task.process, traceId, task.spanId, parentSpanContext, spanAttributes(task.process, childStats).build()));
+				stats.addChild(task.process, !CategoryPath.contains(upperCategories, task.process.getCategory()), childStats);
+			}
+			return stats;
+		}
+	}
+
+	private SpanData toSpanData(final TraceSpan process, final String traceId, final long spanId, final SpanContext parentSpanContext, final Attributes attributes) {
+		return new TraceSpanData(
+				process.getName(),
+				SpanContext.create(traceId, SpanId.fromLong(spanId), TraceFlags.getSampled(), TraceState.getDefault()),
+				parentSpanContext,
+				TimeUnit.MILLISECONDS.toNanos(process.getStart()),
+				TimeUnit.MILLISECONDS.toNanos(process.getEnd()),
+				attributes,
+				resource,
+				instrumentationScopeInfo);
+	}
+
+	private static AttributesBuilder spanAttributes(final TraceSpan process, final CategoryStats stats) {
+		final AttributesBuilder attributesBuilder = Attributes.builder();
+		process.getMeasures().forEach((key, value) -> attributesBuilder.put(key, value.doubleValue()));
+		process.getMetadatas().forEach((key, value) -> attributesBuilder.put(singleLine(key), singleLine(value)));
+		process.getTags().forEach((key, value) -> attributesBuilder.put(singleLine(key), singleLine(value)));
+		stats.counts.forEach((category, count) -> attributesBuilder.put(category + "_count", count));
+		stats.durations.forEach((category, duration) -> attributesBuilder.put(category + "_duration", duration));
+		attributesBuilder.put(CATEGORY, process.getCategory());
+		attributesBuilder.put(SERVICE_NAMESPACE, process.getCategory());
+		attributesBuilder.put(SERVICE_NAME, process.getName());
+		return attributesBuilder;
+	}
+
+	private static String singleLine(final String string) {
+		return string != null && string.indexOf('\n') >= 0 ? string.replace('\n', ' ') : string;
+	}
+
+	private static long nonZero(final long id) {
+		return id != 0 ? id : 1; //0 is the invalid span id
+	}
+
+	/**
+	 * Categories of a span and its parents (immutable : shared by the parallel tasks).
+	 */
+	private record CategoryPath(String category, CategoryPath parent) {
+
+		static boolean contains(final CategoryPath path, final String category) {
+			for (CategoryPath current = path; current != null; current = current.parent()) {
+				if (Objects.equals(current.category(), category)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Counts and durations by category of the sub spans of a span.
+	 */
+	private static final class CategoryStats {
+		private final Map<String, Long> counts = new HashMap<>();
+		private final Map<String, Long> durations = new HashMap<>();
+
+		/**
+		 * @param child a direct child
+		 * @param addDuration if the child duration is added (not nested in a span of its category)
+		 * @param childStats stats of the sub spans of this child
+		 */
+		void addChild(final TraceSpan child, final boolean addDuration, final CategoryStats childStats) {
+			counts.merge(child.getCategory(), 1L, Long::sum);
+			childStats.counts.forEach((category, count) -> counts.merge(category, count, Long::sum));
+			childStats.durations.forEach((category, duration) -> durations.merge(category, duration, Long::sum));
+			if (addDuration) {
+				durations.merge(child.getCategory(), child.getDurationMillis(), Long::sum);
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package io.vertigo.analytics.server.feeders.tempo;
+
+import java.util.List;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+
+/**
+ * Ended span built from a TraceSpan, exported as is (no tracer, no context).
+ *
+ * @param name the span name
+ * @param spanContext ids of this span
+ * @param parentSpanContext ids of the parent span (invalid for a root)
+ * @param startEpochNanos start
+ * @param endEpochNanos end
+ * @param attributes the attributes
+ * @param resource the resource
+ * @param instrumentationScopeInfo the instrumentation scope
+ */
+record TraceSpanData(
+		String name,
+		SpanContext spanContext,
+		SpanContext parentSpanContext,
+		long startEpochNanos,
+		long endEpochNanos,
+		Attributes attributes,
+		Resource resource,
+		InstrumentationScopeInfo instrumentationScopeInfo) implements SpanData {
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public SpanKind getKind() {
+		return SpanKind.INTERNAL;
+	}
+
+	@Override
+	public SpanContext getSpanContext() {
+		return spanContext;
+	}
+
+	@Override
+	public SpanContext getParentSpanContext() {
+		return parentSpanContext;
+	}
+
+	@Override
+	public StatusData getStatus() {
+		return StatusData.unset();
+	}
+
+	@Override
+	public long getStartEpochNanos() {
+		return startEpochNanos;
+	}
+
+	@Override
+	public Attributes getAttributes() {
+		return attributes;
+	}
+
+	@Override
+	public List<EventData> getEvents() {
+		return List.of();
+	}
+
+	@Override
+	public List<LinkData> getLinks() {
+		return List.of();
+	}
+
+	@Override
+	public long getEndEpochNanos() {
+		return endEpochNanos;
+	}
+
+	@Override
+	public boolean hasEnded() {
+		return true;
+	}
+
+	@Override
+	public int getTotalRecordedEvents() {
+		return 0;
+	}
+
+	@Override
+	public int getTotalRecordedLinks() {
+		return 0;
+	}
+
+	@Override
+	public int getTotalAttributeCount() {
+		return attributes.size();
+	}
+
+	@Override
+	@Deprecated
+	public InstrumentationLibraryInfo getInstrumentationLibraryInfo() {
+		return InstrumentationLibraryInfo.create(instrumentationScopeInfo.getName(), instrumentationScopeInfo.getVersion());
+	}
+
+	@Override
+	public InstrumentationScopeInfo getInstrumentationScopeInfo() {
+		return instrumentationScopeInfo;
+	}
+
+	@Override
+	public Resource getResource() {
+		return resource;
+	}
+}
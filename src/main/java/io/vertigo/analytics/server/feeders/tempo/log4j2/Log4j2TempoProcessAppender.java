@@ -2,10 +2,8 @@ package io.vertigo.analytics.server.feeders.tempo.log4j2;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Stack;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.Core;
@@ -25,68 +23,136 @@ import com.google.gson.JsonSyntaxException;
 
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
-import io.opentelemetry.api.common.AttributesBuilder;
-import io.opentelemetry.api.trace.Span;
-import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.exporter.jaeger.JaegerGrpcSpanExporter;
-import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfoBuilder;
 import io.opentelemetry.sdk.resources.Resource;
-import io.opentelemetry.sdk.trace.SdkTracerProvider;
-import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
 import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.LogMessageSink;
 import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.feeders.resilience.ResilienceSettings;
+import io.vertigo.analytics.server.feeders.sampling.TraceSampler;
+import io.vertigo.analytics.server.feeders.tempo.ResilientSpanExporter;
+import io.vertigo.analytics.server.feeders.tempo.SpanBatchExporter;
+import io.vertigo.analytics.server.feeders.tempo.SpanExportSettings;
+import io.vertigo.analytics.server.feeders.tempo.TraceSpanConverter;
 import io.vertigo.analytics.server.json.AProcessJsonDeserializer;
 import io.vertigo.core.lang.json.CoreJsonAdapters;
 
 @Plugin(name = "TempoProcess", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE)
-public class Log4j2TempoProcessAppender extends AbstractAppender {
+public class Log4j2TempoProcessAppender extends AbstractAppender implements LogMessageSink<TraceSpan> {
 
 	private static final Gson GSON = CoreJsonAdapters.addCoreGsonConfig(new GsonBuilder(), false)
 			.registerTypeAdapter(TraceSpan.class, new AProcessJsonDeserializer())
 			.create();
-	private final OpenTelemetrySdk openTelemetry;
+	private static final int MAX_BUFFERED_SPANS = 100_000;
+	private final SpanBatchExporter spanBatchExporter;
+	private final TraceSpanConverter traceSpanConverter;
+	private final ForkJoinPool conversionPool; //null if converted by the appending thread
+	private final TraceSampler traceSampler; //null if every trace is exported
 
 	@PluginFactory
 	public static Log4j2TempoProcessAppender createAppender(
 			@PluginAttribute("name") final String name,
 			@PluginConfiguration final Configuration config,
 			@PluginElement("Filter") final Filter filter,
-			@PluginAttribute("tempoUrl") final String tempoUrl) {
+			@PluginAttribute("tempoUrl") final String tempoUrl,
+			@PluginAttribute("sampler") final String sampler,
+			@PluginAttribute(value = "sampleOneIn", defaultInt = 1) final int sampleOneIn,
+			@PluginAttribute(value = "keepPercentile", defaultDouble = TraceSampler.DEFAULT_KEEP_PERCENTILE) final double keepPercentile,
+			@PluginAttribute("keepCategories") final String keepCategories,
+			@PluginAttribute(value = "errorTags", defaultString = TraceSampler.DEFAULT_ERROR_TAGS) final String errorTags,
+			@PluginAttribute(value = "exporter", defaultString = "jaeger") final String exporter,
+			@PluginAttribute(value = "maxQueueSize", defaultInt = SpanExportSettings.DEFAULT_MAX_QUEUE_SIZE) final int maxQueueSize,
+			@PluginAttribute(value = "batchSize", defaultInt = SpanExportSettings.DEFAULT_BATCH_SIZE) final int batchSize,
+			@PluginAttribute(value = "scheduleDelayMillis", defaultLong = SpanExportSettings.DEFAULT_SCHEDULE_DELAY_MILLIS) final long scheduleDelayMillis,
+			@PluginAttribute(value = "exportTimeoutMillis", defaultLong = SpanExportSettings.DEFAULT_EXPORT_TIMEOUT_MILLIS) final long exportTimeoutMillis,
+			@PluginAttribute(value = "maxConcurrentExports", defaultInt = SpanExportSettings.DEFAULT_MAX_CONCURRENT_EXPORTS) final int maxConcurrentExports,
+			@PluginAttribute(value = "conversionThreads", defaultInt = 1) final int conversionThreads) {
 		if (name == null) {
 			LOGGER.error("A name for the Appender must be specified");
 			return null;
 		}
-		return new Log4j2TempoProcessAppender(name, filter, config, tempoUrl);
+		return new Log4j2TempoProcessAppender(name, filter, config, tempoUrl,
+				sampler != null ? TraceSampler.getOrCreate(sampler, sampleOneIn, keepPercentile, keepCategories, errorTags) : null,
+				exporter,
+				new SpanExportSettings(maxQueueSize, batchSize, scheduleDelayMillis, exportTimeoutMillis, maxConcurrentExports),
+				conversionThreads);
 	}
 
 	private Log4j2TempoProcessAppender(
 			final String name,
 			final Filter filter,
 			final Configuration config,
-			final String tempoUrlJaeger) {
+			final String tempoUrl,
+			final TraceSampler traceSampler,
+			final String exporter,
+			final SpanExportSettings exportSettings,
+			final int conversionThreads) {
 		super(name, filter, null, true);
 		//---
+		this.traceSampler = traceSampler;
 
 		final Resource resource = Resource.getDefault()
 				.merge(Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "vertigo")));
 
-		final SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder()
-				.addSpanProcessor(BatchSpanProcessor.builder(JaegerGrpcSpanExporter.builder()
-						.setEndpoint(tempoUrlJaeger)
-						.build()).build())
-				.setResource(resource)
-				.build();
+		final SpanExporter spanExporter = new ResilientSpanExporter(name,
+				createExporter(exporter, tempoUrl, Duration.ofMillis(exportSettings.exportTimeoutMillis())),
+				ResilienceSettings.defaults(),
+				MAX_BUFFERED_SPANS);
+		spanBatchExporter = new SpanBatchExporter(name, spanExporter, exportSettings);
+		//large trees are converted by a pool of threads if conversionThreads > 1
+		conversionPool = conversionThreads > 1 ? new ForkJoinPool(conversionThreads) : null;
+		traceSpanConverter = new TraceSpanConverter(resource, createInstrumentationScopeInfo(), conversionPool);
+	}
+
+	private static InstrumentationScopeInfo createInstrumentationScopeInfo() {
+		final InstrumentationScopeInfoBuilder builder = InstrumentationScopeInfo.builder("vertigo-analytics");
+		//version of the server jar (Implementation-Version of its manifest), unknown when run from the classes
+		final String version = Log4j2TempoProcessAppender.class.getPackage().getImplementationVersion();
+		if (version != null) {
+			builder.setVersion(version);
+		}
+		return builder.build();
+	}
 
-		openTelemetry = OpenTelemetrySdk.builder()
-				.setTracerProvider(sdkTracerProvider)
-				.buildAndRegisterGlobal();
+	/**
+	 * @param exporter jaeger (gRPC, deprecated upstream), otlpGrpc or otlpHttp (tempoUrl is then the full url, ex: http://tempo:4318/v1/traces)
+	 */
+	private static SpanExporter createExporter(final String exporter, final String tempoUrl, final Duration timeout) {
+		return switch (exporter) {
+			case "jaeger" -> JaegerGrpcSpanExporter.builder()
+					.setEndpoint(tempoUrl)
+					.setTimeout(timeout)
+					.build();
+			case "otlpGrpc" -> OtlpGrpcSpanExporter.builder()
+					.setEndpoint(tempoUrl)
+					.setTimeout(timeout)
+					.build();
+			case "otlpHttp" -> OtlpHttpSpanExporter.builder()
+					.setEndpoint(tempoUrl)
+					.setTimeout(timeout)
+					.build();
+			default -> throw new IllegalArgumentException("Unknown exporter " + exporter + " : jaeger, otlpGrpc or otlpHttp");
+		};
+	}
+
+	@Override
+	public void stop() {
+		if (conversionPool != null) {
+			conversionPool.shutdown();
+		}
+		spanBatchExporter.shutdown();
 	}
 
 	@Override
 	public void append(final LogEvent event) {
 		try {
 			final LogMessage<TraceSpan> logMessage = GSON.fromJson(event.getMessage().getFormattedMessage(), getLogMessageType());
-			sendProcess(logMessage);
+			write(logMessage);
 		} catch (final JsonSyntaxException e) {
 			// it wasn't a message for us so we do nothing
 		} catch (final Exception e) {
@@ -95,7 +161,8 @@ public class Log4j2TempoProcessAppender extends AbstractAppender {
 
 	}
 
-	private void sendProcess(final LogMessage<TraceSpan> logMessage) {
+	@Override
+	public void write(final LogMessage<TraceSpan> logMessage) {
 		if (logMessage.getEvent() != null) {
 			sendProcess(logMessage.getEvent(), logMessage.getAppName(), logMessage.getHost());
 		}
@@ -107,127 +174,10 @@ public class Log4j2TempoProcessAppender extends AbstractAppender {
 	}
 
 	private void sendProcess(final TraceSpan process, final String appName, final String host) {
-		final var openTelemetryTracer = openTelemetry.getTracer("vertigo-analytics", "0.13.1");
-		final var rootSpan = openTelemetryTracer
-				.spanBuilder(process.getName())
-				.setNoParent()
-				.setStartTimestamp(process.getStart(), TimeUnit.MILLISECONDS)
-				.startSpan();
-		rootSpan.makeCurrent();
-		final var topVisitState = processToPoints(process, process.getTags().get("location"), openTelemetryTracer);
-		processToSpan(rootSpan, process, topVisitState, process.getTags().get("location"));
-		rootSpan
-				.setAttribute("vertigo.app.name", appName)
-				.setAttribute("vertigo.host", host)
-				.end(process.getEnd(), TimeUnit.MILLISECONDS);
-
-	}
-
-	public static VisitState processToPoints(final TraceSpan process, final String host, final Tracer tracer) {
-		return flatProcess(process, new Stack<>(), host, tracer);
-	}
-
-	private static void processToSpan(final Span span, final TraceSpan process, final VisitState visitState, final String host) {
-		final AttributesBuilder attributesBuilder = Attributes.builder();
-		process.getMeasures().entrySet().stream().forEach(entry -> attributesBuilder.put(entry.getKey(), entry.getValue()));
-		process.getMetadatas().entrySet().stream().forEach(entry -> attributesBuilder.put(properString(entry.getKey()), properString(entry.getValue())));
-		process.getTags().entrySet().stream().forEach(entry -> attributesBuilder.put(properString(entry.getKey()), properString(entry.getValue())));
-		visitState.getCountsByCategory().entrySet().stream()
-				.forEach(entry -> attributesBuilder.put(entry.getKey() + "_count", entry.getValue()));
-		visitState.getDurationsByCategory().entrySet().stream()
-				.forEach(entry -> attributesBuilder.put(entry.getKey() + "_duration", entry.getValue()));
-		span.setAllAttributes(attributesBuilder.build());
-		span
-				.setAttribute("category", process.getCategory())
-				.setAttribute("service.namespace", process.getCategory())
-				.setAttribute("service.name", process.getName());
-
-	}
-
-	private static VisitState flatProcess(final TraceSpan process, final Stack<String> upperCategory, final String host, final Tracer tracer) {
-		final VisitState visitState = new Log4j2TempoProcessAppender.VisitState(upperCategory);
-
-		process.getChildSpans().stream()
-				.forEach(subProcess -> {
-					visitState.push(subProcess);
-					final var subSpan = tracer.spanBuilder(subProcess.getName())
-							.setStartTimestamp(subProcess.getStart(), TimeUnit.MILLISECONDS)
-							.startSpan();
-					final var scope = subSpan.makeCurrent();
-					//on descend => stack.push
-					final VisitState childVisiteState = flatProcess(subProcess, upperCategory, host, tracer);
-					processToSpan(subSpan, subProcess, visitState, host);
-					subSpan.end(subProcess.getEnd(), TimeUnit.MILLISECONDS);
-					scope.close();
-					visitState.merge(childVisiteState);
-					//on remonte => stack.poll
-					visitState.pop();
-				});
-		return visitState;
-
-	}
-
-	static class VisitState {
-		private final Map<String, Integer> countsByCategory = new HashMap<>();
-		private final Map<String, Long> durationsByCategory = new HashMap<>();
-		private final Stack<String> stack;
-
-		public VisitState(final Stack<String> upperCategory) {
-			stack = upperCategory;
-		}
-
-		void push(final TraceSpan process) {
-			incDurations(process.getCategory(), process.getDurationMillis());
-			incCounts(process.getCategory(), 1);
-			stack.push(process.getCategory());
-		}
-
-		void merge(final VisitState visitState) {
-			visitState.durationsByCategory.entrySet()
-					.forEach((entry) -> incDurations(entry.getKey(), entry.getValue()));
-			visitState.countsByCategory.entrySet()
-					.forEach((entry) -> incCounts(entry.getKey(), entry.getValue()));
-		}
-
-		void pop() {
-			stack.pop();
-		}
-
-		private void incDurations(final String category, final Long duration) {
-			if (!stack.contains(category)) {
-				final Long existing = durationsByCategory.get(category);
-				if (existing == null) {
-					durationsByCategory.put(category, duration);
-				} else {
-					durationsByCategory.put(category, existing + duration);
-				}
-			}
-		}
-
-		private void incCounts(final String category, final Integer count) {
-			final Integer existing = countsByCategory.get(category);
-			if (existing == null) {
-				countsByCategory.put(category, count);
-			} else {
-				countsByCategory.put(category, existing + count);
-			}
-		}
-
-		Map<String, Integer> getCountsByCategory() {
-			return countsByCategory;
-		}
-
-		Map<String, Long> getDurationsByCategory() {
-			return durationsByCategory;
-		}
-
-	}
-
-	private static String properString(final String string) {
-		if (string == null) {
-			return string;
+		if (traceSampler != null && !traceSampler.keep(appName, host, process)) {
+			return;
 		}
-		return string.replaceAll("\n", " ");
+		spanBatchExporter.add(traceSpanConverter.convert(process, appName, host));
 	}
 
 	private Type getLogMessageType() {
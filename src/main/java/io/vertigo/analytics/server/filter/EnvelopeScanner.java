@@ -0,0 +1,187 @@
+package io.vertigo.analytics.server.filter;
+
+/**
+ * Reads some string values of a json envelope without parsing it.
+ * Works on the LogMessage json, and on the raw ecs json where the LogMessage is an escaped string (\"key\":\"value\").
+ * findString reads the first occurrence of the key at any depth : keys must be unique or first in the envelope (log.logger, root category).
+ * findTopLevelString only reads a key of the envelope itself, never a nested one (span metadatas, tags...).
+ */
+public final class EnvelopeScanner {
+
+	private EnvelopeScanner() {
+		//private constructor
+	}
+
+	/**
+	 * @param text the json text
+	 * @param key the key
+	 * @return the string value of the first occurrence of this key, or null if not found (or not a simple string)
+	 */
+	public static String findString(final String text, final String key) {
+		final String plainKey = '"' + key + '"';
+		final int plainIndex = text.indexOf(plainKey);
+		if (plainIndex >= 0) {
+			return readString(text, plainIndex + plainKey.length(), false);
+		}
+		final String escapedKey = "\\\"" + key + "\\\"";
+		final int escapedIndex = text.indexOf(escapedKey);
+		if (escapedIndex >= 0) {
+			return readString(text, escapedIndex + escapedKey.length(), true);
+		}
+		return null;
+	}
+
+	/**
+	 * Scan the structure of the json text (not the values) to read a key of the root object.
+	 * On the raw ecs json, the LogMessage is a string value of the root object : its own root keys are read.
+	 * @param text the json text
+	 * @param key the key
+	 * @return the string value of this key in the root object, or null if not found (or not a string)
+	 */
+	public static String findTopLevelString(final String text, final String key) {
+		int depth = 0;
+		int i = 0;
+		while (i < text.length()) {
+			final char c = text.charAt(i);
+			if (c == '"') {
+				final int end = endOfString(text, i);
+				if (end < 0) {
+					return null;
+				}
+				if (depth == 1) {
+					final int next = skipWhitespaces(text, end + 1);
+					if (next < text.length() && text.charAt(next) == ':') {
+						if (end - i - 1 == key.length() && text.startsWith(key, i + 1)) {
+							final int valueStart = skipWhitespaces(text, next + 1);
+							if (valueStart < text.length() && text.charAt(valueStart) == '"') {
+								final int valueEnd = endOfString(text, valueStart);
+								return valueEnd < 0 ? null : unescape(text, valueStart + 1, valueEnd);
+							}
+							return null; //not a string
+						}
+					} else if (end - i > 1 && text.charAt(i + 1) == '{') {
+						//an escaped json object : the LogMessage of a raw ecs json
+						final String value = findTopLevelString(unescape(text, i + 1, end), key);
+						if (value != null) {
+							return value;
+						}
+					}
+				}
+				i = end + 1;
+			} else {
+				if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				}
+				i++;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return index of the closing quote of the string starting at this quote, -1 if not closed
+	 */
+	private static int endOfString(final String text, final int quoteIndex) {
+		int i = quoteIndex + 1;
+		while (i < text.length()) {
+			final char c = text.charAt(i);
+			if (c == '\\') {
+				i += 2;
+			} else if (c == '"') {
+				return i;
+			} else {
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	private static int skipWhitespaces(final String text, final int index) {
+		int i = index;
+		while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static String unescape(final String text, final int start, final int end) {
+		if (text.indexOf('\\', start) < 0 || text.indexOf('\\', start) >= end) {
+			return text.substring(start, end);
+		}
+		final StringBuilder value = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			final char c = text.charAt(i);
+			if (c != '\\' || i + 1 >= end) {
+				value.append(c);
+				continue;
+			}
+			final char escaped = text.charAt(++i);
+			switch (escaped) {
+				case 'n':
+					value.append('\n');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 'b':
+					value.append('\b');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'u':
+					if (i + 4 < end) {
+						value.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+						i += 4;
+					}
+					break;
+				default: // " \ /
+					value.append(escaped);
+					break;
+			}
+		}
+		return value.toString();
+	}
+
+	/**
+	 * @param text the json text
+	 * @param key the key
+	 * @return if this key is present (plain or escaped)
+	 */
+	public static boolean containsKey(final String text, final String key) {
+		return text.contains('"' + key + '"') || text.contains("\\\"" + key + "\\\"");
+	}
+
+	private static String readString(final String text, final int afterKeyIndex, final boolean escaped) {
+		int i = afterKeyIndex;
+		while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == ':')) {
+			i++;
+		}
+		if (escaped) {
+			if (i >= text.length() || text.charAt(i) != '\\') {
+				return null;
+			}
+			i++;
+		}
+		if (i >= text.length() || text.charAt(i) != '"') {
+			return null;
+		}
+		final int start = i + 1;
+		int end = start;
+		while (end < text.length() && text.charAt(end) != '"') {
+			if (text.charAt(end) == '\\') {
+				if (escaped && end + 1 < text.length() && text.charAt(end + 1) == '"') {
+					return text.substring(start, end); //closing \"
+				}
+				return null; //escaped values are not expected
+			}
+			end++;
+		}
+		return end < text.length() && !escaped ? text.substring(start, end) : null;
+	}
+}
@@ -0,0 +1,187 @@
+package io.vertigo.analytics.server.filter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import io.vertigo.analytics.server.GlobUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+
+/**
+ * Projection of span metadatas and measures, applied by the decoder : dropped values are skipped in the json, never allocated.
+ * Spans already decoded (binary, otlp and http listeners) are projected by {@link #project(String, TraceSpan)}.
+ * Defined as "app/category:option[,option]" rules separated by ';' ('*' matches any characters), the first rule matching the app and the span category is used.
+ * Options are allow=key|key (only these keys are kept), deny=key|key (these keys are dropped), maxLength=N (longer metadatas are dropped)
+ * and truncate=N (longer metadatas are truncated). Ex: *&#47;sql:deny=sqlText,truncate=200;my-app&#47;*:allow=userId|url
+ * Metrics ("projection.[name].dropped|truncated|bytesSaved") count the json chars not decoded.
+ */
+public final class FieldProjection {
+
+	private static final int MAX_CACHED_RULES = 10_000;
+
+	/**
+	 * Projection of the spans of one app and category.
+	 * @param appPattern the app pattern
+	 * @param categoryPattern the category pattern
+	 * @param allowed the allowed keys (null to allow all keys)
+	 * @param denied the denied keys
+	 * @param maxLength max length of metadatas (0 for no limit)
+	 * @param truncateLength truncation length of metadatas (0 for no truncation)
+	 */
+	public record SpanRule(Pattern appPattern, Pattern categoryPattern, Set<String> allowed, Set<String> denied, int maxLength, int truncateLength) {
+
+		/**
+		 * @param key the metadata or measure name
+		 * @return if this key is kept
+		 */
+		public boolean keepKey(final String key) {
+			return (allowed == null || allowed.contains(key)) && !denied.contains(key);
+		}
+	}
+
+	private static final SpanRule KEEP_ALL = new SpanRule(null, null, null, Set.of(), 0, 0);
+
+	private final List<SpanRule> rules;
+	private final Map<String, SpanRule> ruleByAppCategory = new ConcurrentHashMap<>();
+	private final LongAdder dropped;
+	private final LongAdder truncated;
+	private final LongAdder bytesSaved;
+
+	private FieldProjection(final String name, final List<SpanRule> rules) {
+		this.rules = rules;
+		final String metricPrefix = "projection." + name;
+		dropped = ServerMetrics.counter(metricPrefix + ".dropped");
+		truncated = ServerMetrics.counter(metricPrefix + ".truncated");
+		bytesSaved = ServerMetrics.counter(metricPrefix + ".bytesSaved");
+	}
+
+	/**
+	 * @param name name of the feeder (metrics)
+	 * @param projection the projection definition
+	 * @return the projection, or null if no rule is defined
+	 */
+	public static FieldProjection parse(final String name, final String projection) {
+		if (projection == null || projection.isBlank()) {
+			return null;
+		}
+		final List<SpanRule> rules = new ArrayList<>();
+		for (final String rule : projection.split(";")) {
+			final int colonIndex = rule.indexOf(':');
+			final int slashIndex = rule.indexOf('/');
+			if (colonIndex < 0 || slashIndex < 0 || slashIndex > colonIndex) {
+				throw new IllegalArgumentException("Invalid projection rule '" + rule + "', expected app/category:option[,option]");
+			}
+			Set<String> allowed = null;
+			final Set<String> denied = new HashSet<>();
+			int maxLength = 0;
+			int truncateLength = 0;
+			for (final String option : rule.substring(colonIndex + 1).split(",")) {
+				final String[] nameValue = option.split("=");
+				if (nameValue.length != 2) {
+					throw new IllegalArgumentException("Invalid projection option '" + option + "', expected allow|deny|maxLength|truncate=value");
+				}
+				final String value = nameValue[1].trim();
+				switch (nameValue[0].trim()) {
+					case "allow" -> allowed = Set.of(value.split("\\|"));
+					case "deny" -> denied.addAll(Set.of(value.split("\\|")));
+					case "maxLength" -> maxLength = Integer.parseInt(value);
+					case "truncate" -> truncateLength = Integer.parseInt(value);
+					default -> throw new IllegalArgumentException("Invalid projection option '" + option + "', expected allow|deny|maxLength|truncate=value");
+				}
+			}
+			rules.add(new SpanRule(
+					GlobUtil.toPattern(rule.substring(0, slashIndex).trim()),
+					GlobUtil.toPattern(rule.substring(slashIndex + 1, colonIndex).trim()),
+					allowed, denied, maxLength, truncateLength));
+		}
+		return new FieldProjection(name, rules);
+	}
+
+	/**
+	 * @param appName the app (nullable)
+	 * @param category the span category (nullable if not known yet)
+	 * @return the rule of these spans
+	 */
+	public SpanRule ruleFor(final String appName, final String category) {
+		final String key = appName + '/' + category;
+		final SpanRule cachedRule = ruleByAppCategory.get(key);
+		if (cachedRule != null) {
+			return cachedRule;
+		}
+		final SpanRule rule = findRule(appName != null ? appName : "", category != null ? category : "");
+		if (ruleByAppCategory.size() < MAX_CACHED_RULES) {
+			ruleByAppCategory.put(key, rule);
+		}
+		return rule;
+	}
+
+	private SpanRule findRule(final String appName, final String category) {
+		for (final SpanRule rule : rules) {
+			if (rule.appPattern().matcher(appName).matches() && rule.categoryPattern().matcher(category).matches()) {
+				return rule;
+			}
+		}
+		return KEEP_ALL;
+	}
+
+	/**
+	 * Project a decoded span tree with the same rules as the decoder.
+	 * @param appName the app (nullable)
+	 * @param span the root span
+	 * @return the projected span
+	 */
+	public TraceSpan project(final String appName, final TraceSpan span) {
+		final SpanRule rule = ruleFor(appName, span.getCategory());
+		final List<TraceSpan> childSpans = new ArrayList<>(span.getChildSpans().size());
+		for (final TraceSpan childSpan : span.getChildSpans()) {
+			childSpans.add(project(appName, childSpan));
+		}
+		final Map<String, Double> measures = new HashMap<>();
+		for (final Map.Entry<String, Double> measure : span.getMeasures().entrySet()) {
+			if (rule.keepKey(measure.getKey())) {
+				measures.put(measure.getKey(), measure.getValue());
+			} else {
+				recordDropped(measure.getKey().length() + String.valueOf(measure.getValue()).length());
+			}
+		}
+		final Map<String, String> metadatas = new HashMap<>();
+		for (final Map.Entry<String, String> metadata : span.getMetadatas().entrySet()) {
+			final String key = metadata.getKey();
+			final String value = metadata.getValue();
+			if (!rule.keepKey(key) || rule.maxLength() > 0 && value != null && value.length() > rule.maxLength()) {
+				recordDropped(key.length() + (value != null ? value.length() : 0));
+			} else if (rule.truncateLength() > 0 && value != null && value.length() > rule.truncateLength()) {
+				recordTruncated(value.length() - rule.truncateLength());
+				metadatas.put(key, value.substring(0, rule.truncateLength()));
+			} else {
+				metadatas.put(key, value);
+			}
+		}
+		return new TraceSpan(span.getCategory(), span.getName(), Instant.ofEpochMilli(span.getStart()), Instant.ofEpochMilli(span.getEnd()),
+				measures, metadatas, span.getTags(), childSpans);
+	}
+
+	/**
+	 * @param jsonChars json chars of the dropped entry
+	 */
+	public void recordDropped(final int jsonChars) {
+		dropped.increment();
+		bytesSaved.add(jsonChars);
+	}
+
+	/**
+	 * @param removedChars chars removed from the value
+	 */
+	public void recordTruncated(final int removedChars) {
+		truncated.increment();
+		bytesSaved.add(removedChars);
+	}
+}
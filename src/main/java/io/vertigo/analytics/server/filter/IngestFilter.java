@@ -0,0 +1,166 @@
+package io.vertigo.analytics.server.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.GlobUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+
+/**
+ * Drop/keep rules evaluated on the envelope of ingested events, before their body is decoded.
+ * Defined as "drop|keep:condition[,condition]" rules separated by ';', conditions are "logger=pattern", "app=pattern" or "category=pattern"
+ * ('*' matches any characters), the first rule with all conditions matching decides (ex: drop:app=test-*;drop:logger=*-process,category=cache).
+ * The category is the one of the root span, it is only known for single event envelopes (batches never match a category condition).
+ * Read from environment variables : INGEST_FILTER_RULES and INGEST_FILTER_DEFAULT (keep|drop, for events without matching rule).
+ * Matched events are counted per rule ("ingest.filter.rule[index].matched", index from 0 in definition order).
+ */
+public final class IngestFilter {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static volatile IngestFilter instance;
+
+	private enum Field {
+		LOGGER, APP, CATEGORY
+	}
+
+	private record Condition(Field field, Pattern pattern) {
+		//only data
+	}
+
+	private record Rule(boolean keep, List<Condition> conditions, LongAdder matched) {
+		//only data
+	}
+
+	private final List<Rule> rules;
+	private final boolean keepByDefault;
+	private final boolean usesApp;
+	private final boolean usesCategory;
+	private final LongAdder defaultKept;
+	private final LongAdder defaultDropped;
+
+	private IngestFilter(final List<Rule> rules, final boolean keepByDefault) {
+		this.rules = rules;
+		this.keepByDefault = keepByDefault;
+		usesApp = usesField(rules, Field.APP);
+		usesCategory = usesField(rules, Field.CATEGORY);
+		defaultKept = ServerMetrics.counter("ingest.filter.default.kept");
+		defaultDropped = ServerMetrics.counter("ingest.filter.default.dropped");
+	}
+
+	/**
+	 * @return the server ingest filter (configured from the environment at first use)
+	 */
+	public static IngestFilter getInstance() {
+		if (instance == null) {
+			synchronized (IngestFilter.class) {
+				if (instance == null) {
+					final String rules = Optional.ofNullable(System.getenv("INGEST_FILTER_RULES")).orElse("");
+					final String defaultAction = Optional.ofNullable(System.getenv("INGEST_FILTER_DEFAULT")).orElse("keep");
+					instance = parse(rules, defaultAction);
+					if (instance.isEnabled()) {
+						LOGGER.info("Ingest filter enabled : {} (default {})", rules, defaultAction);
+					}
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @param rules the rules definition
+	 * @param defaultAction keep|drop, for events without matching rule
+	 * @return the filter
+	 */
+	public static IngestFilter parse(final String rules, final String defaultAction) {
+		final List<Rule> parsedRules = new ArrayList<>();
+		if (rules != null && !rules.isBlank()) {
+			for (final String rule : rules.split(";")) {
+				final int colonIndex = rule.indexOf(':');
+				if (colonIndex < 0) {
+					throw new IllegalArgumentException("Invalid ingest rule '" + rule + "', expected drop|keep:field=pattern[,field=pattern]");
+				}
+				final List<Condition> conditions = new ArrayList<>();
+				for (final String condition : rule.substring(colonIndex + 1).split(",")) {
+					final String[] fieldPattern = condition.split("=");
+					if (fieldPattern.length != 2) {
+						throw new IllegalArgumentException("Invalid ingest rule condition '" + condition + "', expected logger|app|category=pattern");
+					}
+					conditions.add(new Condition(Field.valueOf(fieldPattern[0].trim().toUpperCase(Locale.ROOT)), GlobUtil.toPattern(fieldPattern[1].trim())));
+				}
+				parsedRules.add(new Rule(isKeep(rule.substring(0, colonIndex)), conditions, ServerMetrics.counter("ingest.filter.rule" + parsedRules.size() + ".matched")));
+			}
+		}
+		return new IngestFilter(parsedRules, isKeep(defaultAction));
+	}
+
+	private static boolean isKeep(final String action) {
+		return switch (action.trim().toLowerCase(Locale.ROOT)) {
+			case "keep" -> true;
+			case "drop" -> false;
+			default -> throw new IllegalArgumentException("Invalid ingest action '" + action + "', expected drop|keep");
+		};
+	}
+
+	private static boolean usesField(final List<Rule> rules, final Field field) {
+		return rules.stream().flatMap(rule -> rule.conditions().stream()).anyMatch(condition -> condition.field() == field);
+	}
+
+	/**
+	 * @return if some rule is defined (else every event is kept without scan)
+	 */
+	public boolean isEnabled() {
+		return !rules.isEmpty() || !keepByDefault;
+	}
+
+	/**
+	 * Evaluate the rules on the envelope fields, read by a scan of the raw text (the body is not decoded).
+	 * @param loggerName the logger name if already known, else it is read from the "log.logger" key of the text
+	 * @param text the raw ecs json, or the LogMessage json
+	 * @return if the event must be decoded and dispatched
+	 */
+	public boolean accept(final String loggerName, final String text) {
+		final String logger = loggerName != null ? loggerName : EnvelopeScanner.findString(text, "log.logger");
+		final String appName = usesApp ? EnvelopeScanner.findTopLevelString(text, "appName") : null;
+		final String category = usesCategory && !EnvelopeScanner.containsKey(text, "events") ? EnvelopeScanner.findString(text, "category") : null;
+		return accept(logger, appName, category);
+	}
+
+	/**
+	 * Evaluate the rules on already known envelope fields.
+	 * @param loggerName the logger name
+	 * @param appName the app (nullable)
+	 * @param category the root span category, null for batches and other events
+	 * @return if the event must be dispatched
+	 */
+	public boolean accept(final String loggerName, final String appName, final String category) {
+		for (final Rule rule : rules) {
+			if (matches(rule, loggerName, appName, category)) {
+				rule.matched().increment();
+				return rule.keep();
+			}
+		}
+		(keepByDefault ? defaultKept : defaultDropped).increment();
+		return keepByDefault;
+	}
+
+	private static boolean matches(final Rule rule, final String logger, final String appName, final String category) {
+		for (final Condition condition : rule.conditions()) {
+			final String value = switch (condition.field()) {
+				case LOGGER -> logger;
+				case APP -> appName;
+				case CATEGORY -> category;
+			};
+			if (value == null || !condition.pattern().matcher(value).matches()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
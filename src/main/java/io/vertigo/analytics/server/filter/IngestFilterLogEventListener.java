@@ -0,0 +1,30 @@
+package io.vertigo.analytics.server.filter;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LogEventListener;
+
+/**
+ * LogEventListener applying the ingest filter to events already decoded by their bridge (java serialized events),
+ * so dropped events are not dispatched to the appenders. Json events are filtered by their parser, before decode.
+ */
+public final class IngestFilterLogEventListener extends LogEventListener {
+
+	private final IngestFilter ingestFilter;
+	private final LogEventListener delegate;
+
+	/**
+	 * @param ingestFilter the ingest filter
+	 * @param delegate the next listener
+	 */
+	public IngestFilterLogEventListener(final IngestFilter ingestFilter, final LogEventListener delegate) {
+		this.ingestFilter = ingestFilter;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void log(final LogEvent event) {
+		if (event != null && ingestFilter.accept(event.getLoggerName(), event.getMessage().getFormattedMessage())) {
+			delegate.log(event);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package io.vertigo.analytics.server.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Request body stream failing after a max number of bytes (decoded bytes when wrapping a gzip stream).
+ */
+public final class BoundedInputStream extends FilterInputStream {
+
+	/**
+	 * The body is over the max number of bytes.
+	 */
+	public static final class BodyTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		BodyTooLargeException(final long maxBytes) {
+			super("body is over " + maxBytes + " bytes");
+		}
+	}
+
+	private final long maxBytes;
+	private long count;
+
+	/**
+	 * @param in the body stream
+	 * @param maxBytes max bytes read
+	 */
+	public BoundedInputStream(final InputStream in, final long maxBytes) {
+		super(in);
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = super.read();
+		if (b >= 0) {
+			count(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+		final int read = super.read(buffer, offset, length);
+		if (read > 0) {
+			count(read);
+		}
+		return read;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false; //a reset would count bytes twice
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		final long skipped = super.skip(n);
+		count(skipped);
+		return skipped;
+	}
+
+	private void count(final long read) throws BodyTooLargeException {
+		count += read;
+		if (count > maxBytes) {
+			throw new BodyTooLargeException(maxBytes);
+		}
+	}
+}
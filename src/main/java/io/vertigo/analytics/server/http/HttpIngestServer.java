@@ -0,0 +1,101 @@
+package io.vertigo.analytics.server.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.vertigo.analytics.server.LogMessageRouter;
+import io.vertigo.analytics.server.LogMessageRouter.Kind;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.core.analytics.health.HealthCheck;
+import io.vertigo.core.analytics.metric.Metric;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * HTTP ingestion of LogMessages : POST /process/_send, /metric/_send and /health/_send.
+ * Bodies are NDJSON or JSON arrays of LogMessages (gzip with Content-Encoding: gzip), decoded as a stream straight into the typed pipeline.
+ * Responses : 202 when all messages are queued, 429 (with Retry-After) as soon as a sink queue is full (messages before are queued,
+ * resent batches are dropped by the batch dedup), 400 for an invalid body and 413 for a body over the max size.
+ * Connections are kept alive between requests.
+ * Read from environment variables : HTTP_INGEST_MIN_THREADS, HTTP_INGEST_MAX_THREADS, HTTP_INGEST_IDLE_TIMEOUT (ex: 30s, idle keep-alive connections)
+ * and HTTP_INGEST_MAX_BODY_BYTES (decompressed).
+ * Metrics : http.ingest.messages, rejected (429) and invalid (400, 413).
+ */
+public final class HttpIngestServer {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final int port;
+	private final long maxBodyBytes = Long.parseLong(Optional.ofNullable(System.getenv("HTTP_INGEST_MAX_BODY_BYTES")).orElse(String.valueOf(64 * 1024 * 1024)));
+	private final LogMessageRouter router = new LogMessageRouter();
+	private final LongAdder messages = ServerMetrics.counter("http.ingest.messages");
+	private final LongAdder rejected = ServerMetrics.counter("http.ingest.rejected");
+	private final LongAdder invalid = ServerMetrics.counter("http.ingest.invalid");
+	private Javalin app;
+
+	/**
+	 * @param port the port
+	 */
+	public HttpIngestServer(final int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Start the http server (its threads are started).
+	 */
+	public void start() {
+		app = HttpServers.create("http-ingest", port, "HTTP_INGEST", 32);
+		app.post("/process/_send", ctx -> ingest(ctx, Kind.PROCESS, TraceSpan.class));
+		app.post("/metric/_send", ctx -> ingest(ctx, Kind.METRIC, Metric.class));
+		app.post("/health/_send", ctx -> ingest(ctx, Kind.HEALTH, HealthCheck.class));
+		app.start();
+		LOGGER.info("Listening for http LogMessages on port {}", port);
+	}
+
+	private void ingest(final Context ctx, final Kind kind, final Type eventType) {
+		final String clientAddress = ctx.req().getRemoteAddr();
+		IngestBodyReader.Result result;
+		try (InputStream body = new BoundedInputStream("gzip".equalsIgnoreCase(ctx.header("Content-Encoding"))
+				? new GZIPInputStream(ctx.req().getInputStream(), 64 * 1024)
+				: ctx.req().getInputStream(), maxBodyBytes)) {
+			result = IngestBodyReader.read(body, eventType, logMessage -> {
+				if (!router.hasCapacity(kind, logMessage)) {
+					return false;
+				}
+				router.route(kind, clientAddress, logMessage);
+				messages.increment();
+				return true;
+			});
+		} catch (final IOException e) {
+			result = new IngestBodyReader.Result(HttpServletResponse.SC_BAD_REQUEST, 0, "invalid body : " + e.getMessage());
+		}
+		if (result.status() == 429) {
+			rejected.increment();
+			ctx.header("Retry-After", "1");
+		} else if (result.status() != HttpServletResponse.SC_ACCEPTED) {
+			invalid.increment();
+		}
+		ctx.status(result.status());
+		if (result.message() != null) {
+			ctx.result(result.message());
+		}
+	}
+
+	/**
+	 * Stop the http server.
+	 */
+	public void shutdown() {
+		if (app != null) {
+			app.stop();
+		}
+	}
+}
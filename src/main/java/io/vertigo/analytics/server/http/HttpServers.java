@@ -0,0 +1,45 @@
+package io.vertigo.analytics.server.http;
+
+import java.util.Optional;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import io.javalin.Javalin;
+import io.vertigo.analytics.server.DurationUtil;
+
+/**
+ * Javalin apps of the http listeners, on a Jetty server with a bounded thread pool and keep-alive connections.
+ * Read from environment variables, for each listener prefix : [prefix]_MIN_THREADS, [prefix]_MAX_THREADS
+ * and [prefix]_IDLE_TIMEOUT (ex: 30s, idle keep-alive connections).
+ */
+public final class HttpServers {
+
+	private HttpServers() {
+		//private constructor
+	}
+
+	/**
+	 * @param name name of the listener (threads)
+	 * @param port the port
+	 * @param envPrefix prefix of the environment variables
+	 * @param defaultMaxThreads max threads if not configured
+	 * @return the app, with its routes still to be added before start
+	 */
+	public static Javalin create(final String name, final int port, final String envPrefix, final int defaultMaxThreads) {
+		final QueuedThreadPool threadPool = new QueuedThreadPool(
+				Integer.parseInt(Optional.ofNullable(System.getenv(envPrefix + "_MAX_THREADS")).orElse(String.valueOf(defaultMaxThreads))),
+				Integer.parseInt(Optional.ofNullable(System.getenv(envPrefix + "_MIN_THREADS")).orElse("4")));
+		threadPool.setName("vertigo-analytics-" + name);
+		final Server server = new Server(threadPool);
+		final ServerConnector connector = new ServerConnector(server);
+		connector.setPort(port);
+		connector.setIdleTimeout(DurationUtil.parseMillis(Optional.ofNullable(System.getenv(envPrefix + "_IDLE_TIMEOUT")).orElse("30s")));
+		server.addConnector(connector);
+		return Javalin.create(config -> {
+			config.showJavalinBanner = false;
+			config.jetty.server(() -> server);
+		});
+	}
+}
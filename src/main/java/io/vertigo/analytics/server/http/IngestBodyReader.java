@@ -0,0 +1,87 @@
+package io.vertigo.analytics.server.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.json.AProcessJsonDeserializer;
+import io.vertigo.core.lang.json.CoreJsonAdapters;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Streaming decode of an ingest body : NDJSON or a JSON array of LogMessages, each one queued as soon as it is read.
+ */
+final class IngestBodyReader {
+
+	private static final Gson GSON = CoreJsonAdapters.addCoreGsonConfig(new GsonBuilder(), false)
+			.registerTypeAdapter(TraceSpan.class, new AProcessJsonDeserializer())
+			.create();
+
+	/**
+	 * @param status the http status : 202, 429 (a queue is full), 400 (invalid body) or 413 (body too large)
+	 * @param count messages queued
+	 * @param message the response message (null for 202)
+	 */
+	record Result(int status, long count, String message) {
+		//only data
+	}
+
+	private IngestBodyReader() {
+		//private constructor
+	}
+
+	/**
+	 * @param body the body stream (decompressed)
+	 * @param eventType the type of the events
+	 * @param queue queues a message, returns false if its queue is full
+	 * @return the result
+	 */
+	static Result read(final InputStream body, final Type eventType, final Predicate<LogMessage<?>> queue) {
+		final Type logMessageType = TypeToken.getParameterized(LogMessage.class, eventType).getType();
+		long count = 0;
+		try {
+			final JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+			reader.setLenient(true); //NDJSON : one top level value per line
+			final boolean isArray = reader.peek() == JsonToken.BEGIN_ARRAY;
+			if (isArray) {
+				reader.beginArray();
+			}
+			while (isArray ? reader.hasNext() : reader.peek() != JsonToken.END_DOCUMENT) {
+				final LogMessage<?> logMessage = GSON.fromJson(reader, logMessageType);
+				if (logMessage == null) {
+					throw new JsonParseException("null message");
+				}
+				if (!queue.test(logMessage)) {
+					return new Result(429, count, count + " messages queued, then queue is full");
+				}
+				count++;
+			}
+			return new Result(HttpServletResponse.SC_ACCEPTED, count, null);
+		} catch (final BoundedInputStream.BodyTooLargeException e) {
+			return new Result(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, count, count + " messages queued, then " + e.getMessage());
+		} catch (final EOFException e) {
+			return new Result(HttpServletResponse.SC_BAD_REQUEST, count, count == 0 ? "empty body" : count + " messages queued, then unexpected end of body");
+		} catch (final IOException | IllegalStateException e) {
+			return new Result(HttpServletResponse.SC_BAD_REQUEST, count, count + " messages queued, then invalid body : " + e.getMessage());
+		} catch (final JsonParseException e) {
+			//gson wraps the read errors of the body
+			if (e.getCause() instanceof BoundedInputStream.BodyTooLargeException) {
+				return new Result(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, count, count + " messages queued, then " + e.getCause().getMessage());
+			}
+			return new Result(HttpServletResponse.SC_BAD_REQUEST, count, count + " messages queued, then invalid body : " + e.getMessage());
+		}
+	}
+}
@@ -5,12 +5,15 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.reflect.TypeToken;
 
 import io.vertigo.analytics.server.TraceSpan;
@@ -21,22 +24,31 @@ public class AProcessJsonDeserializer implements JsonDeserializer<TraceSpan> {
 	@Override
 	public TraceSpan deserialize(final JsonElement jsonElement, final Type type, final JsonDeserializationContext context) {
 		//need a custom deserializer to support old AProcess format (subProcesses instead of childSpans, and missing field as empty map or list)
+		if (!jsonElement.isJsonObject()) {
+			throw new JsonParseException("A span must be an object");
+		}
 		final JsonObject jsonObject = jsonElement.getAsJsonObject();
-		final String category = jsonObject.getAsJsonPrimitive("category").getAsString();
+		final String category = getRequiredPrimitive(jsonObject, "category").getAsString();
 
-		final String name = jsonObject.getAsJsonPrimitive("name").getAsString();
+		final String name = getRequiredPrimitive(jsonObject, "name").getAsString();
 
-		final long start = jsonObject.getAsJsonPrimitive("start").getAsLong();
-		final long end = jsonObject.getAsJsonPrimitive("end").getAsLong();
+		final long start;
+		final long end;
+		try {
+			start = getRequiredPrimitive(jsonObject, "start").getAsLong();
+			end = getRequiredPrimitive(jsonObject, "end").getAsLong();
+		} catch (final NumberFormatException e) {
+			throw new JsonParseException("Invalid span start or end", e);
+		}
 
-		final Map<String, Double> measures = jsonObject.has("measures") ? context.deserialize(jsonObject.getAsJsonObject("measures"), TypeToken.getParameterized(Map.class, String.class, Double.class).getType())
+		final Map<String, Double> measures = hasValue(jsonObject, "measures", JsonElement::isJsonObject) ? context.deserialize(jsonObject.getAsJsonObject("measures"), TypeToken.getParameterized(Map.class, String.class, Double.class).getType())
 				: Collections.emptyMap();
-		final Map<String, String> tags = jsonObject.has("tags") ? context.deserialize(jsonObject.getAsJsonObject("tags"), TypeToken.getParameterized(Map.class, String.class, String.class).getType())
+		final Map<String, String> tags = hasValue(jsonObject, "tags", JsonElement::isJsonObject) ? context.deserialize(jsonObject.getAsJsonObject("tags"), TypeToken.getParameterized(Map.class, String.class, String.class).getType())
 				: Collections.emptyMap();
-		final Map<String, String> metadatas = jsonObject.has("metadatas") ? context.deserialize(jsonObject.getAsJsonObject("metadatas"), TypeToken.getParameterized(Map.class, String.class, String.class).getType())
+		final Map<String, String> metadatas = hasValue(jsonObject, "metadatas", JsonElement::isJsonObject) ? context.deserialize(jsonObject.getAsJsonObject("metadatas"), TypeToken.getParameterized(Map.class, String.class, String.class).getType())
 				: Collections.emptyMap();
-		final JsonArray subProcessArray = jsonObject.has("childSpans") ? jsonObject.getAsJsonArray("childSpans")
-				: jsonObject.has("subProcesses") ? jsonObject.getAsJsonArray("subProcesses")
+		final JsonArray subProcessArray = hasValue(jsonObject, "childSpans", JsonElement::isJsonArray) ? jsonObject.getAsJsonArray("childSpans")
+				: hasValue(jsonObject, "subProcesses", JsonElement::isJsonArray) ? jsonObject.getAsJsonArray("subProcesses")
 						: null;
 		final List<TraceSpan> subProcesses = subProcessArray != null ? context.deserialize(subProcessArray, TypeToken.getParameterized(List.class, TraceSpan.class).getType())
 				: Collections.emptyList();
@@ -45,4 +57,23 @@ public class AProcessJsonDeserializer implements JsonDeserializer<TraceSpan> {
 				category, name, Instant.ofEpochMilli(start), Instant.ofEpochMilli(end),
 				measures, metadatas, tags, subProcesses);
 	}
+
+	private static JsonPrimitive getRequiredPrimitive(final JsonObject jsonObject, final String key) {
+		final JsonElement element = jsonObject.get(key);
+		if (element == null || !element.isJsonPrimitive()) {
+			throw new JsonParseException("A span must have a " + key);
+		}
+		return element.getAsJsonPrimitive();
+	}
+
+	private static boolean hasValue(final JsonObject jsonObject, final String key, final Predicate<JsonElement> isExpectedType) {
+		final JsonElement element = jsonObject.get(key);
+		if (element == null || element.isJsonNull()) {
+			return false; //missing field : empty map or list
+		}
+		if (!isExpectedType.test(element)) {
+			throw new JsonParseException("Invalid span " + key);
+		}
+		return true;
+	}
 }
@@ -30,13 +30,21 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import io.vertigo.analytics.server.filter.IngestFilter;
+
 /**
  * Reads and logs JSON with a sub part of "ecs.version":"1.2.0", for JsonTemplateLayout {@link LogEvent}s from an {@link InputStream}..
+ * Events dropped by the {@link IngestFilter} are not parsed (null is returned, ignored by the listeners).
  */
 public class GsonTemplateLayoutLogEventParser implements TextLogEventParser {
 
+	private final IngestFilter ingestFilter = IngestFilter.getInstance();
+
 	@Override
 	public LogEvent parseFrom(final String input) throws ParseException {
+		if (ingestFilter.isEnabled() && !ingestFilter.accept(null, input)) {
+			return null;
+		}
 		final JsonObject jsonObject = JsonParser.parseString(input).getAsJsonObject();
 		final JsonElement timestamp = jsonObject.get("@timestamp");
 		final JsonElement logLevel = jsonObject.get("log.level");
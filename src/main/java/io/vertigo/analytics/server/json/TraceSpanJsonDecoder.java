@@ -0,0 +1,368 @@
+package io.vertigo.analytics.server.json;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonSyntaxException;
+
+import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.binary.BinaryProtocol;
+import io.vertigo.analytics.server.filter.EnvelopeScanner;
+import io.vertigo.analytics.server.filter.FieldProjection;
+import io.vertigo.analytics.server.filter.FieldProjection.SpanRule;
+
+/**
+ * Streaming decoder of a LogMessage of spans, applying a {@link FieldProjection} while reading the json.
+ * Dropped metadatas and measures are skipped in the text without being allocated.
+ * Supports the same formats as {@link AProcessJsonDeserializer} (subProcesses instead of childSpans, missing fields).
+ * The projection of a span depends on its category, which is read first by vertigo clients (else the rule of an unknown category is used).
+ * Malformed json, and spans nested deeper than {@link BinaryProtocol#MAX_SPAN_DEPTH}, are rejected with a JsonSyntaxException.
+ */
+public final class TraceSpanJsonDecoder {
+
+	private final String json;
+	private final FieldProjection projection;
+	private final String appName;
+	private int pos;
+	private int spanDepth;
+
+	private TraceSpanJsonDecoder(final String json, final FieldProjection projection) {
+		this.json = json;
+		this.projection = projection;
+		appName = EnvelopeScanner.findTopLevelString(json, "appName"); //rules of the app are needed before the spans, whatever the keys order
+	}
+
+	/**
+	 * @param json the LogMessage json
+	 * @param projection the projection of metadatas and measures
+	 * @return the decoded message
+	 * @throws JsonSyntaxException if this is not a LogMessage json
+	 */
+	public static LogMessage<TraceSpan> decode(final String json, final FieldProjection projection) {
+		return new TraceSpanJsonDecoder(json, projection).readLogMessage();
+	}
+
+	private LogMessage<TraceSpan> readLogMessage() {
+		final LogMessage<TraceSpan> logMessage = new LogMessage<>();
+		beginObject();
+		while (hasNextKey()) {
+			switch (readKey()) {
+				case "appName" -> logMessage.setAppName(readNullableString());
+				case "host" -> logMessage.setHost(readNullableString());
+				case "batchId" -> logMessage.setBatchId(readNullableString());
+				case "event" -> logMessage.setEvent(readNull() ? null : readSpan());
+				case "events" -> logMessage.setEvents(readNull() ? null : readSpans());
+				default -> skipValue();
+			}
+		}
+		return logMessage;
+	}
+
+	private List<TraceSpan> readSpans() {
+		final List<TraceSpan> spans = new ArrayList<>();
+		expect('[');
+		while (hasNextElement()) {
+			spans.add(readSpan());
+		}
+		return spans;
+	}
+
+	private TraceSpan readSpan() {
+		if (++spanDepth > BinaryProtocol.MAX_SPAN_DEPTH) {
+			throw syntaxError("Spans nested deeper than " + BinaryProtocol.MAX_SPAN_DEPTH);
+		}
+		String category = null;
+		String name = null;
+		long start = 0;
+		long end = 0;
+		Map<String, Double> measures = Collections.emptyMap();
+		Map<String, String> metadatas = Collections.emptyMap();
+		Map<String, String> tags = Collections.emptyMap();
+		List<TraceSpan> childSpans = Collections.emptyList();
+		beginObject();
+		while (hasNextKey()) {
+			switch (readKey()) {
+				case "category" -> category = readNullableString();
+				case "name" -> name = readNullableString();
+				case "start" -> start = readLong();
+				case "end" -> end = readLong();
+				case "measures" -> measures = readNull() ? Collections.emptyMap() : readMeasures(projection.ruleFor(appName, category));
+				case "metadatas" -> metadatas = readNull() ? Collections.emptyMap() : readMetadatas(projection.ruleFor(appName, category));
+				case "tags" -> tags = readNull() ? Collections.emptyMap() : readStringMap();
+				case "childSpans", "subProcesses" -> childSpans = readNull() ? Collections.emptyList() : readSpans();
+				default -> skipValue();
+			}
+		}
+		spanDepth--;
+		return new TraceSpan(category, name, Instant.ofEpochMilli(start), Instant.ofEpochMilli(end), measures, metadatas, tags, childSpans);
+	}
+
+	private Map<String, Double> readMeasures(final SpanRule rule) {
+		final Map<String, Double> measures = new HashMap<>();
+		beginObject();
+		while (hasNextKey()) {
+			final int keyStart = pos;
+			final String key = readKey();
+			if (rule.keepKey(key)) {
+				if (!readNull()) {
+					measures.put(key, readDouble());
+				}
+			} else {
+				skipValue();
+				projection.recordDropped(pos - keyStart);
+			}
+		}
+		return measures;
+	}
+
+	private Map<String, String> readMetadatas(final SpanRule rule) {
+		final Map<String, String> metadatas = new HashMap<>();
+		beginObject();
+		while (hasNextKey()) {
+			final int keyStart = pos;
+			final String key = readKey();
+			if (!rule.keepKey(key)) {
+				skipValue();
+				projection.recordDropped(pos - keyStart);
+				continue;
+			}
+			if (rule.maxLength() > 0 && peek() == '"' && stringLength() > rule.maxLength()) {
+				skipValue(); //raw length : escaped values may be a bit shorter
+				projection.recordDropped(pos - keyStart);
+			} else if (!readNull()) {
+				final String value = readScalarAsString();
+				if (rule.truncateLength() > 0 && value.length() > rule.truncateLength()) {
+					projection.recordTruncated(value.length() - rule.truncateLength());
+					metadatas.put(key, value.substring(0, rule.truncateLength()));
+				} else {
+					metadatas.put(key, value);
+				}
+			}
+		}
+		return metadatas;
+	}
+
+	private Map<String, String> readStringMap() {
+		final Map<String, String> map = new HashMap<>();
+		beginObject();
+		while (hasNextKey()) {
+			final String key = readKey();
+			if (!readNull()) {
+				map.put(key, readScalarAsString());
+			}
+		}
+		return map;
+	}
+
+	//-----------------------------------------------------------------
+	// json tokens
+	//-----------------------------------------------------------------
+
+	private void skipWhitespace() {
+		while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private char peek() {
+		skipWhitespace();
+		if (pos >= json.length()) {
+			throw syntaxError("Unexpected end of json");
+		}
+		return json.charAt(pos);
+	}
+
+	private void expect(final char expected) {
+		if (peek() != expected) {
+			throw syntaxError("Expected '" + expected + "'");
+		}
+		pos++;
+	}
+
+	private void beginObject() {
+		expect('{');
+	}
+
+	/**
+	 * Before each object entry : consume the separator or the end of the object.
+	 * @return if there is a next key
+	 */
+	private boolean hasNextKey() {
+		return hasNext('}');
+	}
+
+	private boolean hasNextElement() {
+		return hasNext(']');
+	}
+
+	private boolean hasNext(final char endChar) {
+		char c = peek();
+		if (c == ',') {
+			pos++;
+			c = peek();
+		}
+		if (c == endChar) {
+			pos++;
+			return false;
+		}
+		return true;
+	}
+
+	private boolean readNull() {
+		if (peek() == 'n' && json.startsWith("null", pos)) {
+			pos += 4;
+			return true;
+		}
+		return false;
+	}
+
+	private String readNullableString() {
+		return readNull() ? null : readScalarAsString();
+	}
+
+	private String readKey() {
+		final String key = readString();
+		expect(':');
+		return key;
+	}
+
+	private String readString() {
+		expect('"');
+		final int start = pos;
+		StringBuilder unescaped = null;
+		int chunkStart = start;
+		while (true) {
+			if (pos >= json.length()) {
+				throw syntaxError("Unterminated string");
+			}
+			final char c = json.charAt(pos);
+			if (c == '"') {
+				break;
+			} else if (c == '\\') {
+				if (unescaped == null) {
+					unescaped = new StringBuilder();
+				}
+				unescaped.append(json, chunkStart, pos);
+				pos++;
+				unescaped.append(unescape());
+				chunkStart = pos;
+			} else {
+				pos++;
+			}
+		}
+		final String value;
+		if (unescaped == null) {
+			value = json.substring(start, pos);
+		} else {
+			unescaped.append(json, chunkStart, pos);
+			value = unescaped.toString();
+		}
+		pos++; //closing quote
+		return value;
+	}
+
+	private char unescape() {
+		if (pos >= json.length()) {
+			throw syntaxError("Unterminated string");
+		}
+		final char c = json.charAt(pos++);
+		return switch (c) {
+			case 'n' -> '\n';
+			case 't' -> '\t';
+			case 'r' -> '\r';
+			case 'b' -> '\b';
+			case 'f' -> '\f';
+			case 'u' -> {
+				if (pos + 4 > json.length()) {
+					throw syntaxError("Unterminated unicode escape");
+				}
+				try {
+					final char unicode = (char) Integer.parseInt(json.substring(pos, pos + 4), 16);
+					pos += 4;
+					yield unicode;
+				} catch (final NumberFormatException e) {
+					throw syntaxError("Invalid unicode escape");
+				}
+			}
+			default -> c; //quote, backslash, slash
+		};
+	}
+
+	/**
+	 * @return the raw length of the string value at the current position (escapes not decoded)
+	 */
+	private int stringLength() {
+		int i = pos + 1;
+		while (i < json.length() && json.charAt(i) != '"') {
+			i += json.charAt(i) == '\\' ? 2 : 1;
+		}
+		return i - pos - 1;
+	}
+
+	private String readScalarAsString() {
+		if (peek() == '"') {
+			return readString();
+		}
+		final int start = pos;
+		skipLiteral();
+		return json.substring(start, pos);
+	}
+
+	private long readLong() {
+		final String value = readScalarAsString();
+		try {
+			return Long.parseLong(value);
+		} catch (final NumberFormatException e) {
+			return (long) parseDouble(value);
+		}
+	}
+
+	private double readDouble() {
+		return parseDouble(readScalarAsString());
+	}
+
+	private double parseDouble(final String value) {
+		try {
+			return Double.parseDouble(value);
+		} catch (final NumberFormatException e) {
+			throw syntaxError("Invalid number '" + value + "'");
+		}
+	}
+
+	private void skipLiteral() {
+		while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+			pos++;
+		}
+	}
+
+	private void skipValue() {
+		final char c = peek();
+		if (c == '"') {
+			pos += stringLength() + 2;
+		} else if (c == '{' || c == '[') {
+			int depth = 0;
+			do {
+				final char current = json.charAt(pos);
+				if (current == '"') {
+					pos += stringLength() + 1;
+				} else if (current == '{' || current == '[') {
+					depth++;
+				} else if (current == '}' || current == ']') {
+					depth--;
+				}
+				pos++;
+			} while (depth > 0 && pos < json.length());
+		} else {
+			skipLiteral();
+		}
+	}
+
+	private JsonSyntaxException syntaxError(final String message) {
+		return new JsonSyntaxException(message + " at char " + pos);
+	}
+}
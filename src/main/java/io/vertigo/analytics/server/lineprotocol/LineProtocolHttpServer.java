@@ -0,0 +1,94 @@
+package io.vertigo.analytics.server.lineprotocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.vertigo.analytics.server.http.BoundedInputStream;
+import io.vertigo.analytics.server.http.HttpServers;
+
+/**
+ * HTTP listener of InfluxDB line protocol records, compatible with the InfluxDB v2 write api : POST /api/v2/write?bucket=name[&amp;precision=ns].
+ * Bodies may be gzip compressed (Content-Encoding: gzip). Only the ns precision is supported.
+ * Responses : 204 if all records are queued, 400 if some lines are invalid (valid ones are queued), 429 if the bucket lane is full,
+ * 413 if the (decompressed) body is too large (records before are queued).
+ * Read from environment variables : LINE_PROTOCOL_HTTP_MAX_BODY_BYTES, and the thread pool settings of {@link HttpServers} with the LINE_PROTOCOL_HTTP prefix.
+ */
+public final class LineProtocolHttpServer {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final long MAX_BACKPRESSURE_MILLIS = 1_000;
+
+	private final int port;
+	private final long maxBodyBytes = Long.parseLong(Optional.ofNullable(System.getenv("LINE_PROTOCOL_HTTP_MAX_BODY_BYTES")).orElse(String.valueOf(64 * 1024 * 1024)));
+	private final LineProtocolRelay relay = new LineProtocolRelay("http");
+	private Javalin app;
+
+	/**
+	 * @param port the port
+	 */
+	public LineProtocolHttpServer(final int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Start the http server (its threads are started).
+	 */
+	public void start() {
+		app = HttpServers.create("lineprotocol-http", port, "LINE_PROTOCOL_HTTP", 8);
+		app.post("/api/v2/write", this::handleWrite);
+		app.start();
+		LOGGER.info("Listening for line protocol http requests on port {}", port);
+	}
+
+	private void handleWrite(final Context ctx) {
+		final String bucket = ctx.queryParam("bucket");
+		if (bucket == null || bucket.isBlank()) {
+			respond(ctx, 400, "bucket is required");
+			return;
+		}
+		final String precision = ctx.queryParam("precision");
+		if (precision != null && !"ns".equals(precision)) {
+			respond(ctx, 400, "only ns precision is supported");
+			return;
+		}
+		try (InputStream body = new BoundedInputStream("gzip".equalsIgnoreCase(ctx.header("Content-Encoding"))
+				? new GZIPInputStream(ctx.req().getInputStream(), 64 * 1024)
+				: ctx.req().getInputStream(), maxBodyBytes)) {
+			final LineProtocolRelay.RelayResult result = relay.relay(body, bucket, false, MAX_BACKPRESSURE_MILLIS);
+			if (result.rejected() > 0) {
+				ctx.header("Retry-After", "1");
+				respond(ctx, 429, result.rejected() + " records rejected, bucket lane is full");
+			} else if (result.invalid() > 0) {
+				respond(ctx, 400, result.invalid() + " invalid lines");
+			} else {
+				ctx.status(204);
+			}
+		} catch (final BoundedInputStream.BodyTooLargeException e) {
+			respond(ctx, 413, e.getMessage());
+		} catch (final IOException e) {
+			LOGGER.error("Error while reading line protocol request : {}", e.getMessage());
+			respond(ctx, 400, e.getMessage());
+		}
+	}
+
+	private static void respond(final Context ctx, final int status, final String message) {
+		ctx.status(status);
+		ctx.result(message);
+	}
+
+	/**
+	 * Stop the http server.
+	 */
+	public void shutdown() {
+		if (app != null) {
+			app.stop();
+		}
+	}
+}
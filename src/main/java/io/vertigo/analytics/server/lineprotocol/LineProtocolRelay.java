@@ -0,0 +1,213 @@
+package io.vertigo.analytics.server.lineprotocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.influxdb.LineProtocolSink;
+
+/**
+ * Relay of InfluxDB line protocol records to the writer of an InfluxDB appender (its lanes batch records of every client).
+ * Records are checked by a byte scanner, invalid lines (and lines over 1MB) are dropped. A "#bucket name" comment line sets the bucket of the next records.
+ * The appender is named by the LINE_PROTOCOL_APPENDER environment variable (InfluxdbMetric by default).
+ * Metrics : lineprotocol.[name].records, invalid and rejected.
+ */
+final class LineProtocolRelay {
+
+	private static final int CHUNK_RECORDS = 1_000;
+	private static final int MAX_LINE_LENGTH = 1024 * 1024;
+	private static final long BACKPRESSURE_PAUSE_MILLIS = 10;
+	private static final byte[] BUCKET_PREFIX = "#bucket ".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * @param records records queued
+	 * @param invalid invalid lines
+	 * @param rejected records dropped because the lane was full
+	 */
+	record RelayResult(long records, long invalid, long rejected) {
+		//only data
+	}
+
+	private final String appenderName = Optional.ofNullable(System.getenv("LINE_PROTOCOL_APPENDER")).orElse("InfluxdbMetric");
+	private final LongAdder records;
+	private final LongAdder invalid;
+	private final LongAdder rejected;
+
+	/**
+	 * @param name name of the listener (metrics)
+	 */
+	LineProtocolRelay(final String name) {
+		final String metricPrefix = "lineprotocol." + name;
+		records = ServerMetrics.counter(metricPrefix + ".records");
+		invalid = ServerMetrics.counter(metricPrefix + ".invalid");
+		rejected = ServerMetrics.counter(metricPrefix + ".rejected");
+	}
+
+	/**
+	 * Relay all records of this stream.
+	 * @param in the stream
+	 * @param defaultBucket bucket of records before any "#bucket" line
+	 * @param flushOnIdle if records are sent as soon as the stream has no more available bytes (long lived connections)
+	 * @param maxWaitMillis max wait for room in a full lane, before the records are rejected (0 to reject at once)
+	 * @return counts of this stream
+	 * @throws IOException if the stream can't be read
+	 */
+	RelayResult relay(final InputStream in, final String defaultBucket, final boolean flushOnIdle, final long maxWaitMillis) throws IOException {
+		return relay(findSink(), in, defaultBucket, flushOnIdle, maxWaitMillis);
+	}
+
+	/**
+	 * Relay all records of this stream to this sink.
+	 * @param sink the sink
+	 * @param in the stream
+	 * @param defaultBucket bucket of records before any "#bucket" line
+	 * @param flushOnIdle if records are sent as soon as the stream has no more available bytes (long lived connections)
+	 * @param maxWaitMillis max wait for room in a full lane, before the records are rejected (0 to reject at once)
+	 * @return counts of this stream
+	 * @throws IOException if the stream can't be read
+	 */
+	RelayResult relay(final LineProtocolSink sink, final InputStream in, final String defaultBucket, final boolean flushOnIdle, final long maxWaitMillis) throws IOException {
+		final RelayState state = new RelayState(sink, defaultBucket, maxWaitMillis);
+		byte[] buffer = new byte[64 * 1024];
+		int length = 0;
+		boolean skipLine = false; //line too long, skipped until its end
+		int read;
+		while ((read = in.read(buffer, length, buffer.length - length)) >= 0) {
+			length += read;
+			int lineStart = 0;
+			for (int i = length - read; i < length; i++) {
+				if (buffer[i] == '\n') {
+					if (skipLine) {
+						skipLine = false;
+					} else {
+						state.onLine(buffer, lineStart, i);
+					}
+					lineStart = i + 1;
+				}
+			}
+			//keep the partial line
+			length -= lineStart;
+			System.arraycopy(buffer, lineStart, buffer, 0, length);
+			if (length == buffer.length) {
+				if (buffer.length >= MAX_LINE_LENGTH) {
+					state.invalidCount++;
+					invalid.increment();
+					skipLine = true;
+					length = 0;
+				} else {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+			}
+			if (flushOnIdle && in.available() == 0) {
+				state.flush();
+			}
+		}
+		if (length > 0 && !skipLine) {
+			state.onLine(buffer, 0, length);
+		}
+		state.flush();
+		return new RelayResult(state.recordCount, state.invalidCount, state.rejectedCount);
+	}
+
+	private LineProtocolSink findSink() throws IOException {
+		final Appender appender = ((LoggerContext) LogManager.getContext(false)).getConfiguration().getAppenders().get(appenderName);
+		if (appender instanceof LineProtocolSink) {
+			return (LineProtocolSink) appender;
+		}
+		throw new IOException("No InfluxDB appender named " + appenderName + " for line protocol records");
+	}
+
+	private final class RelayState {
+		private final LineProtocolSink sink;
+		private final long maxWaitMillis;
+		private String bucket;
+		private List<String> chunk = new ArrayList<>();
+		private long recordCount;
+		private long invalidCount;
+		private long rejectedCount;
+
+		RelayState(final LineProtocolSink sink, final String bucket, final long maxWaitMillis) {
+			this.sink = sink;
+			this.bucket = bucket;
+			this.maxWaitMillis = maxWaitMillis;
+		}
+
+		void onLine(final byte[] buffer, final int start, final int lineEnd) {
+			final int end = lineEnd > start && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+			if (end == start) {
+				return;
+			}
+			if (buffer[start] == '#') {
+				if (startsWith(buffer, start, end, BUCKET_PREFIX)) {
+					final String newBucket = new String(buffer, start + BUCKET_PREFIX.length, end - start - BUCKET_PREFIX.length, StandardCharsets.UTF_8).trim();
+					if (newBucket.isEmpty()) {
+						invalidCount++;
+						invalid.increment();
+						return;
+					}
+					flush(); //previous records go to the previous bucket
+					bucket = newBucket;
+				}
+				return;
+			}
+			if (!LineProtocolValidator.isValid(buffer, start, end)) {
+				invalidCount++;
+				invalid.increment();
+				return;
+			}
+			chunk.add(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+			if (chunk.size() >= CHUNK_RECORDS) {
+				flush();
+			}
+		}
+
+		void flush() {
+			if (chunk.isEmpty()) {
+				return;
+			}
+			final long deadline = System.currentTimeMillis() + maxWaitMillis;
+			while (!sink.hasCapacity(bucket, chunk.size()) && System.currentTimeMillis() < deadline) {
+				pause(); //backpressure : the client waits while the lane drains
+			}
+			if (sink.writeRecords(bucket, chunk)) {
+				recordCount += chunk.size();
+				records.add(chunk.size());
+			} else {
+				rejectedCount += chunk.size();
+				rejected.add(chunk.size());
+			}
+			chunk = new ArrayList<>(); //the lane keeps the list
+		}
+	}
+
+	private static boolean startsWith(final byte[] buffer, final int start, final int end, final byte[] prefix) {
+		if (end - start < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer[start + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void pause() {
+		try {
+			TimeUnit.MILLISECONDS.sleep(BACKPRESSURE_PAUSE_MILLIS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package io.vertigo.analytics.server.lineprotocol;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Optional;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * TCP listener of InfluxDB line protocol records (newline separated), relayed to the InfluxDB writer.
+ * Records go to the LINE_PROTOCOL_BUCKET environment variable bucket, or to the bucket of the last "#bucket name" line.
+ * When the bucket lane is full, the connection is not read anymore (TCP backpressure) for up to a minute, then records are rejected.
+ */
+public final class LineProtocolTcpServer implements Runnable {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final int CLIENT_SOCKET_READ_TIMEOUT = 5 * 60 * 1000;
+	private static final long MAX_BACKPRESSURE_MILLIS = 60_000;
+
+	private final ServerSocket serverSocket;
+	private final String defaultBucket = Optional.ofNullable(System.getenv("LINE_PROTOCOL_BUCKET")).orElse("lineprotocol");
+	private final LineProtocolRelay relay = new LineProtocolRelay("tcp");
+
+	/**
+	 * @param port the port
+	 * @throws IOException if the port can't be bound
+	 */
+	public LineProtocolTcpServer(final int port) throws IOException {
+		serverSocket = new ServerSocket(port);
+	}
+
+	/**
+	 * @return the server thread
+	 */
+	public Thread startNewThread() {
+		final Thread thread = new Thread(this, "vertigo-analytics-lineprotocol-" + serverSocket.getLocalPort());
+		thread.start();
+		return thread;
+	}
+
+	@Override
+	public void run() {
+		LOGGER.info("Listening for line protocol connections on {}", serverSocket);
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				socket.setSoTimeout(CLIENT_SOCKET_READ_TIMEOUT);
+				final Thread handler = new Thread(() -> handle(socket), "vertigo-analytics-lineprotocol-" + socket.getRemoteSocketAddress());
+				handler.setDaemon(true);
+				handler.start();
+			} catch (final IOException e) {
+				if (serverSocket.isClosed()) {
+					return;
+				}
+				LOGGER.error("Exception encountered on accept. Ignoring.", e);
+			}
+		}
+	}
+
+	private void handle(final Socket socket) {
+		try (socket) {
+			final LineProtocolRelay.RelayResult result = relay.relay(new BufferedInputStream(socket.getInputStream(), 64 * 1024), defaultBucket, true, MAX_BACKPRESSURE_MILLIS);
+			LOGGER.info("Line protocol connection of {} closed : {}", socket.getRemoteSocketAddress(), result);
+		} catch (final IOException e) {
+			LOGGER.error("Closing line protocol connection of {} : {}", socket.getRemoteSocketAddress(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Stop accepting connections.
+	 */
+	public void shutdown() {
+		try {
+			serverSocket.close();
+		} catch (final IOException e) {
+			LOGGER.error("Error while closing the line protocol server socket", e);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package io.vertigo.analytics.server.lineprotocol;
+
+/**
+ * Byte scanner checking the syntax of one InfluxDB line protocol record, without allocation.
+ * measurement[,tag=value...] field=value[,field=value...] [timestamp]
+ * Field values are numbers (with optional i or u suffix), booleans or double quoted strings. Escapes are '\' + any char.
+ */
+final class LineProtocolValidator {
+
+	private LineProtocolValidator() {
+		//private constructor
+	}
+
+	/**
+	 * @param bytes the buffer
+	 * @param start first byte of the line
+	 * @param end end of the line (exclusive, without the line feed)
+	 * @return if this line is a valid record
+	 */
+	static boolean isValid(final byte[] bytes, final int start, final int end) {
+		//measurement
+		int i = scanName(bytes, start, end, false);
+		if (i == start || i < 0) {
+			return false;
+		}
+		//tags
+		while (i < end && bytes[i] == ',') {
+			i = scanKeyValue(bytes, i + 1, end, false);
+			if (i < 0) {
+				return false;
+			}
+		}
+		if (i >= end || bytes[i] != ' ') {
+			return false;
+		}
+		//fields
+		i = scanKeyValue(bytes, i + 1, end, true);
+		while (i >= 0 && i < end && bytes[i] == ',') {
+			i = scanKeyValue(bytes, i + 1, end, true);
+		}
+		if (i < 0) {
+			return false;
+		}
+		if (i == end) {
+			return true;
+		}
+		//timestamp
+		if (bytes[i] != ' ') {
+			return false;
+		}
+		i++;
+		if (i < end && bytes[i] == '-') {
+			i++;
+		}
+		final int digitsStart = i;
+		while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+			i++;
+		}
+		return i == end && i > digitsStart;
+	}
+
+	/**
+	 * @return index of the first unescaped separator (',', ' ', or '=' for keys), or -1 if an escape is truncated
+	 */
+	private static int scanName(final byte[] bytes, final int start, final int end, final boolean key) {
+		int i = start;
+		while (i < end) {
+			final byte b = bytes[i];
+			if (b == '\\') {
+				if (i + 1 >= end) {
+					return -1;
+				}
+				i += 2;
+			} else if (b == ',' || b == ' ' || key && b == '=') {
+				return i;
+			} else {
+				i++;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @return index after the value, or -1 if invalid
+	 */
+	private static int scanKeyValue(final byte[] bytes, final int start, final int end, final boolean field) {
+		final int keyEnd = scanName(bytes, start, end, true);
+		if (keyEnd <= start || keyEnd >= end || bytes[keyEnd] != '=') {
+			return -1;
+		}
+		final int valueStart = keyEnd + 1;
+		if (!field) {
+			final int valueEnd = scanName(bytes, valueStart, end, false);
+			return valueEnd > valueStart ? valueEnd : -1;
+		}
+		if (valueStart < end && bytes[valueStart] == '"') {
+			return scanString(bytes, valueStart + 1, end);
+		}
+		int i = valueStart;
+		while (i < end && bytes[i] != ',' && bytes[i] != ' ') {
+			i++;
+		}
+		return isFieldScalar(bytes, valueStart, i) ? i : -1;
+	}
+
+	private static int scanString(final byte[] bytes, final int start, final int end) {
+		int i = start;
+		while (i < end) {
+			if (bytes[i] == '\\') {
+				i += 2;
+			} else if (bytes[i] == '"') {
+				return i + 1;
+			} else {
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isFieldScalar(final byte[] bytes, final int start, final int end) {
+		if (end <= start) {
+			return false;
+		}
+		final byte first = bytes[start];
+		if (first == 't' || first == 'T' || first == 'f' || first == 'F') {
+			return isBoolean(bytes, start, end);
+		}
+		int numberEnd = end;
+		if (bytes[end - 1] == 'i' || bytes[end - 1] == 'u') {
+			numberEnd--;
+		}
+		boolean digit = false;
+		for (int i = start; i < numberEnd; i++) {
+			final byte b = bytes[i];
+			if (b >= '0' && b <= '9') {
+				digit = true;
+			} else if (b != '-' && b != '+' && b != '.' && b != 'e' && b != 'E') {
+				return false;
+			}
+		}
+		return digit;
+	}
+
+	private static boolean isBoolean(final byte[] bytes, final int start, final int end) {
+		final int length = end - start;
+		if (length == 1) {
+			return true; //t, T, f, F
+		}
+		return equalsAscii(bytes, start, end, "true") || equalsAscii(bytes, start, end, "True") || equalsAscii(bytes, start, end, "TRUE")
+				|| equalsAscii(bytes, start, end, "false") || equalsAscii(bytes, start, end, "False") || equalsAscii(bytes, start, end, "FALSE");
+	}
+
+	private static boolean equalsAscii(final byte[] bytes, final int start, final int end, final String value) {
+		if (end - start != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (bytes[start + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
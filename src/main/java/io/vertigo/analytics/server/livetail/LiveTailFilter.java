@@ -0,0 +1,67 @@
+package io.vertigo.analytics.server.livetail;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.LogMessageRouter.Kind;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.core.analytics.health.HealthCheck;
+import io.vertigo.core.analytics.health.HealthStatus;
+
+/**
+ * Filter of a live tail subscriber, from the query params of its websocket url :
+ * kind (process, metric or health, default process), app, category (process), minDuration (process, ex: 500ms) and status (health, ex: RED).
+ * Kind and app are matched by the subscription table index, the other criteria on the event itself (for a process : the root span only).
+ *
+ * @param kind the kind of events
+ * @param appName the app (null for any)
+ * @param category the process category (null for any)
+ * @param minDurationMillis the min process duration
+ * @param healthStatus the health status (null for any)
+ */
+public record LiveTailFilter(
+		Kind kind,
+		String appName,
+		String category,
+		long minDurationMillis,
+		HealthStatus healthStatus) {
+
+	/**
+	 * @param params the query params
+	 * @return the filter
+	 * @throws IllegalArgumentException if a param is invalid
+	 */
+	public static LiveTailFilter of(final Map<String, List<String>> params) {
+		final String kind = param(params, "kind");
+		final String minDuration = param(params, "minDuration");
+		final String status = param(params, "status");
+		return new LiveTailFilter(
+				kind != null ? Kind.valueOf(kind.toUpperCase(Locale.ROOT)) : Kind.PROCESS,
+				param(params, "app"),
+				param(params, "category"),
+				minDuration != null ? DurationUtil.parseMillis(minDuration) : 0,
+				status != null ? HealthStatus.valueOf(status.toUpperCase(Locale.ROOT)) : null);
+	}
+
+	private static String param(final Map<String, List<String>> params, final String name) {
+		final List<String> values = params.get(name);
+		return values == null || values.isEmpty() || values.get(0).isBlank() ? null : values.get(0);
+	}
+
+	/**
+	 * @param event an event of the kind and app of this filter
+	 * @return if this event matches the other criteria
+	 */
+	boolean accept(final Object event) {
+		if (event instanceof TraceSpan) {
+			final TraceSpan traceSpan = (TraceSpan) event;
+			return (category == null || category.equals(traceSpan.getCategory()))
+					&& traceSpan.getDurationMillis() >= minDurationMillis;
+		} else if (event instanceof HealthCheck) {
+			return healthStatus == null || healthStatus == ((HealthCheck) event).healthMeasure().status();
+		}
+		return true;
+	}
+}
@@ -0,0 +1,189 @@
+package io.vertigo.analytics.server.livetail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.LogMessageRouter.Kind;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.core.analytics.health.HealthCheck;
+import io.vertigo.core.analytics.metric.Metric;
+import io.vertigo.core.lang.json.CoreJsonAdapters;
+
+/**
+ * Dispatch of the decoded events to the live tail subscribers.
+ * Subscriptions are indexed by kind then app, and subscribers with the same filter share a group :
+ * an event is matched against the groups of its app (and of any app) only, each filter is evaluated once per event,
+ * and the event is serialized once for all its subscribers.
+ * The table is rebuilt on subscribe and unsubscribe, publishers read it without lock.
+ * Metrics : livetail.subscribers, livetail.events (events sent to at least one subscriber) and livetail.dropped.
+ */
+final class LiveTailHub {
+
+	private static final Gson GSON = CoreJsonAdapters.addCoreGsonConfig(new GsonBuilder(), false).create();
+	private static final Group[] NO_GROUPS = new Group[0];
+
+	private final Map<LiveTailSubscriber, LiveTailFilter> subscriptions = new LinkedHashMap<>(); //guarded by this
+	private volatile KindTable[] tables = emptyTables();
+	private final LongAdder events = ServerMetrics.counter("livetail.events");
+	private final LongAdder dropped = ServerMetrics.counter("livetail.dropped");
+
+	private record Group(LiveTailFilter filter, LiveTailSubscriber[] subscribers) {
+		//only data
+	}
+
+	private record KindTable(Map<String, Group[]> byApp, Group[] anyApp) {
+		//only data
+	}
+
+	LiveTailHub() {
+		ServerMetrics.gauge("livetail.subscribers", this::getSubscriberCount);
+	}
+
+	/**
+	 * @return counter of the events dropped by the subscribers
+	 */
+	LongAdder getDroppedCounter() {
+		return dropped;
+	}
+
+	synchronized void subscribe(final LiveTailSubscriber subscriber, final LiveTailFilter filter) {
+		subscriptions.put(subscriber, filter);
+		tables = buildTables();
+	}
+
+	synchronized void unsubscribe(final LiveTailSubscriber subscriber) {
+		if (subscriptions.remove(subscriber) != null) {
+			tables = buildTables();
+		}
+		subscriber.close();
+	}
+
+	private synchronized long getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * @param kind the kind of events
+	 * @return if someone listens to this kind of events (else there is no need to decode them)
+	 */
+	boolean hasSubscribers(final Kind kind) {
+		return tables[kind.ordinal()] != null;
+	}
+
+	/**
+	 * @param kind the kind of events
+	 * @param logMessage the decoded message
+	 */
+	void publish(final Kind kind, final LogMessage<?> logMessage) {
+		final KindTable table = tables[kind.ordinal()];
+		if (table == null) {
+			return;
+		}
+		final Group[] appGroups = logMessage.getAppName() != null ? table.byApp().getOrDefault(logMessage.getAppName(), NO_GROUPS) : NO_GROUPS;
+		if (appGroups.length == 0 && table.anyApp().length == 0) {
+			return;
+		}
+		if (logMessage.getEvent() != null) {
+			publish(kind, logMessage, logMessage.getEvent(), appGroups, table.anyApp());
+		}
+		if (logMessage.getEvents() != null) { //for batch send
+			for (final Object event : logMessage.getEvents()) {
+				publish(kind, logMessage, event, appGroups, table.anyApp());
+			}
+		}
+	}
+
+	private void publish(final Kind kind, final LogMessage<?> logMessage, final Object event, final Group[] appGroups, final Group[] anyAppGroups) {
+		final String json = offer(kind, logMessage, event, anyAppGroups, offer(kind, logMessage, event, appGroups, null));
+		if (json != null) {
+			events.increment();
+		}
+	}
+
+	/**
+	 * @return the json of the event, if it was serialized by this call or before
+	 */
+	private static String offer(final Kind kind, final LogMessage<?> logMessage, final Object event, final Group[] groups, final String eventJson) {
+		String json = eventJson;
+		for (final Group group : groups) {
+			if (group.filter().accept(event)) {
+				if (json == null) {
+					json = toJson(kind, logMessage, event);
+				}
+				for (final LiveTailSubscriber subscriber : group.subscribers()) {
+					subscriber.offer(json);
+				}
+			}
+		}
+		return json;
+	}
+
+	private static String toJson(final Kind kind, final LogMessage<?> logMessage, final Object event) {
+		final JsonObject jsonObject = new JsonObject();
+		jsonObject.addProperty("kind", kind.name().toLowerCase(Locale.ROOT));
+		jsonObject.addProperty("appName", logMessage.getAppName());
+		jsonObject.addProperty("host", logMessage.getHost());
+		jsonObject.add("event", GSON.toJsonTree(event));
+		return GSON.toJson(jsonObject);
+	}
+
+	/**
+	 * @param event a decoded event
+	 * @return its kind, null if unknown
+	 */
+	static Kind kindOf(final Object event) {
+		if (event instanceof TraceSpan) {
+			return Kind.PROCESS;
+		} else if (event instanceof Metric) {
+			return Kind.METRIC;
+		} else if (event instanceof HealthCheck) {
+			return Kind.HEALTH;
+		}
+		return null;
+	}
+
+	/**
+	 * @return tables by kind ordinal, null for a kind without subscriber
+	 */
+	private KindTable[] buildTables() {
+		//subscribers by kind, app and filter
+		final Map<Kind, Map<String, Map<LiveTailFilter, List<LiveTailSubscriber>>>> index = new HashMap<>();
+		subscriptions.forEach((subscriber, filter) -> index
+				.computeIfAbsent(filter.kind(), kind -> new HashMap<>())
+				.computeIfAbsent(filter.appName(), appName -> new LinkedHashMap<>())
+				.computeIfAbsent(filter, key -> new ArrayList<>())
+				.add(subscriber));
+		final KindTable[] newTables = emptyTables();
+		index.forEach((kind, byApp) -> {
+			final Map<String, Group[]> groupsByApp = new HashMap<>();
+			Group[] anyApp = NO_GROUPS;
+			for (final Map.Entry<String, Map<LiveTailFilter, List<LiveTailSubscriber>>> entry : byApp.entrySet()) {
+				final Group[] groups = entry.getValue().entrySet().stream()
+						.map(filterEntry -> new Group(filterEntry.getKey(), filterEntry.getValue().toArray(new LiveTailSubscriber[0])))
+						.toArray(Group[]::new);
+				if (entry.getKey() == null) {
+					anyApp = groups;
+				} else {
+					groupsByApp.put(entry.getKey(), groups);
+				}
+			}
+			newTables[kind.ordinal()] = new KindTable(groupsByApp, anyApp);
+		});
+		return newTables;
+	}
+
+	private static KindTable[] emptyTables() {
+		return new KindTable[Kind.values().length];
+	}
+}
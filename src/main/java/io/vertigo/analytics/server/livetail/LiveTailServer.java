@@ -0,0 +1,137 @@
+package io.vertigo.analytics.server.livetail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.websocket.server.JettyServerUpgradeRequest;
+import org.eclipse.jetty.websocket.server.JettyServerUpgradeResponse;
+import org.eclipse.jetty.websocket.server.config.JettyWebSocketServletContainerInitializer;
+
+/**
+ * Live tail websocket server : ws://[host]:[port]/tail?kind=process&app=myApp&category=sql&minDuration=500ms (see {@link LiveTailFilter}).
+ * Each message is a json {"kind", "appName", "host", "event"}, or {"dropped":n} when the client was too slow for n events.
+ * A request with an invalid filter gets a 400.
+ * Servers are shared by bind address and port : on a log4j2 reconfiguration, the new appender gets the running server (and its subscribers),
+ * which is stopped when no appender uses it anymore. The buffer size and idle timeout of the first appender are kept.
+ */
+final class LiveTailServer {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private static final Map<String, LiveTailServer> SERVERS = new HashMap<>(); //by bind address and port
+
+	private final String bindAddress;
+	private final int port;
+	private final LiveTailHub hub = new LiveTailHub();
+	private final int bufferSize;
+	private final long idleTimeoutMillis;
+	private int references;
+	private Server server;
+
+	private LiveTailServer(final String bindAddress, final int port, final int bufferSize, final long idleTimeoutMillis) {
+		this.bindAddress = bindAddress;
+		this.port = port;
+		this.bufferSize = bufferSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	/**
+	 * Get the server of this address, started at first use.
+	 * @param bindAddress the bind address
+	 * @param port the port
+	 * @param bufferSize max events waiting to be sent, per subscriber
+	 * @param idleTimeoutMillis websockets without any message for this time are closed
+	 * @return the started server, to release when not used anymore
+	 */
+	static LiveTailServer acquire(final String bindAddress, final int port, final int bufferSize, final long idleTimeoutMillis) {
+		synchronized (SERVERS) {
+			final String key = bindAddress + ':' + port;
+			LiveTailServer liveTailServer = SERVERS.get(key);
+			if (liveTailServer == null) {
+				liveTailServer = new LiveTailServer(bindAddress, port, bufferSize, idleTimeoutMillis);
+				liveTailServer.start();
+				SERVERS.put(key, liveTailServer);
+			}
+			liveTailServer.references++;
+			return liveTailServer;
+		}
+	}
+
+	/**
+	 * Release a server : it is stopped when its last user releases it.
+	 * @param liveTailServer the server
+	 */
+	static void release(final LiveTailServer liveTailServer) {
+		synchronized (SERVERS) {
+			liveTailServer.references--;
+			if (liveTailServer.references == 0) {
+				SERVERS.remove(liveTailServer.bindAddress + ':' + liveTailServer.port);
+				liveTailServer.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * @return the hub of the subscribers
+	 */
+	LiveTailHub getHub() {
+		return hub;
+	}
+
+	/**
+	 * Start the websocket server (its threads are started).
+	 */
+	private void start() {
+		server = new Server();
+		final ServerConnector connector = new ServerConnector(server);
+		connector.setHost(bindAddress);
+		connector.setPort(port);
+		server.addConnector(connector);
+		final ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+		context.setContextPath("/");
+		server.setHandler(context);
+		JettyWebSocketServletContainerInitializer.configure(context, (servletContext, container) -> {
+			container.setIdleTimeout(Duration.ofMillis(idleTimeoutMillis));
+			container.addMapping("/tail", this::createSocket);
+		});
+		try {
+			server.start();
+		} catch (final Exception e) {
+			throw new IllegalStateException("Can't start the live tail server on " + bindAddress + ':' + port, e);
+		}
+		LOGGER.info("Live tail websocket listening on {}:{}", bindAddress, port);
+	}
+
+	private LiveTailSocket createSocket(final JettyServerUpgradeRequest request, final JettyServerUpgradeResponse response) {
+		try {
+			return new LiveTailSocket(hub, LiveTailFilter.of(request.getParameterMap()), bufferSize);
+		} catch (final IllegalArgumentException e) {
+			try {
+				response.sendError(400, "invalid filter : " + e.getMessage());
+			} catch (final IOException ioe) {
+				LOGGER.warn("Can't answer an invalid live tail request", ioe);
+			}
+			return null; //no upgrade
+		}
+	}
+
+	/**
+	 * Stop the websocket server.
+	 */
+	private void shutdown() {
+		if (server != null) {
+			try {
+				server.stop();
+			} catch (final Exception e) {
+				LOGGER.error("Error while stopping the live tail server", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package io.vertigo.analytics.server.livetail;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+
+/**
+ * Websocket endpoint of one live tail subscriber : subscribed while connected, messages from the client are ignored.
+ */
+@WebSocket
+public final class LiveTailSocket {
+
+	private final LiveTailHub hub;
+	private final LiveTailFilter filter;
+	private final int bufferSize;
+	private LiveTailSubscriber subscriber;
+
+	LiveTailSocket(final LiveTailHub hub, final LiveTailFilter filter, final int bufferSize) {
+		this.hub = hub;
+		this.filter = filter;
+		this.bufferSize = bufferSize;
+	}
+
+	@OnWebSocketConnect
+	public void onConnect(final Session session) {
+		subscriber = new LiveTailSubscriber(session, bufferSize, hub.getDroppedCounter());
+		hub.subscribe(subscriber, filter);
+	}
+
+	@OnWebSocketClose
+	public void onClose(final int statusCode, final String reason) {
+		unsubscribe();
+	}
+
+	@OnWebSocketError
+	public void onError(final Throwable cause) {
+		unsubscribe();
+	}
+
+	private void unsubscribe() {
+		if (subscriber != null) {
+			hub.unsubscribe(subscriber);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package io.vertigo.analytics.server.livetail;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+/**
+ * A live tail websocket, with a fixed size ring buffer of the events waiting to be sent.
+ * Events are sent one at a time with async writes : a publisher never waits for the client,
+ * when the buffer is full the oldest event is dropped and counted, the client gets {"dropped":n} before the next event.
+ */
+final class LiveTailSubscriber implements WriteCallback {
+
+	private final Session session;
+	private final String[] ring;
+	private final LongAdder dropped;
+	private int head;
+	private int size;
+	private long droppedSinceLastSend;
+	private boolean sending; //a thread is draining the ring or a write is pending
+	private boolean writePending;
+	private boolean inSend; //the draining thread is in sendString : a write completed in this call is handled by its loop
+	private boolean closed;
+
+	/**
+	 * @param session the websocket session
+	 * @param bufferSize max events waiting to be sent
+	 * @param dropped counter of the dropped events (all subscribers)
+	 */
+	LiveTailSubscriber(final Session session, final int bufferSize, final LongAdder dropped) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Live tail bufferSize must be positive : " + bufferSize);
+		}
+		this.session = session;
+		ring = new String[bufferSize];
+		this.dropped = dropped;
+	}
+
+	/**
+	 * @param json the event to send
+	 */
+	void offer(final String json) {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			if (size == ring.length) {
+				ring[head] = null;
+				head = (head + 1) % ring.length;
+				size--;
+				droppedSinceLastSend++;
+				dropped.increment();
+			}
+			ring[(head + size) % ring.length] = json;
+			size++;
+			if (sending) {
+				return;
+			}
+			sending = true;
+		}
+		drain();
+	}
+
+	private void drain() {
+		while (true) {
+			final String next;
+			synchronized (this) {
+				next = poll();
+				if (next == null) {
+					sending = false;
+					return;
+				}
+				writePending = true;
+				inSend = true;
+			}
+			try {
+				session.getRemote().sendString(next, this);
+			} catch (final RuntimeException e) {
+				writeFailed(e);
+			}
+			synchronized (this) {
+				inSend = false;
+				if (writePending) {
+					return; //writeSuccess will go on
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the next message to send, null if none (or closed)
+	 */
+	private String poll() {
+		if (closed) {
+			return null;
+		}
+		if (droppedSinceLastSend > 0) {
+			final String droppedMessage = "{\"dropped\":" + droppedSinceLastSend + "}";
+			droppedSinceLastSend = 0;
+			return droppedMessage;
+		}
+		if (size == 0) {
+			return null;
+		}
+		final String json = ring[head];
+		ring[head] = null;
+		head = (head + 1) % ring.length;
+		size--;
+		return json;
+	}
+
+	@Override
+	public void writeSuccess() {
+		synchronized (this) {
+			writePending = false;
+			if (inSend) {
+				return;
+			}
+		}
+		drain();
+	}
+
+	@Override
+	public void writeFailed(final Throwable cause) {
+		close();
+	}
+
+	/**
+	 * Drop the buffered events, nothing is sent anymore.
+	 */
+	synchronized void close() {
+		closed = true;
+		writePending = false;
+		size = 0;
+		Arrays.fill(ring, null);
+	}
+}
@@ -0,0 +1,134 @@
+package io.vertigo.analytics.server.livetail;
+
+import java.lang.reflect.Type;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.LogMessageRouter.Kind;
+import io.vertigo.analytics.server.LogMessageSink;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.json.AProcessJsonDeserializer;
+import io.vertigo.core.analytics.health.HealthCheck;
+import io.vertigo.core.analytics.metric.Metric;
+import io.vertigo.core.lang.json.CoreJsonAdapters;
+
+/**
+ * Live tail of the process, metric and health loggers : this appender starts the live tail websocket server ({@link LiveTailServer})
+ * and publishes the events it gets to the subscribers. Events are decoded only when someone listens to their kind.
+ * The websocket is not authenticated : it listens on the loopback address unless bindAddress is set.
+ */
+@Plugin(name = "LiveTail", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE)
+public final class Log4j2LiveTailAppender extends AbstractAppender implements LogMessageSink<Object> {
+
+	private static final Gson GSON = CoreJsonAdapters.addCoreGsonConfig(new GsonBuilder(), false)
+			.registerTypeAdapter(TraceSpan.class, new AProcessJsonDeserializer())
+			.create();
+	private static final Type[] LOG_MESSAGE_TYPES = {
+			TypeToken.getParameterized(LogMessage.class, TraceSpan.class).getType(),
+			TypeToken.getParameterized(LogMessage.class, Metric.class).getType(),
+			TypeToken.getParameterized(LogMessage.class, HealthCheck.class).getType() }; //by kind ordinal
+	private static final int DEFAULT_BUFFER_SIZE = 1000;
+	private static final String DEFAULT_IDLE_TIMEOUT = "10m";
+	private static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
+
+	private final String bindAddress;
+	private final int port;
+	private final int bufferSize;
+	private final long idleTimeoutMillis;
+	private volatile LiveTailServer liveTailServer; //while started
+
+	private Log4j2LiveTailAppender(final String name, final Filter filter, final String bindAddress, final int port, final int bufferSize, final long idleTimeoutMillis) {
+		super(name, filter, null, true);
+		//---
+		this.bindAddress = bindAddress;
+		this.port = port;
+		this.bufferSize = bufferSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	@Override
+	public void start() {
+		liveTailServer = LiveTailServer.acquire(bindAddress, port, bufferSize, idleTimeoutMillis);
+		super.start();
+	}
+
+	@Override
+	public void stop() {
+		final LiveTailServer startedServer = liveTailServer;
+		if (startedServer != null) {
+			liveTailServer = null;
+			LiveTailServer.release(startedServer);
+		}
+		super.stop();
+	}
+
+	@Override
+	public void append(final LogEvent event) {
+		final LiveTailServer startedServer = liveTailServer;
+		final Kind kind = kindOf(event.getLoggerName());
+		if (startedServer == null || kind == null || !startedServer.getHub().hasSubscribers(kind)) {
+			return;
+		}
+		try {
+			startedServer.getHub().publish(kind, GSON.fromJson(event.getMessage().getFormattedMessage(), LOG_MESSAGE_TYPES[kind.ordinal()]));
+		} catch (final JsonSyntaxException e) {
+			// it wasn't a message for us so we do nothing
+		} catch (final Exception e) {
+			getHandler().error("error publishing log to live tail", e);
+		}
+	}
+
+	@Override
+	public void write(final LogMessage<Object> logMessage) {
+		final Object firstEvent = logMessage.getEvent() != null ? logMessage.getEvent()
+				: logMessage.getEvents() != null && !logMessage.getEvents().isEmpty() ? logMessage.getEvents().get(0) : null;
+		final LiveTailServer startedServer = liveTailServer;
+		final Kind kind = LiveTailHub.kindOf(firstEvent);
+		if (startedServer != null && kind != null) {
+			startedServer.getHub().publish(kind, logMessage);
+		}
+	}
+
+	private static Kind kindOf(final String loggerName) {
+		for (final Kind kind : Kind.values()) {
+			if (kind.getLoggerName().equals(loggerName)) {
+				return kind;
+			}
+		}
+		return null;
+	}
+
+	@PluginFactory
+	public static Log4j2LiveTailAppender createAppender(
+			@PluginAttribute("name") final String name,
+			@PluginElement("Filter") final Filter filter,
+			@PluginAttribute(value = "bindAddress", defaultString = DEFAULT_BIND_ADDRESS) final String bindAddress,
+			@PluginAttribute(value = "port", defaultInt = 7070) final int port,
+			@PluginAttribute(value = "bufferSize", defaultInt = DEFAULT_BUFFER_SIZE) final int bufferSize,
+			@PluginAttribute(value = "idleTimeout", defaultString = DEFAULT_IDLE_TIMEOUT) final String idleTimeout) {
+		if (name == null) {
+			LOGGER.error("A name for the Appender must be specified");
+			return null;
+		}
+		if (bufferSize <= 0) {
+			LOGGER.error("The live tail bufferSize must be positive : {}", bufferSize);
+			return null;
+		}
+		return new Log4j2LiveTailAppender(name, filter, bindAddress, port, bufferSize, DurationUtil.parseMillis(idleTimeout));
+	}
+}
@@ -0,0 +1,103 @@
+package io.vertigo.analytics.server.otlp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.http.BoundedInputStream;
+import io.vertigo.analytics.server.http.HttpServers;
+
+/**
+ * OTLP/HTTP trace receiver : POST /v1/traces with an ExportTraceServiceRequest protobuf body (gzip with Content-Encoding: gzip).
+ * Spans are assembled into TraceSpan trees and sent to the process appenders (InfluxDB, Tempo...).
+ * Read from environment variables : OTLP_TRACE_WINDOW (ex: 5s, time without new spans before a trace is sent),
+ * OTLP_MAX_PENDING_SPANS, OTLP_MAX_BODY_BYTES (decompressed), and the thread pool settings of {@link HttpServers} with the OTLP_HTTP prefix.
+ * Metrics : otlp.requests and otlp.invalid, and those of the assembler.
+ */
+public final class OtlpHttpServer {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final int port;
+	private final int maxBodyBytes = Integer.parseInt(Optional.ofNullable(System.getenv("OTLP_MAX_BODY_BYTES")).orElse(String.valueOf(16 * 1024 * 1024)));
+	private final OtlpTraceAssembler assembler = new OtlpTraceAssembler(
+			DurationUtil.parseMillis(Optional.ofNullable(System.getenv("OTLP_TRACE_WINDOW")).orElse("5s")),
+			Integer.parseInt(Optional.ofNullable(System.getenv("OTLP_MAX_PENDING_SPANS")).orElse("200000")));
+	private final LongAdder requests = ServerMetrics.counter("otlp.requests");
+	private final LongAdder invalid = ServerMetrics.counter("otlp.invalid");
+	private Javalin app;
+
+	/**
+	 * @param port the port
+	 */
+	public OtlpHttpServer(final int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Start the http server (its threads are started).
+	 */
+	public void start() {
+		app = HttpServers.create("otlp-http", port, "OTLP_HTTP", 8);
+		app.post("/v1/traces", this::handleTraces);
+		app.start();
+		LOGGER.info("Listening for OTLP traces on port {}", port);
+	}
+
+	private void handleTraces(final Context ctx) {
+		final String contentType = ctx.header("Content-Type");
+		if (contentType == null || !contentType.startsWith("application/x-protobuf")) {
+			respond(ctx, 415, "only application/x-protobuf is supported");
+			return;
+		}
+		final byte[] body;
+		try (InputStream in = new BoundedInputStream("gzip".equalsIgnoreCase(ctx.header("Content-Encoding"))
+				? new GZIPInputStream(ctx.req().getInputStream(), 64 * 1024)
+				: ctx.req().getInputStream(), maxBodyBytes)) {
+			body = in.readAllBytes();
+		} catch (final BoundedInputStream.BodyTooLargeException e) {
+			invalid.increment();
+			respond(ctx, 413, e.getMessage());
+			return;
+		} catch (final IOException e) {
+			invalid.increment();
+			respond(ctx, 400, e.getMessage());
+			return;
+		}
+		final String clientAddress = ctx.req().getRemoteAddr();
+		try {
+			OtlpTraceDecoder.decode(body, body.length, (appName, host, span) -> assembler.add(appName, host, clientAddress, span));
+		} catch (final IOException e) {
+			//spans before the error are kept
+			invalid.increment();
+			respond(ctx, 400, e.getMessage());
+			return;
+		}
+		requests.increment();
+		ctx.contentType("application/x-protobuf");
+		ctx.status(200); //empty ExportTraceServiceResponse : no partial_success
+	}
+
+	private static void respond(final Context ctx, final int status, final String message) {
+		ctx.status(status);
+		ctx.result(message);
+	}
+
+	/**
+	 * Stop the http server.
+	 */
+	public void shutdown() {
+		if (app != null) {
+			app.stop();
+		}
+	}
+}
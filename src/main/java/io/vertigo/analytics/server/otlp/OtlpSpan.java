@@ -0,0 +1,31 @@
+package io.vertigo.analytics.server.otlp;
+
+import java.util.Map;
+
+/**
+ * One decoded OTLP span, before its TraceSpan tree is assembled.
+ *
+ * @param traceIdHigh first 8 bytes of the trace id
+ * @param traceIdLow last 8 bytes of the trace id
+ * @param spanId the span id
+ * @param parentSpanId the parent span id (0 for a root span)
+ * @param category the TraceSpan category
+ * @param name the span name
+ * @param startNanos start, epoch nanos
+ * @param endNanos end, epoch nanos
+ * @param measures numeric attributes
+ * @param metadatas other attributes
+ */
+record OtlpSpan(
+		long traceIdHigh,
+		long traceIdLow,
+		long spanId,
+		long parentSpanId,
+		String category,
+		String name,
+		long startNanos,
+		long endNanos,
+		Map<String, Double> measures,
+		Map<String, String> metadatas) {
+	//only data
+}
@@ -0,0 +1,236 @@
+package io.vertigo.analytics.server.otlp;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.LogMessageRouter;
+import io.vertigo.analytics.server.LogMessageRouter.Kind;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.binary.BinaryProtocol;
+
+/**
+ * Assembles OTLP spans into TraceSpan trees, by parent span id, within a bounded time window.
+ * Spans are grouped by trace and app (service.name) : each app gets the part of a distributed trace it did.
+ * A group is sent when it got no span for the window, or when the pending spans are over the limit (oldest groups first).
+ * Spans whose parent is not in their group are roots (remote parents, or parents not received in the window).
+ * Trees are cut at {@link BinaryProtocol#MAX_SPAN_DEPTH} : deeper spans are dropped, as spans in a parent cycle (never reached from a root).
+ * Metrics : otlp.spans, otlp.traces, otlp.evicted (groups sent before their window because of the limit), otlp.tooDeep and otlp.cycles (dropped spans).
+ */
+final class OtlpTraceAssembler {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final LogMessageRouter router = new LogMessageRouter();
+	private final long windowMillis;
+	private final int maxPendingSpans;
+	//access order : least recently updated groups first
+	private final LinkedHashMap<TraceKey, PendingTrace> pendingTraces = new LinkedHashMap<>(1024, 0.75f, true);
+	private int pendingSpans;
+	private final LongAdder spans = ServerMetrics.counter("otlp.spans");
+	private final LongAdder traces = ServerMetrics.counter("otlp.traces");
+	private final LongAdder evicted = ServerMetrics.counter("otlp.evicted");
+	private final LongAdder tooDeep = ServerMetrics.counter("otlp.tooDeep");
+	private final LongAdder cycles = ServerMetrics.counter("otlp.cycles");
+
+	private record TraceKey(long traceIdHigh, long traceIdLow, String appName) {
+		//only data
+	}
+
+	private static final class PendingTrace {
+		private final String appName;
+		private final String host;
+		private final String clientAddress;
+		private final List<OtlpSpan> spans = new ArrayList<>();
+		private long lastUpdate;
+
+		PendingTrace(final String appName, final String host, final String clientAddress) {
+			this.appName = appName;
+			this.host = host;
+			this.clientAddress = clientAddress;
+		}
+	}
+
+	/**
+	 * @param windowMillis time without new spans before a trace is sent
+	 * @param maxPendingSpans max spans waiting for their trace
+	 */
+	OtlpTraceAssembler(final long windowMillis, final int maxPendingSpans) {
+		this.windowMillis = windowMillis;
+		this.maxPendingSpans = maxPendingSpans;
+		ServerMetrics.gauge("otlp.pendingSpans", this::getPendingSpans);
+		final Thread flushThread = new Thread(this::flushLoop, "vertigo-analytics-otlp-assembler");
+		flushThread.setDaemon(true);
+		flushThread.start();
+	}
+
+	/**
+	 * @param appName the app (service.name)
+	 * @param host the host (host.name)
+	 * @param clientAddress the client address
+	 * @param span the span
+	 */
+	void add(final String appName, final String host, final String clientAddress, final OtlpSpan span) {
+		final List<PendingTrace> toSend = new ArrayList<>();
+		synchronized (this) {
+			final PendingTrace pendingTrace = pendingTraces.computeIfAbsent(new TraceKey(span.traceIdHigh(), span.traceIdLow(), appName), key -> new PendingTrace(appName, host, clientAddress));
+			pendingTrace.spans.add(span);
+			pendingTrace.lastUpdate = System.currentTimeMillis();
+			pendingSpans++;
+			final Iterator<Map.Entry<TraceKey, PendingTrace>> iterator = pendingTraces.entrySet().iterator();
+			while (pendingSpans > maxPendingSpans && iterator.hasNext()) {
+				toSend.add(remove(iterator));
+				evicted.increment();
+			}
+		}
+		spans.increment();
+		send(toSend);
+	}
+
+	private synchronized int getPendingSpans() {
+		return pendingSpans;
+	}
+
+	private void flushLoop() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(Math.max(100, windowMillis / 4));
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			final List<PendingTrace> toSend = new ArrayList<>();
+			synchronized (this) {
+				final long expiredBefore = System.currentTimeMillis() - windowMillis;
+				final Iterator<Map.Entry<TraceKey, PendingTrace>> iterator = pendingTraces.entrySet().iterator();
+				while (iterator.hasNext()) {
+					final Map.Entry<TraceKey, PendingTrace> entry = iterator.next();
+					if (entry.getValue().lastUpdate > expiredBefore) {
+						break; //next ones were updated later
+					}
+					toSend.add(entry.getValue());
+					pendingSpans -= entry.getValue().spans.size();
+					iterator.remove();
+				}
+			}
+			send(toSend);
+		}
+	}
+
+	private PendingTrace remove(final Iterator<Map.Entry<TraceKey, PendingTrace>> iterator) {
+		final PendingTrace pendingTrace = iterator.next().getValue();
+		pendingSpans -= pendingTrace.spans.size();
+		iterator.remove();
+		return pendingTrace;
+	}
+
+	private void send(final List<PendingTrace> toSend) {
+		for (final PendingTrace pendingTrace : toSend) {
+			try {
+				final LogMessage<TraceSpan> logMessage = new LogMessage<>();
+				logMessage.setAppName(pendingTrace.appName);
+				logMessage.setHost(pendingTrace.host);
+				logMessage.setEvents(buildTrees(pendingTrace.spans));
+				traces.increment();
+				router.route(Kind.PROCESS, pendingTrace.clientAddress, logMessage);
+			} catch (final RuntimeException e) {
+				LOGGER.error("Error while sending an OTLP trace", e);
+			}
+		}
+	}
+
+	/**
+	 * @param traceSpans spans of a trace and app
+	 * @return the root TraceSpans, with their childs ordered by start
+	 */
+	List<TraceSpan> buildTrees(final List<OtlpSpan> traceSpans) {
+		final Set<Long> spanIds = new HashSet<>();
+		for (final OtlpSpan span : traceSpans) {
+			spanIds.add(span.spanId());
+		}
+		final Map<Long, List<OtlpSpan>> childsByParent = new HashMap<>();
+		final List<OtlpSpan> roots = new ArrayList<>();
+		for (final OtlpSpan span : traceSpans) {
+			if (span.parentSpanId() != 0 && span.parentSpanId() != span.spanId() && spanIds.contains(span.parentSpanId())) {
+				childsByParent.computeIfAbsent(span.parentSpanId(), parentId -> new ArrayList<>()).add(span);
+			} else {
+				roots.add(span);
+			}
+		}
+		final List<TraceSpan> rootTraceSpans = new ArrayList<>(roots.size());
+		final int[] reachedSpans = { 0 };
+		for (final OtlpSpan root : roots) {
+			rootTraceSpans.add(toTraceSpan(root, childsByParent, 1, reachedSpans));
+		}
+		//the other spans have a parent, but are not under a root : their parents form a cycle
+		cycles.add(traceSpans.size() - reachedSpans[0]);
+		return rootTraceSpans;
+	}
+
+	private TraceSpan toTraceSpan(final OtlpSpan span, final Map<Long, List<OtlpSpan>> childsByParent, final int depth, final int[] reachedSpans) {
+		reachedSpans[0]++;
+		//removed : childs are taken once, even if span ids are duplicated
+		final List<OtlpSpan> childs = childsByParent.remove(span.spanId());
+		final List<TraceSpan> childSpans = new ArrayList<>(childs != null ? childs.size() : 0);
+		if (childs != null) {
+			if (depth >= BinaryProtocol.MAX_SPAN_DEPTH) {
+				final int droppedSpans = countSpans(childs, childsByParent);
+				tooDeep.add(droppedSpans);
+				reachedSpans[0] += droppedSpans;
+			} else {
+				childs.sort(Comparator.comparingLong(OtlpSpan::startNanos));
+				for (final OtlpSpan child : childs) {
+					childSpans.add(toTraceSpan(child, childsByParent, depth + 1, reachedSpans));
+				}
+			}
+		}
+		final Map<String, String> metadatas;
+		if (depth == 1) {
+			metadatas = new HashMap<>(span.metadatas());
+			metadatas.put("traceId", String.format("%016x%016x", span.traceIdHigh(), span.traceIdLow()));
+		} else {
+			metadatas = span.metadatas();
+		}
+		return new TraceSpan(
+				span.category(),
+				span.name(),
+				Instant.ofEpochSecond(0, span.startNanos()),
+				Instant.ofEpochSecond(0, span.endNanos()),
+				span.measures(),
+				metadatas,
+				Map.of(),
+				childSpans);
+	}
+
+	/**
+	 * @return number of spans of these subtrees (iterative : a subtree may be very deep)
+	 */
+	private static int countSpans(final List<OtlpSpan> spans, final Map<Long, List<OtlpSpan>> childsByParent) {
+		int count = 0;
+		final Deque<OtlpSpan> toVisit = new ArrayDeque<>(spans);
+		while (!toVisit.isEmpty()) {
+			count++;
+			final List<OtlpSpan> childs = childsByParent.remove(toVisit.pop().spanId());
+			if (childs != null) {
+				toVisit.addAll(childs);
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,220 @@
+package io.vertigo.analytics.server.otlp;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Single pass decoder of OTLP ExportTraceServiceRequest protobuf messages (opentelemetry-proto trace/v1).
+ * Spans are handed over one by one, with the service.name and host.name of their resource.
+ * Numeric attributes become measures (dots replaced by underscores), others become metadatas.
+ * The category is the "vertigo.category" attribute, else guessed from the semantic conventions (db, http, messaging, rpc), else "span".
+ */
+final class OtlpTraceDecoder {
+
+	private static final Pattern CATEGORY_REGEX = Pattern.compile("[a-z]+");
+	private static final Pattern MEASURE_REGEX = Pattern.compile("[a-zA-Z][a-zA-Z0-9_-]+"); //as TraceSpan
+	private static final String UNKNOWN = "unknown";
+
+	/**
+	 * Receives the decoded spans.
+	 */
+	@FunctionalInterface
+	interface SpanHandler {
+		void onSpan(String appName, String host, OtlpSpan span);
+	}
+
+	private OtlpTraceDecoder() {
+		//static only
+	}
+
+	/**
+	 * @param body the ExportTraceServiceRequest
+	 * @param length length of the request in the body
+	 * @param spanHandler handler of each span
+	 * @return the number of spans
+	 * @throws IOException if the request is malformed
+	 */
+	static int decode(final byte[] body, final int length, final SpanHandler spanHandler) throws IOException {
+		final ProtobufReader reader = new ProtobufReader(body, length);
+		int spanCount = 0;
+		while (reader.hasNext()) {
+			final int tag = reader.readTag();
+			if (tag == (1 << 3 | ProtobufReader.LENGTH_DELIMITED)) { //resource_spans
+				final int previousLimit = reader.pushLimit();
+				spanCount += readResourceSpans(reader, spanHandler);
+				reader.popLimit(previousLimit);
+			} else {
+				reader.skipField(tag);
+			}
+		}
+		return spanCount;
+	}
+
+	private static int readResourceSpans(final ProtobufReader reader, final SpanHandler spanHandler) throws IOException {
+		//the resource is read first, even if encoded after the spans
+		final int start = reader.getPosition();
+		final String[] appNameAndHost = { UNKNOWN, UNKNOWN };
+		while (reader.hasNext()) {
+			final int tag = reader.readTag();
+			if (tag == (1 << 3 | ProtobufReader.LENGTH_DELIMITED)) { //resource
+				final int previousLimit = reader.pushLimit();
+				readResource(reader, appNameAndHost);
+				reader.popLimit(previousLimit);
+			} else {
+				reader.skipField(tag);
+			}
+		}
+		reader.reset(start);
+		int spanCount = 0;
+		while (reader.hasNext()) {
+			final int tag = reader.readTag();
+			if (tag == (2 << 3 | ProtobufReader.LENGTH_DELIMITED)) { //scope_spans
+				final int scopeLimit = reader.pushLimit();
+				while (reader.hasNext()) {
+					final int scopeTag = reader.readTag();
+					if (scopeTag == (2 << 3 | ProtobufReader.LENGTH_DELIMITED)) { //spans
+						final int spanLimit = reader.pushLimit();
+						spanHandler.onSpan(appNameAndHost[0], appNameAndHost[1], readSpan(reader));
+						reader.popLimit(spanLimit);
+						spanCount++;
+					} else {
+						reader.skipField(scopeTag);
+					}
+				}
+				reader.popLimit(scopeLimit);
+			} else {
+				reader.skipField(tag);
+			}
+		}
+		return spanCount;
+	}
+
+	private static void readResource(final ProtobufReader reader, final String[] appNameAndHost) throws IOException {
+		final Map<String, String> attributes = new HashMap<>();
+		while (reader.hasNext()) {
+			final int tag = reader.readTag();
+			if (tag == (1 << 3 | ProtobufReader.LENGTH_DELIMITED)) { //attributes
+				readAttribute(reader, null, attributes);
+			} else {
+				reader.skipField(tag);
+			}
+		}
+		appNameAndHost[0] = attributes.getOrDefault("service.name", UNKNOWN);
+		appNameAndHost[1] = attributes.getOrDefault("host.name", UNKNOWN);
+	}
+
+	private static OtlpSpan readSpan(final ProtobufReader reader) throws IOException {
+		final long[] traceId = new long[2];
+		final long[] id = new long[1];
+		long spanId = 0;
+		long parentSpanId = 0;
+		String name = "";
+		long startNanos = 0;
+		long endNanos = 0;
+		final Map<String, Double> measures = new HashMap<>();
+		final Map<String, String> metadatas = new HashMap<>();
+		while (reader.hasNext()) {
+			final int tag = reader.readTag();
+			switch (tag) {
+				case 1 << 3 | ProtobufReader.LENGTH_DELIMITED -> reader.readId(16, traceId);
+				case 2 << 3 | ProtobufReader.LENGTH_DELIMITED -> spanId = reader.readId(8, id) ? id[0] : 0;
+				case 4 << 3 | ProtobufReader.LENGTH_DELIMITED -> parentSpanId = reader.readId(8, id) ? id[0] : 0;
+				case 5 << 3 | ProtobufReader.LENGTH_DELIMITED -> name = reader.readString();
+				case 7 << 3 | ProtobufReader.FIXED64 -> startNanos = reader.readFixed64();
+				case 8 << 3 | ProtobufReader.FIXED64 -> endNanos = reader.readFixed64();
+				case 9 << 3 | ProtobufReader.LENGTH_DELIMITED -> readAttribute(reader, measures, metadatas);
+				case 15 << 3 | ProtobufReader.LENGTH_DELIMITED -> readStatus(reader, metadatas);
+				default -> reader.skipField(tag);
+			}
+		}
+		return new OtlpSpan(traceId[0], traceId[1], spanId, parentSpanId, guessCategory(metadatas), name, startNanos, endNanos, measures, metadatas);
+	}
+
+	/**
+	 * KeyValue : numeric values go to the measures (if not null), others to the metadatas. Arrays, maps and bytes are ignored.
+	 */
+	private static void readAttribute(final ProtobufReader reader, final Map<String, Double> measures, final Map<String, String> metadatas) throws IOException {
+		final int previousLimit = reader.pushLimit();
+		String key = null;
+		String stringValue = null;
+		double numericValue = 0;
+		boolean isNumeric = false;
+		while (reader.hasNext()) {
+			final int tag = reader.readTag();
+			if (tag == (1 << 3 | ProtobufReader.LENGTH_DELIMITED)) {
+				key = reader.readString();
+			} else if (tag == (2 << 3 | ProtobufReader.LENGTH_DELIMITED)) { //AnyValue
+				final int valueLimit = reader.pushLimit();
+				while (reader.hasNext()) {
+					final int valueTag = reader.readTag();
+					switch (valueTag) {
+						case 1 << 3 | ProtobufReader.LENGTH_DELIMITED -> stringValue = reader.readString();
+						case 2 << 3 | ProtobufReader.VARINT -> stringValue = reader.readVarint() != 0 ? "true" : "false";
+						case 3 << 3 | ProtobufReader.VARINT -> {
+							numericValue = reader.readVarint();
+							isNumeric = true;
+						}
+						case 4 << 3 | ProtobufReader.FIXED64 -> {
+							numericValue = reader.readDouble();
+							isNumeric = true;
+						}
+						default -> reader.skipField(valueTag);
+					}
+				}
+				reader.popLimit(valueLimit);
+			} else {
+				reader.skipField(tag);
+			}
+		}
+		reader.popLimit(previousLimit);
+		if (key == null) {
+			return;
+		}
+		if (isNumeric) {
+			final String measureName = key.replace('.', '_');
+			if (measures != null && MEASURE_REGEX.matcher(measureName).matches()) {
+				measures.put(measureName, numericValue);
+			} else {
+				metadatas.put(key, String.valueOf(numericValue));
+			}
+		} else if (stringValue != null) {
+			metadatas.put(key, stringValue);
+		}
+	}
+
+	private static void readStatus(final ProtobufReader reader, final Map<String, String> metadatas) throws IOException {
+		final int previousLimit = reader.pushLimit();
+		while (reader.hasNext()) {
+			final int tag = reader.readTag();
+			if (tag == (2 << 3 | ProtobufReader.LENGTH_DELIMITED)) {
+				metadatas.put("status.message", reader.readString());
+			} else if (tag == (3 << 3 | ProtobufReader.VARINT)) {
+				final long code = reader.readVarint();
+				if (code != 0) {
+					metadatas.put("status", code == 2 ? "ERROR" : "OK");
+				}
+			} else {
+				reader.skipField(tag);
+			}
+		}
+		reader.popLimit(previousLimit);
+	}
+
+	private static String guessCategory(final Map<String, String> metadatas) {
+		final String category = metadatas.get("vertigo.category");
+		if (category != null && CATEGORY_REGEX.matcher(category).matches()) {
+			return category;
+		} else if (metadatas.containsKey("db.system")) {
+			return "db";
+		} else if (metadatas.containsKey("http.request.method") || metadatas.containsKey("http.method")) {
+			return "http";
+		} else if (metadatas.containsKey("messaging.system")) {
+			return "messaging";
+		} else if (metadatas.containsKey("rpc.system")) {
+			return "rpc";
+		}
+		return "span";
+	}
+}
@@ -0,0 +1,158 @@
+package io.vertigo.analytics.server.otlp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal reader of the protobuf wire format over a byte array : fields are read in a single pass, nested messages are read in place
+ * by narrowing the limit (no copy), only retained strings are allocated.
+ */
+final class ProtobufReader {
+
+	static final int VARINT = 0;
+	static final int FIXED64 = 1;
+	static final int LENGTH_DELIMITED = 2;
+	static final int FIXED32 = 5;
+
+	private final byte[] buffer;
+	private int position;
+	private int limit;
+
+	/**
+	 * @param buffer the encoded message
+	 * @param length length of the message in the buffer
+	 */
+	ProtobufReader(final byte[] buffer, final int length) {
+		this.buffer = buffer;
+		limit = length;
+	}
+
+	/**
+	 * @return if the current message has more fields
+	 */
+	boolean hasNext() {
+		return position < limit;
+	}
+
+	/**
+	 * @return the tag of the next field : field number &lt;&lt; 3 | wire type
+	 * @throws IOException if the message is truncated
+	 */
+	int readTag() throws IOException {
+		return (int) readVarint();
+	}
+
+	long readVarint() throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			checkAvailable(1);
+			final byte b = buffer[position++];
+			result |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return result;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	long readFixed64() throws IOException {
+		checkAvailable(8);
+		long result = 0;
+		for (int i = 7; i >= 0; i--) {
+			result = result << 8 | buffer[position + i] & 0xFFL;
+		}
+		position += 8;
+		return result;
+	}
+
+	double readDouble() throws IOException {
+		return Double.longBitsToDouble(readFixed64());
+	}
+
+	String readString() throws IOException {
+		final int length = readLength();
+		final String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	/**
+	 * Read a bytes field as a big endian long (ids of 8 bytes, or one half of ids of 16 bytes).
+	 * @param expectedLength the expected length of the field (8 or 16)
+	 * @param result the high and low longs (only the low one for 8 bytes)
+	 * @return if the field had the expected length (else it is skipped)
+	 * @throws IOException if the message is truncated
+	 */
+	boolean readId(final int expectedLength, final long[] result) throws IOException {
+		final int length = readLength();
+		if (length != expectedLength) {
+			position += length;
+			return false;
+		}
+		for (int i = 0; i < length / 8; i++) {
+			long value = 0;
+			for (int j = 0; j < 8; j++) {
+				value = value << 8 | buffer[position++] & 0xFFL;
+			}
+			result[i] = value;
+		}
+		return true;
+	}
+
+	/**
+	 * Enter a nested message : the next fields are those of this message.
+	 * @return the previous limit, to restore with {@link #popLimit(int)}
+	 * @throws IOException if the message is truncated
+	 */
+	int pushLimit() throws IOException {
+		final int length = readLength();
+		final int previousLimit = limit;
+		limit = position + length;
+		return previousLimit;
+	}
+
+	void popLimit(final int previousLimit) {
+		position = limit;
+		limit = previousLimit;
+	}
+
+	/**
+	 * @return current position, to read a message again with {@link #reset(int)}
+	 */
+	int getPosition() {
+		return position;
+	}
+
+	void reset(final int newPosition) {
+		position = newPosition;
+	}
+
+	void skipField(final int tag) throws IOException {
+		switch (tag & 0x7) {
+			case VARINT -> readVarint();
+			case FIXED64 -> skip(8);
+			case LENGTH_DELIMITED -> skip(readLength());
+			case FIXED32 -> skip(4);
+			default -> throw new IOException("Unsupported wire type " + (tag & 0x7));
+		}
+	}
+
+	private int readLength() throws IOException {
+		final long length = readVarint();
+		if (length < 0 || length > limit - position) {
+			throw new IOException("Truncated message");
+		}
+		return (int) length;
+	}
+
+	private void skip(final int length) throws IOException {
+		checkAvailable(length);
+		position += length;
+	}
+
+	private void checkAvailable(final int length) throws IOException {
+		if (limit - position < length) {
+			throw new IOException("Truncated message");
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package io.vertigo.analytics.server.priority;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LogEventListener;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.influxdb.rollup.LatencyHistogram;
+
+/**
+ * Priority lanes between the socket readers and the log4j2 dispatch to the appenders.
+ * Events are queued by kind (health, metric, process : from the logger name), and drained by dispatcher threads with a weighted round robin,
+ * so small time-critical health and metric events are not stuck behind bulk traces.
+ * A lane is drained by one dispatcher thread at a time : events of a lane are dispatched in their arrival order.
+ * A full lane blocks its socket reader (TCP backpressure), as the inline dispatch did : events are not dropped.
+ * Read from environment variables : PRIORITY_DISPATCH_THREADS (0 by default : inline dispatch, lanes disabled), PRIORITY_LANE_CAPACITY
+ * and PRIORITY_LANE_WEIGHTS (ex: health:4,metric:4,process:1).
+ * Per lane metrics : queued, dispatched, and the queue latency in micros (p99 and max of the previous minute).
+ */
+public final class PriorityDispatcher {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final long LATENCY_WINDOW_MILLIS = 60_000;
+	private static final int MAX_EVENTS_PER_TURN = 16;
+	private static volatile PriorityDispatcher instance;
+
+	public enum Lane {
+		HEALTH, METRIC, PROCESS;
+
+		static Lane of(final LogEvent event) {
+			final String loggerName = event.getLoggerName();
+			if (loggerName != null) {
+				if (loggerName.endsWith("-health")) {
+					return HEALTH;
+				} else if (loggerName.endsWith("-metric")) {
+					return METRIC;
+				}
+			}
+			return PROCESS;
+		}
+	}
+
+	private final Map<Lane, LaneQueue> lanes = new EnumMap<>(Lane.class);
+	private final Lane[] schedule;
+	private int schedulePosition; //guarded by lanes
+	private int waitingDispatchers; //guarded by lanes
+
+	PriorityDispatcher(final int threads, final int laneCapacity, final Map<Lane, Integer> weights) {
+		final List<Lane> scheduleList = new ArrayList<>();
+		for (final Lane lane : Lane.values()) {
+			lanes.put(lane, new LaneQueue(lane, laneCapacity));
+		}
+		//interleaved schedule : health, metric, process, health, metric, health, metric...
+		final int maxWeight = weights.values().stream().mapToInt(Integer::intValue).max().orElse(1);
+		for (int round = 0; round < maxWeight; round++) {
+			for (final Lane lane : Lane.values()) {
+				if (round < weights.getOrDefault(lane, 1)) {
+					scheduleList.add(lane);
+				}
+			}
+		}
+		schedule = scheduleList.toArray(new Lane[0]);
+		for (int i = 0; i < threads; i++) {
+			final Thread thread = new Thread(this::dispatchLoop, "vertigo-analytics-dispatcher-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		LOGGER.info("Priority lanes enabled : {} dispatcher threads, lane capacity {}, weights {}", threads, laneCapacity, weights);
+	}
+
+	/**
+	 * @return the server dispatcher, or null if events are dispatched inline by the socket readers (configured from the environment at first use)
+	 */
+	public static PriorityDispatcher getInstance() {
+		if (instance == null) {
+			synchronized (PriorityDispatcher.class) {
+				if (instance == null) {
+					final int threads = Integer.parseInt(Optional.ofNullable(System.getenv("PRIORITY_DISPATCH_THREADS")).orElse("0"));
+					final int laneCapacity = Integer.parseInt(Optional.ofNullable(System.getenv("PRIORITY_LANE_CAPACITY")).orElse("10000"));
+					final Map<Lane, Integer> weights = parseWeights(Optional.ofNullable(System.getenv("PRIORITY_LANE_WEIGHTS")).orElse("health:4,metric:4,process:1"));
+					instance = threads > 0 ? new PriorityDispatcher(threads, laneCapacity, weights) : null;
+				}
+			}
+		}
+		return instance;
+	}
+
+	private static Map<Lane, Integer> parseWeights(final String weights) {
+		final Map<Lane, Integer> result = new EnumMap<>(Lane.class);
+		for (final String laneWeight : weights.split(",")) {
+			final String[] laneAndWeight = laneWeight.split(":");
+			result.put(Lane.valueOf(laneAndWeight[0].trim().toUpperCase(Locale.ROOT)), Math.max(1, Integer.parseInt(laneAndWeight[1].trim())));
+		}
+		return result;
+	}
+
+	/**
+	 * @param delegate the server listener, called by the dispatcher threads
+	 * @return a listener queueing events in the priority lanes
+	 */
+	public LogEventListener listenerFor(final LogEventListener delegate) {
+		return new LogEventListener() {
+			@Override
+			public void log(final LogEvent event) {
+				if (event != null) {
+					enqueue(event, delegate);
+				}
+			}
+		};
+	}
+
+	private void enqueue(final LogEvent event, final LogEventListener delegate) {
+		try {
+			lanes.get(Lane.of(event)).put(new QueuedEvent(event, delegate, System.nanoTime()));
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		synchronized (lanes) {
+			if (waitingDispatchers > 0) {
+				lanes.notify();
+			}
+		}
+	}
+
+	private void dispatchLoop() {
+		while (!Thread.currentThread().isInterrupted()) {
+			final LaneQueue laneQueue;
+			try {
+				laneQueue = takeLane();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			try {
+				for (int i = 0; i < MAX_EVENTS_PER_TURN; i++) {
+					final QueuedEvent queuedEvent = laneQueue.poll();
+					if (queuedEvent == null) {
+						break;
+					}
+					dispatch(laneQueue, queuedEvent);
+				}
+			} finally {
+				releaseLane(laneQueue);
+			}
+		}
+	}
+
+	private static void dispatch(final LaneQueue laneQueue, final QueuedEvent queuedEvent) {
+		try {
+			laneQueue.recordLatency((System.nanoTime() - queuedEvent.enqueuedNanos()) / 1000);
+			queuedEvent.delegate().log(queuedEvent.event());
+		} catch (final Exception e) {
+			LOGGER.error("Error while dispatching event of lane {}", laneQueue.lane(), e);
+		}
+	}
+
+	/**
+	 * Weighted round robin : the scheduled lane if it has events and no dispatcher, else the next such lane of the schedule.
+	 * Waits until there is one.
+	 * @return the lane, owned by the caller until released
+	 */
+	private LaneQueue takeLane() throws InterruptedException {
+		synchronized (lanes) {
+			while (true) {
+				for (int i = 0; i < schedule.length; i++) {
+					final LaneQueue laneQueue = lanes.get(schedule[(schedulePosition + i) % schedule.length]);
+					if (!laneQueue.owned && !laneQueue.isEmpty()) {
+						schedulePosition = (schedulePosition + i + 1) % schedule.length;
+						laneQueue.owned = true;
+						return laneQueue;
+					}
+				}
+				waitingDispatchers++;
+				try {
+					lanes.wait();
+				} finally {
+					waitingDispatchers--;
+				}
+			}
+		}
+	}
+
+	private void releaseLane(final LaneQueue laneQueue) {
+		synchronized (lanes) {
+			laneQueue.owned = false;
+			if (!laneQueue.isEmpty() && waitingDispatchers > 0) {
+				lanes.notify();
+			}
+		}
+	}
+
+	private record QueuedEvent(LogEvent event, LogEventListener delegate, long enqueuedNanos) {
+		//only data
+	}
+
+	private static final class LaneQueue {
+		private final Lane lane;
+		private final BlockingQueue<QueuedEvent> queue;
+		private boolean owned; //a dispatcher is draining this lane, guarded by the lanes of the dispatcher
+		private final LongAdder dispatched;
+		private long latencyWindowIndex;
+		private LatencyHistogram currentLatencies = new LatencyHistogram();
+		private LatencyHistogram previousLatencies = new LatencyHistogram();
+
+		LaneQueue(final Lane lane, final int capacity) {
+			this.lane = lane;
+			queue = new ArrayBlockingQueue<>(capacity);
+			final String metricPrefix = "priority." + lane.name().toLowerCase(Locale.ROOT);
+			dispatched = ServerMetrics.counter(metricPrefix + ".dispatched");
+			ServerMetrics.gauge(metricPrefix + ".queued", queue::size);
+			ServerMetrics.gauge(metricPrefix + ".latencyMicros.p99", () -> previousLatencies().valueAtPercentile(99));
+			ServerMetrics.gauge(metricPrefix + ".latencyMicros.max", () -> previousLatencies().getMax());
+		}
+
+		Lane lane() {
+			return lane;
+		}
+
+		void put(final QueuedEvent queuedEvent) throws InterruptedException {
+			queue.put(queuedEvent);
+		}
+
+		boolean isEmpty() {
+			return queue.isEmpty();
+		}
+
+		QueuedEvent poll() {
+			return queue.poll();
+		}
+
+		synchronized void recordLatency(final long micros) {
+			rotate();
+			currentLatencies.record(micros);
+			dispatched.increment();
+		}
+
+		synchronized LatencyHistogram previousLatencies() {
+			rotate();
+			return previousLatencies;
+		}
+
+		private void rotate() {
+			final long nowIndex = System.currentTimeMillis() / LATENCY_WINDOW_MILLIS;
+			if (nowIndex != latencyWindowIndex) {
+				previousLatencies = nowIndex == latencyWindowIndex + 1 ? currentLatencies : new LatencyHistogram();
+				currentLatencies = new LatencyHistogram();
+				latencyWindowIndex = nowIndex;
+			}
+		}
+	}
+}
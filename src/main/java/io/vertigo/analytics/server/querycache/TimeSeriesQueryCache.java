@@ -0,0 +1,192 @@
+package io.vertigo.analytics.server.querycache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.influxdb.rollup.LatencyHistogram;
+import io.vertigo.core.lang.json.CoreJsonAdapters;
+
+/**
+ * Cache of the time series query results of the dashboards, keyed by normalized query and time bucket.
+ * Results of a closed range (ended before the lateness delay) never change : they are kept until evicted.
+ * Results of an open range (ending now) are kept for the open TTL, and only within their time bucket.
+ * Entries are evicted least recently used first, under a byte budget (size estimated from the json of the result).
+ * Identical concurrent misses are coalesced : one query, the other callers wait for its result.
+ * Read from environment variables : QUERY_CACHE_MAX_MB, QUERY_CACHE_OPEN_TTL (ex: 10s) and QUERY_CACHE_LATENESS (ex: 1m, delay before a range is closed).
+ * Metrics : querycache.hits, misses, coalesced, evicted and bytes ; by panel querycache.panel.[panel].hits, misses, latencyP50 and latencyP99 (millis, of the misses).
+ */
+public final class TimeSeriesQueryCache {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final Gson GSON = CoreJsonAdapters.addCoreGsonConfig(new GsonBuilder(), false).create();
+	private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+	private final long maxBytes;
+	private final long openTtlMillis;
+	private final long latenessMillis;
+	//access order : least recently used first
+	private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(256, 0.75f, true); //guarded by this
+	private long bytes; //guarded by this
+	private final Map<CacheKey, CompletableFuture<Object>> pendingQueries = new ConcurrentHashMap<>();
+	private final Map<String, PanelMetrics> panelMetrics = new ConcurrentHashMap<>();
+	private final LongAdder hits = ServerMetrics.counter("querycache.hits");
+	private final LongAdder misses = ServerMetrics.counter("querycache.misses");
+	private final LongAdder coalesced = ServerMetrics.counter("querycache.coalesced");
+	private final LongAdder evicted = ServerMetrics.counter("querycache.evicted");
+
+	private record CacheKey(String query, long timeBucket) {
+		//only data
+	}
+
+	private record Entry(Object result, long bytes, long expiresAtMillis) {
+		//only data
+	}
+
+	/**
+	 * @param maxBytes byte budget
+	 * @param openTtlMillis time to live of the results of open ranges
+	 * @param latenessMillis delay after which a range is closed (late points are not expected anymore)
+	 */
+	public TimeSeriesQueryCache(final long maxBytes, final long openTtlMillis, final long latenessMillis) {
+		this.maxBytes = maxBytes;
+		this.openTtlMillis = openTtlMillis;
+		this.latenessMillis = latenessMillis;
+		ServerMetrics.gauge("querycache.bytes", this::getBytes);
+		LOGGER.info("Time series query cache : {} bytes max, open ranges cached for {}ms", maxBytes, openTtlMillis);
+	}
+
+	/**
+	 * @return a cache configured from the environment
+	 */
+	public static TimeSeriesQueryCache fromEnv() {
+		return new TimeSeriesQueryCache(
+				Long.parseLong(Optional.ofNullable(System.getenv("QUERY_CACHE_MAX_MB")).orElse("64")) * 1024 * 1024,
+				DurationUtil.parseMillis(Optional.ofNullable(System.getenv("QUERY_CACHE_OPEN_TTL")).orElse("10s")),
+				DurationUtil.parseMillis(Optional.ofNullable(System.getenv("QUERY_CACHE_LATENESS")).orElse("1m")));
+	}
+
+	/**
+	 * @param panel the panel of the query (metrics name, ex: getTimeSeries.page.duration:mean)
+	 * @param query the normalized query
+	 * @param toMillis end of the range of the query, null if unknown (the range is open)
+	 * @param stepMillis size of the time bucket of an open range (the query dim, null for the open TTL)
+	 * @param loader the query
+	 * @param <R> the type of result
+	 * @return the result, from the cache or loaded
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> R get(final String panel, final String query, final Long toMillis, final Long stepMillis, final Supplier<R> loader) {
+		final PanelMetrics metrics = panelMetrics.computeIfAbsent(panel, PanelMetrics::new);
+		final long now = System.currentTimeMillis();
+		final boolean closed = toMillis != null && toMillis < now - latenessMillis;
+		final CacheKey key = new CacheKey(query, closed ? 0 : Math.floorDiv(now, stepMillis != null && stepMillis > 0 ? stepMillis : openTtlMillis));
+		final Object cached = getEntry(key, now);
+		if (cached != null) {
+			hits.increment();
+			metrics.hits.increment();
+			return (R) cached;
+		}
+		final CompletableFuture<Object> pendingQuery = new CompletableFuture<>();
+		final CompletableFuture<Object> existingQuery = pendingQueries.putIfAbsent(key, pendingQuery);
+		if (existingQuery != null) {
+			coalesced.increment();
+			metrics.hits.increment();
+			try {
+				return (R) existingQuery.join();
+			} catch (final CompletionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			}
+		}
+		misses.increment();
+		metrics.misses.increment();
+		try {
+			final long start = System.nanoTime();
+			final R result = loader.get();
+			metrics.recordLatency((System.nanoTime() - start) / 1_000_000);
+			if (result != null) {
+				putEntry(key, result, closed ? Long.MAX_VALUE : System.currentTimeMillis() + openTtlMillis);
+			}
+			pendingQuery.complete(result);
+			return result;
+		} catch (final RuntimeException e) {
+			pendingQuery.completeExceptionally(e);
+			throw e;
+		} finally {
+			pendingQueries.remove(key, pendingQuery);
+		}
+	}
+
+	private synchronized Object getEntry(final CacheKey key, final long now) {
+		final Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expiresAtMillis() <= now) {
+			entries.remove(key);
+			bytes -= entry.bytes();
+			return null;
+		}
+		return entry.result();
+	}
+
+	private void putEntry(final CacheKey key, final Object result, final long expiresAtMillis) {
+		final long entryBytes = ENTRY_OVERHEAD_BYTES + key.query().length() * 2L + GSON.toJson(result).length() * 2L;
+		if (entryBytes > maxBytes) {
+			return;
+		}
+		synchronized (this) {
+			final Entry previous = entries.put(key, new Entry(result, entryBytes, expiresAtMillis));
+			bytes += entryBytes - (previous != null ? previous.bytes() : 0);
+			final Iterator<Entry> iterator = entries.values().iterator();
+			while (bytes > maxBytes && iterator.hasNext()) {
+				bytes -= iterator.next().bytes();
+				iterator.remove();
+				evicted.increment();
+			}
+		}
+	}
+
+	private synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Hits, misses and miss latency of a panel.
+	 */
+	private static final class PanelMetrics {
+		private final LongAdder hits;
+		private final LongAdder misses;
+		private final LatencyHistogram latencies = new LatencyHistogram();
+
+		PanelMetrics(final String panel) {
+			final String prefix = "querycache.panel." + panel;
+			hits = ServerMetrics.counter(prefix + ".hits");
+			misses = ServerMetrics.counter(prefix + ".misses");
+			ServerMetrics.gauge(prefix + ".latencyP50", () -> valueAtPercentile(50));
+			ServerMetrics.gauge(prefix + ".latencyP99", () -> valueAtPercentile(99));
+		}
+
+		synchronized void recordLatency(final long millis) {
+			latencies.record(millis);
+		}
+
+		private synchronized long valueAtPercentile(final double percentile) {
+			return latencies.valueAtPercentile(percentile);
+		}
+	}
+}
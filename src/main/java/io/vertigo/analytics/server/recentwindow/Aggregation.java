@@ -0,0 +1,52 @@
+package io.vertigo.analytics.server.recentwindow;
+
+import java.util.Locale;
+
+/**
+ * Aggregation functions answered by the recent window store (the function part of a "field:function" dashboard measure).
+ */
+public enum Aggregation {
+	MEAN,
+	SUM,
+	COUNT,
+	MIN,
+	MAX,
+	LAST;
+
+	/**
+	 * @param function the function name (ex: mean)
+	 * @return the aggregation, null if the store doesn't support it (the query goes to InfluxDB)
+	 */
+	public static Aggregation parse(final String function) {
+		try {
+			return valueOf(function.toUpperCase(Locale.ROOT));
+		} catch (final IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the value of a window, null if the window is empty (except for count)
+	 */
+	Double result(final long count, final double sum, final double min, final double max, final double last) {
+		if (count == 0) {
+			return this == COUNT ? 0d : null;
+		}
+		switch (this) {
+			case MEAN:
+				return sum / count;
+			case SUM:
+				return sum;
+			case COUNT:
+				return (double) count;
+			case MIN:
+				return min;
+			case MAX:
+				return max;
+			case LAST:
+				return last;
+			default:
+				throw new IllegalStateException("Unknown aggregation : " + this);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package io.vertigo.analytics.server.recentwindow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Points of one bucket and measurement in one time partition, as primitive columns :
+ * times, tags (dictionary codes, -1 when absent) and numeric fields (NaN when absent).
+ * A tag or field seen for the first time adds a column, filled for the previous rows.
+ */
+final class ColumnSegment {
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int NO_VALUE = -1;
+
+	private final Map<String, Integer> tagColumnIndexes = new HashMap<>();
+	private final List<int[]> tagColumns = new ArrayList<>();
+	private final Map<String, Integer> fieldColumnIndexes = new HashMap<>();
+	private final List<double[]> fieldColumns = new ArrayList<>();
+	private final Map<String, Integer> dictionary = new HashMap<>();
+	private long[] times = new long[INITIAL_CAPACITY];
+	private int size;
+	private long estimatedBytes = INITIAL_CAPACITY * Long.BYTES;
+
+	/**
+	 * @param timeMillis time of the point
+	 * @param tags tags of the point
+	 * @param fields numeric fields of the point
+	 * @return the growth of the estimated size in bytes
+	 */
+	synchronized long append(final long timeMillis, final Map<String, String> tags, final Map<String, Double> fields) {
+		final long bytesBefore = estimatedBytes;
+		if (size == times.length) {
+			grow();
+		}
+		times[size] = timeMillis;
+		tags.forEach((key, value) -> tagColumn(key)[size] = encode(value));
+		fields.forEach((name, value) -> fieldColumn(name)[size] = value != null ? value : Double.NaN);
+		size++;
+		return estimatedBytes - bytesBefore;
+	}
+
+	private void grow() {
+		final int capacity = times.length * 2;
+		times = Arrays.copyOf(times, capacity);
+		for (int i = 0; i < tagColumns.size(); i++) {
+			final int[] column = Arrays.copyOf(tagColumns.get(i), capacity);
+			Arrays.fill(column, size, capacity, NO_VALUE);
+			tagColumns.set(i, column);
+		}
+		for (int i = 0; i < fieldColumns.size(); i++) {
+			final double[] column = Arrays.copyOf(fieldColumns.get(i), capacity);
+			Arrays.fill(column, size, capacity, Double.NaN);
+			fieldColumns.set(i, column);
+		}
+		estimatedBytes += (long) (capacity - size) * (Long.BYTES + tagColumns.size() * Integer.BYTES + fieldColumns.size() * Double.BYTES);
+	}
+
+	private int[] tagColumn(final String key) {
+		final Integer index = tagColumnIndexes.get(key);
+		if (index != null) {
+			return tagColumns.get(index);
+		}
+		final int[] column = new int[times.length];
+		Arrays.fill(column, NO_VALUE);
+		tagColumnIndexes.put(key, tagColumns.size());
+		tagColumns.add(column);
+		estimatedBytes += (long) column.length * Integer.BYTES + key.length() * 2L;
+		return column;
+	}
+
+	private double[] fieldColumn(final String name) {
+		final Integer index = fieldColumnIndexes.get(name);
+		if (index != null) {
+			return fieldColumns.get(index);
+		}
+		final double[] column = new double[times.length];
+		Arrays.fill(column, Double.NaN);
+		fieldColumnIndexes.put(name, fieldColumns.size());
+		fieldColumns.add(column);
+		estimatedBytes += (long) column.length * Double.BYTES + name.length() * 2L;
+		return column;
+	}
+
+	private int encode(final String value) {
+		final Integer code = dictionary.get(value);
+		if (code != null) {
+			return code;
+		}
+		final int newCode = dictionary.size();
+		dictionary.put(value, newCode);
+		estimatedBytes += 64 + value.length() * 2L; //entry and string
+		return newCode;
+	}
+
+	/**
+	 * Aggregate the matching points into the windows of the accumulator.
+	 * @param tagFilters tags values to match
+	 * @param fieldAggregations aggregated fields
+	 * @param accumulator windows
+	 */
+	synchronized void aggregate(final Map<String, String> tagFilters, final List<FieldAggregation> fieldAggregations, final WindowAccumulator accumulator) {
+		//filters as column codes : a filter on an unknown tag or value matches nothing
+		final int[][] filterColumns = new int[tagFilters.size()][];
+		final int[] filterCodes = new int[tagFilters.size()];
+		int f = 0;
+		for (final Map.Entry<String, String> tagFilter : tagFilters.entrySet()) {
+			final Integer columnIndex = tagColumnIndexes.get(tagFilter.getKey());
+			final Integer code = dictionary.get(tagFilter.getValue());
+			if (columnIndex == null || code == null) {
+				return;
+			}
+			filterColumns[f] = tagColumns.get(columnIndex);
+			filterCodes[f] = code;
+			f++;
+		}
+		final double[][] valueColumns = new double[fieldAggregations.size()][];
+		for (int a = 0; a < valueColumns.length; a++) {
+			final Integer columnIndex = fieldColumnIndexes.get(fieldAggregations.get(a).field());
+			valueColumns[a] = columnIndex != null ? fieldColumns.get(columnIndex) : null;
+		}
+		rows: for (int row = 0; row < size; row++) {
+			final int window = accumulator.windowOf(times[row]);
+			if (window < 0) {
+				continue;
+			}
+			for (int i = 0; i < filterColumns.length; i++) {
+				if (filterColumns[i][row] != filterCodes[i]) {
+					continue rows;
+				}
+			}
+			for (int a = 0; a < valueColumns.length; a++) {
+				if (valueColumns[a] != null && !Double.isNaN(valueColumns[a][row])) {
+					accumulator.add(window, a, times[row], valueColumns[a][row]);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package io.vertigo.analytics.server.recentwindow;
+
+/**
+ * One aggregated field of a time series query.
+ *
+ * @param field the field (ex: duration)
+ * @param aggregation the aggregation
+ */
+public record FieldAggregation(String field, Aggregation aggregation) {
+	//only data
+}
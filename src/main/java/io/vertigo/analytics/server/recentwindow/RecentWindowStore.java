@@ -0,0 +1,316 @@
+package io.vertigo.analytics.server.recentwindow;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
+
+/**
+ * In memory store of the points of the recent window, with the InfluxDB schema (bucket, measurement, tags and numeric fields).
+ * Only used by the localUi, if this server is the only writer of its InfluxDB (RECENT_WINDOW_ENABLED) : the store is opened with the localUi,
+ * then the InfluxDB appenders of this server acquire it and append the points they queue (same points as in InfluxDB).
+ * Queries are answered only while at least one appender feeds the store, and not for buckets receiving relayed line protocol records (not decoded).
+ * Points are stored by time partition in a ring (a new partition replaces the one a window older), as primitive columns ({@link ColumnSegment}).
+ * When the memory budget is reached, the oldest partitions are evicted, and points are dropped if the current one is alone.
+ * A query is answered only if its whole range is covered : after the first appender started, within the retained partitions, without dropped points.
+ * Read from environment variables : RECENT_WINDOW (ex: 60m), RECENT_WINDOW_PARTITION (ex: 1m) and RECENT_WINDOW_MAX_MB.
+ * Metrics : recentwindow.points, recentwindow.dropped and recentwindow.bytes.
+ */
+public final class RecentWindowStore {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final int MAX_RELAYED_BUCKETS = 1_000;
+	private static volatile RecentWindowStore instance;
+
+	private final long partitionMillis;
+	private final long windowMillis;
+	private final long maxBytes;
+	private final Partition[] partitions;
+	private volatile long coveredSinceMillis = Long.MAX_VALUE; //not fed : nothing is covered
+	private boolean opened; //guarded by this
+	private int feeders; //guarded by this
+	private final Map<String, Long> relayedBuckets = new ConcurrentHashMap<>(); //last time records were relayed to a bucket
+	private volatile long allRelayedMillis = Long.MIN_VALUE; //too many relayed buckets : none is covered
+	private final LongAdder points = ServerMetrics.counter("recentwindow.points");
+	private final LongAdder dropped = ServerMetrics.counter("recentwindow.dropped");
+
+	private record SegmentKey(String bucket, String measurement) {
+		//only data
+	}
+
+	private static final class Partition {
+		private final long startMillis;
+		private final Map<SegmentKey, ColumnSegment> segments = new ConcurrentHashMap<>();
+		private final AtomicLong bytes = new AtomicLong();
+		private volatile boolean complete = true;
+
+		Partition(final long startMillis) {
+			this.startMillis = startMillis;
+		}
+	}
+
+	RecentWindowStore(final long windowMillis, final long partitionMillis, final long maxBytes) {
+		if (windowMillis <= 0 || partitionMillis <= 0 || maxBytes < 0) {
+			throw new IllegalArgumentException("Invalid recent window : RECENT_WINDOW (" + windowMillis + "ms) and RECENT_WINDOW_PARTITION ("
+					+ partitionMillis + "ms) must be positive, RECENT_WINDOW_MAX_MB must not be negative");
+		}
+		this.partitionMillis = partitionMillis;
+		this.maxBytes = maxBytes;
+		//one more partition : the oldest one is partly out of the window
+		partitions = new Partition[(int) ((windowMillis + partitionMillis - 1) / partitionMillis) + 1];
+		this.windowMillis = (partitions.length - 1) * partitionMillis;
+		ServerMetrics.gauge("recentwindow.bytes", this::getBytes);
+	}
+
+	/**
+	 * @return the store of this server (configured from the environment at first use)
+	 */
+	public static RecentWindowStore getInstance() {
+		if (instance == null) {
+			synchronized (RecentWindowStore.class) {
+				if (instance == null) {
+					instance = new RecentWindowStore(
+							DurationUtil.parseMillis(Optional.ofNullable(System.getenv("RECENT_WINDOW")).orElse("60m")),
+							DurationUtil.parseMillis(Optional.ofNullable(System.getenv("RECENT_WINDOW_PARTITION")).orElse("1m")),
+							Long.parseLong(Optional.ofNullable(System.getenv("RECENT_WINDOW_MAX_MB")).orElse("256")) * 1024 * 1024);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Open the store (with the localUi) : it is started when an InfluxDB appender acquires it.
+	 */
+	public synchronized void open() {
+		opened = true;
+	}
+
+	/**
+	 * Acquire the store to append the points of an InfluxDB appender : queries are answered from the next partition (the current one may have missed points).
+	 * @return the store if it is opened, else null
+	 */
+	public static RecentWindowStore acquire() {
+		final RecentWindowStore store = instance;
+		return store != null && store.addFeeder() ? store : null;
+	}
+
+	synchronized boolean addFeeder() {
+		if (!opened) {
+			return false;
+		}
+		if (feeders++ == 0) {
+			coveredSinceMillis = partitionStart(System.currentTimeMillis()) + partitionMillis;
+			LOGGER.info("Recent window store started : {}ms by partitions of {}ms, {} bytes max", windowMillis, partitionMillis, maxBytes);
+		}
+		return true;
+	}
+
+	/**
+	 * Release the store : when no appender feeds it anymore, its points are dropped and queries go to InfluxDB.
+	 */
+	public synchronized void release() {
+		if (--feeders == 0) {
+			coveredSinceMillis = Long.MAX_VALUE;
+			Arrays.fill(partitions, null);
+			relayedBuckets.clear();
+			LOGGER.info("Recent window store stopped : no InfluxDB appender feeds it");
+		}
+	}
+
+	/**
+	 * @return if the store is fed by InfluxDB appenders
+	 */
+	public boolean isStarted() {
+		return coveredSinceMillis != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Append the points queued for InfluxDB : string and boolean fields are not stored.
+	 * @param bucket the bucket (appName)
+	 * @param influxPoints the points
+	 */
+	public void append(final String bucket, final List<InfluxPoint> influxPoints) {
+		if (!isStarted()) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		for (final InfluxPoint influxPoint : influxPoints) {
+			final Map<String, Double> fields = new HashMap<>();
+			influxPoint.getFields().forEach((key, value) -> {
+				if (value instanceof Number && Double.isFinite(((Number) value).doubleValue())) {
+					fields.put(key, ((Number) value).doubleValue());
+				}
+			});
+			if (!fields.isEmpty()) {
+				final Map<String, String> tags = new HashMap<>();
+				influxPoint.getTags().forEach((key, value) -> {
+					if (value != null && !value.isEmpty()) {
+						tags.put(key, value); //InfluxDB doesn't write empty tags
+					}
+				});
+				final Long timeMillis = influxPoint.getTimeMillis();
+				append(bucket, influxPoint.getMeasurement(), timeMillis != null ? timeMillis : now, tags, fields, now);
+			}
+		}
+	}
+
+	private void append(final String bucket, final String measurement, final long timeMillis, final Map<String, String> tags, final Map<String, Double> fields, final long now) {
+		final Partition partition = getPartition(timeMillis, now);
+		if (partition == null) {
+			dropped.increment(); //out of the window
+			return;
+		}
+		if (getBytes() > maxBytes && !evictOldest(partition)) {
+			partition.complete = false;
+			dropped.increment();
+			return;
+		}
+		final ColumnSegment segment = partition.segments.computeIfAbsent(new SegmentKey(bucket, measurement), key -> new ColumnSegment());
+		partition.bytes.addAndGet(segment.append(timeMillis, tags, fields));
+		points.increment();
+	}
+
+	/**
+	 * Line protocol records were relayed to this bucket without being decoded : its queries go to InfluxDB for a window.
+	 * @param bucket the bucket (appName)
+	 */
+	public void markRelayed(final String bucket) {
+		if (!isStarted()) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		if (relayedBuckets.size() >= MAX_RELAYED_BUCKETS && !relayedBuckets.containsKey(bucket)) {
+			relayedBuckets.values().removeIf(relayedMillis -> relayedMillis < now - windowMillis);
+			if (relayedBuckets.size() >= MAX_RELAYED_BUCKETS) {
+				allRelayedMillis = now;
+				return;
+			}
+		}
+		relayedBuckets.put(bucket, now);
+	}
+
+	private boolean isRelayed(final String bucket, final long now) {
+		return allRelayedMillis >= now - windowMillis || relayedBuckets.getOrDefault(bucket, Long.MIN_VALUE) >= now - windowMillis;
+	}
+
+	/**
+	 * @return the partition of this time, created if needed, null if this time is out of the window
+	 */
+	private Partition getPartition(final long timeMillis, final long now) {
+		//future points (clock skew) would take the slot of the oldest partition
+		if (timeMillis < now - windowMillis || timeMillis >= partitionStart(now) + partitionMillis) {
+			return null;
+		}
+		final long startMillis = partitionStart(timeMillis);
+		final int slot = slot(startMillis);
+		final Partition partition = partitions[slot];
+		if (partition != null && partition.startMillis == startMillis) {
+			return partition;
+		}
+		synchronized (this) {
+			final Partition current = partitions[slot];
+			if (current != null && current.startMillis >= startMillis) {
+				return current.startMillis == startMillis ? current : null;
+			}
+			final Partition newPartition = new Partition(startMillis);
+			partitions[slot] = newPartition;
+			return newPartition;
+		}
+	}
+
+	/**
+	 * Evict the oldest partition, if it is not this one.
+	 * @return if a partition was evicted
+	 */
+	private synchronized boolean evictOldest(final Partition current) {
+		int oldestSlot = -1;
+		for (int slot = 0; slot < partitions.length; slot++) {
+			if (partitions[slot] != null && partitions[slot] != current
+					&& (oldestSlot < 0 || partitions[slot].startMillis < partitions[oldestSlot].startMillis)) {
+				oldestSlot = slot;
+			}
+		}
+		if (oldestSlot < 0) {
+			return false;
+		}
+		final Partition evicted = partitions[oldestSlot];
+		partitions[oldestSlot] = null;
+		//the range of an evicted partition is not covered anymore
+		coveredSinceMillis = Math.max(coveredSinceMillis, evicted.startMillis + partitionMillis);
+		return true;
+	}
+
+	/**
+	 * @return estimated size of the retained partitions
+	 */
+	private long getBytes() {
+		long bytes = 0;
+		for (final Partition partition : partitions) {
+			if (partition != null) {
+				bytes += partition.bytes.get();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param bucket the bucket (appName)
+	 * @param measurement the measurement
+	 * @param tagFilters tag values to match
+	 * @param fieldAggregations the aggregated fields
+	 * @param fromMillis start of the range (inclusive)
+	 * @param toMillis end of the range (exclusive)
+	 * @param stepMillis size of the windows
+	 * @return the aggregated windows, null if the range is not covered by the store (the query goes to InfluxDB)
+	 */
+	WindowAccumulator timeSeries(
+			final String bucket,
+			final String measurement,
+			final Map<String, String> tagFilters,
+			final List<FieldAggregation> fieldAggregations,
+			final long fromMillis,
+			final long toMillis,
+			final long stepMillis) {
+		final long now = System.currentTimeMillis();
+		if (fromMillis < coveredSinceMillis || fromMillis < now - windowMillis || toMillis <= fromMillis || stepMillis <= 0 || isRelayed(bucket, now)) {
+			return null;
+		}
+		final WindowAccumulator accumulator = new WindowAccumulator(fromMillis, toMillis, stepMillis, fieldAggregations.size());
+		final SegmentKey key = new SegmentKey(bucket, measurement);
+		for (long startMillis = partitionStart(fromMillis); startMillis < Math.min(toMillis, partitionStart(now) + partitionMillis); startMillis += partitionMillis) {
+			final Partition partition = partitions[slot(startMillis)];
+			if (partition == null || partition.startMillis != startMillis) {
+				continue; //no point in this partition
+			}
+			if (!partition.complete) {
+				return null;
+			}
+			final ColumnSegment segment = partition.segments.get(key);
+			if (segment != null) {
+				segment.aggregate(tagFilters, fieldAggregations, accumulator);
+			}
+		}
+		//a partition evicted during the query
+		return fromMillis >= coveredSinceMillis ? accumulator : null;
+	}
+
+	private long partitionStart(final long timeMillis) {
+		return Math.floorDiv(timeMillis, partitionMillis) * partitionMillis;
+	}
+
+	private int slot(final long partitionStartMillis) {
+		return (int) Math.floorMod(partitionStartMillis / partitionMillis, (long) partitions.length);
+	}
+}
@@ -0,0 +1,246 @@
+package io.vertigo.analytics.server.recentwindow;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import io.vertigo.analytics.server.DurationUtil;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.querycache.TimeSeriesQueryCache;
+import io.vertigo.connectors.influxdb.InfluxDbConnector;
+import io.vertigo.core.lang.json.CoreJsonAdapters;
+import io.vertigo.core.param.ParamValue;
+import io.vertigo.database.impl.timeseries.TimeSeriesPlugin;
+import io.vertigo.database.plugins.timeseries.influxdb.InfluxDbTimeSeriesPlugin;
+import io.vertigo.database.timeseries.ClusteredMeasure;
+import io.vertigo.database.timeseries.DataFilter;
+import io.vertigo.database.timeseries.Measure;
+import io.vertigo.database.timeseries.TabularDatas;
+import io.vertigo.database.timeseries.TimeFilter;
+import io.vertigo.database.timeseries.TimedDataSerie;
+import io.vertigo.database.timeseries.TimedDatas;
+import jakarta.inject.Inject;
+
+/**
+ * Time series plugin of the localUi dashboards : time series over the recent window ("now() - 30m" to "now()", with "field:function" measures)
+ * are answered by the {@link RecentWindowStore} of this server, all other queries by InfluxDB through the {@link TimeSeriesQueryCache}.
+ * The panel of a query (for the cache metrics) is its method, measurement and measures.
+ * Metrics : recentwindow.hits and recentwindow.fallbacks (time series queries answered by InfluxDB).
+ */
+public final class RecentWindowTimeSeriesPlugin implements TimeSeriesPlugin {
+
+	private static final Gson GSON = CoreJsonAdapters.addCoreGsonConfig(new GsonBuilder(), false).create();
+	private static final String NOW = "now()";
+	private static final String ALL = "*";
+	private static final Pattern METRIC_NAME_UNSAFE = Pattern.compile("[^a-zA-Z0-9_:,-]");
+
+	private final TimeSeriesPlugin influxDbTimeSeriesPlugin;
+	private final RecentWindowStore store = RecentWindowStore.getInstance();
+	private final TimeSeriesQueryCache queryCache = TimeSeriesQueryCache.fromEnv();
+	private final LongAdder hits = ServerMetrics.counter("recentwindow.hits");
+	private final LongAdder fallbacks = ServerMetrics.counter("recentwindow.fallbacks");
+
+	/**
+	 * @param dbNamesOpt dbNames of the InfluxDB plugin (default *)
+	 * @param connectorNameOpt connector of the InfluxDB plugin
+	 * @param influxDbConnectors the InfluxDB connectors
+	 */
+	@Inject
+	public RecentWindowTimeSeriesPlugin(
+			@ParamValue("dbNames") final Optional<String> dbNamesOpt,
+			@ParamValue("connectorName") final Optional<String> connectorNameOpt,
+			final List<InfluxDbConnector> influxDbConnectors) {
+		influxDbTimeSeriesPlugin = new InfluxDbTimeSeriesPlugin(dbNamesOpt.orElse(ALL), connectorNameOpt, influxDbConnectors);
+	}
+
+	@Override
+	public TimedDatas getTimeSeries(final String dbName, final List<String> measures, final DataFilter dataFilter, final TimeFilter timeFilter) {
+		final TimedDatas timedDatas = store.isStarted() ? queryStore(dbName, measures, dataFilter, timeFilter) : null;
+		if (timedDatas != null) {
+			hits.increment();
+			return timedDatas;
+		}
+		fallbacks.increment();
+		return cached("getTimeSeries", dbName, measures, dataFilter, timeFilter, "",
+				() -> influxDbTimeSeriesPlugin.getTimeSeries(dbName, measures, dataFilter, timeFilter));
+	}
+
+	private <R> R cached(final String method, final String dbName, final List<String> measures, final DataFilter dataFilter, final TimeFilter timeFilter,
+			final String options, final Supplier<R> query) {
+		final String panel = METRIC_NAME_UNSAFE.matcher(method + '.' + dataFilter.getMeasurement() + '.' + String.join(",", measures)).replaceAll("_");
+		//measures order is the series order : not sorted
+		final String normalizedQuery = String.join("|",
+				method,
+				dbName,
+				dataFilter.getMeasurement(),
+				String.join(",", measures),
+				activeFilters(dataFilter).toString(),
+				String.valueOf(dataFilter.getAdditionalWhereClause()),
+				normalizeTime(timeFilter.getFrom()),
+				normalizeTime(timeFilter.getTo()),
+				String.valueOf(timeFilter.getDim()),
+				options);
+		final Long fromMillis = absoluteMillis(timeFilter.getFrom());
+		final Long toMillis = absoluteMillis(timeFilter.getTo());
+		//a range is closed only if both ends are absolute
+		return queryCache.get(panel, normalizedQuery, fromMillis != null ? toMillis : null, stepMillis(timeFilter.getDim()), query);
+	}
+
+	/**
+	 * @return the dim in millis, null if none or not a duration
+	 */
+	private static Long stepMillis(final String dim) {
+		if (dim == null) {
+			return null;
+		}
+		try {
+			return DurationUtil.parseMillis(dim);
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return filters of the DataFilter, without "all" values, sorted by tag
+	 */
+	private static Map<String, String> activeFilters(final DataFilter dataFilter) {
+		final Map<String, String> filters = new TreeMap<>();
+		dataFilter.getFilters().forEach((tag, value) -> {
+			if (value != null && !ALL.equals(value)) {
+				filters.put(tag, value);
+			}
+		});
+		return filters;
+	}
+
+	private static String normalizeTime(final String time) {
+		return time != null ? time.replace(" ", "") : "";
+	}
+
+	/**
+	 * @param time a time of a TimeFilter
+	 * @return the time in millis if it is absolute (ex: '2024-05-01T00:00:00Z'), else null
+	 */
+	private static Long absoluteMillis(final String time) {
+		if (time == null) {
+			return null;
+		}
+		try {
+			return Instant.parse(time.trim().replace("'", "")).toEpochMilli();
+		} catch (final DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the time series, null if the store can't answer this query
+	 */
+	private TimedDatas queryStore(final String dbName, final List<String> measures, final DataFilter dataFilter, final TimeFilter timeFilter) {
+		if (dataFilter.getAdditionalWhereClause() != null && !dataFilter.getAdditionalWhereClause().isBlank()) {
+			return null;
+		}
+		final List<FieldAggregation> fieldAggregations = new ArrayList<>(measures.size());
+		for (final String measure : measures) {
+			final String[] fieldAndFunction = measure.split(":");
+			final Aggregation aggregation = fieldAndFunction.length == 2 ? Aggregation.parse(fieldAndFunction[1]) : null;
+			if (aggregation == null) {
+				return null;
+			}
+			fieldAggregations.add(new FieldAggregation(fieldAndFunction[0], aggregation));
+		}
+		final Map<String, String> tagFilters = activeFilters(dataFilter);
+		final long now = System.currentTimeMillis();
+		final long fromMillis;
+		final long toMillis;
+		final long stepMillis;
+		try {
+			fromMillis = parseTime(timeFilter.getFrom(), now);
+			toMillis = timeFilter.getTo() != null ? parseTime(timeFilter.getTo(), now) : now;
+			stepMillis = timeFilter.getDim() != null ? DurationUtil.parseMillis(timeFilter.getDim()) : toMillis - fromMillis;
+		} catch (final IllegalArgumentException e) {
+			return null; //absolute times, days...
+		}
+		final WindowAccumulator accumulator = store.timeSeries(dbName, dataFilter.getMeasurement(), tagFilters, fieldAggregations, fromMillis, toMillis, stepMillis);
+		if (accumulator == null) {
+			return null;
+		}
+		final List<TimedDataSerie> timedDataSeries = new ArrayList<>(accumulator.getWindowCount());
+		for (int window = 0; window < accumulator.getWindowCount(); window++) {
+			final Map<String, Object> values = new HashMap<>();
+			for (int a = 0; a < fieldAggregations.size(); a++) {
+				final Double value = accumulator.getValue(window, a, fieldAggregations.get(a).aggregation());
+				if (value != null) {
+					values.put(measures.get(a), value);
+				}
+			}
+			timedDataSeries.add(new TimedDataSerie(Instant.ofEpochMilli(accumulator.getWindowEnd(window)), values));
+		}
+		return new TimedDatas(timedDataSeries, measures);
+	}
+
+	/**
+	 * @param time "now()" or "now() - [duration]" (ex: now() - 30m)
+	 * @return the time in millis
+	 * @throws IllegalArgumentException for any other time
+	 */
+	private static long parseTime(final String time, final long now) {
+		final String value = time.trim();
+		if (NOW.equals(value)) {
+			return now;
+		}
+		if (value.startsWith(NOW) && value.substring(NOW.length()).trim().startsWith("-")) {
+			return now - DurationUtil.parseMillis(value.substring(value.indexOf('-') + 1));
+		}
+		throw new IllegalArgumentException("Unsupported time : " + time);
+	}
+
+	@Override
+	public List<String> getDbNames() {
+		return influxDbTimeSeriesPlugin.getDbNames();
+	}
+
+	@Override
+	public void insertMeasure(final String dbName, final Measure measure) {
+		influxDbTimeSeriesPlugin.insertMeasure(dbName, measure);
+	}
+
+	@Override
+	public void insertMeasures(final String dbName, final List<Measure> measures) {
+		influxDbTimeSeriesPlugin.insertMeasures(dbName, measures);
+	}
+
+	@Override
+	public TimedDatas getClusteredTimeSeries(final String dbName, final ClusteredMeasure clusteredMeasure, final DataFilter dataFilter, final TimeFilter timeFilter) {
+		return cached("getClusteredTimeSeries", dbName, List.of(), dataFilter, timeFilter, GSON.toJson(clusteredMeasure),
+				() -> influxDbTimeSeriesPlugin.getClusteredTimeSeries(dbName, clusteredMeasure, dataFilter, timeFilter));
+	}
+
+	@Override
+	public TimedDatas getTabularTimedData(final String dbName, final List<String> measures, final DataFilter dataFilter, final TimeFilter timeFilter, final String... groupBy) {
+		return cached("getTabularTimedData", dbName, measures, dataFilter, timeFilter, String.join(",", groupBy),
+				() -> influxDbTimeSeriesPlugin.getTabularTimedData(dbName, measures, dataFilter, timeFilter, groupBy));
+	}
+
+	@Override
+	public TabularDatas getTabularData(final String dbName, final List<String> measures, final DataFilter dataFilter, final TimeFilter timeFilter, final String... groupBy) {
+		return cached("getTabularData", dbName, measures, dataFilter, timeFilter, String.join(",", groupBy),
+				() -> influxDbTimeSeriesPlugin.getTabularData(dbName, measures, dataFilter, timeFilter, groupBy));
+	}
+
+	@Override
+	public TabularDatas getTops(final String dbName, final String measure, final DataFilter dataFilter, final TimeFilter timeFilter, final String groupBy, final int maxRows) {
+		return cached("getTops", dbName, List.of(measure), dataFilter, timeFilter, groupBy + ',' + maxRows,
+				() -> influxDbTimeSeriesPlugin.getTops(dbName, measure, dataFilter, timeFilter, groupBy, maxRows));
+	}
+}
@@ -0,0 +1,83 @@
+package io.vertigo.analytics.server.recentwindow;
+
+import java.util.Arrays;
+
+/**
+ * Count, sum, min, max and last value of each aggregated field, for each time window of a query.
+ * Windows are aligned on the epoch (as InfluxDB aggregateWindow), the first one contains the start of the query.
+ */
+final class WindowAccumulator {
+
+	private final long fromMillis;
+	private final long toMillis;
+	private final long firstWindowStart;
+	private final long stepMillis;
+	private final int windowCount;
+	private final int aggregationCount;
+	private final long[] counts;
+	private final double[] sums;
+	private final double[] mins;
+	private final double[] maxs;
+	private final double[] lasts;
+	private final long[] lastTimes;
+
+	WindowAccumulator(final long fromMillis, final long toMillis, final long stepMillis, final int aggregationCount) {
+		this.fromMillis = fromMillis;
+		this.toMillis = toMillis;
+		this.stepMillis = stepMillis;
+		this.aggregationCount = aggregationCount;
+		firstWindowStart = Math.floorDiv(fromMillis, stepMillis) * stepMillis;
+		windowCount = (int) ((toMillis - firstWindowStart + stepMillis - 1) / stepMillis);
+		final int cells = windowCount * aggregationCount;
+		counts = new long[cells];
+		sums = new double[cells];
+		mins = new double[cells];
+		maxs = new double[cells];
+		lasts = new double[cells];
+		lastTimes = new long[cells];
+		Arrays.fill(mins, Double.POSITIVE_INFINITY);
+		Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+		Arrays.fill(lastTimes, Long.MIN_VALUE);
+	}
+
+	/**
+	 * @return the window of this time, -1 if out of the query range
+	 */
+	int windowOf(final long timeMillis) {
+		if (timeMillis < fromMillis || timeMillis >= toMillis) {
+			return -1;
+		}
+		return (int) ((timeMillis - firstWindowStart) / stepMillis);
+	}
+
+	void add(final int window, final int aggregation, final long timeMillis, final double value) {
+		final int cell = window * aggregationCount + aggregation;
+		counts[cell]++;
+		sums[cell] += value;
+		mins[cell] = Math.min(mins[cell], value);
+		maxs[cell] = Math.max(maxs[cell], value);
+		if (timeMillis >= lastTimes[cell]) {
+			lastTimes[cell] = timeMillis;
+			lasts[cell] = value;
+		}
+	}
+
+	int getWindowCount() {
+		return windowCount;
+	}
+
+	/**
+	 * @return the end of this window (time of its value, as InfluxDB aggregateWindow)
+	 */
+	long getWindowEnd(final int window) {
+		return Math.min(firstWindowStart + (window + 1) * stepMillis, toMillis);
+	}
+
+	/**
+	 * @return the value of this window and aggregation, null if the window has no value
+	 */
+	Double getValue(final int window, final int aggregationIndex, final Aggregation aggregation) {
+		final int cell = window * aggregationCount + aggregationIndex;
+		return aggregation.result(counts[cell], sums[cell], mins[cell], maxs[cell], lasts[cell]);
+	}
+}
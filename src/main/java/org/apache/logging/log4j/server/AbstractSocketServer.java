@@ -43,6 +43,14 @@ import org.apache.logging.log4j.core.tools.picocli.CommandLine.Option;
 import org.apache.logging.log4j.core.util.Log4jThread;
 import org.apache.logging.log4j.util.Strings;
 
+import io.vertigo.analytics.server.admission.AdmissionController;
+import io.vertigo.analytics.server.admission.AdmissionLogEventListener;
+import io.vertigo.analytics.server.dedup.BatchDedupLogEventListener;
+import io.vertigo.analytics.server.dedup.BatchDeduplicator;
+import io.vertigo.analytics.server.filter.IngestFilter;
+import io.vertigo.analytics.server.filter.IngestFilterLogEventListener;
+import io.vertigo.analytics.server.priority.PriorityDispatcher;
+
 /**
  * Abstract socket server for TCP and UDP implementations.
  *
@@ -174,10 +182,45 @@ public abstract class AbstractSocketServer<T extends InputStream> extends LogEve
 	 *            Use this input to read log events.
 	 */
 	public AbstractSocketServer(final int port, final LogEventBridge<T> logEventInput) {
-		this.logger = LogManager.getLogger(this.getClass().getSimpleName() + ':' + port);
+		this(String.valueOf(port), logEventInput);
+	}
+
+	/**
+	 * Creates a new socket server.
+	 *
+	 * @param address
+	 *            listen to this address (port or socket path)
+	 * @param logEventInput
+	 *            Use this input to read log events.
+	 */
+	protected AbstractSocketServer(final String address, final LogEventBridge<T> logEventInput) {
+		this.logger = LogManager.getLogger(this.getClass().getSimpleName() + ':' + address);
 		this.logEventInput = Objects.requireNonNull(logEventInput, "LogEventInput");
 	}
 
+	/**
+	 * Listeners between the bridge of a client connection and this server (outermost first) :
+	 * ingest filter (serialized events only, text bridges are filtered by their parser), admission, batch dedup and priority lanes.
+	 *
+	 * @param clientAddress
+	 *            address of the client (admission per client)
+	 * @return the listener of the events read from this client
+	 */
+	protected LogEventListener createListenerChain(final String clientAddress) {
+		final PriorityDispatcher priorityDispatcher = PriorityDispatcher.getInstance();
+		final LogEventListener dispatchListener = priorityDispatcher != null ? priorityDispatcher.listenerFor(this) : this;
+		final BatchDeduplicator batchDeduplicator = BatchDeduplicator.getInstance();
+		final LogEventListener dedupListener = batchDeduplicator != null ? new BatchDedupLogEventListener(batchDeduplicator, dispatchListener) : dispatchListener;
+		final AdmissionController admissionController = AdmissionController.getInstance();
+		final LogEventListener admissionListener = admissionController.isEnabled()
+				? new AdmissionLogEventListener(admissionController, clientAddress, dedupListener)
+				: dedupListener;
+		final IngestFilter ingestFilter = IngestFilter.getInstance();
+		return ingestFilter.isEnabled() && !(logEventInput instanceof InputStreamLogEventBridge)
+				? new IngestFilterLogEventListener(ingestFilter, admissionListener)
+				: admissionListener;
+	}
+
 	protected boolean isActive() {
 		return this.active;
 	}
@@ -19,6 +19,7 @@ package org.apache.logging.log4j.server;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 
@@ -140,4 +141,34 @@ public final class AnalyticsTcpSocketServer<T extends InputStream> {
 				sslConfiguration.getSslServerSocketFactory().createServerSocket(port));
 		return LOGGER.exit(securedServer);
 	}
+
+	/**
+	 * Creates a unix domain socket server that reads serialized log events.
+	 *
+	 * @param socketPath
+	 *        The socket file path
+	 * @return a new a socket server
+	 * @throws IOException
+	 *         if an I/O error occurs when binding the socket.
+	 */
+	public static UnixDomainSocketServer<InputStream> createSerializedUnixSocketServer(final Path socketPath, final boolean compress) throws IOException {
+		LOGGER.entry("createSerializedUnixSocketServer", socketPath, compress);
+		final UnixDomainSocketServer<InputStream> socketServer = new UnixDomainSocketServer<>(socketPath, new CompressibleFilteredObjectInputStreamLogEventBridge(compress));
+		return LOGGER.exit(socketServer);
+	}
+
+	/**
+	 * Creates a unix domain socket server that reads JSON log events.
+	 *
+	 * @param socketPath
+	 *        The socket file path
+	 * @return a new a socket server
+	 * @throws IOException
+	 *         if an I/O error occurs when binding the socket.
+	 */
+	public static UnixDomainSocketServer<InputStream> createJsonUnixSocketServer(final Path socketPath, final boolean compress) throws IOException {
+		LOGGER.entry("createJsonUnixSocketServer", socketPath, compress);
+		final UnixDomainSocketServer<InputStream> socketServer = new UnixDomainSocketServer<>(socketPath, new CompressibleJsonInputStreamLogEventBridge(new GsonTemplateLayoutLogEventParser(), compress));
+		return LOGGER.exit(socketServer);
+	}
 }
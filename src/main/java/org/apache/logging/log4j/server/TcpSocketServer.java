@@ -30,6 +30,7 @@ import java.util.concurrent.ConcurrentMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LogEventListener;
 import org.apache.logging.log4j.core.parser.ParseException;
 import org.apache.logging.log4j.core.util.Closer;
 import org.apache.logging.log4j.core.util.Log4jThread;
@@ -91,11 +92,12 @@ public class TcpSocketServer<T extends InputStream> extends AbstractSocketServer
 				}
 				logger.debug("Ready SocketHandler with {}", socketMode);
 
+				final LogEventListener logEventListener = createListenerChain(socket.getInetAddress().getHostAddress());
 				try {
 					logger.info("Start listening events with {}", socketMode);
 					while (!shutdown) {
 						logger.debug("Listening events");
-						deltaPacketsReceived += logEventInput.logEvents(inputStream, TcpSocketServer.this);
+						deltaPacketsReceived += logEventInput.logEvents(inputStream, logEventListener);
 						if (logger.isDebugEnabled()) {
 							logger.debug("Received {} batchs events", deltaPacketsReceived);
 							deltaPacketsReceived = 0;
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.server;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OptionalDataException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.core.LogEventListener;
+import org.apache.logging.log4j.core.parser.ParseException;
+import org.apache.logging.log4j.core.util.Closer;
+import org.apache.logging.log4j.core.util.Log4jThread;
+import org.apache.logging.log4j.message.EntryMessage;
+
+/**
+ * Listens for Log4j events on a Unix domain socket (clients on the same host) and passes them on to Log4j.
+ * Same bridges and listeners as the {@link TcpSocketServer}, without the loopback TCP stack.
+ * A stale socket file is replaced at bind, and the socket file is deleted at shutdown.
+ *
+ * @param <T>
+ *        The kind of input stream read
+ */
+public class UnixDomainSocketServer<T extends InputStream> extends AbstractSocketServer<T> {
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final ConcurrentMap<Long, ChannelHandler> handlers = new ConcurrentHashMap<>();
+
+	private final Path socketPath;
+	private final ServerSocketChannel serverChannel;
+
+	/**
+	 * Thread that processes the events of one client.
+	 */
+	private class ChannelHandler extends Log4jThread {
+		private final SocketChannel channel;
+		private final long connectionId;
+
+		private volatile boolean shutdown = false;
+
+		ChannelHandler(final SocketChannel channel, final long connectionId) {
+			this.channel = channel;
+			this.connectionId = connectionId;
+		}
+
+		@Override
+		public void run() {
+			final EntryMessage entry = logger.traceEntry();
+			long deltaPacketsReceived = 0;
+			final T inputStream;
+			try {
+				try {
+					inputStream = logEventInput.wrapStream(new BufferedInputStream(Channels.newInputStream(channel), READ_BUFFER_SIZE));
+				} catch (final IOException e) {
+					logger.error("IOException encountered while initializing unix socket", e);
+					return;
+				}
+				//all clients share the socket path : admission per path
+				final LogEventListener logEventListener = createListenerChain("unix:" + socketPath);
+				logger.info("Start listening events of connection #{} with {}", connectionId, logEventInput.getClass().getSimpleName());
+				try {
+					while (!shutdown) {
+						deltaPacketsReceived += logEventInput.logEvents(inputStream, logEventListener);
+					}
+				} catch (final EOFException | ClosedChannelException e) {
+					//client closed the connection
+				} catch (final OptionalDataException e) {
+					logger.error("OptionalDataException eof=" + e.eof + " length=" + e.length, e);
+				} catch (final IOException e) {
+					logger.error("IOException encountered while reading from unix socket", e);
+				} catch (final ParseException e) {
+					logger.error("ParseException encountered while reading from unix socket", e);
+				}
+				Closer.closeSilently(inputStream);
+			} finally {
+				handlers.remove(Long.valueOf(getId()));
+				logger.info("Stop listening events of connection #{}, received {} batchs events", connectionId, deltaPacketsReceived);
+				Closer.closeSilently(channel);
+			}
+			logger.traceExit(entry);
+		}
+
+		public void shutdown() {
+			this.shutdown = true;
+			Closer.closeSilently(channel);
+			interrupt();
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param socketPath
+	 *        the socket file path
+	 * @param logEventInput
+	 *        the log even input
+	 * @throws IOException
+	 *         if an I/O error occurs when binding the socket.
+	 */
+	public UnixDomainSocketServer(final Path socketPath, final LogEventBridge<T> logEventInput) throws IOException {
+		super(socketPath.toString(), logEventInput);
+		this.socketPath = socketPath;
+		Files.deleteIfExists(socketPath); //stale file of a previous run
+		serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+	}
+
+	/**
+	 * Accept incoming connections and processes their events.
+	 */
+	@Override
+	public void run() {
+		final EntryMessage entry = logger.traceEntry();
+		long connectionCount = 0;
+		logger.info("Listening for connections on unix socket {}", socketPath);
+		while (isActive() && serverChannel.isOpen()) {
+			try {
+				@SuppressWarnings("resource") // channel is closed by its handler
+				final SocketChannel channel = serverChannel.accept();
+				final ChannelHandler handler = new ChannelHandler(channel, ++connectionCount);
+				handlers.put(Long.valueOf(handler.getId()), handler);
+				handler.start();
+			} catch (final ClosedChannelException e) {
+				break; // OK we're done.
+			} catch (final IOException e) {
+				logger.error("Exception encountered on accept. Ignoring. Stack trace :", e);
+			}
+		}
+		for (final Map.Entry<Long, ChannelHandler> handlerEntry : handlers.entrySet()) {
+			final ChannelHandler handler = handlerEntry.getValue();
+			handler.shutdown();
+			try {
+				handler.join();
+			} catch (final InterruptedException ignored) {
+				// Ignore the exception
+			}
+		}
+		logger.traceExit(entry);
+	}
+
+	/**
+	 * Shutdown the server, and delete the socket file.
+	 *
+	 * @throws IOException if the server channel could not be closed
+	 */
+	@Override
+	public void shutdown() throws IOException {
+		final EntryMessage entry = logger.traceEntry();
+		setActive(false);
+		serverChannel.close();
+		Files.deleteIfExists(socketPath);
+		logger.traceExit(entry);
+	}
+
+	@Override
+	public String toString() {
+		return "UnixDomainSocketServer [socketPath=" + socketPath + ", handlers=" + handlers + ", logEventInput=" + logEventInput + "]";
+	}
+}
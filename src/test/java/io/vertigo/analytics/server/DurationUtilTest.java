@@ -0,0 +1,24 @@
+package io.vertigo.analytics.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public final class DurationUtilTest {
+
+	@Test
+	public void testUnits() {
+		assertEquals(500, DurationUtil.parseMillis("500ms"));
+		assertEquals(10_000, DurationUtil.parseMillis("10s"));
+		assertEquals(60_000, DurationUtil.parseMillis(" 1M "));
+		assertEquals(7_200_000, DurationUtil.parseMillis("2h"));
+		assertEquals(250, DurationUtil.parseMillis("250"));
+	}
+
+	@Test
+	public void testInvalid() {
+		assertThrows(NumberFormatException.class, () -> DurationUtil.parseMillis("1d"));
+		assertThrows(NumberFormatException.class, () -> DurationUtil.parseMillis("now()"));
+	}
+}
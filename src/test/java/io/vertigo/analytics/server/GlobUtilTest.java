@@ -0,0 +1,26 @@
+package io.vertigo.analytics.server;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+public final class GlobUtilTest {
+
+	@Test
+	public void testWildcard() {
+		final Pattern pattern = GlobUtil.toPattern("cache.*.hits");
+		assertTrue(pattern.matcher("cache.users.hits").matches());
+		assertTrue(pattern.matcher("cache..hits").matches());
+		assertFalse(pattern.matcher("cache.users.misses").matches());
+		assertTrue(GlobUtil.toPattern("*").matcher("").matches());
+	}
+
+	@Test
+	public void testRegexCharactersAreLiteral() {
+		assertFalse(GlobUtil.toPattern("a.b").matcher("axb").matches());
+		assertTrue(GlobUtil.toPattern("sql(1)+*").matcher("sql(1)+select").matches());
+	}
+}
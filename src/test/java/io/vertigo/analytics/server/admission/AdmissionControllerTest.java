@@ -0,0 +1,96 @@
+package io.vertigo.analytics.server.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.ServerMetrics;
+
+public final class AdmissionControllerTest {
+
+	private static AdmissionController controller(final double appRate, final double clientRate, final AdmissionSettings.OverLimit overLimit, final int maxApps, final int maxClients) {
+		return new AdmissionController(new AdmissionSettings(appRate, appRate > 0 ? 2 : 0, clientRate, clientRate > 0 ? 2 : 0, overLimit, 4, maxApps, maxClients));
+	}
+
+	private static long metric(final String name) {
+		return ServerMetrics.snapshot().getOrDefault(name, 0L);
+	}
+
+	private static int admitted(final AdmissionController controller, final String clientAddress, final String appName, final int events) {
+		int admitted = 0;
+		for (int i = 0; i < events; i++) {
+			if (controller.admit(clientAddress, appName)) {
+				admitted++;
+			}
+		}
+		return admitted;
+	}
+
+	@Test
+	public void testDrop() {
+		final AdmissionController controller = controller(0.001, 0, AdmissionSettings.OverLimit.DROP, 10, 10);
+		final long rejectedBefore = metric("admission.app.dropApp.rejected");
+		assertEquals(2, admitted(controller, "client", "dropApp", 10)); //the burst
+		assertEquals(8, metric("admission.app.dropApp.rejected") - rejectedBefore);
+		assertEquals(2, admitted(controller, "client", "otherDropApp", 10)); //one bucket per app
+	}
+
+	@Test
+	public void testPerClient() {
+		final AdmissionController controller = controller(0, 0.001, AdmissionSettings.OverLimit.DROP, 10, 10);
+		assertEquals(2, admitted(controller, "client1", "clientApp", 10));
+		assertEquals(2, admitted(controller, "client2", "clientApp", 10));
+	}
+
+	@Test
+	public void testSample() {
+		final AdmissionController controller = controller(0.001, 0, AdmissionSettings.OverLimit.SAMPLE, 10, 10);
+		//the burst, then one over-limit event in 4
+		assertEquals(2 + 2, admitted(controller, "client", "sampleApp", 10));
+	}
+
+	@Test
+	public void testBackpressure() {
+		final AdmissionController controller = controller(50, 0, AdmissionSettings.OverLimit.BACKPRESSURE, 10, 10); //one token each 20ms
+		final long throttledBefore = metric("admission.app.backpressureApp.throttled");
+		final long start = System.nanoTime();
+		assertEquals(5, admitted(controller, "client", "backpressureApp", 5));
+		//the burst is free, the 3 other events wait for their token
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertEquals(3, metric("admission.app.backpressureApp.throttled") - throttledBefore);
+	}
+
+	@Test
+	public void testAppsOverLimitShareOneAdmission() {
+		final AdmissionController controller = controller(0.001, 0, AdmissionSettings.OverLimit.DROP, 2, 10);
+		final long othersBefore = metric("admission.app._others.admitted");
+		assertTrue(controller.admit("client", "app1"));
+		assertTrue(controller.admit("client", "app2"));
+		assertTrue(controller.admit("client", "app3"));
+		assertTrue(controller.admit("client", "app4"));
+		assertFalse(controller.admit("client", "app5")); //shared burst is spent
+		assertEquals(2, metric("admission.app._others.admitted") - othersBefore);
+		assertFalse(ServerMetrics.snapshot().containsKey("admission.app.app5.admitted"));
+	}
+
+	@Test
+	public void testClientsAreBounded() {
+		final AdmissionController controller = controller(0, 0.001, AdmissionSettings.OverLimit.DROP, 10, 3);
+		final long evictedBefore = metric("admission.evictedClients");
+		for (int i = 0; i < 10; i++) {
+			controller.admit("client" + i, "boundedApp");
+		}
+		assertEquals(3, controller.getClientCount());
+		assertEquals(7, metric("admission.evictedClients") - evictedBefore);
+	}
+
+	@Test
+	public void testInvalidSettings() {
+		assertThrows(IllegalArgumentException.class, () -> controller(1, 0, AdmissionSettings.OverLimit.DROP, 0, 10));
+	}
+}
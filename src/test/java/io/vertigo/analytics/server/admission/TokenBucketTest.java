@@ -0,0 +1,41 @@
+package io.vertigo.analytics.server.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public final class TokenBucketTest {
+
+	@Test
+	public void testBurst() {
+		final TokenBucket bucket = new TokenBucket(0.001, 5);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(bucket.tryAcquire());
+		}
+		assertFalse(bucket.tryAcquire());
+	}
+
+	@Test
+	public void testRate() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(100, 1); //one token each 10ms
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+		TimeUnit.MILLISECONDS.sleep(30);
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire()); //refill is capped by the burst
+	}
+
+	@Test
+	public void testReserve() {
+		final TokenBucket bucket = new TokenBucket(10, 1); //one token each 100ms
+		assertEquals(0, bucket.reserve());
+		final long waitNanos = bucket.reserve();
+		assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(50) && waitNanos <= TimeUnit.MILLISECONDS.toNanos(100), "wait " + waitNanos);
+		//the debt is kept : the next token is one more refill away
+		assertTrue(bucket.reserve() > TimeUnit.MILLISECONDS.toNanos(150));
+	}
+}
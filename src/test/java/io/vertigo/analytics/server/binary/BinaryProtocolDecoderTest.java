@@ -0,0 +1,110 @@
+package io.vertigo.analytics.server.binary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.LogMessageRouter.Kind;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.core.analytics.metric.Metric;
+
+public final class BinaryProtocolDecoderTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final BinaryProtocolEncoder encoder = new BinaryProtocolEncoder(out);
+		final TraceSpan child = span("sql", List.of());
+		encoder.writeProcesses("myApp", "host1", "b-1", List.of(span("page", List.of(child, child))));
+		encoder.writeMetrics("myApp", "host1", null, List.of(
+				new Metric(Instant.ofEpochMilli(1000), "cpu", "core", "system", "host1", 0.5),
+				new Metric(Instant.ofEpochMilli(1000), "mem", "core", "system", "host1", null)));
+		encoder.flush();
+
+		final BinaryProtocolDecoder decoder = decoder(out.toByteArray());
+		final BinaryProtocolDecoder.Frame processFrame = decoder.readFrame();
+		assertEquals(Kind.PROCESS, processFrame.kind());
+		assertEquals("b-1", processFrame.logMessage().getBatchId());
+		final TraceSpan process = (TraceSpan) processFrame.logMessage().getEvent();
+		assertEquals("page", process.getCategory());
+		assertEquals(2, process.getChildSpans().size());
+		assertEquals("sql", process.getChildSpans().get(1).getCategory());
+		final BinaryProtocolDecoder.Frame metricFrame = decoder.readFrame();
+		assertEquals(Kind.METRIC, metricFrame.kind());
+		assertEquals(2, metricFrame.logMessage().getEvents().size());
+	}
+
+	@Test
+	public void testCountLargerThanFrame() throws IOException {
+		//metric frame : null appName, host and batchId, then a count of Integer.MAX_VALUE
+		final BinaryProtocolDecoder decoder = decoder(frame(BinaryProtocol.KIND_METRIC, 0, 0, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07));
+		assertThrows(IOException.class, decoder::readFrame);
+	}
+
+	@Test
+	public void testMapCountLargerThanFrame() throws IOException {
+		//health frame, one check : 4 null strings, instant 0, green, null message, then a huge attribute count
+		final BinaryProtocolDecoder decoder = decoder(frame(BinaryProtocol.KIND_HEALTH, 0, 0, 0, 1, 0, 0, 0, 0, 0, 2, 0, 0xFF, 0xFF, 0xFF, 0x7F));
+		assertThrows(IOException.class, decoder::readFrame);
+	}
+
+	@Test
+	public void testUnknownStringTableEntry() throws IOException {
+		final BinaryProtocolDecoder decoder = decoder(frame(BinaryProtocol.KIND_METRIC, BinaryProtocol.STRING_TABLE_OFFSET + 5, 0, 0, 0));
+		assertThrows(IOException.class, decoder::readFrame);
+	}
+
+	@Test
+	public void testSpanTreeTooDeep() throws IOException {
+		assertEquals(Kind.PROCESS, decoder(encode(chain(BinaryProtocol.MAX_SPAN_DEPTH))).readFrame().kind());
+		final BinaryProtocolDecoder decoder = decoder(encode(chain(BinaryProtocol.MAX_SPAN_DEPTH + 1)));
+		assertThrows(IOException.class, decoder::readFrame);
+	}
+
+	private static TraceSpan chain(final int depth) {
+		TraceSpan span = span("sql", List.of());
+		for (int i = 1; i < depth; i++) {
+			span = span("page", List.of(span));
+		}
+		return span;
+	}
+
+	private static TraceSpan span(final String category, final List<TraceSpan> childSpans) {
+		return new TraceSpan(category, "name", Instant.ofEpochMilli(1000), Instant.ofEpochMilli(1010),
+				Map.of("count", 1d), Collections.emptyMap(), Map.of("tag", "value"), childSpans);
+	}
+
+	private static byte[] encode(final TraceSpan process) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final BinaryProtocolEncoder encoder = new BinaryProtocolEncoder(out);
+		encoder.writeProcesses("myApp", "host1", null, List.of(process));
+		encoder.flush();
+		return out.toByteArray();
+	}
+
+	private static byte[] frame(final int... body) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(BinaryProtocol.MAGIC);
+		out.write(BinaryProtocol.VERSION);
+		out.write(body.length);
+		for (final int b : body) {
+			out.write(b);
+		}
+		return out.toByteArray();
+	}
+
+	private static BinaryProtocolDecoder decoder(final byte[] bytes) throws IOException {
+		final BinaryProtocolDecoder decoder = new BinaryProtocolDecoder(new ByteArrayInputStream(bytes));
+		decoder.readHeader();
+		return decoder;
+	}
+}
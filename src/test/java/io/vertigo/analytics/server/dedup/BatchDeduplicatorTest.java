@@ -0,0 +1,29 @@
+package io.vertigo.analytics.server.dedup;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public final class BatchDeduplicatorTest {
+
+	@Test
+	public void testDuplicate() {
+		final BatchDeduplicator deduplicator = new BatchDeduplicator(600_000, 1_000, 0.001, 16);
+		assertFalse(deduplicator.isDuplicate("myApp", "b-1"));
+		assertTrue(deduplicator.isDuplicate("myApp", "b-1"));
+		assertFalse(deduplicator.isDuplicate("otherApp", "b-1"));
+		assertFalse(deduplicator.isDuplicate("myApp", "b-2"));
+	}
+
+	@Test
+	public void testDuplicateAfterExactCacheEviction() {
+		final BatchDeduplicator deduplicator = new BatchDeduplicator(600_000, 1_000, 0.001, 2);
+		assertFalse(deduplicator.isDuplicate("myApp", "b-1"));
+		for (int i = 0; i < 10; i++) {
+			deduplicator.isDuplicate("myApp", "other-" + i);
+		}
+		//still found by the bloom filter
+		assertTrue(deduplicator.isDuplicate("myApp", "b-1"));
+	}
+}
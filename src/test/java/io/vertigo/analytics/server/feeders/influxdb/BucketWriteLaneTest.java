@@ -0,0 +1,132 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.influxdb.BucketWriteLane.WriteBatch;
+import io.vertigo.analytics.server.feeders.resilience.ResilienceSettings;
+import io.vertigo.analytics.server.feeders.resilience.RetryPolicy;
+
+public final class BucketWriteLaneTest {
+
+	private static BucketWriteLane lane(final String writerName, final String bucket, final int queueCapacity, final int maxInFlight, final int batchSize) {
+		final ResilienceSettings resilience = ResilienceSettings.defaults();
+		return new BucketWriteLane(writerName, bucket, WriteLaneSettings.of(queueCapacity, maxInFlight, batchSize, 1), new RetryPolicy(resilience, error -> true));
+	}
+
+	private static List<String> records(final int count) {
+		return new ArrayList<>(Collections.nCopies(count, "cpu value=1"));
+	}
+
+	/**
+	 * As the writer : a lane is in the shared ready queue once per reserved slot.
+	 */
+	private static void schedule(final BucketWriteLane lane, final Deque<BucketWriteLane> readyLanes) {
+		while (lane.reserveSlot()) {
+			readyLanes.addLast(lane);
+		}
+	}
+
+	@Test
+	public void testOverflowDrops() {
+		final BucketWriteLane lane = lane("overflowTest", "bucket", 10, 2, 5);
+		assertTrue(lane.offer(records(6)));
+		assertTrue(lane.hasCapacity(4));
+		assertFalse(lane.hasCapacity(5));
+		assertFalse(lane.offer(records(5))); //dropped as a whole
+		assertTrue(lane.offer(records(4)));
+		assertEquals(10, lane.getPendingCount());
+		assertEquals(5L, (long) ServerMetrics.snapshot().get("influxdb.overflowTest.lane.bucket.dropped"));
+		lane.unregisterMetrics();
+	}
+
+	@Test
+	public void testMaxInFlight() {
+		final BucketWriteLane lane = lane("inFlightTest", "bucket", 100, 2, 10);
+		for (int i = 0; i < 3; i++) {
+			lane.offer(records(10));
+		}
+		assertTrue(lane.reserveSlot());
+		assertTrue(lane.reserveSlot());
+		assertFalse(lane.reserveSlot()); //2 slots waiting in the ready queue
+		final WriteBatch first = lane.pollBatch();
+		final WriteBatch second = lane.pollBatch();
+		assertNotNull(first);
+		assertNotNull(second);
+		assertEquals(10, first.records().size());
+		assertFalse(lane.reserveSlot()); //2 batches in flight
+		lane.onSuccess(first);
+		assertTrue(lane.reserveSlot());
+		assertFalse(lane.reserveSlot());
+		lane.onSuccess(second);
+		assertNotNull(lane.pollBatch());
+		assertEquals(0, lane.getPendingCount());
+		assertFalse(lane.reserveSlot()); //nothing left to write
+		lane.unregisterMetrics();
+	}
+
+	@Test
+	public void testBatchesKeepOfferedChunks() {
+		final BucketWriteLane lane = lane("batchTest", "bucket", 100, 1, 5);
+		lane.offer(records(3));
+		lane.offer(records(3));
+		lane.offer(records(1));
+		lane.offer(records(8));
+		assertTrue(lane.reserveSlot());
+		final WriteBatch first = lane.pollBatch();
+		assertEquals(3, first.records().size()); //3 + 3 is over the batch size
+		lane.onSuccess(first);
+		assertTrue(lane.reserveSlot());
+		final WriteBatch second = lane.pollBatch();
+		assertEquals(4, second.records().size());
+		lane.onSuccess(second);
+		assertTrue(lane.reserveSlot());
+		assertEquals(8, lane.pollBatch().records().size()); //an offered chunk is never split
+		lane.unregisterMetrics();
+	}
+
+	@Test
+	public void testRoundRobinFairness() {
+		final int maxInFlight = 2;
+		final BucketWriteLane busy = lane("fairnessTest", "busy", 1_000, maxInFlight, 10);
+		final BucketWriteLane quiet = lane("fairnessTest", "quiet", 1_000, maxInFlight, 10);
+		final Deque<BucketWriteLane> readyLanes = new ArrayDeque<>();
+		for (int i = 0; i < 20; i++) {
+			busy.offer(records(10));
+		}
+		schedule(busy, readyLanes);
+		quiet.offer(records(10));
+		schedule(quiet, readyLanes);
+
+		final List<String> writtenBuckets = new ArrayList<>();
+		while (!readyLanes.isEmpty()) {
+			final BucketWriteLane lane = readyLanes.pollFirst();
+			final WriteBatch batch = lane.pollBatch();
+			if (batch != null) {
+				schedule(lane, readyLanes);
+				writtenBuckets.add(lane.getBucket());
+				lane.onSuccess(batch);
+				schedule(lane, readyLanes);
+			}
+		}
+		//the busy lane has at most maxInFlight slots ahead of the quiet one
+		assertTrue(writtenBuckets.indexOf("quiet") <= maxInFlight, writtenBuckets.toString());
+		assertEquals(20, Collections.frequency(writtenBuckets, "busy"));
+		assertEquals(1, Collections.frequency(writtenBuckets, "quiet"));
+		assertTrue(busy.isIdle());
+		assertTrue(quiet.isIdle());
+		busy.unregisterMetrics();
+		quiet.unregisterMetrics();
+	}
+}
@@ -0,0 +1,59 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public final class ConsistentHashRingTest {
+
+	private static final int KEY_COUNT = 10_000;
+
+	@Test
+	public void testSameKeySameNode() {
+		final ConsistentHashRing<String> ring = new ConsistentHashRing<>(List.of("a", "b", "c"), Function.identity(), 160);
+		final ConsistentHashRing<String> reordered = new ConsistentHashRing<>(List.of("c", "a", "b"), Function.identity(), 160);
+		for (int i = 0; i < KEY_COUNT; i++) {
+			assertEquals(ring.nodeFor("app" + i), reordered.nodeFor("app" + i));
+		}
+	}
+
+	@Test
+	public void testBalanced() {
+		final ConsistentHashRing<String> ring = new ConsistentHashRing<>(List.of("a", "b", "c", "d"), Function.identity(), 160);
+		final Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			counts.merge(ring.nodeFor("app" + i), 1, Integer::sum);
+		}
+		assertEquals(4, counts.size());
+		//each node owns 25% of the keys, +/- 10 points
+		counts.values().forEach(count -> assertTrue(count > KEY_COUNT * 0.15 && count < KEY_COUNT * 0.35, "unbalanced ring : " + counts));
+	}
+
+	@Test
+	public void testAddedNodeOnlyTakesKeys() {
+		final ConsistentHashRing<String> ring = new ConsistentHashRing<>(List.of("a", "b", "c"), Function.identity(), 160);
+		final ConsistentHashRing<String> grownRing = new ConsistentHashRing<>(List.of("a", "b", "c", "d"), Function.identity(), 160);
+		int moved = 0;
+		for (int i = 0; i < KEY_COUNT; i++) {
+			final String node = ring.nodeFor("app" + i);
+			final String newNode = grownRing.nodeFor("app" + i);
+			if (!node.equals(newNode)) {
+				assertEquals("d", newNode); //keys only move to the new node
+				moved++;
+			}
+		}
+		assertTrue(moved > 0 && moved < KEY_COUNT / 2, "moved keys : " + moved);
+	}
+
+	@Test
+	public void testNoNode() {
+		assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing<String>(List.of(), Function.identity(), 160));
+	}
+}
@@ -0,0 +1,54 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.HashUtil;
+
+public final class HyperLogLogTest {
+
+	@Test
+	public void testSmallCardinality() {
+		final HyperLogLog sketch = new HyperLogLog(10);
+		assertEquals(0, sketch.estimate());
+		for (int i = 0; i < 10; i++) {
+			sketch.offer(HashUtil.hash("value" + i));
+		}
+		assertEquals(10, sketch.estimate());
+	}
+
+	@Test
+	public void testDuplicatesDontCount() {
+		final HyperLogLog sketch = new HyperLogLog(10);
+		assertTrue(sketch.offer(HashUtil.hash("value")));
+		assertFalse(sketch.offer(HashUtil.hash("value")));
+		for (int i = 0; i < 1_000; i++) {
+			sketch.offer(HashUtil.hash("value" + i % 100));
+		}
+		assertWithin(100, sketch.estimate(), 0.1);
+	}
+
+	@Test
+	public void testLargeCardinality() {
+		final HyperLogLog sketch = new HyperLogLog(10);
+		for (int i = 0; i < 100_000; i++) {
+			sketch.offer(HashUtil.hash("user" + i));
+		}
+		//standard error ~3% : 5 sigmas
+		assertWithin(100_000, sketch.estimate(), 0.15);
+	}
+
+	@Test
+	public void testInvalidPrecision() {
+		assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+		assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(17));
+	}
+
+	private static void assertWithin(final long expected, final long actual, final double relativeError) {
+		assertTrue(Math.abs(actual - expected) <= expected * relativeError, "expected " + expected + " got " + actual);
+	}
+}
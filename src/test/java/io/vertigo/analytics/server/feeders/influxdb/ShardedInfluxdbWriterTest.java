@@ -0,0 +1,25 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public final class ShardedInfluxdbWriterTest {
+
+	@Test
+	public void testShardNamedByHost() {
+		final String[] urls = { "http://influx-b.local:8086", "http://influx-a.local:8086" };
+		assertEquals("influx-a.local", ShardedInfluxdbWriter.shardName(urls[1], urls));
+		assertEquals("influx-b.local", ShardedInfluxdbWriter.shardName(urls[0], urls));
+		//same name in any order
+		final String[] reordered = { "http://influx-a.local:8086", "http://influx-c.local:8086", "http://influx-b.local:8086" };
+		assertEquals("influx-b.local", ShardedInfluxdbWriter.shardName(reordered[2], reordered));
+	}
+
+	@Test
+	public void testShardNamedByHostAndPort() {
+		final String[] urls = { "http://localhost:8086", " http://localhost:8087" };
+		assertEquals("localhost_8086", ShardedInfluxdbWriter.shardName(urls[0], urls));
+		assertEquals("localhost_8087", ShardedInfluxdbWriter.shardName(urls[1], urls));
+	}
+}
@@ -0,0 +1,81 @@
+package io.vertigo.analytics.server.feeders.influxdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.ServerMetrics;
+
+public final class TagCardinalityGuardTest {
+
+	@Test
+	public void testFieldMode() {
+		final TagCardinalityGuard guard = new TagCardinalityGuard("fieldMode", 100, TagCardinalityGuard.Mode.FIELD, 64, 1_000);
+		for (int i = 0; i < 1_000; i++) {
+			guard.guard("app", "page", tags("user", "user" + i, "module", "mod" + i % 10), new HashMap<>());
+		}
+		final Map<String, String> tags = tags("user", "userX", "module", "mod1");
+		final Map<String, Object> fields = new HashMap<>(Map.of("user", "measure"));
+		guard.guard("app", "page", tags, fields);
+		assertEquals(Map.of("module", "mod1"), tags);
+		//prefixed : no clash with a measure or a metadata
+		assertEquals(Map.of("user", "measure", "tag_user", "userX"), fields);
+		assertEquals(1, metric("cardinality.fieldMode.demotedTags"));
+		//another measurement is counted apart
+		final Map<String, String> otherTags = tags("user", "userX", "module", "mod1");
+		guard.guard("app", "sql", otherTags, new HashMap<>());
+		assertTrue(otherTags.containsKey("user"));
+	}
+
+	@Test
+	public void testHashMode() {
+		final TagCardinalityGuard guard = new TagCardinalityGuard("hashMode", 100, TagCardinalityGuard.Mode.HASH, 8, 1_000);
+		for (int i = 0; i < 1_000; i++) {
+			guard.guard("app", "page", tags("user", "user" + i), new HashMap<>());
+		}
+		final Map<String, String> tags = tags("user", "userX");
+		final Map<String, Object> fields = new HashMap<>();
+		guard.guard("app", "page", tags, fields);
+		assertTrue(tags.get("user").matches("h[0-7]"), tags.get("user"));
+		assertTrue(fields.isEmpty());
+		//same value, same hash
+		final Map<String, String> sameTags = tags("user", "userX");
+		guard.guard("app", "page", sameTags, fields);
+		assertEquals(tags, sameTags);
+	}
+
+	@Test
+	public void testTrackedTagsAreBounded() {
+		final TagCardinalityGuard guard = new TagCardinalityGuard("bounded", 100, TagCardinalityGuard.Mode.FIELD, 64, 10);
+		for (int i = 0; i < 10; i++) {
+			final Map<String, String> tags = tags("key" + i, "value");
+			guard.guard("app", "page", tags, new HashMap<>());
+			assertFalse(tags.isEmpty());
+		}
+		//random tag keys are demoted once the limit is reached
+		final Map<String, String> tags = tags("random", "value");
+		final Map<String, Object> fields = new HashMap<>();
+		guard.guard("app", "page", tags, fields);
+		assertTrue(tags.isEmpty());
+		assertEquals(Map.of("tag_random", "value"), fields);
+		assertEquals(10, metric("cardinality.bounded.trackedTags"));
+		assertEquals(1, metric("cardinality.bounded.untrackedTags"));
+	}
+
+	private static Map<String, String> tags(final String... keyValues) {
+		final Map<String, String> tags = new HashMap<>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			tags.put(keyValues[i], keyValues[i + 1]);
+		}
+		return tags;
+	}
+
+	private static long metric(final String name) {
+		return ServerMetrics.snapshot().getOrDefault(name, 0L);
+	}
+}
@@ -0,0 +1,64 @@
+package io.vertigo.analytics.server.feeders.influxdb.delta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.core.analytics.health.HealthCheck;
+import io.vertigo.core.analytics.health.HealthMeasure;
+import io.vertigo.core.analytics.health.HealthStatus;
+
+public final class HealthChangeFilterTest {
+
+	private static HealthCheck healthCheck(final long checkMillis, final HealthStatus status, final String message) {
+		return new HealthCheck("db", "dbChecker", "module", "feature", Instant.ofEpochMilli(checkMillis), new HealthMeasure(status, message, Map.of()));
+	}
+
+	@Test
+	public void testUnchangedIsSuppressedUntilHeartbeat() {
+		final HealthChangeFilter filter = new HealthChangeFilter("heartbeat", 60_000, 100, 3_600_000);
+		assertTrue(filter.shouldWrite("app", "host", healthCheck(0, HealthStatus.GREEN, "ok")));
+		assertFalse(filter.shouldWrite("app", "host", healthCheck(30_000, HealthStatus.GREEN, "ok")));
+		assertTrue(filter.shouldWrite("app", "host", healthCheck(60_000, HealthStatus.GREEN, "ok")));
+		//other location : other check
+		assertTrue(filter.shouldWrite("app", "host2", healthCheck(60_000, HealthStatus.GREEN, "ok")));
+	}
+
+	@Test
+	public void testStatusChangeIsWritten() {
+		final HealthChangeFilter filter = new HealthChangeFilter("status", 60_000, 100, 3_600_000);
+		assertTrue(filter.shouldWrite("app", "host", healthCheck(0, HealthStatus.GREEN, "ok")));
+		assertTrue(filter.shouldWrite("app", "host", healthCheck(1_000, HealthStatus.RED, "ok")));
+	}
+
+	@Test
+	public void testMessageChangeWithSameHashIsWritten() {
+		final HealthChangeFilter filter = new HealthChangeFilter("message", 60_000, 100, 3_600_000);
+		//"Aa" and "BB" have the same String hashCode
+		assertTrue(filter.shouldWrite("app", "host", healthCheck(0, HealthStatus.YELLOW, "Aa")));
+		assertTrue(filter.shouldWrite("app", "host", healthCheck(1_000, HealthStatus.YELLOW, "BB")));
+		assertFalse(filter.shouldWrite("app", "host", healthCheck(2_000, HealthStatus.YELLOW, "BB")));
+	}
+
+	@Test
+	public void testStatesAreBounded() {
+		final HealthChangeFilter filter = new HealthChangeFilter("bounded", 600_000, 10, 60_000);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(filter.shouldWrite("app", "host" + i, healthCheck(0, HealthStatus.GREEN, "ok")));
+		}
+		//host0 is still received, the others are idle
+		assertFalse(filter.shouldWrite("app", "host0", healthCheck(90_000, HealthStatus.GREEN, "ok")));
+		assertTrue(filter.shouldWrite("app", "newHost", healthCheck(100_000, HealthStatus.GREEN, "ok")));
+		assertEquals(2L, (long) ServerMetrics.snapshot().get("health.bounded.tracked"));
+		assertEquals(9L, (long) ServerMetrics.snapshot().get("health.bounded.evicted"));
+		assertFalse(filter.shouldWrite("app", "host0", healthCheck(110_000, HealthStatus.GREEN, "ok")));
+		//an evicted state is handled as a first check
+		assertTrue(filter.shouldWrite("app", "host1", healthCheck(110_000, HealthStatus.GREEN, "ok")));
+	}
+}
@@ -0,0 +1,57 @@
+package io.vertigo.analytics.server.feeders.influxdb.delta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public final class MetricStateMapTest {
+
+	@Test
+	public void testPutAndFind() {
+		final MetricStateMap states = new MetricStateMap(10_000, 60_000);
+		for (long key = 1; key <= 5_000; key++) { //resized several times
+			states.put(key, key, key, key);
+		}
+		assertEquals(5_000, states.size());
+		for (long key = 1; key <= 5_000; key++) {
+			final int slot = states.find(key);
+			assertTrue(slot >= 0);
+			assertEquals(key, (long) states.lastValue(slot));
+		}
+		assertTrue(states.find(5_001) < 0);
+	}
+
+	@Test
+	public void testIdleStatesEvictedFirst() {
+		final MetricStateMap states = new MetricStateMap(100, 60_000);
+		for (long key = 1; key <= 50; key++) {
+			states.put(key, 1, 0, 0); //idle at 100_000
+		}
+		for (long key = 51; key <= 100; key++) {
+			states.put(key, 1, 90_000, 90_000);
+		}
+		states.put(101, 1, 100_000, 100_000);
+		assertEquals(51, states.size());
+		assertEquals(50, states.evictedCount());
+		assertTrue(states.find(1) < 0);
+		assertTrue(states.find(51) >= 0);
+		assertTrue(states.find(101) >= 0);
+	}
+
+	@Test
+	public void testOlderHalfEvictedWhenNoneIdle() {
+		final MetricStateMap states = new MetricStateMap(100, 60_000);
+		for (long key = 1; key <= 100; key++) {
+			states.put(key, 1, 1_000 + key, 1_000 + key);
+		}
+		states.put(101, 1, 2_000, 2_000);
+		assertTrue(states.size() <= 51);
+		assertTrue(states.find(1) < 0);
+		assertTrue(states.find(100) >= 0);
+		assertTrue(states.find(101) >= 0);
+		//updates of existing keys never evict
+		states.put(100, 2, 2_001, 2_001);
+		assertEquals(2, (long) states.lastValue(states.find(100)));
+	}
+}
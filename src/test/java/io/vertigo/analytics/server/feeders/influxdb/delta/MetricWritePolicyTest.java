@@ -0,0 +1,48 @@
+package io.vertigo.analytics.server.feeders.influxdb.delta;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.core.analytics.metric.Metric;
+
+public final class MetricWritePolicyTest {
+
+	private static Metric metric(final String name, final long measureMillis, final double value) {
+		return new Metric(Instant.ofEpochMilli(measureMillis), name, null, "feature", null, value);
+	}
+
+	@Test
+	public void testDedup() {
+		final MetricWritePolicy policy = MetricWritePolicy.parse("dedup", "cache.*=dedup:10m;*=raw", 1_000, "1h");
+		assertEquals(1, policy.toPoints("app", "host", metric("cache.hits", 0, 5)).size());
+		assertEquals(0, policy.toPoints("app", "host", metric("cache.hits", 60_000, 5)).size());
+		assertEquals(1, policy.toPoints("app", "host", metric("cache.hits", 120_000, 6)).size());
+		assertEquals(1, policy.toPoints("app", "host", metric("cache.hits", 720_000, 6)).size()); //max staleness
+		assertEquals(1, policy.toPoints("app", "host", metric("other", 0, 5)).size());
+		assertEquals(1, policy.toPoints("app", "host", metric("other", 1, 5)).size());
+	}
+
+	@Test
+	public void testRate() {
+		final MetricWritePolicy policy = MetricWritePolicy.parse("rate", "http.requests=rate", 1_000, "1h");
+		assertEquals(0, policy.toPoints("app", "host", metric("http.requests", 0, 100)).size()); //first value
+		assertEquals(1, policy.toPoints("app", "host", metric("http.requests", 10_000, 150)).size());
+		assertEquals(0, policy.toPoints("app", "host", metric("http.requests", 20_000, 10)).size()); //counter reset
+		assertEquals(0, policy.toPoints("app", "host", metric("http.requests", 15_000, 200)).size()); //out of order
+	}
+
+	@Test
+	public void testStatesAreBounded() {
+		final MetricWritePolicy policy = MetricWritePolicy.parse("bounded", "*=dedup:10m", 100, "1m");
+		for (int i = 0; i < 1_000; i++) {
+			policy.toPoints("app", "host", metric("metric" + i, i * 1_000L, 1));
+		}
+		assertTrue(ServerMetrics.snapshot().get("metric.bounded.tracked") <= 100);
+		assertTrue(ServerMetrics.snapshot().get("metric.bounded.evicted") >= 900);
+	}
+}
@@ -0,0 +1,102 @@
+package io.vertigo.analytics.server.feeders.influxdb.rollup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public final class LatencyHistogramTest {
+
+	@Test
+	public void testEmpty() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.valueAtPercentile(50));
+		assertEquals(0, histogram.getMin());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getMean(), 0);
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 20; i++) {
+			histogram.record(i);
+		}
+		histogram.record(-5); //recorded as 0
+		assertEquals(21, histogram.getTotalCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(20, histogram.getMax());
+		assertEquals(10, histogram.valueAtPercentile(50));
+		assertEquals(20, histogram.valueAtPercentile(100));
+		assertEquals(0, histogram.valueAtPercentile(0));
+	}
+
+	@Test
+	public void testRelativeError() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final Random random = new Random(42);
+		final List<Long> values = new ArrayList<>();
+		for (int i = 0; i < 100_000; i++) {
+			final long value = (long) Math.exp(random.nextDouble() * 20); //up to ~5e8
+			values.add(value);
+			histogram.record(value);
+		}
+		values.sort(null);
+		for (final double percentile : new double[] { 1, 25, 50, 90, 95, 99, 99.9 }) {
+			final long exact = values.get((int) Math.ceil(percentile / 100 * values.size()) - 1);
+			final long estimated = histogram.valueAtPercentile(percentile);
+			assertTrue(estimated >= exact, "p" + percentile + " : " + estimated + " < " + exact);
+			assertTrue(estimated - exact <= exact * 0.035, "p" + percentile + " : " + estimated + " vs " + exact);
+		}
+		assertEquals(values.get(values.size() - 1).longValue(), histogram.valueAtPercentile(100));
+	}
+
+	@Test
+	public void testHugeValues() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(1L << 40);
+		assertEquals(Long.MAX_VALUE, histogram.valueAtPercentile(100));
+		assertEquals(Long.MAX_VALUE, histogram.getMax());
+	}
+
+	@Test
+	public void testMerge() {
+		final LatencyHistogram first = new LatencyHistogram();
+		final LatencyHistogram second = new LatencyHistogram();
+		final LatencyHistogram all = new LatencyHistogram();
+		for (int i = 0; i < 1_000; i++) {
+			first.record(i);
+			all.record(i);
+			second.record(i * 7L);
+			all.record(i * 7L);
+		}
+		first.merge(second);
+		assertEquals(all.getTotalCount(), first.getTotalCount());
+		assertEquals(all.getSum(), first.getSum());
+		assertEquals(all.getMin(), first.getMin());
+		assertEquals(all.getMax(), first.getMax());
+		for (final double percentile : new double[] { 10, 50, 90, 99 }) {
+			assertEquals(all.valueAtPercentile(percentile), first.valueAtPercentile(percentile));
+		}
+		final List<String> allBuckets = new ArrayList<>();
+		all.forEachBucket((upperBound, count) -> allBuckets.add(upperBound + ":" + count));
+		final List<String> mergedBuckets = new ArrayList<>();
+		first.forEachBucket((upperBound, count) -> mergedBuckets.add(upperBound + ":" + count));
+		assertEquals(allBuckets, mergedBuckets);
+	}
+
+	@Test
+	public void testMergeEmpty() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(12);
+		histogram.merge(new LatencyHistogram());
+		assertEquals(1, histogram.getTotalCount());
+		assertEquals(12, histogram.getMin());
+		assertEquals(12, histogram.getMax());
+	}
+}
@@ -0,0 +1,86 @@
+package io.vertigo.analytics.server.feeders.influxdb.rollup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
+
+public final class ProcessLatencyAggregatorTest {
+
+	private static TraceSpan span(final String name, final long start, final long duration) {
+		return new TraceSpan("page", name, Instant.ofEpochMilli(start), Instant.ofEpochMilli(start + duration), Map.of(), Map.of(), Map.of(), List.of());
+	}
+
+	@Test
+	public void testPercentiles() {
+		final List<InfluxPoint> points = new ArrayList<>();
+		try (final ProcessLatencyAggregator aggregator = new ProcessLatencyAggregator("latencyTest", "1m", "page", ProcessLatencyAggregator.Output.PERCENTILES, 10, (app, appPoints) -> points.addAll(appPoints))) {
+			for (int i = 1; i <= 100; i++) {
+				aggregator.add("app", span("/home", 0, i));
+			}
+		}
+		assertEquals(1, points.size());
+		final InfluxPoint point = points.get(0);
+		assertEquals("page_latency", point.getMeasurement());
+		assertEquals(100L, point.getFields().get("count"));
+		assertEquals(50L, point.getFields().get("p50"));
+		assertEquals(100L, point.getFields().get("max"));
+	}
+
+	@Test
+	public void testKeysOverflow() {
+		final List<InfluxPoint> points = new ArrayList<>();
+		try (final ProcessLatencyAggregator aggregator = new ProcessLatencyAggregator("latencyOverflowTest", "1m", "*", ProcessLatencyAggregator.Output.PERCENTILES, 2, (app, appPoints) -> points.addAll(appPoints))) {
+			for (int i = 0; i < 10; i++) {
+				aggregator.add("app", span("/page" + i, 0, 10));
+			}
+			aggregator.add("app", span("/page0", 0, 10)); //still its own key
+			aggregator.add("app", span("/page2", 60_000, 10)); //other window
+		}
+		assertEquals(4, points.size());
+		final Map<String, Long> countByName = new HashMap<>();
+		points.forEach(point -> countByName.merge(point.getTags().get("name"), (Long) point.getFields().get("count"), Long::sum));
+		assertEquals(Map.of("/page0", 2L, "/page1", 1L, "_overflow", 8L, "/page2", 1L), countByName);
+	}
+
+	@Test
+	public void testInvalidMaxKeys() {
+		assertThrows(IllegalArgumentException.class, () -> new ProcessLatencyAggregator("latencyInvalidTest", "1m", "*", ProcessLatencyAggregator.Output.PERCENTILES, 0, (app, appPoints) -> {
+			//no points
+		}));
+	}
+
+	@Test
+	public void testInvalidWindow() {
+		assertThrows(IllegalArgumentException.class, () -> new ProcessLatencyAggregator("latencyZeroWindow", "0", "*", ProcessLatencyAggregator.Output.PERCENTILES, 10, (app, appPoints) -> {
+			//no points
+		}));
+	}
+
+	@Test
+	public void testLateSpansAreDropped() throws InterruptedException {
+		final List<InfluxPoint> points = Collections.synchronizedList(new ArrayList<>());
+		final long start = System.currentTimeMillis() - 10_000; //already out of the grace window
+		try (final ProcessLatencyAggregator aggregator = new ProcessLatencyAggregator("latencyLateSpans", "100ms", "*", ProcessLatencyAggregator.Output.PERCENTILES, 10, (app, appPoints) -> points.addAll(appPoints))) {
+			aggregator.add("app", span("/home", start, 10));
+			for (int i = 0; i < 50 && points.isEmpty(); i++) {
+				Thread.sleep(100); //wait for the flush
+			}
+			assertEquals(1, points.size());
+			aggregator.add("app", span("/home", start, 20));
+		}
+		assertEquals(1, points.size()); //not a second point of the same window
+		assertEquals(1L, (long) ServerMetrics.snapshot().get("latency.latencyLateSpans.lateSpans"));
+	}
+}
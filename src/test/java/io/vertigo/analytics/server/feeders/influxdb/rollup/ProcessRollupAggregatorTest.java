@@ -0,0 +1,71 @@
+package io.vertigo.analytics.server.feeders.influxdb.rollup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
+
+public final class ProcessRollupAggregatorTest {
+
+	private static TraceSpan span(final String category, final long start, final Map<String, Double> measures, final List<TraceSpan> childSpans) {
+		return new TraceSpan(category, "span", Instant.ofEpochMilli(start), Instant.ofEpochMilli(start + 10), measures, Map.of(), Map.of(), childSpans);
+	}
+
+	@Test
+	public void testNullMeasureIsSkipped() {
+		final List<InfluxPoint> points = new ArrayList<>();
+		try (final ProcessRollupAggregator aggregator = new ProcessRollupAggregator("nullMeasure", "1m", RollupPolicy.parse("*:rollup"), (app, appPoints) -> points.addAll(appPoints))) {
+			final Map<String, Double> nullMeasure = new HashMap<>();
+			nullMeasure.put("rows", null);
+			final TraceSpan child = span("sql", 1_000, nullMeasure, List.of());
+			aggregator.add("app", "host", span("page", 0, Map.of("rows", 3.0), List.of(child)));
+			aggregator.add("app", "host", span("page", 0, Map.of("rows", 5.0), List.of()));
+		}
+		assertEquals(2, points.size());
+		final String pageLine = points.stream().map(point -> point.toPoint().toLineProtocol()).filter(line -> line.startsWith("page_rollup")).findFirst().orElseThrow();
+		assertTrue(pageLine.contains("count=2i"), pageLine);
+		assertTrue(pageLine.contains("rows_sum=8"), pageLine);
+		final String sqlLine = points.stream().map(point -> point.toPoint().toLineProtocol()).filter(line -> line.startsWith("sql_rollup")).findFirst().orElseThrow();
+		assertTrue(sqlLine.contains("count=1i"), sqlLine);
+		assertFalse(sqlLine.contains("rows_sum"), sqlLine);
+	}
+
+	@Test
+	public void testLateSpansAreDropped() throws InterruptedException {
+		final List<InfluxPoint> points = Collections.synchronizedList(new ArrayList<>());
+		final long start = System.currentTimeMillis() - 10_000; //already out of the grace window
+		try (final ProcessRollupAggregator aggregator = new ProcessRollupAggregator("lateSpans", "100ms", RollupPolicy.parse("*:rollup"), (app, appPoints) -> points.addAll(appPoints))) {
+			aggregator.add("app", "host", span("page", start, Map.of(), List.of()));
+			for (int i = 0; i < 50 && points.isEmpty(); i++) {
+				Thread.sleep(100); //wait for the flush
+			}
+			assertEquals(1, points.size());
+			aggregator.add("app", "host", span("page", start, Map.of(), List.of()));
+		}
+		assertEquals(1, points.size()); //not a second point of the same window
+		assertEquals(1L, (long) ServerMetrics.snapshot().get("rollup.lateSpans.lateSpans"));
+	}
+
+	@Test
+	public void testInvalidWindow() {
+		assertThrows(IllegalArgumentException.class, () -> new ProcessRollupAggregator("zeroWindow", "0s", RollupPolicy.parse("*:rollup"), (app, appPoints) -> {
+			//no points
+		}));
+		assertThrows(IllegalArgumentException.class, () -> new ProcessRollupAggregator("negativeWindow", "-1m", RollupPolicy.parse("*:rollup"), (app, appPoints) -> {
+			//no points
+		}));
+	}
+}
@@ -0,0 +1,67 @@
+package io.vertigo.analytics.server.feeders.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.feeders.resilience.CircuitBreaker.State;
+
+public final class CircuitBreakerTest {
+
+	private static CircuitBreaker newBreaker(final String name, final long openMillis) {
+		return new CircuitBreaker("test." + name, new ResilienceSettings(10, 100, 3, 3, openMillis));
+	}
+
+	@Test
+	public void testOpensAfterThreshold() {
+		final CircuitBreaker breaker = newBreaker("threshold", 60_000);
+		breaker.onFailure();
+		breaker.onFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.tryAcquire());
+		breaker.onFailure();
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+		assertTrue(breaker.remainingOpenMillis() > 0);
+	}
+
+	@Test
+	public void testSuccessResetsFailures() {
+		final CircuitBreaker breaker = newBreaker("reset", 60_000);
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onSuccess();
+		breaker.onFailure();
+		breaker.onFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testSingleProbeWhenHalfOpen() throws InterruptedException {
+		final CircuitBreaker breaker = newBreaker("probe", 1);
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onFailure();
+		Thread.sleep(5);
+		assertTrue(breaker.tryAcquire());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire()); //probe in flight
+		breaker.onSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.tryAcquire());
+	}
+
+	@Test
+	public void testFailedProbeReopens() throws InterruptedException {
+		final CircuitBreaker breaker = newBreaker("failedProbe", 1);
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onFailure();
+		Thread.sleep(5);
+		assertTrue(breaker.tryAcquire());
+		breaker.onFailure();
+		assertEquals(State.OPEN, breaker.getState());
+	}
+}
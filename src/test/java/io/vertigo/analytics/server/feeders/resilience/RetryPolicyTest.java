@@ -0,0 +1,36 @@
+package io.vertigo.analytics.server.feeders.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public final class RetryPolicyTest {
+
+	private final RetryPolicy retryPolicy = new RetryPolicy(new ResilienceSettings(100, 1_000, 3, 5, 1_000), error -> error instanceof IllegalStateException);
+
+	@Test
+	public void testMaxAttempts() {
+		assertTrue(retryPolicy.canRetry(1));
+		assertTrue(retryPolicy.canRetry(2));
+		assertFalse(retryPolicy.canRetry(3));
+	}
+
+	@Test
+	public void testRetryable() {
+		assertTrue(retryPolicy.isRetryable(new IllegalStateException()));
+		assertFalse(retryPolicy.isRetryable(new IllegalArgumentException()));
+	}
+
+	@Test
+	public void testBackoffBounds() {
+		for (int failures = 0; failures < 100; failures++) {
+			final long backoffMillis = retryPolicy.backoffMillis(failures);
+			assertTrue(backoffMillis >= 100 && backoffMillis <= 1_000, "backoff out of bounds : " + backoffMillis);
+			if (failures <= 1) {
+				assertEquals(100, backoffMillis); //first retry : the base delay
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package io.vertigo.analytics.server.feeders.sampling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+
+public final class TraceSamplerTest {
+
+	private static TraceSpan span(final String category, final long start, final Map<String, String> tags, final List<TraceSpan> childSpans) {
+		return new TraceSpan(category, "span", Instant.ofEpochMilli(start), Instant.ofEpochMilli(start + 10), Map.of(), Map.of(), tags, childSpans);
+	}
+
+	private static long metric(final String name) {
+		return ServerMetrics.snapshot().getOrDefault(name, 0L);
+	}
+
+	@Test
+	public void testSameDecisionForEachFeeder() {
+		final TraceSampler sampler = TraceSampler.getOrCreate("shared", 10, 0, null, null);
+		final TraceSampler sameSampler = TraceSampler.getOrCreate("shared", 10, 0, null, null);
+		for (int i = 0; i < 1_000; i++) {
+			final TraceSpan trace = span("page", i, Map.of(), List.of());
+			assertEquals(sampler.keep("app", "host", trace), sameSampler.keep("app", "host", trace));
+		}
+		//each trace is counted once
+		assertEquals(1_000, metric("sampling.shared.keptSampled") + metric("sampling.shared.dropped"));
+		assertTrue(metric("sampling.shared.keptSampled") > 0 && metric("sampling.shared.dropped") > 0);
+	}
+
+	@Test
+	public void testNewSettingsReplaceSampler() {
+		final TraceSampler sampler = TraceSampler.getOrCreate("reconfigured", 10, 0, "batch", null);
+		assertSame(sampler, TraceSampler.getOrCreate("reconfigured", 10, 0, "batch", null));
+		final TraceSampler keepAll = TraceSampler.getOrCreate("reconfigured", 1, 0, "batch", null);
+		assertNotSame(sampler, keepAll);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(keepAll.keep("app", "host", span("page", i, Map.of(), List.of())));
+		}
+	}
+
+	@Test
+	public void testOperationsAreBounded() {
+		final TraceSampler sampler = TraceSampler.getOrCreate("operations", 1, 99, null, null);
+		for (int i = 0; i < 3_000; i++) {
+			sampler.keep("app", "host", new TraceSpan("page", "/user/" + i, Instant.ofEpochMilli(i), Instant.ofEpochMilli(i + 10), Map.of(), Map.of(), Map.of(), List.of()));
+		}
+		assertEquals(2_000, metric("sampling.operations.operations"));
+		assertEquals(1_000, metric("sampling.operations.evictedOperations"));
+	}
+
+	@Test
+	public void testKeepRules() {
+		final TraceSampler sampler = TraceSampler.getOrCreate("rules", Integer.MAX_VALUE, 0, "batch", "exception,status=500");
+		assertFalse(sampler.keep("app", "host", span("page", 1, Map.of(), List.of())));
+		assertTrue(sampler.keep("app", "host", span("page", 2, Map.of(), List.of(span("batch", 2, Map.of(), List.of())))));
+		assertTrue(sampler.keep("app", "host", span("page", 3, Map.of("exception", "NPE"), List.of())));
+		assertTrue(sampler.keep("app", "host", span("page", 4, Map.of(), List.of(span("sql", 4, Map.of("status", "500"), List.of())))));
+		assertFalse(sampler.keep("app", "host", span("page", 5, Map.of("status", "200"), List.of())));
+		assertEquals(1, metric("sampling.rules.keptCategory"));
+		assertEquals(2, metric("sampling.rules.keptError"));
+		assertEquals(2, metric("sampling.rules.dropped"));
+	}
+}
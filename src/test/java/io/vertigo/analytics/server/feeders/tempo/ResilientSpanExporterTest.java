@@ -0,0 +1,102 @@
+package io.vertigo.analytics.server.feeders.tempo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.feeders.resilience.ResilienceSettings;
+
+public final class ResilientSpanExporterTest {
+
+	//retries are delayed for one minute : failed spans stay buffered until shutdown
+	private static final ResilienceSettings SETTINGS = new ResilienceSettings(60_000, 60_000, 3, 100, 60_000);
+
+	private static final List<SpanData> SPANS = List.of(span("a"), span("b"));
+
+	private static SpanData span(final String name) {
+		return new TraceSpanData(name, SpanContext.getInvalid(), SpanContext.getInvalid(), 0, 1,
+				Attributes.empty(), Resource.getDefault(), InstrumentationScopeInfo.empty());
+	}
+
+	private static long metric(final String name) {
+		return ServerMetrics.snapshot().getOrDefault(name, 0L);
+	}
+
+	@Test
+	public void testThrowingExporterIsAFailure() {
+		final TestExporter delegate = new TestExporter();
+		delegate.throwing = true;
+		final ResilientSpanExporter exporter = new ResilientSpanExporter("throwing", delegate, SETTINGS, 100);
+		final CompletableResultCode result = exporter.export(SPANS);
+		assertTrue(result.isDone() && !result.isSuccess());
+		assertEquals(2, metric("tempo.throwing.failed"));
+		assertEquals(2, metric("tempo.throwing.buffered"));
+	}
+
+	@Test
+	public void testShutdownExportsBufferedSpans() {
+		final TestExporter delegate = new TestExporter();
+		delegate.failing = true;
+		final ResilientSpanExporter exporter = new ResilientSpanExporter("shutdownOk", delegate, SETTINGS, 100);
+		exporter.export(SPANS);
+		delegate.failing = false;
+		exporter.shutdown();
+		assertEquals(2, delegate.exportCalls.get());
+		assertEquals(2, metric("tempo.shutdownOk.exported"));
+		assertEquals(0, metric("tempo.shutdownOk.dropped"));
+		assertEquals(0, metric("tempo.shutdownOk.buffered"));
+	}
+
+	@Test
+	public void testShutdownCountsDroppedSpans() {
+		final TestExporter delegate = new TestExporter();
+		delegate.failing = true;
+		final ResilientSpanExporter exporter = new ResilientSpanExporter("shutdownKo", delegate, SETTINGS, 100);
+		exporter.export(SPANS);
+		exporter.shutdown();
+		assertEquals(2, delegate.exportCalls.get()); //one last attempt
+		assertEquals(2, metric("tempo.shutdownKo.dropped"));
+		//failures after shutdown are not buffered anymore
+		exporter.export(SPANS);
+		assertEquals(4, metric("tempo.shutdownKo.dropped"));
+		assertEquals(0, metric("tempo.shutdownKo.buffered"));
+	}
+
+	private static final class TestExporter implements SpanExporter {
+		private final AtomicInteger exportCalls = new AtomicInteger();
+		private volatile boolean failing;
+		private volatile boolean throwing;
+
+		@Override
+		public CompletableResultCode export(final Collection<SpanData> spans) {
+			exportCalls.incrementAndGet();
+			if (throwing) {
+				throw new IllegalStateException("exporter failure");
+			}
+			return failing ? CompletableResultCode.ofFailure() : CompletableResultCode.ofSuccess();
+		}
+
+		@Override
+		public CompletableResultCode flush() {
+			return CompletableResultCode.ofSuccess();
+		}
+
+		@Override
+		public CompletableResultCode shutdown() {
+			return CompletableResultCode.ofSuccess();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package io.vertigo.analytics.server.feeders.tempo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.vertigo.analytics.server.TraceSpan;
+
+public final class TraceSpanConverterTest {
+
+	private static final TraceSpanConverter CONVERTER = new TraceSpanConverter(Resource.empty(), InstrumentationScopeInfo.empty(), null);
+
+	private record SpanView(String name, String traceId, String spanId, String parentSpanId, Attributes attributes) {
+		//only data
+	}
+
+	private static TraceSpan span(final String category, final String name, final long start, final long end, final TraceSpan... childSpans) {
+		return new TraceSpan(category, name, Instant.ofEpochMilli(start), Instant.ofEpochMilli(end), Map.of(), Map.of(), Map.of(), List.of(childSpans));
+	}
+
+	private static List<SpanView> view(final List<SpanData> spans) {
+		return spans.stream()
+				.map(span -> new SpanView(span.getName(), span.getSpanContext().getTraceId(), span.getSpanContext().getSpanId(), span.getParentSpanContext().getSpanId(), span.getAttributes()))
+				.toList();
+	}
+
+	private static SpanData find(final List<SpanData> spans, final String name) {
+		return spans.stream().filter(span -> span.getName().equals(name)).findFirst().orElseThrow();
+	}
+
+	private static TraceSpan largeTree() {
+		final List<TraceSpan> services = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			final List<TraceSpan> sqls = new ArrayList<>();
+			for (int j = 0; j < 10; j++) {
+				sqls.add(span("sql", "select" + i + '_' + j, 1000 + i * 10 + j, 1001 + i * 10 + j));
+			}
+			services.add(span("service", "service" + i, 1000 + i * 10, 1010 + i * 10, sqls.toArray(TraceSpan[]::new)));
+		}
+		return span("page", "/home", 1000, 1300, services.toArray(TraceSpan[]::new));
+	}
+
+	@Test
+	public void testDeterministicIds() {
+		final TraceSpan process = largeTree();
+		final List<SpanView> spans = view(CONVERTER.convert(process, "app", "host"));
+		assertEquals(1 + 20 + 200, spans.size());
+		assertEquals(spans, view(CONVERTER.convert(process, "app", "host")));
+		assertEquals(1, spans.stream().map(SpanView::traceId).distinct().count());
+		assertEquals(spans.size(), spans.stream().map(SpanView::spanId).distinct().count());
+		//another root identity is another trace
+		assertNotEquals(spans.get(0).traceId(), view(CONVERTER.convert(process, "app", "otherHost")).get(0).traceId());
+	}
+
+	@Test
+	public void testParallelIsSequential() {
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			final TraceSpanConverter parallelConverter = new TraceSpanConverter(Resource.empty(), InstrumentationScopeInfo.empty(), pool);
+			final TraceSpan process = largeTree();
+			assertEquals(view(CONVERTER.convert(process, "app", "host")), view(parallelConverter.convert(process, "app", "host")));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testCountsAndDurations() {
+		final TraceSpan process = span("page", "/home", 0, 200,
+				span("sql", "a", 10, 40,
+						span("sql", "a.nested", 15, 25)),
+				span("service", "s", 50, 90,
+						span("sql", "c", 60, 70)),
+				span("service", "s2", 100, 190,
+						span("sql", "d", 110, 180,
+								span("service", "s3", 120, 170,
+										span("sql", "e", 130, 140)))),
+				span("page", "p1", 195, 199));
+		final List<SpanData> spans = CONVERTER.convert(process, "app", "host");
+		final Attributes root = find(spans, "/home").getAttributes();
+		assertEquals(5L, (long) root.get(AttributeKey.longKey("sql_count")));
+		assertEquals(30L + 10 + 70, (long) root.get(AttributeKey.longKey("sql_duration"))); //a, c and d : nested sql spans are not added twice
+		assertEquals(3L, (long) root.get(AttributeKey.longKey("service_count")));
+		assertEquals(40L + 90, (long) root.get(AttributeKey.longKey("service_duration"))); //s3 is nested in s2
+		assertEquals(4L, (long) root.get(AttributeKey.longKey("page_duration"))); //the root category is not nested
+
+		assertNull(find(spans, "a").getAttributes().get(AttributeKey.longKey("sql_duration")));
+		assertEquals(1L, (long) find(spans, "a").getAttributes().get(AttributeKey.longKey("sql_count")));
+		assertEquals(10L, (long) find(spans, "s").getAttributes().get(AttributeKey.longKey("sql_duration")));
+		//as the InfluxDB feeder : e is nested in the sql span d, above s3
+		assertEquals(1L, (long) find(spans, "s3").getAttributes().get(AttributeKey.longKey("sql_count")));
+		assertNull(find(spans, "s3").getAttributes().get(AttributeKey.longKey("sql_duration")));
+		assertEquals("sql", find(spans, "e").getAttributes().get(AttributeKey.stringKey("category")));
+	}
+}
@@ -0,0 +1,46 @@
+package io.vertigo.analytics.server.filter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+public final class EnvelopeScannerTest {
+
+	@Test
+	public void testTopLevelKey() {
+		final String message = "{\"appName\":\"myApp\",\"batchId\":\"b-1\",\"events\":[]}";
+		assertEquals("b-1", EnvelopeScanner.findTopLevelString(message, "batchId"));
+		assertEquals("myApp", EnvelopeScanner.findTopLevelString(message, "appName"));
+	}
+
+	@Test
+	public void testNestedKeyIgnored() {
+		final String message = "{\"appName\":\"myApp\",\"events\":[{\"metadatas\":{\"batchId\":\"nested\"}}]}";
+		assertNull(EnvelopeScanner.findTopLevelString(message, "batchId"));
+		//the first occurrence at any depth is still read by findString
+		assertEquals("nested", EnvelopeScanner.findString(message, "batchId"));
+	}
+
+	@Test
+	public void testKeyInValueIgnored() {
+		final String message = "{\"name\":\"\\\"batchId\\\":\\\"fake\\\"\",\"batchId\":\"b-2\"}";
+		assertEquals("b-2", EnvelopeScanner.findTopLevelString(message, "batchId"));
+		assertNull(EnvelopeScanner.findTopLevelString("{\"name\":\"batchId\"}", "batchId"));
+	}
+
+	@Test
+	public void testEscapedEnvelope() {
+		final String ecs = "{\"@timestamp\":\"2024\",\"message\":\"{\\\"appName\\\":\\\"myApp\\\",\\\"batchId\\\":\\\"b-3\\\",\\\"events\\\":[{\\\"tags\\\":{\\\"batchId\\\":\\\"x\\\"}}]}\"}";
+		assertEquals("b-3", EnvelopeScanner.findTopLevelString(ecs, "batchId"));
+		assertEquals("myApp", EnvelopeScanner.findTopLevelString(ecs, "appName"));
+		final String ecsNested = "{\"message\":\"{\\\"events\\\":[{\\\"batchId\\\":\\\"x\\\"}]}\"}";
+		assertNull(EnvelopeScanner.findTopLevelString(ecsNested, "batchId"));
+	}
+
+	@Test
+	public void testNotAString() {
+		assertNull(EnvelopeScanner.findTopLevelString("{\"batchId\":12}", "batchId"));
+		assertNull(EnvelopeScanner.findTopLevelString("{\"batchId\":\"unclosed", "batchId"));
+	}
+}
@@ -0,0 +1,45 @@
+package io.vertigo.analytics.server.filter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.TraceSpan;
+
+public final class FieldProjectionTest {
+
+	@Test
+	public void testNoRule() {
+		assertNull(FieldProjection.parse("test", " "));
+	}
+
+	@Test
+	public void testProjectDecodedSpans() {
+		final FieldProjection projection = FieldProjection.parse("test", "*/sql:deny=sqlText,truncate=5;my-app/*:allow=userId|duration");
+		final TraceSpan sql = new TraceSpan("sql", "select", Instant.ofEpochMilli(1000), Instant.ofEpochMilli(1010),
+				Map.of("duration", 10d), Map.of("sqlText", "select 1", "table", "movies"), Collections.emptyMap(), List.of());
+		final TraceSpan page = new TraceSpan("page", "/home", Instant.ofEpochMilli(1000), Instant.ofEpochMilli(1020),
+				Map.of("duration", 20d, "cpu", 5d), Map.of("userId", "u1", "url", "/home"), Map.of("status", "ok"), List.of(sql));
+
+		final TraceSpan projected = projection.project("my-app", page);
+		assertEquals(Map.of("duration", 20d), projected.getMeasures());
+		assertEquals(Map.of("userId", "u1"), projected.getMetadatas());
+		assertEquals(Map.of("status", "ok"), projected.getTags());
+		assertEquals(1000, projected.getStart());
+		final TraceSpan projectedSql = projected.getChildSpans().get(0);
+		assertFalse(projectedSql.getMetadatas().containsKey("sqlText"));
+		assertEquals("movie", projectedSql.getMetadatas().get("table"));
+		assertTrue(projectedSql.getMeasures().containsKey("duration"));
+
+		//other apps only get the sql rule
+		assertEquals(2, projection.project("other-app", page).getMeasures().size());
+	}
+}
@@ -0,0 +1,43 @@
+package io.vertigo.analytics.server.filter;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public final class IngestFilterTest {
+
+	@Test
+	public void testFirstMatchingRuleDecides() {
+		final IngestFilter filter = IngestFilter.parse("keep:app=test-keep;drop:app=test-*;drop:logger=*-process,category=cache", "keep");
+		assertTrue(filter.accept("analytics-process", "test-keep", null));
+		assertFalse(filter.accept("analytics-process", "test-app", null));
+		assertFalse(filter.accept("analytics-process", "prod", "cache"));
+		assertTrue(filter.accept("analytics-metric", "prod", "cache"));
+		assertTrue(filter.accept("analytics-process", "prod", null));
+	}
+
+	@Test
+	public void testDropByDefault() {
+		final IngestFilter filter = IngestFilter.parse("keep:logger=analytics-health", "drop");
+		assertTrue(filter.isEnabled());
+		assertTrue(filter.accept("analytics-health", null, null));
+		assertFalse(filter.accept("analytics-process", null, null));
+		assertFalse(IngestFilter.parse("", "keep").isEnabled());
+	}
+
+	@Test
+	public void testAppReadFromEnvelopeTopLevel() {
+		final IngestFilter filter = IngestFilter.parse("drop:app=test-*", "keep");
+		assertFalse(filter.accept("analytics-process", "{\"appName\":\"test-app\",\"events\":[]}"));
+		assertTrue(filter.accept("analytics-process", "{\"appName\":\"prod\",\"events\":[{\"tags\":{\"appName\":\"test-app\"}}]}"));
+	}
+
+	@Test
+	public void testInvalidRule() {
+		assertThrows(IllegalArgumentException.class, () -> IngestFilter.parse("drop", "keep"));
+		assertThrows(IllegalArgumentException.class, () -> IngestFilter.parse("ignore:app=a", "keep"));
+		assertThrows(IllegalArgumentException.class, () -> IngestFilter.parse("drop:app", "keep"));
+	}
+}
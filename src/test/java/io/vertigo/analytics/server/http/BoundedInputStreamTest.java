@@ -0,0 +1,41 @@
+package io.vertigo.analytics.server.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+public final class BoundedInputStreamTest {
+
+	@Test
+	public void testUnderLimit() throws IOException {
+		try (InputStream in = new BoundedInputStream(new ByteArrayInputStream(new byte[100]), 100)) {
+			assertEquals(100, in.readAllBytes().length);
+		}
+	}
+
+	@Test
+	public void testOverLimit() throws IOException {
+		try (InputStream in = new BoundedInputStream(new ByteArrayInputStream(new byte[101]), 100)) {
+			assertThrows(BoundedInputStream.BodyTooLargeException.class, in::readAllBytes);
+		}
+	}
+
+	@Test
+	public void testDecompressedBytesAreCounted() throws IOException {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+			out.write(new byte[1024 * 1024]);
+		}
+		try (InputStream in = new BoundedInputStream(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())), 64 * 1024)) {
+			assertThrows(BoundedInputStream.BodyTooLargeException.class, in::readAllBytes);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package io.vertigo.analytics.server.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.TraceSpan;
+
+public final class IngestBodyReaderTest {
+
+	private static final String MESSAGE = "{\"appName\":\"app%d\",\"events\":[{\"category\":\"page\",\"name\":\"/home\",\"start\":1000,\"end\":1020,\"subProcesses\":[{\"category\":\"sql\",\"name\":\"select\",\"start\":1005,\"end\":1010}]}]}";
+
+	private static InputStream body(final String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static IngestBodyReader.Result read(final String body, final List<LogMessage<?>> queued, final int capacity) {
+		return IngestBodyReader.read(body(body), TraceSpan.class, logMessage -> queued.size() < capacity && queued.add(logMessage));
+	}
+
+	@Test
+	public void testNdjson() {
+		final List<LogMessage<?>> queued = new ArrayList<>();
+		final IngestBodyReader.Result result = read(MESSAGE.formatted(1) + '\n' + MESSAGE.formatted(2) + '\n', queued, 10);
+		assertEquals(202, result.status());
+		assertEquals(2, result.count());
+		assertEquals("app2", queued.get(1).getAppName());
+		final TraceSpan span = (TraceSpan) queued.get(0).getEvents().get(0);
+		assertEquals("select", span.getChildSpans().get(0).getName());
+	}
+
+	@Test
+	public void testArray() {
+		final List<LogMessage<?>> queued = new ArrayList<>();
+		final IngestBodyReader.Result result = read('[' + MESSAGE.formatted(1) + ',' + MESSAGE.formatted(2) + ']', queued, 10);
+		assertEquals(202, result.status());
+		assertEquals(2, queued.size());
+	}
+
+	@Test
+	public void testQueueFull() {
+		final List<LogMessage<?>> queued = new ArrayList<>();
+		final IngestBodyReader.Result result = read(MESSAGE.formatted(1) + '\n' + MESSAGE.formatted(2) + '\n' + MESSAGE.formatted(3), queued, 1);
+		assertEquals(429, result.status());
+		assertEquals(1, result.count());
+		assertEquals(1, queued.size());
+	}
+
+	@Test
+	public void testInvalid() {
+		for (final String body : List.of(
+				"",
+				"{\"appName\":\"app\"",
+				"[" + MESSAGE.formatted(1) + ",",
+				"{\"events\":[{\"name\":\"/home\",\"start\":1000,\"end\":1020}]}", //no category
+				"{\"events\":[{\"category\":\"page\",\"name\":\"/home\",\"start\":\"abc\",\"end\":1020}]}",
+				"{\"events\":[{\"category\":\"page\",\"name\":\"/home\",\"start\":1000,\"end\":1020,\"measures\":[]}]}",
+				"{\"events\":[1]}",
+				"null")) {
+			assertEquals(400, read(body, new ArrayList<>(), 10).status(), body);
+		}
+	}
+
+	@Test
+	public void testTooLarge() {
+		final StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			body.append(MESSAGE.formatted(i)).append('\n');
+		}
+		final List<LogMessage<?>> queued = new ArrayList<>();
+		final IngestBodyReader.Result result = IngestBodyReader.read(new BoundedInputStream(body(body.toString()), 1_000), TraceSpan.class, queued::add);
+		assertEquals(413, result.status());
+		assertTrue(result.count() < 100);
+	}
+}
@@ -0,0 +1,106 @@
+package io.vertigo.analytics.server.json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonSyntaxException;
+
+import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.binary.BinaryProtocol;
+import io.vertigo.analytics.server.filter.FieldProjection;
+
+public final class TraceSpanJsonDecoderTest {
+
+	private static final FieldProjection KEEP_ALL = FieldProjection.parse("decoderTest", "none/none:deny=none");
+
+	@Test
+	public void testDecode() {
+		final LogMessage<TraceSpan> logMessage = TraceSpanJsonDecoder.decode("""
+				{"appName":"my-app","host":"host1","batchId":"b1","unknown":{"a":[1,{"b":"}"}]},"events":[
+				{"category":"page","name":"/home","start":1000,"end":1020.0,"measures":{"duration":20,"rows":null},
+				"metadatas":{"userId":"u1","count":3},"tags":{"status":"ok"},
+				"childSpans":[{"category":"sql","name":"select","start":1005,"end":1010}]}]}""", KEEP_ALL);
+		assertEquals("my-app", logMessage.getAppName());
+		assertEquals("host1", logMessage.getHost());
+		assertEquals("b1", logMessage.getBatchId());
+		final TraceSpan page = logMessage.getEvents().get(0);
+		assertEquals("/home", page.getName());
+		assertEquals(1020, page.getEnd());
+		assertEquals(Map.of("duration", 20d), page.getMeasures());
+		assertEquals(Map.of("userId", "u1", "count", "3"), page.getMetadatas());
+		assertEquals(Map.of("status", "ok"), page.getTags());
+		assertEquals("select", page.getChildSpans().get(0).getName());
+	}
+
+	@Test
+	public void testSubProcessesAlias() {
+		final LogMessage<TraceSpan> logMessage = TraceSpanJsonDecoder.decode("""
+				{"event":{"category":"page","name":"/home","subProcesses":[{"category":"sql","name":"select"}]},"host":null}""", KEEP_ALL);
+		assertNull(logMessage.getHost());
+		assertEquals("select", logMessage.getEvent().getChildSpans().get(0).getName());
+	}
+
+	@Test
+	public void testEscapes() {
+		final TraceSpan span = TraceSpanJsonDecoder.decode("""
+				{"event":{"category":"sql","name":"a\\"b\\\\c\\/d\\ne\\u00e9","metadatas":{"k":"\\t"}}}""", KEEP_ALL).getEvent();
+		assertEquals("a\"b\\c/d\ne\u00e9", span.getName());
+		assertEquals("\t", span.getMetadatas().get("k"));
+	}
+
+	@Test
+	public void testProjection() {
+		final FieldProjection projection = FieldProjection.parse("decoderProjectionTest", "my-app/sql:deny=sqlText,maxLength=10,truncate=5;my-app/*:allow=userId|duration");
+		final LogMessage<TraceSpan> logMessage = TraceSpanJsonDecoder.decode("""
+				{"events":[{"category":"page","measures":{"duration":20,"cpu":5},"metadatas":{"userId":"u1","url":"/home"},
+				"childSpans":[{"category":"sql","metadatas":{"sqlText":"select 1","table":"movies","query":"select * from movies"}}]}],
+				"appName":"my-app"}""", projection);
+		final TraceSpan page = logMessage.getEvents().get(0);
+		assertEquals(Map.of("duration", 20d), page.getMeasures()); //allow
+		assertEquals(Map.of("userId", "u1"), page.getMetadatas());
+		//deny, maxLength (query is dropped) and truncate
+		assertEquals(Map.of("table", "movie"), page.getChildSpans().get(0).getMetadatas());
+	}
+
+	@Test
+	public void testNestedAppNameIsIgnored() {
+		final FieldProjection projection = FieldProjection.parse("decoderAppNameTest", "my-app/*:deny=secret");
+		final TraceSpan span = TraceSpanJsonDecoder.decode("""
+				{"event":{"category":"page","metadatas":{"appName":"other-app","secret":"s"}},"appName":"my-app"}""", projection).getEvent();
+		assertEquals(Map.of("appName", "other-app"), span.getMetadatas());
+	}
+
+	@Test
+	public void testInvalid() {
+		for (final String json : List.of(
+				"",
+				"[]",
+				"{\"appName\":\"a\"",
+				"{\"event\":{\"name\":\"abc",
+				"{\"event\":{\"name\":\"abc\\",
+				"{\"event\":{\"name\":\"\\u12\"}}",
+				"{\"event\":{\"name\":\"\\uzzzz\"}}",
+				"{\"event\":{\"start\":\"abc\"}}",
+				"{\"event\":{\"start\":}}",
+				"{\"event\":{\"measures\":{\"rows\":true}}}",
+				"{\"event\":{\"unknown\":{\"a\":[1,2}")) {
+			assertThrows(JsonSyntaxException.class, () -> TraceSpanJsonDecoder.decode(json, KEEP_ALL), json);
+		}
+	}
+
+	@Test
+	public void testTooDeep() {
+		final StringBuilder json = new StringBuilder("{\"event\":");
+		for (int i = 0; i <= BinaryProtocol.MAX_SPAN_DEPTH; i++) {
+			json.append("{\"childSpans\":[");
+		}
+		assertThrows(JsonSyntaxException.class, () -> TraceSpanJsonDecoder.decode(json.toString(), KEEP_ALL));
+	}
+}
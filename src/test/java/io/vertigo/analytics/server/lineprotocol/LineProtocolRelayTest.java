@@ -0,0 +1,119 @@
+package io.vertigo.analytics.server.lineprotocol;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.feeders.influxdb.LineProtocolSink;
+
+public final class LineProtocolRelayTest {
+
+	private static final LineProtocolRelay RELAY = new LineProtocolRelay("test");
+
+	/**
+	 * Sink keeping the written records, "bucket:record".
+	 */
+	private static final class RecordingSink implements LineProtocolSink {
+		private final List<String> records = new ArrayList<>();
+		private final List<Integer> chunkSizes = new ArrayList<>();
+		private final boolean full;
+
+		RecordingSink(final boolean full) {
+			this.full = full;
+		}
+
+		@Override
+		public boolean writeRecords(final String bucket, final List<String> bucketRecords) {
+			if (full) {
+				return false;
+			}
+			bucketRecords.forEach(bucketRecord -> records.add(bucket + ':' + bucketRecord));
+			chunkSizes.add(bucketRecords.size());
+			return true;
+		}
+
+		@Override
+		public boolean hasCapacity(final String bucket, final int count) {
+			return !full;
+		}
+	}
+
+	/**
+	 * Stream returning at most chunkSize bytes per read, with no available bytes after each read.
+	 */
+	private static InputStream chunked(final String body, final int chunkSize) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public synchronized int read(final byte[] buffer, final int offset, final int length) {
+				return super.read(buffer, offset, Math.min(length, chunkSize));
+			}
+
+			@Override
+			public synchronized int available() {
+				return 0;
+			}
+		};
+	}
+
+	private static InputStream body(final String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testRelay() throws IOException {
+		final RecordingSink sink = new RecordingSink(false);
+		final LineProtocolRelay.RelayResult result = RELAY.relay(sink, body("cpu value=1\r\n\r\n# comment\ncpu value=x\nmem value=2"), "default", false, 0);
+		assertEquals(new LineProtocolRelay.RelayResult(2, 1, 0), result);
+		assertEquals(List.of("default:cpu value=1", "default:mem value=2"), sink.records); //without \r, last line without \n
+	}
+
+	@Test
+	public void testBucketSwitch() throws IOException {
+		final RecordingSink sink = new RecordingSink(false);
+		final LineProtocolRelay.RelayResult result = RELAY.relay(sink, body("cpu value=1\n#bucket metrics\r\ncpu value=2\n#bucket \nmem value=3\n#bucket other\nmem value=4\n"), "default", false, 0);
+		assertEquals(new LineProtocolRelay.RelayResult(4, 1, 0), result); //a blank bucket is invalid
+		assertEquals(List.of("default:cpu value=1", "metrics:cpu value=2", "metrics:mem value=3", "other:mem value=4"), sink.records);
+	}
+
+	@Test
+	public void testLinesAcrossReads() throws IOException {
+		final RecordingSink sink = new RecordingSink(false);
+		final StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 2_500; i++) {
+			body.append("cpu,host=h").append(i).append(" value=").append(i).append("i\r\n");
+		}
+		final LineProtocolRelay.RelayResult result = RELAY.relay(sink, chunked(body.toString(), 7), "default", false, 0);
+		assertEquals(new LineProtocolRelay.RelayResult(2_500, 0, 0), result);
+		assertEquals("default:cpu,host=h1234 value=1234i", sink.records.get(1_234));
+		assertEquals(List.of(1_000, 1_000, 500), sink.chunkSizes); //chunks of 1000 records
+	}
+
+	@Test
+	public void testFlushOnIdle() throws IOException {
+		final RecordingSink sink = new RecordingSink(false);
+		RELAY.relay(sink, chunked("cpu value=1\ncpu value=2\n", 12), "default", true, 0);
+		assertEquals(List.of(1, 1), sink.chunkSizes); //sent as soon as no more bytes are available
+	}
+
+	@Test
+	public void testOversizedLine() throws IOException {
+		final RecordingSink sink = new RecordingSink(false);
+		final String longLine = "cpu value=\"" + "x".repeat(1_500_000) + '"';
+		final LineProtocolRelay.RelayResult result = RELAY.relay(sink, body("cpu value=1\n" + longLine + "\ncpu value=2\n" + longLine), "default", false, 0);
+		assertEquals(new LineProtocolRelay.RelayResult(2, 2, 0), result);
+		assertEquals(List.of("default:cpu value=1", "default:cpu value=2"), sink.records);
+	}
+
+	@Test
+	public void testRejected() throws IOException {
+		final LineProtocolRelay.RelayResult result = RELAY.relay(new RecordingSink(true), body("cpu value=1\ncpu value=2\n"), "default", false, 0);
+		assertEquals(new LineProtocolRelay.RelayResult(0, 0, 2), result);
+	}
+}
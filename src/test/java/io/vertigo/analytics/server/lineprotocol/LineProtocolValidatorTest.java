@@ -0,0 +1,58 @@
+package io.vertigo.analytics.server.lineprotocol;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public final class LineProtocolValidatorTest {
+
+	private static boolean isValid(final String line) {
+		//the line is in the middle of a buffer, as in the relay
+		final byte[] bytes = ("xx" + line + "\nyy").getBytes(StandardCharsets.UTF_8);
+		return LineProtocolValidator.isValid(bytes, 2, bytes.length - 3);
+	}
+
+	@Test
+	public void testValid() {
+		for (final String line : List.of(
+				"cpu value=1",
+				"cpu,host=a,region=eu value=1.5,count=3i,unsigned=4u 1700000000000000000",
+				"cpu value=-1.5e-3 -10",
+				"cpu ok=t,ko=FALSE,yes=True",
+				"cpu message=\"hello, world\",empty=\"\"",
+				"cpu message=\"escaped \\\" quote\"",
+				"my\\ measurement,tag\\,key=tag\\ value field\\=key=1",
+				"mesure,lieu=Montréal température=12.5")) {
+			assertTrue(isValid(line), line);
+		}
+	}
+
+	@Test
+	public void testInvalid() {
+		for (final String line : List.of(
+				"",
+				"cpu",
+				"cpu ",
+				",host=a value=1",
+				"cpu,host= value=1",
+				"cpu,host value=1",
+				"cpu,=a value=1",
+				"cpu value=",
+				"cpu value",
+				"cpu =1",
+				"cpu value=1,",
+				"cpu value=abc",
+				"cpu value=truth",
+				"cpu value=\"unterminated",
+				"cpu value=1 12a",
+				"cpu value=1 -",
+				"cpu value=1 1 2",
+				"cpu\\")) {
+			assertFalse(isValid(line), line);
+		}
+	}
+}
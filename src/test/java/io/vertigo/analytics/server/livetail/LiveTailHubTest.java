@@ -0,0 +1,129 @@
+package io.vertigo.analytics.server.livetail;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.LogMessage;
+import io.vertigo.analytics.server.LogMessageRouter.Kind;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.core.analytics.health.HealthCheck;
+import io.vertigo.core.analytics.health.HealthMeasure;
+import io.vertigo.core.analytics.health.HealthStatus;
+
+public final class LiveTailHubTest {
+
+	/**
+	 * Subscriber with a websocket keeping the sent messages, writes complete in sendString.
+	 */
+	private static final class Client {
+		private final List<String> sent = new ArrayList<>();
+		private final LiveTailSubscriber subscriber;
+
+		Client(final LiveTailHub hub, final LiveTailFilter filter) {
+			final RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RemoteEndpoint.class }, (proxy, method, args) -> {
+				if ("sendString".equals(method.getName()) && args.length == 2) {
+					sent.add((String) args[0]);
+					((WriteCallback) args[1]).writeSuccess();
+					return null;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			});
+			final Session session = (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class }, (proxy, method, args) -> {
+				if ("getRemote".equals(method.getName())) {
+					return remote;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			});
+			subscriber = new LiveTailSubscriber(session, 100, hub.getDroppedCounter());
+			hub.subscribe(subscriber, filter);
+		}
+	}
+
+	private static LiveTailFilter filter(final Kind kind, final String appName, final String category) {
+		return new LiveTailFilter(kind, appName, category, 0, null);
+	}
+
+	private static <O> LogMessage<O> logMessage(final String appName, final O event) {
+		final LogMessage<O> logMessage = new LogMessage<>();
+		logMessage.setAppName(appName);
+		logMessage.setHost("host");
+		logMessage.setEvent(event);
+		return logMessage;
+	}
+
+	private static TraceSpan span(final String category, final String name) {
+		return new TraceSpan(category, name, Instant.ofEpochMilli(0), Instant.ofEpochMilli(10), Map.of(), Map.of(), Map.of(), List.of());
+	}
+
+	@Test
+	public void testIndexByKindAndApp() {
+		final LiveTailHub hub = new LiveTailHub();
+		final Client app1 = new Client(hub, filter(Kind.PROCESS, "app1", null));
+		final Client anyApp = new Client(hub, filter(Kind.PROCESS, null, null));
+		final Client health = new Client(hub, filter(Kind.HEALTH, "app1", null));
+		assertTrue(hub.hasSubscribers(Kind.PROCESS));
+		assertTrue(hub.hasSubscribers(Kind.HEALTH));
+		assertFalse(hub.hasSubscribers(Kind.METRIC));
+
+		hub.publish(Kind.PROCESS, logMessage("app1", span("page", "/home")));
+		hub.publish(Kind.PROCESS, logMessage("app2", span("page", "/other")));
+		hub.publish(Kind.PROCESS, logMessage(null, span("page", "/noApp")));
+		assertEquals(1, app1.sent.size());
+		assertTrue(app1.sent.get(0).contains("/home"), app1.sent.get(0));
+		assertEquals(3, anyApp.sent.size());
+		assertSame(app1.sent.get(0), anyApp.sent.get(0)); //serialized once
+		assertTrue(health.sent.isEmpty());
+
+		hub.publish(Kind.HEALTH, logMessage("app1", new HealthCheck("db", "dbChecker", "module", "feature", Instant.ofEpochMilli(0), new HealthMeasure(HealthStatus.RED, "ko", Map.of()))));
+		assertEquals(1, health.sent.size());
+		assertEquals(1, app1.sent.size());
+	}
+
+	@Test
+	public void testFiltersAndGroups() {
+		final LiveTailHub hub = new LiveTailHub();
+		final Client sql1 = new Client(hub, filter(Kind.PROCESS, "app", "sql"));
+		final Client sql2 = new Client(hub, filter(Kind.PROCESS, "app", "sql"));
+		final Client slow = new Client(hub, new LiveTailFilter(Kind.PROCESS, "app", null, 100, null));
+
+		final LogMessage<TraceSpan> batch = logMessage("app", null);
+		batch.setEvents(List.of(span("sql", "select"), span("page", "/home"), span("sql", "update")));
+		hub.publish(Kind.PROCESS, batch);
+		assertEquals(2, sql1.sent.size());
+		assertEquals(sql1.sent, sql2.sent);
+		assertSame(sql1.sent.get(0), sql2.sent.get(0)); //same group
+		assertTrue(slow.sent.isEmpty()); //spans of 10ms
+	}
+
+	@Test
+	public void testUnsubscribe() {
+		final LiveTailHub hub = new LiveTailHub();
+		final Client first = new Client(hub, filter(Kind.PROCESS, "app", null));
+		final Client second = new Client(hub, filter(Kind.PROCESS, "app", null));
+		hub.unsubscribe(first.subscriber);
+		hub.publish(Kind.PROCESS, logMessage("app", span("page", "/home")));
+		assertTrue(first.sent.isEmpty());
+		assertEquals(1, second.sent.size());
+		//a closed subscriber gets nothing, even offered directly
+		first.subscriber.offer("{}");
+		assertTrue(first.sent.isEmpty());
+
+		hub.unsubscribe(second.subscriber);
+		assertFalse(hub.hasSubscribers(Kind.PROCESS));
+		hub.unsubscribe(second.subscriber); //twice
+		assertFalse(hub.hasSubscribers(Kind.PROCESS));
+	}
+}
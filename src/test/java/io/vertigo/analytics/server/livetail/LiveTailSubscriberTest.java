@@ -0,0 +1,134 @@
+package io.vertigo.analytics.server.livetail;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.jupiter.api.Test;
+
+public final class LiveTailSubscriberTest {
+
+	/**
+	 * Websocket keeping the sent messages, writes complete when asked (or in sendString if synchronous).
+	 */
+	private static final class RecordingSocket {
+		private final List<String> sent = new ArrayList<>();
+		private final List<WriteCallback> pendingWrites = new ArrayList<>();
+		private final boolean synchronous;
+		private Consumer<String> onSend = message -> {
+			//nothing
+		};
+
+		RecordingSocket(final boolean synchronous) {
+			this.synchronous = synchronous;
+		}
+
+		Session session() {
+			final RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RemoteEndpoint.class }, (proxy, method, args) -> {
+				if ("sendString".equals(method.getName()) && args.length == 2) {
+					sent.add((String) args[0]);
+					onSend.accept((String) args[0]);
+					if (synchronous) {
+						((WriteCallback) args[1]).writeSuccess();
+					} else {
+						pendingWrites.add((WriteCallback) args[1]);
+					}
+					return null;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			});
+			return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class }, (proxy, method, args) -> {
+				if ("getRemote".equals(method.getName())) {
+					return remote;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			});
+		}
+
+		void completeWrite() {
+			pendingWrites.remove(0).writeSuccess();
+		}
+	}
+
+	@Test
+	public void testSynchronousWrites() {
+		final RecordingSocket socket = new RecordingSocket(true);
+		final LongAdder dropped = new LongAdder();
+		final LiveTailSubscriber subscriber = new LiveTailSubscriber(socket.session(), 2, dropped);
+		for (int i = 0; i < 5; i++) {
+			subscriber.offer("e" + i);
+		}
+		assertEquals(List.of("e0", "e1", "e2", "e3", "e4"), socket.sent);
+		assertEquals(0, dropped.sum());
+	}
+
+	@Test
+	public void testAsyncDrainAndDrops() {
+		final RecordingSocket socket = new RecordingSocket(false);
+		final LongAdder dropped = new LongAdder();
+		final LiveTailSubscriber subscriber = new LiveTailSubscriber(socket.session(), 3, dropped);
+		for (int i = 0; i < 6; i++) {
+			subscriber.offer("e" + i);
+		}
+		//e0 is being written, e1 and e2 were dropped from the ring
+		assertEquals(List.of("e0"), socket.sent);
+		assertEquals(2, dropped.sum());
+		while (!socket.pendingWrites.isEmpty()) {
+			socket.completeWrite();
+		}
+		assertEquals(List.of("e0", "{\"dropped\":2}", "e3", "e4", "e5"), socket.sent);
+		//the drop count is sent once
+		subscriber.offer("e6");
+		socket.completeWrite();
+		assertEquals("e6", socket.sent.get(socket.sent.size() - 1));
+		assertTrue(socket.pendingWrites.isEmpty());
+	}
+
+	@Test
+	public void testCloseDuringPendingWrite() {
+		final RecordingSocket socket = new RecordingSocket(false);
+		final LiveTailSubscriber subscriber = new LiveTailSubscriber(socket.session(), 10, new LongAdder());
+		subscriber.offer("e0");
+		subscriber.offer("e1");
+		subscriber.close();
+		socket.completeWrite();
+		subscriber.offer("e2");
+		assertEquals(List.of("e0"), socket.sent);
+		assertTrue(socket.pendingWrites.isEmpty());
+	}
+
+	@Test
+	public void testCloseInSendString() {
+		final RecordingSocket socket = new RecordingSocket(true);
+		final LiveTailSubscriber subscriber = new LiveTailSubscriber(socket.session(), 10, new LongAdder());
+		socket.onSend = message -> subscriber.close(); //the client goes away while its first event is written
+		subscriber.offer("e0");
+		subscriber.offer("e1");
+		assertEquals(List.of("e0"), socket.sent);
+	}
+
+	@Test
+	public void testWriteFailedCloses() {
+		final RecordingSocket socket = new RecordingSocket(false);
+		final LiveTailSubscriber subscriber = new LiveTailSubscriber(socket.session(), 10, new LongAdder());
+		subscriber.offer("e0");
+		subscriber.offer("e1");
+		socket.pendingWrites.remove(0).writeFailed(new IllegalStateException("closed"));
+		subscriber.offer("e2");
+		assertEquals(List.of("e0"), socket.sent);
+	}
+
+	@Test
+	public void testInvalidBufferSize() {
+		assertThrows(IllegalArgumentException.class, () -> new LiveTailSubscriber(new RecordingSocket(true).session(), 0, new LongAdder()));
+	}
+}
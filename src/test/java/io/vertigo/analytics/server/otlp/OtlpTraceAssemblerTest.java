@@ -0,0 +1,72 @@
+package io.vertigo.analytics.server.otlp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.ServerMetrics;
+import io.vertigo.analytics.server.TraceSpan;
+import io.vertigo.analytics.server.binary.BinaryProtocol;
+
+public final class OtlpTraceAssemblerTest {
+
+	private static final OtlpTraceAssembler ASSEMBLER = new OtlpTraceAssembler(60_000, 1_000);
+
+	private static OtlpSpan span(final long spanId, final long parentSpanId, final long startMillis) {
+		return new OtlpSpan(1, 2, spanId, parentSpanId, "page", "span" + spanId, startMillis * 1_000_000, (startMillis + 10) * 1_000_000, Map.of(), Map.of());
+	}
+
+	private static long metric(final String name) {
+		return ServerMetrics.snapshot().getOrDefault(name, 0L);
+	}
+
+	@Test
+	public void testChildsOrderedByStart() {
+		final List<TraceSpan> roots = ASSEMBLER.buildTrees(new ArrayList<>(List.of(span(1, 0, 0), span(3, 1, 20), span(2, 1, 10), span(4, 99, 5))));
+		assertEquals(2, roots.size());
+		final TraceSpan root = roots.get(0);
+		assertEquals("span1", root.getName());
+		assertEquals("0000000000000001" + "0000000000000002", root.getMetadatas().get("traceId"));
+		assertEquals(List.of("span2", "span3"), root.getChildSpans().stream().map(TraceSpan::getName).toList());
+		assertEquals("span4", roots.get(1).getName()); //remote parent
+	}
+
+	@Test
+	public void testDeepChainIsCut() {
+		final List<OtlpSpan> chain = new ArrayList<>();
+		for (int i = 1; i <= 10_000; i++) {
+			chain.add(span(i, i - 1, i));
+		}
+		final long tooDeepBefore = metric("otlp.tooDeep");
+		final List<TraceSpan> roots = ASSEMBLER.buildTrees(chain);
+		assertEquals(1, roots.size());
+		int depth = 0;
+		for (TraceSpan traceSpan = roots.get(0); traceSpan != null; traceSpan = traceSpan.getChildSpans().isEmpty() ? null : traceSpan.getChildSpans().get(0)) {
+			depth++;
+		}
+		assertEquals(BinaryProtocol.MAX_SPAN_DEPTH, depth);
+		assertEquals(10_000 - BinaryProtocol.MAX_SPAN_DEPTH, metric("otlp.tooDeep") - tooDeepBefore);
+	}
+
+	@Test
+	public void testCyclesAreCounted() {
+		final long cyclesBefore = metric("otlp.cycles");
+		//2 -> 3 -> 2 is never reached from the root 1
+		final List<TraceSpan> roots = ASSEMBLER.buildTrees(new ArrayList<>(List.of(span(1, 0, 0), span(2, 3, 10), span(3, 2, 20))));
+		assertEquals(1, roots.size());
+		assertEquals(2, metric("otlp.cycles") - cyclesBefore);
+	}
+
+	@Test
+	public void testDuplicatedSpanIds() {
+		final long cyclesBefore = metric("otlp.cycles");
+		final List<TraceSpan> roots = ASSEMBLER.buildTrees(new ArrayList<>(List.of(span(1, 0, 0), span(1, 0, 5), span(2, 1, 10))));
+		assertEquals(2, roots.size());
+		assertEquals(1, roots.get(0).getChildSpans().size() + roots.get(1).getChildSpans().size());
+		assertEquals(0, metric("otlp.cycles") - cyclesBefore);
+	}
+}
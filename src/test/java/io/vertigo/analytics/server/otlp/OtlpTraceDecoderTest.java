@@ -0,0 +1,131 @@
+package io.vertigo.analytics.server.otlp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public final class OtlpTraceDecoderTest {
+
+	@Test
+	public void testDecode() throws IOException {
+		final byte[] request = request();
+		final List<String> hosts = new ArrayList<>();
+		final List<OtlpSpan> spans = new ArrayList<>();
+		assertEquals(1, OtlpTraceDecoder.decode(request, request.length, (appName, host, span) -> {
+			hosts.add(appName + '@' + host);
+			spans.add(span);
+		}));
+		assertEquals(List.of("myApp@host1"), hosts);
+		final OtlpSpan span = spans.get(0);
+		assertEquals("db", span.category());
+		assertEquals("select", span.name());
+		assertEquals(1, span.traceIdHigh());
+		assertEquals(2, span.traceIdLow());
+		assertEquals(3, span.spanId());
+		assertEquals(1_000_000, span.startNanos());
+		assertEquals(3_000_000, span.endNanos());
+		assertEquals(12d, span.measures().get("db_rows").doubleValue());
+		assertEquals("postgresql", span.metadatas().get("db.system"));
+	}
+
+	@Test
+	public void testTruncated() throws IOException {
+		final byte[] request = request();
+		for (final int length : new int[] { 1, request.length / 2, request.length - 1 }) {
+			final byte[] truncated = Arrays.copyOf(request, length);
+			assertThrows(IOException.class, () -> OtlpTraceDecoder.decode(truncated, truncated.length, (appName, host, span) -> {
+				//nothing
+			}));
+		}
+	}
+
+	@Test
+	public void testLengthLargerThanMessage() {
+		//resource_spans of Integer.MAX_VALUE bytes
+		final byte[] request = { 1 << 3 | ProtobufReader.LENGTH_DELIMITED, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0 };
+		assertThrows(IOException.class, () -> OtlpTraceDecoder.decode(request, request.length, (appName, host, span) -> {
+			//nothing
+		}));
+	}
+
+	private static byte[] request() throws IOException {
+		final byte[] resource = concat(
+				field(1, keyValue("service.name", stringValue("myApp"))),
+				field(1, keyValue("host.name", stringValue("host1"))));
+		final byte[] span = concat(
+				field(1, concat(longBytes(1), longBytes(2))),
+				field(2, longBytes(3)),
+				field(5, "select".getBytes(StandardCharsets.UTF_8)),
+				fixed64(7, 1_000_000),
+				fixed64(8, 3_000_000),
+				field(9, keyValue("db.system", stringValue("postgresql"))),
+				field(9, keyValue("db.rows", intValue(12))));
+		final byte[] scopeSpans = field(2, span);
+		return field(1, concat(field(1, resource), field(2, scopeSpans)));
+	}
+
+	private static byte[] keyValue(final String key, final byte[] anyValue) throws IOException {
+		return concat(field(1, key.getBytes(StandardCharsets.UTF_8)), field(2, anyValue));
+	}
+
+	private static byte[] stringValue(final String value) throws IOException {
+		return field(1, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static byte[] intValue(final long value) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeVarint(out, 3 << 3 | ProtobufReader.VARINT);
+		writeVarint(out, value);
+		return out.toByteArray();
+	}
+
+	private static byte[] fixed64(final int fieldNumber, final long value) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeVarint(out, fieldNumber << 3 | ProtobufReader.FIXED64);
+		for (int i = 0; i < 8; i++) {
+			out.write((int) (value >>> 8 * i));
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] field(final int fieldNumber, final byte[] value) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeVarint(out, fieldNumber << 3 | ProtobufReader.LENGTH_DELIMITED);
+		writeVarint(out, value.length);
+		out.write(value);
+		return out.toByteArray();
+	}
+
+	private static byte[] longBytes(final long value) {
+		final byte[] bytes = new byte[8];
+		for (int i = 0; i < 8; i++) {
+			bytes[i] = (byte) (value >>> 8 * (7 - i));
+		}
+		return bytes;
+	}
+
+	private static byte[] concat(final byte[]... parts) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (final byte[] part : parts) {
+			out.write(part);
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeVarint(final ByteArrayOutputStream out, final long value) {
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0) {
+			out.write((int) (remaining & 0x7F | 0x80));
+			remaining >>>= 7;
+		}
+		out.write((int) remaining);
+	}
+}
@@ -0,0 +1,66 @@
+package io.vertigo.analytics.server.priority;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LogEventListener;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.priority.PriorityDispatcher.Lane;
+
+public final class PriorityDispatcherTest {
+
+	private static final int EVENTS_PER_LANE = 20_000;
+	private static final String[] LOGGER_NAMES = { "analytics-health", "analytics-metric", "analytics" };
+
+	@Test
+	public void testLaneOrderIsKept() throws InterruptedException {
+		final PriorityDispatcher dispatcher = new PriorityDispatcher(4, 100, Map.of(Lane.HEALTH, 4, Lane.METRIC, 4, Lane.PROCESS, 1));
+		final Map<Lane, List<Long>> dispatched = new EnumMap<>(Lane.class);
+		for (final Lane lane : Lane.values()) {
+			dispatched.put(lane, new ArrayList<>());
+		}
+		final CountDownLatch done = new CountDownLatch(EVENTS_PER_LANE * LOGGER_NAMES.length);
+		final LogEventListener listener = dispatcher.listenerFor(new LogEventListener() {
+			@Override
+			public void log(final LogEvent event) {
+				final List<Long> laneEvents = dispatched.get(Lane.of(event));
+				synchronized (laneEvents) {
+					laneEvents.add(event.getTimeMillis());
+				}
+				done.countDown();
+			}
+		});
+		//one socket reader per lane
+		final List<Thread> readers = new ArrayList<>();
+		for (final String loggerName : LOGGER_NAMES) {
+			final Thread reader = new Thread(() -> {
+				for (long i = 0; i < EVENTS_PER_LANE; i++) {
+					listener.log(Log4jLogEvent.newBuilder().setLoggerName(loggerName).setTimeMillis(i).build());
+				}
+			});
+			readers.add(reader);
+			reader.start();
+		}
+		for (final Thread reader : readers) {
+			reader.join();
+		}
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		for (final Lane lane : Lane.values()) {
+			final List<Long> laneEvents = dispatched.get(lane);
+			assertEquals(EVENTS_PER_LANE, laneEvents.size());
+			for (int i = 0; i < EVENTS_PER_LANE; i++) {
+				assertEquals(i, laneEvents.get(i).longValue(), "lane " + lane);
+			}
+		}
+	}
+}
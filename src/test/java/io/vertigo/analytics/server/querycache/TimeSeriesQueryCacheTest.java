@@ -0,0 +1,116 @@
+package io.vertigo.analytics.server.querycache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public final class TimeSeriesQueryCacheTest {
+
+	private static final long HOUR = 3_600_000;
+
+	@Test
+	public void testClosedRange() {
+		final TimeSeriesQueryCache cache = new TimeSeriesQueryCache(1024 * 1024, 1, 60_000);
+		final AtomicInteger loads = new AtomicInteger();
+		final long toMillis = System.currentTimeMillis() - HOUR;
+		assertEquals("result", cache.get("panel", "query", toMillis, 60_000L, () -> load(loads, "result")));
+		//closed : kept after the open TTL
+		assertEquals("result", cache.get("panel", "query", toMillis, 60_000L, () -> load(loads, "other")));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testOpenRangeTtl() throws InterruptedException {
+		final TimeSeriesQueryCache cache = new TimeSeriesQueryCache(1024 * 1024, 50, 60_000);
+		final AtomicInteger loads = new AtomicInteger();
+		assertEquals(1, cache.get("panel", "query", null, HOUR, loads::incrementAndGet).intValue());
+		assertEquals(1, cache.get("panel", "query", System.currentTimeMillis(), HOUR, loads::incrementAndGet).intValue());
+		Thread.sleep(100);
+		assertEquals(2, cache.get("panel", "query", null, HOUR, loads::incrementAndGet).intValue());
+	}
+
+	@Test
+	public void testNullAndErrorsNotCached() {
+		final TimeSeriesQueryCache cache = new TimeSeriesQueryCache(1024 * 1024, 60_000, 60_000);
+		final AtomicInteger loads = new AtomicInteger();
+		assertNull(cache.get("panel", "query", null, null, () -> {
+			loads.incrementAndGet();
+			return null;
+		}));
+		assertThrows(IllegalStateException.class, () -> cache.get("panel", "query", null, null, () -> {
+			loads.incrementAndGet();
+			throw new IllegalStateException("influxdb down");
+		}));
+		assertEquals("result", cache.get("panel", "query", null, null, () -> {
+			loads.incrementAndGet();
+			return "result";
+		}));
+		assertEquals(3, loads.get());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		//room for two entries : 128 bytes of overhead, 2 bytes per char of the query and of the json result
+		final TimeSeriesQueryCache cache = new TimeSeriesQueryCache(2 * (128 + 2 * 2 + 2 * 3), 60_000, 60_000);
+		final AtomicInteger loads = new AtomicInteger();
+		cache.get("panel", "q1", null, null, () -> load(loads, 100));
+		cache.get("panel", "q2", null, null, () -> load(loads, 200));
+		cache.get("panel", "q1", null, null, () -> load(loads, 100)); //q1 is the most recently used
+		assertEquals(2, loads.get());
+		cache.get("panel", "q3", null, null, () -> load(loads, 300)); //q2 is evicted
+		assertEquals(3, loads.get());
+		assertEquals(100, cache.get("panel", "q1", null, null, () -> load(loads, -1)).intValue());
+		assertEquals(200, cache.get("panel", "q2", null, null, () -> load(loads, 200)).intValue());
+		assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void testConcurrentMissesCoalesced() throws Exception {
+		final TimeSeriesQueryCache cache = new TimeSeriesQueryCache(1024 * 1024, 60_000, 60_000);
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<String> first = executor.submit(() -> cache.get("panel", "query", null, HOUR, () -> {
+				loads.incrementAndGet();
+				loading.countDown();
+				await(release);
+				return "result";
+			}));
+			await(loading);
+			final Future<String> second = executor.submit(() -> cache.get("panel", "query", null, HOUR, () -> {
+				loads.incrementAndGet();
+				return "other";
+			}));
+			release.countDown();
+			assertEquals("result", first.get(5, TimeUnit.SECONDS));
+			assertEquals("result", second.get(5, TimeUnit.SECONDS));
+			assertEquals(1, loads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static <R> R load(final AtomicInteger loads, final R result) {
+		loads.incrementAndGet();
+		return result;
+	}
+
+	private static void await(final CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package io.vertigo.analytics.server.recentwindow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertigo.analytics.server.feeders.influxdb.InfluxPoint;
+
+public final class RecentWindowStoreTest {
+
+	private static final List<FieldAggregation> SUM_AND_COUNT = List.of(
+			new FieldAggregation("duration", Aggregation.SUM),
+			new FieldAggregation("duration", Aggregation.COUNT));
+
+	@Test
+	public void testInvalidWindow() {
+		assertThrows(IllegalArgumentException.class, () -> new RecentWindowStore(10_000, 0, 1024));
+		assertThrows(IllegalArgumentException.class, () -> new RecentWindowStore(0, 10, 1024));
+	}
+
+	@Test
+	public void testNotCoveredWithoutFeeders() {
+		final RecentWindowStore store = new RecentWindowStore(10_000, 10, 1024 * 1024);
+		assertFalse(store.addFeeder()); //not opened : no localUi
+		store.open();
+		assertFalse(store.isStarted()); //no InfluxDB appender
+		final long now = System.currentTimeMillis();
+		assertNull(store.timeSeries("myApp", "healthcheck", Map.of(), SUM_AND_COUNT, now - 100, now, 10));
+		assertTrue(store.addFeeder());
+		assertTrue(store.isStarted());
+		//the current partition may have missed points
+		assertNull(store.timeSeries("myApp", "healthcheck", Map.of(), SUM_AND_COUNT, now - 100, now, 10));
+		store.release();
+		assertFalse(store.isStarted());
+	}
+
+	@Test
+	public void testAppendPoints() throws InterruptedException {
+		final RecentWindowStore store = startedStore(1024 * 1024);
+		final long now = System.currentTimeMillis();
+		final long from = now - 20;
+		store.append("myApp", List.of(
+				point("node1", 1, now - 5),
+				point("node1", 2, now - 4),
+				point("node2", 4, now - 3),
+				point("node1", 8, now - 10_000), //out of the window
+				InfluxPoint.measurement("healthcheck").time(Instant.ofEpochMilli(now - 2)).addTag("location", "node1").addField("name", "no numeric field")));
+		final WindowAccumulator all = store.timeSeries("myApp", "healthcheck", Map.of(), SUM_AND_COUNT, from, now, 100);
+		assertNotNull(all);
+		assertEquals(7d, total(all, 0, Aggregation.SUM));
+		assertEquals(3d, total(all, 1, Aggregation.COUNT));
+		final WindowAccumulator node1 = store.timeSeries("myApp", "healthcheck", Map.of("location", "node1"), SUM_AND_COUNT, from, now, 100);
+		assertEquals(3d, total(node1, 0, Aggregation.SUM));
+		//another bucket
+		final WindowAccumulator otherApp = store.timeSeries("otherApp", "healthcheck", Map.of(), SUM_AND_COUNT, from, now, 100);
+		assertEquals(0d, total(otherApp, 1, Aggregation.COUNT));
+	}
+
+	@Test
+	public void testRelayedBucketNotCovered() throws InterruptedException {
+		final RecentWindowStore store = startedStore(1024 * 1024);
+		final long now = System.currentTimeMillis();
+		store.markRelayed("relayedApp");
+		assertNull(store.timeSeries("relayedApp", "healthcheck", Map.of(), SUM_AND_COUNT, now - 20, now, 100));
+		assertNotNull(store.timeSeries("myApp", "healthcheck", Map.of(), SUM_AND_COUNT, now - 20, now, 100));
+	}
+
+	@Test
+	public void testMemoryBudget() throws InterruptedException {
+		final RecentWindowStore store = startedStore(0);
+		final long now = System.currentTimeMillis();
+		store.append("myApp", List.of(point("node1", 1, now - 1), point("node1", 2, now - 1)));
+		//the current partition is alone and over the budget : it drops points, so it is not covered
+		assertNull(store.timeSeries("myApp", "healthcheck", Map.of(), SUM_AND_COUNT, now - 20, now, 100));
+	}
+
+	private static RecentWindowStore startedStore(final long maxBytes) throws InterruptedException {
+		final RecentWindowStore store = new RecentWindowStore(10_000, 10, maxBytes);
+		store.open();
+		store.addFeeder();
+		Thread.sleep(50); //next partitions are covered
+		return store;
+	}
+
+	private static InfluxPoint point(final String location, final long duration, final long timeMillis) {
+		return InfluxPoint.measurement("healthcheck")
+				.time(Instant.ofEpochMilli(timeMillis))
+				.addTag("location", location)
+				.addTag("module", "") //not written
+				.addField("duration", duration);
+	}
+
+	private static double total(final WindowAccumulator accumulator, final int aggregationIndex, final Aggregation aggregation) {
+		double total = 0;
+		for (int window = 0; window < accumulator.getWindowCount(); window++) {
+			final Double value = accumulator.getValue(window, aggregationIndex, aggregation);
+			if (value != null) {
+				total += value.doubleValue();
+			}
+		}
+		return total;
+	}
+}